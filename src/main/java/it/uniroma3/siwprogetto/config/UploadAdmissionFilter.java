@@ -0,0 +1,182 @@
+package it.uniroma3.siwprogetto.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controllo di ammissione delle richieste multipart (upload di immagini)
+ *
+ * Endpoint coperti: tutte le richieste multipart/*, tra cui /rest/api/products,
+ * /rest/api/dealers, /private/add e /private/edit/{id}
+ *
+ * Funzionamento:
+ * - Solo richieste con sessione autenticata (SecurityContext salvato nella sessione HTTP):
+ *   le altre ricevono 401 prima di entrare in coda, senza leggere il corpo né creare sessioni,
+ *   così upload anonimi non possono occupare i permessi degli utenti autenticati
+ * - Al più uploads.admission.max-concurrent upload elaborati contemporaneamente
+ *   (semaforo equo: ordine di arrivo)
+ * - Al più uploads.admission.max-queue richieste in attesa, ciascuna per non oltre
+ *   uploads.admission.max-wait-ms
+ * - Coda piena o attesa scaduta: 503 con Retry-After, senza leggere il corpo
+ *
+ * Il filtro precede Spring Security: il CsrfFilter legge i parametri della richiesta
+ * e, per una multipart, farebbe analizzare a Tomcat l'intero corpo prima dell'ammissione.
+ * I thread di Tomcat occupati dagli upload restano così limitati a max-concurrent + max-queue:
+ * la navigazione del catalogo non resta senza worker durante un picco di upload.
+ * Per questo l'autenticazione è verificata qui sulla sessione, non dal SecurityContextHolder
+ * (ancora vuoto); il solo cookie remember-me non basta: la sessione si riapre con una GET.
+ *
+ * Metriche (Micrometer):
+ * - uploads.admission.active, uploads.admission.queued
+ * - uploads.admission.wait (tempo di attesa del permesso)
+ * - uploads.admission.rejected{reason=unauthenticated|queue-full|timeout}
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 10)
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadAdmissionFilter.class);
+
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long maxWaitMillis;
+    private final long retryAfterSeconds;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    private final Timer waitTimer;
+    private final Counter rejectedUnauthenticated;
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    public UploadAdmissionFilter(MeterRegistry meterRegistry,
+                                 @Value("${uploads.admission.max-concurrent:4}") int maxConcurrent,
+                                 @Value("${uploads.admission.max-queue:16}") int maxQueue,
+                                 @Value("${uploads.admission.max-wait-ms:5000}") long maxWaitMillis,
+                                 @Value("${uploads.admission.retry-after-seconds:10}") long retryAfterSeconds) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+        this.maxWaitMillis = maxWaitMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        Gauge.builder("uploads.admission.active", this, UploadAdmissionFilter::active)
+                .description("Upload in elaborazione").register(meterRegistry);
+        Gauge.builder("uploads.admission.queued", queued, AtomicInteger::get)
+                .description("Upload in attesa di ammissione").register(meterRegistry);
+        this.waitTimer = Timer.builder("uploads.admission.wait")
+                .description("Attesa prima dell'ammissione di un upload").register(meterRegistry);
+        this.rejectedUnauthenticated = Counter.builder("uploads.admission.rejected").tag("reason", "unauthenticated")
+                .description("Upload rifiutati con 401 prima della coda").register(meterRegistry);
+        this.rejectedQueueFull = Counter.builder("uploads.admission.rejected").tag("reason", "queue-full")
+                .description("Upload rifiutati con 503").register(meterRegistry);
+        this.rejectedTimeout = Counter.builder("uploads.admission.rejected").tag("reason", "timeout")
+                .description("Upload rifiutati con 503").register(meterRegistry);
+    }
+
+    /**
+     * Solo le richieste con corpo multipart passano dal controllo di ammissione
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType == null || !contentType.toLowerCase().startsWith("multipart/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!hasAuthenticatedSession(request)) {
+            rejectedUnauthenticated.increment();
+            logger.warn("⚠️ Upload rifiutato (non autenticato): {} {}", request.getMethod(), request.getRequestURI());
+            response.setHeader(HttpHeaders.CONNECTION, "close");
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Accesso richiesto per caricare immagini");
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueue) {
+            queued.decrementAndGet();
+            rejectedQueueFull.increment();
+            reject(request, response, "coda piena");
+            return;
+        }
+
+        boolean acquired;
+        long start = System.nanoTime();
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            queued.decrementAndGet();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (!acquired) {
+            rejectedTimeout.increment();
+            reject(request, response, "attesa scaduta");
+            return;
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+
+    // === METODI PRIVATI ===
+
+    /**
+     * SecurityContext autenticato nella sessione esistente (nessuna sessione creata)
+     */
+    private boolean hasAuthenticatedSession(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return false;
+        }
+        Object context = session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+        return context instanceof SecurityContext securityContext
+                && trustResolver.isAuthenticated(securityContext.getAuthentication());
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, String reason) throws IOException {
+        logger.warn("⚠️ Upload rifiutato ({}): {} {}", reason, request.getMethod(), request.getRequestURI());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        // Il corpo non letto non va riutilizzato da Tomcat per la richiesta successiva
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                "Troppi caricamenti in corso, riprovare tra " + retryAfterSeconds + " secondi");
+    }
+
+    private int active() {
+        return maxConcurrent - permits.availablePermits();
+    }
+}
@@ -2,10 +2,14 @@ package it.uniroma3.siwprogetto.config;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * Configurazione MVC dell'applicazione.
  * Gestisce la configurazione delle risorse statiche e del mapping degli upload.
@@ -19,22 +23,38 @@ public class WebConfig implements WebMvcConfigurer {
     /** Logger per eventi di configurazione */
     private static final Logger logger = LoggerFactory.getLogger(WebConfig.class);
 
+    /**
+     * Directory servita su /uploads/** (file statici legacy)
+     */
+    @Value("${images.public-uploads.dir:${java.io.tmpdir}/uploads}")
+    private String publicUploadDir;
+
+    /**
+     * Archivio delle immagini: mai servito staticamente, solo da ImageController
+     */
+    @Value("${images.storage.root:${user.home}/fcf-motors/images}")
+    private String storageRoot;
+
     /**
      * Configura i gestori delle risorse statiche.
-     * Mappa la directory temporanea per servire i file caricati dagli utenti.
+     * Mappa la directory degli upload pubblici per servire i file caricati dagli utenti.
      * 
-     * I file vengono salvati nella directory temporanea del sistema e
-     * serviti attraverso l'endpoint /uploads/**
+     * L'archivio delle immagini (blob, rendition, upload parziali) resta fuori dal mapping:
+     * se le due directory si sovrappongono il mapping non viene registrato
      * 
      * @param registry Registry per la configurazione dei resource handler
      */
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        // Ottiene la directory temporanea del sistema
-        String tempDir = System.getProperty("java.io.tmpdir");
-        
-        // Costruisce il percorso completo per gli upload
-        String uploadPath = "file:" + tempDir + "/uploads/";
+        Path publicDir = Paths.get(publicUploadDir).toAbsolutePath().normalize();
+        Path archive = Paths.get(storageRoot).toAbsolutePath().normalize();
+        if (publicDir.startsWith(archive) || archive.startsWith(publicDir)) {
+            logger.error("/uploads/** non configurato: {} si sovrappone all'archivio immagini {}", publicDir, archive);
+            return;
+        }
+
+        // Costruisce il percorso completo per gli upload (con "/" finale anche se la directory non esiste)
+        String uploadPath = "file:" + publicDir + "/";
         
         // Log della configurazione per debugging
         logger.info("Configurazione upload path: {}", uploadPath);
@@ -45,4 +65,4 @@ public class WebConfig implements WebMvcConfigurer {
         
         logger.info("Resource handler configurato: /uploads/** -> {}", uploadPath);
     }
-}
\ No newline at end of file
+}
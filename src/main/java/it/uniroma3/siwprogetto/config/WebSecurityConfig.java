@@ -113,6 +113,9 @@ public class WebSecurityConfig {
                 
                 // Area admin - solo amministratori
                 .requestMatchers("/admin/**").hasRole("ADMIN")
+
+                // Metriche e health check (actuator) - solo amministratori
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
                 
                 // Tutto il resto richiede autenticazione
                 .anyRequest().authenticated()
@@ -5,11 +5,16 @@ import it.uniroma3.siwprogetto.repository.DealerRepository;
 import it.uniroma3.siwprogetto.repository.ProductRepository;
 import it.uniroma3.siwprogetto.repository.QuoteRequestRepository;
 import it.uniroma3.siwprogetto.repository.UserRepository;
+import it.uniroma3.siwprogetto.service.DealerJsonStreamer;
 import it.uniroma3.siwprogetto.service.DealerService;
+import it.uniroma3.siwprogetto.service.UploadSessionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
@@ -21,7 +26,9 @@ import org.springframework.ui.Model;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -51,7 +58,7 @@ public class DealerController {
     private static final int MAX_DEALER_IMAGES = 4;
     
     /** Numero massimo di immagini consentite per singolo prodotto */
-    private static final int MAX_PRODUCT_IMAGES = 10;
+    static final int MAX_PRODUCT_IMAGES = 10;
     
     /** Durata predefinita evidenziazione prodotti (giorni) */
     private static final int DEFAULT_FEATURED_DAYS = 30;
@@ -66,6 +73,17 @@ public class DealerController {
     @Autowired private JavaMailSender mailSender;
     @Autowired private ProductRepository productRepository;
     @Autowired private UserRepository userRepository;
+    @Autowired private UploadSessionService uploadSessionService;
+    @Autowired private DealerJsonStreamer dealerJsonStreamer;
+
+    /** Dealer per pagina nella lista /rest/api/dealers senza limit (dealers.api.page-size) */
+    @Value("${dealers.api.page-size:100}")
+    private int apiPageSize;
+
+    /** Limite massimo di dealer per pagina richiedibile con limit (dealers.api.max-page-size) */
+    @Value("${dealers.api.max-page-size:1000}")
+    private int apiMaxPageSize;
+
     /**
      * Endpoint di reindirizzamento principale per dealer
      * Verifica se il dealer esiste e reindirizza alla pagina appropriata
@@ -185,6 +203,9 @@ public class DealerController {
 
             return ok(response);
 
+        } catch (IllegalArgumentException e) {
+            logger.warn("❌ Richiesta non valida: {}", e.getMessage());
+            return badRequest().body(Map.of("message", e.getMessage()));
         } catch (Exception e) {
             logger.error("❌ Errore salvataggio dealer: {}", e.getMessage(), e);
             return status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -261,6 +282,9 @@ public class DealerController {
                     "name", savedDealer.getName(),
                     "images", savedDealer.getImages().stream().map(Image::getId).toList()));
                     
+        } catch (IllegalArgumentException e) {
+            logger.warn("❌ Richiesta non valida: {}", e.getMessage());
+            return badRequest().body(Map.of("message", e.getMessage()));
         } catch (Exception e) {
             logger.error("❌ Errore aggiornamento dealer: {}", e.getMessage(), e);
             return status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -287,9 +311,11 @@ public class DealerController {
             @RequestParam(required = false) Integer year,
             @RequestParam(required = false) Boolean isFeatured,
             @RequestParam(required = false) Integer featuredUntil,
-            @RequestParam(value = "images", required = false) List<MultipartFile> images) {
+            @RequestParam(value = "images", required = false) List<MultipartFile> images,
+            @RequestParam(value = "uploads", required = false) List<String> uploads) {
 
-        logger.info("➕ POST /rest/api/products - model: {}, images: {}", model, images != null ? images.size() : 0);
+        logger.info("➕ POST /rest/api/products - model: {}, images: {}, uploads: {}", model,
+                images != null ? images.size() : 0, uploads != null ? uploads.size() : 0);
 
         // === VALIDAZIONE CAMPI OBBLIGATORI ===
         if (!StringUtils.hasText(model) || !StringUtils.hasText(price)) {
@@ -314,13 +340,16 @@ public class DealerController {
             product.setIsFeatured(isFeatured != null ? isFeatured : false);
 
             // === PROCESSING IMMAGINI (OBBLIGATORIE) ===
+            // Multipart e/o upload a blocchi completati (UploadController)
             List<Image> imageEntities = new ArrayList<>();
-            if (images != null && !images.isEmpty()) {
-                if (images.size() > MAX_PRODUCT_IMAGES) {
+            List<UploadSessionService.Session> sessions = new ArrayList<>();
+            int imageCount = (images != null ? images.size() : 0) + (uploads != null ? uploads.size() : 0);
+            if (imageCount > 0) {
+                if (imageCount > MAX_PRODUCT_IMAGES) {
                     return badRequest().body(Map.of("message", "Massimo " + MAX_PRODUCT_IMAGES + " immagini per prodotto"));
                 }
                 
-                for (MultipartFile file : images) {
+                for (MultipartFile file : images != null ? images : List.<MultipartFile>of()) {
                     if (!file.isEmpty()) {
                         logger.info("📸 Processing image: {} (size: {} bytes)", file.getOriginalFilename(), file.getSize());
                         Image img = dealerService.saveImageFile(file);
@@ -330,6 +359,19 @@ public class DealerController {
                         logger.warn("⚠️ Empty file received: {}", file.getOriginalFilename());
                     }
                 }
+
+                String username = SecurityContextHolder.getContext().getAuthentication().getName();
+                for (String uploadId : uploads != null ? uploads : List.<String>of()) {
+                    UploadSessionService.Session session = uploadSessionService.find(uploadId, username);
+                    if (session == null) {
+                        return badRequest().body(Map.of("message", "Upload non trovato o scaduto: " + uploadId));
+                    }
+                    logger.info("📸 Processing chunked upload: {} (size: {} bytes)", session.getFileName(), session.getSize());
+                    Image img = dealerService.saveImageFile(uploadSessionService.complete(session));
+                    img.setProduct(product);
+                    imageEntities.add(img);
+                    sessions.add(session);
+                }
             } else {
                 logger.info("❌ No images provided for product: {}", model);
                 return badRequest().body(Map.of("message", "Seleziona almeno un'immagine per il prodotto"));
@@ -344,6 +386,7 @@ public class DealerController {
 
             // === SALVATAGGIO PRODOTTO ===
             Product savedProduct = dealerService.addProduct(product);
+            sessions.forEach(uploadSessionService::discard);
             return ok(Map.of(
                     "id", savedProduct.getId(),
                     "model", savedProduct.getModel(),
@@ -351,6 +394,9 @@ public class DealerController {
                     
         } catch (NumberFormatException e) {
             return badRequest().body(Map.of("message", "Prezzo non valido"));
+        } catch (IllegalArgumentException e) {
+            logger.warn("❌ Richiesta non valida: {}", e.getMessage());
+            return badRequest().body(Map.of("message", e.getMessage()));
         } catch (Exception e) {
             logger.error("❌ Errore salvataggio prodotto: {}", e.getMessage(), e);
             return status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -456,6 +502,9 @@ public class DealerController {
         } catch (NumberFormatException e) {
             logger.error("❌ Invalid price format: {}", price);
             return badRequest().body(Map.of("message", "Formato del prezzo non valido"));
+        } catch (IllegalArgumentException e) {
+            logger.warn("❌ Richiesta non valida: {}", e.getMessage());
+            return badRequest().body(Map.of("message", e.getMessage()));
         } catch (Exception e) {
             logger.error("❌ Unexpected error updating product: {}", e.getMessage(), e);
             return status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -465,38 +514,90 @@ public class DealerController {
 
     /**
      * API per ricerca concessionari con filtro località
-     * Restituisce lista concessionari con tutte le informazioni
+     * Restituisce lista concessionari con tutte le informazioni e gli ID delle immagini
+     *
+     * Lista completa (senza query né posizione):
+     * - Paginata per ID: limit dealer per pagina (default dealers.api.page-size)
+     * - Header Link rel="next" con il parametro after della pagina successiva
+     *
+     * Ricerca per distanza (facoltativa):
+     * - near: comune, CAP o indirizzo, oppure lat/lon espliciti
+     *   (lat in [-90, 90], lon in [-180, 180], altrimenti 400)
+     * - radiusKm: dealer entro il raggio; senza raggio i più vicini a qualsiasi distanza
+     * - limit: numero massimo di risultati (default 20)
+     * - Risposta in ordine di distanza, con distanceKm, latitude e longitude
+     *
+     * Il JSON è scritto in streaming da DealerJsonStreamer
      */
     @GetMapping("/api/dealers")
     @ResponseBody
-    @Transactional(readOnly = true)
-    public ResponseEntity<List<Map<String, Object>>> findDealers(@RequestParam(required = false) String query) {
-        logger.info("🔍 Received GET /rest/api/dealers with query: '{}'", query);
+    public ResponseEntity<StreamingResponseBody> findDealers(
+            @RequestParam(required = false) String query,
+            @RequestParam(required = false) String near,
+            @RequestParam(required = false) Double lat,
+            @RequestParam(required = false) Double lon,
+            @RequestParam(required = false) Double radiusKm,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Long after) {
+        logger.info("🔍 Received GET /rest/api/dealers with query: '{}', near: '{}', lat: {}, lon: {}, radiusKm: {}, after: {}",
+                query, near, lat, lon, radiusKm, after);
         
         try {
+            // === RICERCA PER DISTANZA ===
+            if (lat != null || lon != null || StringUtils.hasText(near)) {
+                if (radiusKm != null && radiusKm <= 0) {
+                    logger.warn("❌ Richiesta non valida: raggio {}", radiusKm);
+                    return badRequest().contentType(MediaType.APPLICATION_JSON).body(dealerJsonStreamer.empty());
+                }
+                if (lat == null || lon == null) {
+                    if (lat != null || lon != null) {
+                        logger.warn("❌ Richiesta non valida: lat e lon vanno indicati insieme");
+                        return badRequest().contentType(MediaType.APPLICATION_JSON).body(dealerJsonStreamer.empty());
+                    }
+                    var location = dealerService.locate(near);
+                    if (location.isEmpty()) {
+                        logger.info("📍 Località non riconosciuta: '{}'", near);
+                        return ok().contentType(MediaType.APPLICATION_JSON).body(dealerJsonStreamer.empty());
+                    }
+                    lat = location.get().getLatitude();
+                    lon = location.get().getLongitude();
+                }
+                // Negato per scartare anche NaN
+                if (!(lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180)) {
+                    logger.warn("❌ Richiesta non valida: coordinate fuori intervallo ({}, {})", lat, lon);
+                    return badRequest().contentType(MediaType.APPLICATION_JSON).body(dealerJsonStreamer.empty());
+                }
+
+                var hits = dealerService.findNearby(lat, lon, radiusKm, limit != null ? limit : 20);
+                logger.info("✅ Returning {} dealers near ({}, {})", hits.size(), lat, lon);
+                return ok().contentType(MediaType.APPLICATION_JSON).body(dealerJsonStreamer.nearby(hits));
+            }
+
             // === RICERCA DEALERS ===
-            List<Dealer> dealers = dealerService.findByLocation(query);
-            
-            // === MAPPING RESPONSE ===
-            List<Map<String, Object>> response = dealers.stream().map(dealer -> {
-                Map<String, Object> dealerMap = new HashMap<>();
-                dealerMap.put("id", dealer.getId() != null ? dealer.getId() : 0L);
-                dealerMap.put("name", dealer.getName() != null ? dealer.getName() : "");
-                dealerMap.put("description", dealer.getDescription() != null ? dealer.getDescription() : "");
-                dealerMap.put("address", dealer.getAddress() != null ? dealer.getAddress() : "");
-                dealerMap.put("phone", dealer.getPhone() != null ? dealer.getPhone() : "");
-                dealerMap.put("email", dealer.getEmail() != null ? dealer.getEmail() : "");
-                List<Long> imageIds = (dealer.getImages() != null) ? dealer.getImages().stream().map(Image::getId).toList() : List.of();
-                dealerMap.put("images", imageIds);
-                return dealerMap;
-            }).toList();
-            
-            logger.info("✅ Returning {} dealers", response.size());
-            return ok(response);
+            if (StringUtils.hasText(query)) {
+                List<Long> ids = dealerService.searchIds(query);
+                logger.info("✅ Returning {} dealers", ids.size());
+                return ok().contentType(MediaType.APPLICATION_JSON).body(dealerJsonStreamer.ranked(ids));
+            }
+
+            // === LISTA PAGINATA ===
+            int size = Math.max(1, Math.min(limit != null ? limit : apiPageSize, apiMaxPageSize));
+            DealerJsonStreamer.Page page = dealerJsonStreamer.page(after, size);
+            var response = ok().contentType(MediaType.APPLICATION_JSON);
+            if (page.getNextCursor() != null) {
+                String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("after", page.getNextCursor())
+                        .replaceQueryParam("limit", size)
+                        .toUriString();
+                response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+            }
+            logger.info("✅ Streaming dealers page after {} (next: {})", after, page.getNextCursor());
+            return response.body(page.getBody());
             
         } catch (Exception e) {
             logger.error("❌ Error fetching dealers with query '{}': {}", query, e.getMessage(), e);
-            return status(HttpStatus.INTERNAL_SERVER_ERROR).body(List.of());
+            return status(HttpStatus.INTERNAL_SERVER_ERROR).contentType(MediaType.APPLICATION_JSON)
+                    .body(dealerJsonStreamer.empty());
         }
     }
 
@@ -568,7 +669,7 @@ public class DealerController {
             }
 
             // === CARICAMENTO PRODOTTI DEALER ===
-            List<Product> products = dealerService.getProductsByDealer();
+            List<ProductCardView> products = dealerService.getProductsByDealer();
             logger.info("✅ Dealer found for user '{}': id={}, name={}, products={}", username, dealer.getId(), dealer.getName(), products.size());
             
             // === PREPARAZIONE MODEL ===
@@ -657,17 +758,18 @@ public class DealerController {
 
     /**
      * Pagina pubblica lista concessionari
-     * Mostra tutti i dealer registrati
+     * Mostra tutti i dealer registrati, o quelli che somigliano alla ricerca (query)
      */
     @GetMapping("/dealers")
     @Transactional(readOnly = true)
-    public String showDealersPage(Model model) {
-        logger.info("📋 Accessing /dealers page");
+    public String showDealersPage(@RequestParam(required = false) String query, Model model) {
+        logger.info("📋 Accessing /dealers page with query: '{}'", query);
         
         try {
-            // === CARICAMENTO TUTTI I DEALER ===
-            List<Dealer> dealers = dealerService.findAll();
+            // === CARICAMENTO DEALER (tutti o per somiglianza) ===
+            List<Dealer> dealers = StringUtils.hasText(query) ? dealerService.findByLocation(query) : dealerService.findAll();
             model.addAttribute("dealers", dealers);
+            model.addAttribute("query", query);
             logger.info("✅ Loaded {} dealers", dealers.size());
             return "dealers";
             
@@ -1101,7 +1203,7 @@ public class DealerController {
             }
             
             // === CARICAMENTO PRODOTTI DEALER ===
-            List<Product> products = dealerService.getProductsByDealerOwner(dealer);
+            List<ProductCardView> products = dealerService.getProductsByDealerOwner(dealer);
             logger.info("✅ Found {} products for dealer ID: {}", products.size(), id);
             
             // === PREPARAZIONE MODEL ===
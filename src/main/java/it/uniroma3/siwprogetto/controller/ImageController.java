@@ -1,23 +1,39 @@
 package it.uniroma3.siwprogetto.controller;
 
 import it.uniroma3.siwprogetto.model.Image;
+import it.uniroma3.siwprogetto.model.ImageMetadata;
 import it.uniroma3.siwprogetto.repository.ImageRepository;
+import it.uniroma3.siwprogetto.service.ImageCache;
+import it.uniroma3.siwprogetto.service.ImageDerivativeService;
+import it.uniroma3.siwprogetto.service.ImageStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * REST Controller per la gestione e servizio delle immagini.
- * Fornisce endpoint per recuperare immagini dal database e servirle
+ * Fornisce endpoint per recuperare immagini dall'archivio su filesystem
+ * (o dal LOB delle righe non ancora migrate) e servirle
  * con il content-type appropriato per la visualizzazione web.
  * 
  * @author FCF Motors Team
@@ -35,19 +51,44 @@ public class ImageController {
     /** Dimensione massima immagine in byte (10MB) */
     private static final long MAX_IMAGE_SIZE = 10 * 1024 * 1024;
 
+    /** Cache per URL il cui contenuto non cambia mai (ID immagine e rendition) */
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    /** Attributi di richiesta del connettore Tomcat per il trasferimento con sendfile */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     // === DIPENDENZE INIETTATE ===
 
     /** Repository per l'accesso alle immagini */
     private final ImageRepository imageRepository;
 
+    /** Archivio su filesystem dei byte delle immagini */
+    private final ImageStorageService imageStorageService;
+
+    /** Rendition ridotte per griglie e dettaglio */
+    private final ImageDerivativeService imageDerivativeService;
+
+    /** Cache di metadati e contenuti delle immagini più richieste */
+    private final ImageCache imageCache;
+
     /**
      * Costruttore con dependency injection.
      * 
      * @param imageRepository Repository per operazioni sulle immagini
+     * @param imageStorageService Archivio dei contenuti delle immagini
+     * @param imageDerivativeService Pipeline delle rendition ridotte
+     * @param imageCache Cache delle immagini calde
      */
     @Autowired
-    public ImageController(ImageRepository imageRepository) {
+    public ImageController(ImageRepository imageRepository, ImageStorageService imageStorageService,
+                           ImageDerivativeService imageDerivativeService, ImageCache imageCache) {
         this.imageRepository = imageRepository;
+        this.imageStorageService = imageStorageService;
+        this.imageDerivativeService = imageDerivativeService;
+        this.imageCache = imageCache;
     }
 
     // === ENDPOINT RECUPERO IMMAGINI ===
@@ -57,69 +98,85 @@ public class ImageController {
      * L'immagine viene servita con il content-type originale e header appropriati
      * per la cache e visualizzazione ottimale nel browser.
      * 
+     * Performance:
+     * - Header dai soli metadati (ImageMetadata): nessun LOB, nessun Product/Dealer caricato
+     * - Immagini calde (ImageCache): metadati senza query e byte dalla memoria fuori heap,
+     *   senza accessi al filesystem
+     * - Byte trasferiti dal file dell'archivio al socket senza passare dall'heap:
+     *   sendfile del connettore Tomcat se disponibile, altrimenti FileChannel.transferTo
+     * - Nessuna connessione al database trattenuta durante il trasferimento
+     * - If-None-Match con l'ETag corrente: 304 senza accedere al file
+     * - Richieste Range per download parziali e ripresi
+     * 
      * @param id ID univoco dell'immagine da recuperare
-     * @return ResponseEntity contenente i dati dell'immagine o 404 se non trovata
+     * @param request Richiesta HTTP (attributi sendfile del connettore)
+     * @param response Risposta HTTP su cui scrivere header e contenuto
+     * @throws IOException Se la scrittura verso il client fallisce
      */
     @GetMapping("/images/{id}")
-    public ResponseEntity<byte[]> getImageById(@PathVariable Long id) {
+    public void getImageById(@PathVariable Long id, HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
         logger.debug("Richiesta immagine con ID: {}", id);
 
         try {
             // Validazione ID
             if (id == null || id <= 0) {
                 logger.warn("ID immagine non valido: {}", id);
-                return ResponseEntity.badRequest().build();
+                response.sendError(HttpStatus.BAD_REQUEST.value());
+                return;
             }
 
-            // Recupera l'immagine dal database
-            Optional<Image> imageOptional = imageRepository.findById(id);
+            // Metadati dell'immagine (proiezione, senza byte)
+            Optional<ImageMetadata> metadataOptional = findMetadata(id);
             
-            if (imageOptional.isEmpty()) {
+            if (metadataOptional.isEmpty()) {
                 logger.info("Immagine non trovata con ID: {}", id);
-                return ResponseEntity.notFound().build();
+                response.sendError(HttpStatus.NOT_FOUND.value());
+                return;
             }
 
-            Image image = imageOptional.get();
+            ImageMetadata metadata = metadataOptional.get();
 
-            // Validazione dati immagine
-            if (image.getData() == null || image.getData().length == 0) {
-                logger.warn("Immagine con ID {} ha dati nulli o vuoti", id);
-                return ResponseEntity.notFound().build();
+            // Righe non ancora migrate: byte dal LOB del database
+            if (metadata.getStorageKey() == null) {
+                serveLegacy(metadata, response);
+                return;
+            }
+
+            // Validatore dal solo hash del contenuto: 304 senza accedere al file
+            String etag = entityTag(metadata.getStorageKey(), null);
+            if (matchesIfNoneMatch(etag, request)) {
+                writeNotModified(etag, response);
+                return;
             }
 
             // Verifica dimensione immagine per sicurezza
-            if (image.getData().length > MAX_IMAGE_SIZE) {
-                logger.error("Immagine con ID {} troppo grande: {} bytes", id, image.getData().length);
-                return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+            Long size = metadata.getSizeBytes();
+            if (size != null && size > MAX_IMAGE_SIZE) {
+                logger.error("Immagine con ID {} troppo grande: {} bytes", id, size);
+                response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value());
+                return;
             }
 
-            // Determina il content-type appropriato
-            MediaType mediaType = determineMediaType(image.getContentType());
+            boolean served = serveContent(metadata, determineMediaType(metadata.getContentType()),
+                    metadata.getStorageKey(), etag, () -> imageStorageService.resolve(metadata.getStorageKey()),
+                    request, response);
 
-            // Costruisce la risposta con header appropriati
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(mediaType);
-            headers.setContentLength(image.getData().length);
-            
-            // Header per cache del browser (24 ore)
-            headers.setCacheControl("public, max-age=86400");
-            
-           	// Header per gestione download - SOLUZIONE SENZA MODIFICARE IMAGE
-            String filename = generateFilename(image, id);
-            if (filename != null && !filename.isEmpty()) {
-                headers.setContentDispositionFormData("inline", filename);
+            // Validazione dati immagine
+            if (!served) {
+                logger.warn("Immagine con ID {} senza contenuto nell'archivio", id);
+                response.sendError(HttpStatus.NOT_FOUND.value());
+                return;
             }
 
             logger.debug("Immagine servita con successo: ID={}, size={} bytes, type={}", 
-                       id, image.getData().length, mediaType);
-
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(image.getData());
+                       id, size, metadata.getContentType());
 
         } catch (Exception e) {
             logger.error("Errore durante il recupero dell'immagine con ID: {}", id, e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            if (!response.isCommitted()) {
+                response.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
         }
     }
 
@@ -128,14 +185,340 @@ public class ImageController {
      * Supporta lo stesso funzionamento di /images/{id}.
      * 
      * @param id ID univoco dell'immagine
-     * @return ResponseEntity con l'immagine o errore appropriato
+     * @param request Richiesta HTTP
+     * @param response Risposta HTTP
+     * @throws IOException Se la scrittura verso il client fallisce
      */
     @GetMapping("/rest/api/images/{id}")
-    public ResponseEntity<byte[]> getImageByIdApi(@PathVariable Long id) {
+    public void getImageByIdApi(@PathVariable Long id, HttpServletRequest request,
+                                HttpServletResponse response) throws IOException {
         logger.debug("Richiesta immagine via API REST con ID: {}", id);
         
         // Riutilizza la logica principale
-        return getImageById(id);
+        getImageById(id, request, response);
+    }
+
+    /**
+     * Serve una rendition ridotta dell'immagine (grid, detail, zoom)
+     * Usata dalle griglie dei listing al posto dell'originale a piena risoluzione
+     * 
+     * Comportamento:
+     * - Rendition già generata (di norma in background all'upload): servita dal file
+     * - Altrimenti generata al momento e conservata nell'archivio per le richieste successive
+     * - Troppe generazioni in corso: redirect temporaneo (307, non memorizzabile) all'originale
+     *   mentre la rendition viene generata in background
+     * - Righe legacy o formati non decodificabili: si serve l'originale
+     * 
+     * @param id ID univoco dell'immagine
+     * @param size Nome della rendition
+     * @param request Richiesta HTTP
+     * @param response Risposta HTTP
+     * @throws IOException Se la scrittura verso il client fallisce
+     */
+    @GetMapping({"/images/{id}/{size}", "/rest/api/images/{id}/{size}"})
+    public void getImageRendition(@PathVariable Long id, @PathVariable String size, HttpServletRequest request,
+                                  HttpServletResponse response) throws IOException {
+        logger.debug("Richiesta rendition {} per immagine con ID: {}", size, id);
+
+        try {
+            ImageDerivativeService.Rendition rendition = ImageDerivativeService.Rendition.fromPath(size);
+            if (id == null || id <= 0 || rendition == null) {
+                logger.warn("Richiesta rendition non valida: id={}, size={}", id, size);
+                response.sendError(HttpStatus.NOT_FOUND.value());
+                return;
+            }
+
+            Optional<ImageMetadata> metadataOptional = findMetadata(id);
+            if (metadataOptional.isEmpty()) {
+                logger.info("Immagine non trovata con ID: {}", id);
+                response.sendError(HttpStatus.NOT_FOUND.value());
+                return;
+            }
+            ImageMetadata metadata = metadataOptional.get();
+
+            // 304 prima di cercare o generare la rendition
+            String etag = metadata.getStorageKey() != null ? entityTag(metadata.getStorageKey(), rendition) : null;
+            if (etag != null && matchesIfNoneMatch(etag, request)) {
+                writeNotModified(etag, response);
+                return;
+            }
+
+            boolean served = metadata.getStorageKey() != null
+                    && serveContent(metadata, MediaType.IMAGE_JPEG, metadata.getStorageKey() + "-" + rendition.pathName(),
+                            etag, () -> imageDerivativeService.getOrCreate(metadata.getStorageKey(), rendition),
+                            request, response);
+            if (!served && imageDerivativeService.isPending(metadata.getStorageKey(), rendition)) {
+                // Originale solo temporaneo: il browser non deve memorizzarlo per l'URL della rendition
+                response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+                response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+                response.setHeader(HttpHeaders.LOCATION, request.getContextPath() + "/images/" + id);
+                return;
+            }
+            if (!served) {
+                getImageById(id, request, response);
+            }
+
+        } catch (Exception e) {
+            logger.error("Errore durante il recupero della rendition {} dell'immagine con ID: {}", size, id, e);
+            if (!response.isCommitted()) {
+                response.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
+        }
+    }
+
+    // === TRASFERIMENTO CONTENUTO ===
+
+    /**
+     * Individua il file da servire in caso di miss della cache
+     */
+    @FunctionalInterface
+    private interface ContentLocator {
+        /** @return Percorso del file, null se il contenuto non è disponibile */
+        Path locate() throws IOException;
+    }
+
+    /**
+     * Metadati dalla cache, con la proiezione del repository in caso di miss
+     */
+    private Optional<ImageMetadata> findMetadata(Long id) {
+        return imageCache.metadata(id, () -> imageRepository.findMetadataById(id));
+    }
+
+    /**
+     * Serve un contenuto dalla cache fuori heap o, in caso di miss, dal file dell'archivio
+     * Dopo un miss il file viene proposto alla cache (ammissione per dimensione e frequenza)
+     * 
+     * @param contentKey Chiave del contenuto in cache (hash, con suffisso per le rendition)
+     * @param locator File da servire in caso di miss
+     * @return false se il contenuto non è disponibile (nessuna risposta scritta)
+     */
+    private boolean serveContent(ImageMetadata metadata, MediaType mediaType, String contentKey, String etag,
+                                 ContentLocator locator, HttpServletRequest request,
+                                 HttpServletResponse response) throws IOException {
+        ImageCache.Content cached = imageCache.acquire(contentKey);
+        try {
+            if (cached != null) {
+                serveFile(metadata, mediaType, cached, null, cached.getLength(), cached.getLastModified(),
+                        etag, request, response);
+                return true;
+            }
+
+            Path path = locator.locate();
+            if (path == null || !Files.isRegularFile(path)) {
+                return false;
+            }
+            long size = Files.size(path);
+            if (size == 0) {
+                return false;
+            }
+            if (size > MAX_IMAGE_SIZE) {
+                logger.error("Contenuto {} troppo grande: {} bytes", contentKey, size);
+                response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value());
+                return true;
+            }
+            serveFile(metadata, mediaType, null, path, size, Files.getLastModifiedTime(path).toMillis(),
+                    etag, request, response);
+            imageCache.offer(contentKey, path);
+            return true;
+        } finally {
+            if (cached != null) {
+                cached.release();
+            }
+        }
+    }
+
+    /**
+     * Serve un contenuto con validatori, richieste condizionali e Range
+     * 
+     * Caching:
+     * - Il contenuto di un ID non cambia mai (una nuova foto è una nuova riga Image),
+     *   quindi l'URL è immutabile: Cache-Control public, max-age=1 anno, immutable
+     * - ETag forte dall'hash del contenuto e Last-Modified dal file, per le
+     *   rivalidazioni esplicite (ricarica della pagina)
+     * 
+     * Range (RFC 9110):
+     * - Un solo intervallo: 206 con Content-Range; più intervalli: risposta completa 200
+     * - If-Range con ETag diverso: risposta completa 200
+     * - Intervallo non soddisfacibile: 416 con Content-Range bytes *&#47;size
+     */
+    private void serveFile(ImageMetadata metadata, MediaType mediaType, ImageCache.Content cached, Path path,
+                           long size, long lastModified, String etag,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // If-Modified-Since vale solo in assenza di If-None-Match
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) == null) {
+            long ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+            if (ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000) {
+                writeNotModified(etag, response);
+                response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+                return;
+            }
+        }
+
+        writeHeaders(metadata, mediaType, size, response);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader == null || (ifRange != null && !ifRange.trim().equals(etag))) {
+            transfer(cached, path, 0, size, request, response);
+            return;
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            logger.debug("Header Range non valido ignorato: {}", rangeHeader);
+            transfer(cached, path, 0, size, request, response);
+            return;
+        }
+        if (ranges.size() != 1) {
+            transfer(cached, path, 0, size, request, response);
+            return;
+        }
+
+        long start;
+        long end;
+        try {
+            start = ranges.get(0).getRangeStart(size);
+            end = ranges.get(0).getRangeEnd(size);
+        } catch (IllegalArgumentException e) {
+            start = size;
+            end = size - 1;
+        }
+        if (start >= size || start > end) {
+            response.reset();
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            return;
+        }
+
+        long length = end - start + 1;
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        response.setContentLengthLong(length);
+        transfer(cached, path, start, length, request, response);
+    }
+
+    /**
+     * ETag forte dal contenuto: hash dell'originale, più il nome della rendition
+     */
+    private static String entityTag(String storageKey, ImageDerivativeService.Rendition rendition) {
+        return "\"" + storageKey + (rendition != null ? "-" + rendition.pathName() : "") + "\"";
+    }
+
+    /**
+     * If-None-Match: "*" o uno degli ETag elencati (confronto debole, come da RFC 9110)
+     */
+    private static boolean matchesIfNoneMatch(String etag, HttpServletRequest request) {
+        String header = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeNotModified(String etag, HttpServletResponse response) {
+        response.setStatus(HttpStatus.NOT_MODIFIED.value());
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL);
+    }
+
+    /**
+     * Trasferisce un intervallo del contenuto verso il client senza copie nell'heap
+     * 
+     * Strategia:
+     * - Contenuto in cache: scritto dalle pagine dirette sul canale della risposta
+     * - Connettore con sendfile (Tomcat NIO/NIO2): il file viene consegnato al connettore,
+     *   che lo invia dopo il ritorno del controller con sendfile del sistema operativo
+     * - Altrimenti FileChannel.transferTo verso il canale della risposta
+     * 
+     * @param cached Contenuto in cache, null per servire il file
+     * @param path File nell'archivio
+     * @param start Primo byte da inviare
+     * @param length Numero di byte da inviare
+     */
+    private void transfer(ImageCache.Content cached, Path path, long start, long length,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (cached != null) {
+            cached.writeTo(Channels.newChannel(response.getOutputStream()), start, length);
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length);
+            return;
+        }
+
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long sent = file.transferTo(position, remaining, out);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    /**
+     * Header comuni della risposta: tipo, lunghezza, cache e nome file
+     */
+    private void writeHeaders(ImageMetadata metadata, MediaType mediaType, long length, HttpServletResponse response) {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(mediaType.toString());
+        response.setContentLengthLong(length);
+
+        // Header per cache del browser (24 ore)
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=86400");
+
+        // Header per gestione download
+        String filename = generateFilename(metadata, mediaType);
+        if (filename != null && !filename.isEmpty()) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                    ContentDisposition.inline().filename(filename).build().toString());
+        }
+    }
+
+    /**
+     * Serving delle righe con byte ancora nel LOB (prima di ImageBlobMigration)
+     */
+    private void serveLegacy(ImageMetadata metadata, HttpServletResponse response) throws IOException {
+        byte[] data = imageRepository.findById(metadata.getId()).map(Image::getData).orElse(null);
+
+        // Validazione dati immagine
+        if (data == null || data.length == 0) {
+            logger.warn("Immagine con ID {} ha dati nulli o vuoti", metadata.getId());
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+
+        // Verifica dimensione immagine per sicurezza
+        if (data.length > MAX_IMAGE_SIZE) {
+            logger.error("Immagine con ID {} troppo grande: {} bytes", metadata.getId(), data.length);
+            response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value());
+            return;
+        }
+
+        writeHeaders(metadata, determineMediaType(metadata.getContentType()), data.length, response);
+        response.getOutputStream().write(data);
     }
 
     // === METODI UTILITY PRIVATI ===
@@ -202,36 +585,33 @@ public class ImageController {
 
    /**
      * Genera un nome file appropriato per l'immagine.
-     * Utilizza i dati disponibili nel model Image esistente senza modifiche.
+     * Utilizza i soli metadati della proiezione (marca prodotto, nome dealer).
      * 
-     * @param image Oggetto Image dal database
-     * @param id ID dell'immagine per fallback
+     * @param metadata Metadati dell'immagine
+     * @param mediaType Tipo del contenuto servito (originale o rendition)
      * @return Nome file generato o null se non determinabile
      */
-    private String generateFilename(Image image, Long id) {
+    private String generateFilename(ImageMetadata metadata, MediaType mediaType) {
+        Long id = metadata.getId();
         try {
             // Determina l'estensione basata sul content-type
-            String extension = getExtensionFromContentType(image.getContentType());
+            String extension = getExtensionFromContentType(mediaType.toString());
             
             // Strategia di naming gerarchica:
             
             // 1. Se l'immagine ha un prodotto associato
-            if (image.getProduct() != null) {
-                String productName = sanitizeFilename(image.getProduct().getBrand());
-                if (productName != null && !productName.isEmpty()) {
-                    return "product_" + productName + "_" + id + "." + extension;
-                }
+            String productName = sanitizeFilename(metadata.getProductBrand());
+            if (productName != null && !productName.isEmpty()) {
+                return "product_" + productName + "_" + id + "." + extension;
             }
             
             // 2. Se l'immagine ha un dealer associato
-            if (image.getDealer() != null) {
-                String dealerName = sanitizeFilename(image.getDealer().getName());
-                if (dealerName != null && !dealerName.isEmpty()) {
-                    return "dealer_" + dealerName + "_" + id + "." + extension;
-                }
+            String dealerName = sanitizeFilename(metadata.getDealerName());
+            if (dealerName != null && !dealerName.isEmpty()) {
+                return "dealer_" + dealerName + "_" + id + "." + extension;
             }
             
-            // 3. Nome generico con ID e timestamp
+            // 3. Nome generico con ID
             return "image_" + id + "." + extension;
             
         } catch (Exception e) {
@@ -7,6 +7,8 @@ import it.uniroma3.siwprogetto.model.User;
 import it.uniroma3.siwprogetto.repository.ImageRepository;
 import it.uniroma3.siwprogetto.repository.ProductRepository;
 import it.uniroma3.siwprogetto.repository.QuoteRequestRepository;
+import it.uniroma3.siwprogetto.service.ImageDerivativeService;
+import it.uniroma3.siwprogetto.service.ImageStorageService;
 import it.uniroma3.siwprogetto.service.UserService;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
@@ -54,6 +56,12 @@ public class PrivateMaintenanceController {
     @Autowired
     private ImageRepository imageRepository;
 
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
     @Autowired
     private QuoteRequestRepository quoteRequestRepository;
 
@@ -82,7 +90,7 @@ public class PrivateMaintenanceController {
 
             // === CONTROLLO AUTO ESISTENTI ===
             // Gli utenti privati possono avere massimo 1 auto
-            List<Product> userProducts = productRepository.findBySellerId(user.getId());
+            List<Product> userProducts = productRepository.findEditBySellerId(user.getId());
             logger.debug("Trovate {} auto per l'utente {}", userProducts.size(), user.getUsername());
 
             if (userProducts.isEmpty()) {
@@ -472,8 +480,8 @@ public class PrivateMaintenanceController {
                         String contentType = file.getContentType();
                         if (isValidImageType(contentType) && isValidImageSize(file)) {
                             Image img = new Image();
-                            img.setData(file.getBytes());
-                            img.setContentType(contentType);
+                            imageStorageService.attach(img, file); // ContentType dai magic bytes
+                            imageDerivativeService.scheduleAll(img);
                             // NON impostare il prodotto qui per le nuove creazioni
                             // sarà impostato nel controller dopo il salvataggio del prodotto
                             if (existingProduct != null) {
@@ -484,6 +492,8 @@ public class PrivateMaintenanceController {
                             logger.debug("Immagine processata: {} ({} bytes)",
                                     file.getOriginalFilename(), file.getSize());
                         }
+                    } catch (IllegalArgumentException e) {
+                        logger.warn("Immagine {} scartata: {}", file.getOriginalFilename(), e.getMessage());
                     } catch (IOException e) {
                         logger.error("Errore processing immagine {}: {}",
                                 file.getOriginalFilename(), e.getMessage());
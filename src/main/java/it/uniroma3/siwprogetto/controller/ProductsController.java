@@ -6,6 +6,9 @@ import it.uniroma3.siwprogetto.service.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
@@ -13,10 +16,10 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -33,10 +36,16 @@ public class ProductsController {
     private static final Logger logger = LoggerFactory.getLogger(ProductsController.class);
 
     private final ProductService productService;
+
+    /** Numero di prodotti per pagina nel catalogo (catalog.page-size) */
+    @Value("${catalog.page-size:24}")
+    private int pageSize;
     
     @Autowired private QuoteRequestRepository quoteRequestRepository;
     @Autowired private UserRepository userRepository;
     @Autowired private DealerService dealerService;
+    @Autowired private ProductFacetService productFacetService;
+    @Autowired private ProductSuggestionService productSuggestionService;
 
     public ProductsController(ProductService productService, CartService cartService) {
         this.productService = productService;
@@ -60,7 +69,8 @@ public class ProductsController {
                                    @RequestParam(value = "maxYear", required = false) Integer maxYear,
                                    @RequestParam(value = "fuelType", required = false) String fuelType,
                                    @RequestParam(value = "transmission", required = false) String transmission,
-                                   @RequestParam(value = "query", required = false) String query) {
+                                   @RequestParam(value = "query", required = false) String query,
+                                   @RequestParam(value = "after", required = false) String after) {
         
         logger.debug("Richiesta pagina prodotti con filtri applicati");
 
@@ -85,29 +95,41 @@ public class ProductsController {
         // Log parametri per debugging
         logger.debug("Filtri applicati - Category: {}, Brand: {}, Query: {}", category, brand, query);
 
-        // === RICERCA PRODOTTI CON FILTRI ===
-        List<Product> products = productService.findByFilters(category, brand, selectedModel,
+        // === RICERCA PRODOTTI CON FILTRI (PAGINAZIONE KEYSET) ===
+        // Ordinamento "in evidenza prima" e limite di pagina applicati dal database
+        ProductFilter filter = new ProductFilter(category, brand, selectedModel,
                 minPrice, maxPrice, minMileage, maxMileage,
                 minYear, maxYear, fuelType, transmission, query);
+        ProductCursor cursor = ProductCursor.parse(after);
+        ProductPage<ProductCardView> page = productService.findCatalogPage(filter, cursor, Math.max(1, pageSize));
 
-        // === ORDINAMENTO PRODOTTI ===
-        // Priorità: 1) Prodotti in evidenza attivi, 2) Prodotti in evidenza, 3) Ordine alfabetico
-        products.sort(Comparator.comparing(Product::isFeaturedActive, Comparator.reverseOrder())
-                .thenComparing(Product::isFeatured, Comparator.reverseOrder())
-                .thenComparing(Product::getModel, Comparator.nullsLast(String::compareTo)));
-
-        logger.info("Trovati {} prodotti con i filtri applicati", products.size());
+        logger.info("Pagina prodotti: {} risultati, cursore={}, successiva={}",
+                page.getContent().size(), cursor, page.getNextCursor());
 
         // === PREPARAZIONE DATI PER LA VIEW ===
-        // Prodotti filtrati e ordinati
-        model.addAttribute("products", products);
+        // Prodotti della pagina corrente, già ordinati
+        model.addAttribute("products", page.getContent());
+
+        // Link alla pagina successiva con gli stessi filtri
+        model.addAttribute("nextPageUrl", page.hasNext()
+                ? ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("after", page.getNextCursor().toToken())
+                        .build().toUriString()
+                : null);
+        model.addAttribute("firstPageUrl", cursor != null
+                ? ServletUriComponentsBuilder.fromCurrentRequest()
+                        .replaceQueryParam("after")
+                        .build().toUriString()
+                : null);
 
         // Valori per dropdown dei filtri
-        model.addAttribute("categories", productService.findAllCategories());
-        model.addAttribute("brands", productService.findAllBrands());
-        model.addAttribute("models", brand != null ? productService.findModelsByBrand(brand) : null);
-        model.addAttribute("fuelTypes", productService.findAllFuelTypes());
-        model.addAttribute("transmissions", productService.findAllTransmissions());
+        // Faccette con conteggi calcolate con un'unica query aggregata
+        ProductFacets facets = productFacetService.computeFacets(filter);
+        model.addAttribute("categories", facets.getCategories());
+        model.addAttribute("brands", facets.getBrands());
+        model.addAttribute("models", brand != null ? facets.getModels() : null);
+        model.addAttribute("fuelTypes", facets.getFuelTypes());
+        model.addAttribute("transmissions", facets.getTransmissions());
 
         // Conserva valori dei filtri per mantenere stato del form
         addFilterAttributesToModel(model, category, brand, selectedModel, minPrice, maxPrice,
@@ -287,12 +309,28 @@ public class ProductsController {
         return "redirect:/products?category=" + category;
     }
 
+    /**
+     * Autocompletamento JSON per la barra di ricerca (usato da homepage.js)
+     * Suggerimenti su marca, modello e "marca modello" ordinati per numero di annunci,
+     * serviti da un trie in-memory senza query sul catalogo
+     */
+    @GetMapping("/api/search")
+    @ResponseBody
+    public ResponseEntity<List<SearchSuggestion>> searchSuggestions(
+            @RequestParam(value = "query", required = false) String query,
+            @RequestParam(value = "limit", defaultValue = "8") int limit) {
+        List<SearchSuggestion> suggestions = productSuggestionService.suggest(query, limit);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(suggestions);
+    }
+
     /**
      * Dettagli prodotto singolo
      */
     @GetMapping("/{id}")
     public String getProductDetails(@PathVariable Long id, Model model, RedirectAttributes redirectAttributes) {
-        Product product = productService.findById(id).orElse(null);
+        Product product = productService.findDetailById(id).orElse(null);
         if (product == null) {
             redirectAttributes.addFlashAttribute("error", "Prodotto non trovato");
             return "redirect:/products";
@@ -7,7 +7,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.List;
 
@@ -29,21 +31,23 @@ public class PublicController {
     /**
      * Mostra la pagina pubblica con l'elenco di tutti i concessionari
      * Accessibile a tutti gli utenti senza autenticazione
-     * 
+     *
+     * @param query Ricerca per nome o indirizzo (facoltativa, tollerante agli errori di battitura) 
      * @param model Model per passare dati alla view
      * @return template della pagina concessionari
      */
     @GetMapping("/dealers")
-    public String showDealersPage(Model model) {
-        logger.info("Richiesta accesso alla pagina /dealers");
+    public String showDealersPage(@RequestParam(required = false) String query, Model model) {
+        logger.info("Richiesta accesso alla pagina /dealers (ricerca: '{}')", query);
         
         try {
-            // Recupera tutti i concessionari attivi dal database
-            List<Dealer> dealers = dealerService.findAll();
+            // Tutti i concessionari, o quelli che somigliano alla ricerca (nome o indirizzo)
+            List<Dealer> dealers = StringUtils.hasText(query) ? dealerService.findByLocation(query) : dealerService.findAll();
             logger.debug("Trovati {} concessionari", dealers.size());
             
             // Passa l'elenco dei concessionari alla view
             model.addAttribute("dealers", dealers);
+            model.addAttribute("query", query);
             return "dealers";
             
         } catch (Exception e) {
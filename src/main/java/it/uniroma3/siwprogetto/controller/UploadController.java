@@ -0,0 +1,172 @@
+package it.uniroma3.siwprogetto.controller;
+
+import it.uniroma3.siwprogetto.model.Image;
+import it.uniroma3.siwprogetto.model.Product;
+import it.uniroma3.siwprogetto.service.DealerService;
+import it.uniroma3.siwprogetto.service.UploadSessionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.http.ResponseEntity.*;
+
+/**
+ * Controller REST per gli upload a blocchi riprendibili delle foto degli annunci
+ *
+ * Protocollo:
+ * - POST   /rest/api/uploads                      apre la sessione (size, sha256 facoltativo)
+ * - PUT    /rest/api/uploads/{id}/chunks/{index}  corpo binario del blocco, header X-Chunk-Sha256
+ * - GET    /rest/api/uploads/{id}                 blocchi mancanti (ripresa dopo un'interruzione)
+ * - POST   /rest/api/uploads/{id}/commit          associa l'immagine al prodotto (productId)
+ * - DELETE /rest/api/uploads/{id}                 annulla la sessione
+ *
+ * In alternativa al commit, gli ID delle sessioni complete possono essere passati
+ * a POST /rest/api/products (parametro uploads) per creare l'annuncio con le foto.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@RestController
+@RequestMapping("/rest/api/uploads")
+public class UploadController {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadController.class);
+
+    /** Header con lo SHA-256 esadecimale del blocco */
+    private static final String CHUNK_HASH_HEADER = "X-Chunk-Sha256";
+
+    // === INJECTION DIPENDENZE ===
+    @Autowired private UploadSessionService uploadSessionService;
+    @Autowired private DealerService dealerService;
+
+    /**
+     * Apre una sessione di upload a blocchi
+     */
+    @PostMapping
+    public ResponseEntity<?> create(
+            @RequestParam long size,
+            @RequestParam(required = false) String fileName,
+            @RequestParam(required = false) String sha256) {
+        try {
+            UploadSessionService.Session session = uploadSessionService.create(currentUsername(), fileName, size, sha256);
+            logger.info("📦 Upload a blocchi creato: id={}, file={}, size={}", session.getId(), fileName, size);
+            return ok(toResponse(session));
+        } catch (IllegalArgumentException e) {
+            logger.warn("❌ Richiesta non valida: {}", e.getMessage());
+            return badRequest().body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("❌ Errore creazione upload: {}", e.getMessage(), e);
+            return status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Errore interno del server: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Stato della sessione: blocchi ancora da inviare
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<?> describe(@PathVariable String id) {
+        UploadSessionService.Session session = uploadSessionService.find(id, currentUsername());
+        if (session == null) {
+            return status(HttpStatus.NOT_FOUND).body(Map.of("message", "Upload non trovato o scaduto"));
+        }
+        return ok(toResponse(session));
+    }
+
+    /**
+     * Riceve un blocco: corpo della richiesta copiato in streaming nel file parziale
+     */
+    @PutMapping("/{id}/chunks/{index}")
+    public ResponseEntity<?> putChunk(
+            @PathVariable String id,
+            @PathVariable int index,
+            @RequestHeader(value = CHUNK_HASH_HEADER, required = false) String sha256,
+            InputStream body) {
+        UploadSessionService.Session session = uploadSessionService.find(id, currentUsername());
+        if (session == null) {
+            return status(HttpStatus.NOT_FOUND).body(Map.of("message", "Upload non trovato o scaduto"));
+        }
+        try {
+            uploadSessionService.writeChunk(session, index, body, sha256);
+            return ok(Map.of("index", index, "missing", session.getMissingCount()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("❌ Blocco rifiutato: upload={}, index={}: {}", id, index, e.getMessage());
+            return badRequest().body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("❌ Errore scrittura blocco: upload={}, index={}: {}", id, index, e.getMessage(), e);
+            return status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Errore interno del server: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Completa l'upload e aggiunge l'immagine alla gallery del prodotto
+     * La sessione resta aperta se il commit fallisce: il client può ripeterlo
+     */
+    @PostMapping("/{id}/commit")
+    public ResponseEntity<?> commit(@PathVariable String id, @RequestParam Long productId) {
+        UploadSessionService.Session session = uploadSessionService.find(id, currentUsername());
+        if (session == null) {
+            return status(HttpStatus.NOT_FOUND).body(Map.of("message", "Upload non trovato o scaduto"));
+        }
+        try {
+            Image image = dealerService.saveImageFile(uploadSessionService.complete(session));
+            Product product = dealerService.addProductImages(productId, List.of(image),
+                    DealerController.MAX_PRODUCT_IMAGES);
+            uploadSessionService.discard(session);
+
+            logger.info("✅ Upload a blocchi completato: id={}, product={}", id, productId);
+            return ok(Map.of(
+                    "id", product.getId(),
+                    "images", product.getImages().stream().map(Image::getId).toList()));
+        } catch (IllegalArgumentException e) {
+            logger.warn("❌ Richiesta non valida: {}", e.getMessage());
+            return badRequest().body(Map.of("message", e.getMessage()));
+        } catch (IllegalStateException e) {
+            logger.warn("❌ Commit non autorizzato: {}", e.getMessage());
+            return status(HttpStatus.FORBIDDEN).body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("❌ Errore commit upload: {}", e.getMessage(), e);
+            return status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Errore interno del server: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Annulla la sessione ed elimina il file parziale
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> abort(@PathVariable String id) {
+        UploadSessionService.Session session = uploadSessionService.find(id, currentUsername());
+        if (session == null) {
+            return status(HttpStatus.NOT_FOUND).body(Map.of("message", "Upload non trovato o scaduto"));
+        }
+        uploadSessionService.discard(session);
+        return noContent().build();
+    }
+
+    // === METODI PRIVATI ===
+
+    private static Map<String, Object> toResponse(UploadSessionService.Session session) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", session.getId());
+        response.put("size", session.getSize());
+        response.put("chunkSize", session.getChunkSize());
+        response.put("chunkCount", session.getChunkCount());
+        response.put("missing", session.getMissingChunks());
+        return response;
+    }
+
+    private static String currentUsername() {
+        return SecurityContextHolder.getContext().getAuthentication().getName();
+    }
+}
@@ -1,6 +1,8 @@
 package it.uniroma3.siwprogetto.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+
 import java.util.List;
 
 /**
@@ -13,11 +15,31 @@ import java.util.List;
  * - Gallery immagini per presentazione
  * - Localizzazione geografica per ricerche
  * 
+ * Geolocalizzazione:
+ * - latitude/longitude ricavate dall'indirizzo al salvataggio (DealerGeocoder, gazetteer offline)
+ * - Ricerche per raggio e per vicinanza servite da DealerGeoIndex, non dal database
+ * 
+ * Entity graph per vista:
+ * - Dealer.list: elenco concessionari con gallery (una sola query con join)
+ * - Dealer.detail: pagina dettaglio/gestione con gallery e proprietario
+ * 
  * @author FCF Motors Team
  * @version 1.0
  */
 @Entity
+@EntityListeners(DealerChangeListener.class)
+@NamedEntityGraph(name = Dealer.GRAPH_LIST, attributeNodes = @NamedAttributeNode("images"))
+@NamedEntityGraph(name = Dealer.GRAPH_DETAIL, attributeNodes = {
+        @NamedAttributeNode("images"),
+        @NamedAttributeNode("owner")
+})
 public class Dealer {
+
+    /** Entity graph per le pagine elenco (/dealers) */
+    public static final String GRAPH_LIST = "Dealer.list";
+
+    /** Entity graph per le pagine dettaglio e gestione concessionario */
+    public static final String GRAPH_DETAIL = "Dealer.detail";
     
     // === IDENTIFICATORE PRIMARIO ===
     /**
@@ -65,6 +87,17 @@ public class Dealer {
      */
     private String address;
 
+    /**
+     * Latitudine (gradi decimali WGS84) ricavata dall'indirizzo al salvataggio
+     * Null se l'indirizzo non è stato riconosciuto dal gazetteer
+     */
+    private Double latitude;
+
+    /**
+     * Longitudine (gradi decimali WGS84) ricavata dall'indirizzo al salvataggio
+     */
+    private Double longitude;
+
     // === INFORMAZIONI DI CONTATTO ===
     
     /**
@@ -112,7 +145,8 @@ public class Dealer {
      * Ogni concessionario può avere multiple immagini per la presentazione
      * 
      * Configurazione:
-     * - EAGER fetch: immagini caricate automaticamente con il dealer
+     * - LAZY fetch: immagini caricate solo se richieste (entity graph o accesso)
+     * - BatchSize: l'accesso alle gallery di più dealer usa una query per blocco, non una per dealer
      * - CASCADE ALL: operazioni su dealer si propagano alle immagini
      * - mappedBy "dealer": Image ha campo dealer per la relazione bidirezionale
      * 
@@ -122,7 +156,8 @@ public class Dealer {
      * - Marketing visivo
      * - Presentazione sede/showroom
      */
-    @OneToMany(mappedBy = "dealer", fetch = FetchType.EAGER, cascade = CascadeType.ALL)
+    @OneToMany(mappedBy = "dealer", fetch = FetchType.LAZY, cascade = CascadeType.ALL)
+    @BatchSize(size = 50)
     private List<Image> images;
 
     // === GETTERS AND SETTERS ===
@@ -191,6 +226,38 @@ public class Dealer {
         this.address = address; 
     }
     
+    /**
+     * Restituisce la latitudine della sede
+     * @return Latitudine in gradi decimali, null se non geolocalizzato
+     */
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Imposta la latitudine della sede
+     * @param latitude Latitudine in gradi decimali
+     */
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    /**
+     * Restituisce la longitudine della sede
+     * @return Longitudine in gradi decimali, null se non geolocalizzato
+     */
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Imposta la longitudine della sede
+     * @param longitude Longitudine in gradi decimali
+     */
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+    
     /**
      * Restituisce il numero di telefono del concessionario
      * @return Numero di telefono per contatti diretti
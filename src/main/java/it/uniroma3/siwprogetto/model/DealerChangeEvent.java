@@ -0,0 +1,45 @@
+package it.uniroma3.siwprogetto.model;
+
+/**
+ * Evento applicativo pubblicato a ogni scrittura su un concessionario
+ *
+ * Semantica:
+ * - Creazione/modifica: after != null
+ * - Eliminazione: after == null
+ *
+ * Utilizzi:
+ * - Aggiornamento incrementale degli indici in-memory dei dealer (DealerGeoIndex)
+ *
+ * Gli ascoltatori lo ricevono dopo il commit della transazione
+ * (@TransactionalEventListener), quindi non vedono mai modifiche annullate.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class DealerChangeEvent {
+
+    private final Long dealerId;
+    private final DealerSnapshot after;
+
+    public DealerChangeEvent(Long dealerId, DealerSnapshot after) {
+        this.dealerId = dealerId;
+        this.after = after;
+    }
+
+    /**
+     * @return ID del concessionario interessato dalla modifica
+     */
+    public Long getDealerId() { return dealerId; }
+
+    /**
+     * @return Stato successivo alla modifica, null per un concessionario eliminato
+     */
+    public DealerSnapshot getAfter() { return after; }
+
+    public boolean isDeletion() { return after == null; }
+
+    @Override
+    public String toString() {
+        return "DealerChangeEvent{id=" + dealerId + (isDeletion() ? ", deletion" : "") + "}";
+    }
+}
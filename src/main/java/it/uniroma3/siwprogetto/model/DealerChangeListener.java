@@ -0,0 +1,38 @@
+package it.uniroma3.siwprogetto.model;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * Entity listener JPA che trasforma ogni scrittura su Dealer in un DealerChangeEvent
+ *
+ * Copre DealerService (creazione/modifica) e AdminService (modifica da amministratore).
+ * Le DELETE native (InventoryBulkDeleter.deleteDealer) pubblicano l'evento esplicitamente.
+ *
+ * Istanziato da Hibernate tramite lo SpringBeanContainer configurato da Spring Boot,
+ * quindi le dipendenze vengono iniettate nel costruttore.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public class DealerChangeListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public DealerChangeListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Dealer dealer) {
+        eventPublisher.publishEvent(new DealerChangeEvent(dealer.getId(), DealerSnapshot.of(dealer)));
+    }
+
+    @PostRemove
+    public void onRemove(Dealer dealer) {
+        eventPublisher.publishEvent(new DealerChangeEvent(dealer.getId(), null));
+    }
+}
@@ -0,0 +1,78 @@
+package it.uniroma3.siwprogetto.model;
+
+import java.util.Objects;
+
+/**
+ * Vista immutabile e leggera di un concessionario per gli indici di ricerca
+ * Solo nome, indirizzo e coordinate: nessuna relazione JPA né immagine
+ *
+ * Utilizzi:
+ * - Costruzione degli indici in-memory dei dealer all'avvio (proiezione JPQL)
+ * - Stato trasportato da DealerChangeEvent
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class DealerSnapshot {
+
+    private final Long id;
+    private final String name;
+    private final String address;
+    private final Double latitude;
+    private final Double longitude;
+
+    /**
+     * Costruttore completo, utilizzato anche dalle proiezioni JPQL
+     * (SELECT new it.uniroma3.siwprogetto.model.DealerSnapshot(...))
+     */
+    public DealerSnapshot(Long id, String name, String address, Double latitude, Double longitude) {
+        this.id = id;
+        this.name = name;
+        this.address = address;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * Crea lo snapshot dai valori correnti dell'entità
+     *
+     * @param dealer Concessionario (gestito o appena persistito)
+     * @return Snapshot dei campi indicizzati
+     */
+    public static DealerSnapshot of(Dealer dealer) {
+        return new DealerSnapshot(dealer.getId(), dealer.getName(), dealer.getAddress(),
+                dealer.getLatitude(), dealer.getLongitude());
+    }
+
+    public Long getId() { return id; }
+
+    public String getName() { return name; }
+
+    public String getAddress() { return address; }
+
+    public Double getLatitude() { return latitude; }
+
+    public Double getLongitude() { return longitude; }
+
+    /**
+     * @return true se il dealer è geolocalizzato
+     */
+    public boolean hasLocation() {
+        return latitude != null && longitude != null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DealerSnapshot)) return false;
+        DealerSnapshot that = (DealerSnapshot) o;
+        return Objects.equals(id, that.id) && Objects.equals(name, that.name)
+                && Objects.equals(address, that.address) && Objects.equals(latitude, that.latitude)
+                && Objects.equals(longitude, that.longitude);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, name, address, latitude, longitude);
+    }
+}
@@ -0,0 +1,48 @@
+package it.uniroma3.siwprogetto.model;
+
+/**
+ * Riga dell'aggregato usato per calcolare le faccette del catalogo
+ * Rappresenta una combinazione distinta di valori delle dimensioni filtrabili
+ * e il numero di prodotti che la condividono
+ *
+ * Costruita da una singola query GROUP BY (nessuna entità né immagine caricata):
+ * il numero di righe dipende dalle combinazioni distinte, non dai prodotti.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class FacetCombination {
+
+    private final String category;
+    private final String brand;
+    private final String model;
+    private final String fuelType;
+    private final String transmission;
+    private final long count;
+
+    /**
+     * Costruttore usato dalla proiezione JPQL
+     * (SELECT new it.uniroma3.siwprogetto.model.FacetCombination(...))
+     */
+    public FacetCombination(String category, String brand, String model,
+                            String fuelType, String transmission, Long count) {
+        this.category = category;
+        this.brand = brand;
+        this.model = model;
+        this.fuelType = fuelType;
+        this.transmission = transmission;
+        this.count = count != null ? count : 0L;
+    }
+
+    public String getCategory() { return category; }
+
+    public String getBrand() { return brand; }
+
+    public String getModel() { return model; }
+
+    public String getFuelType() { return fuelType; }
+
+    public String getTransmission() { return transmission; }
+
+    public long getCount() { return count; }
+}
@@ -0,0 +1,35 @@
+package it.uniroma3.siwprogetto.model;
+
+/**
+ * Valore di una faccetta con il numero di prodotti corrispondenti
+ * Mostrato nei filtri come "Diesel (132)"
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class FacetValue {
+
+    private final String value;
+    private final long count;
+
+    public FacetValue(String value, long count) {
+        this.value = value;
+        this.count = count;
+    }
+
+    public String getValue() { return value; }
+
+    public long getCount() { return count; }
+
+    /**
+     * @return Etichetta per la UI, es: "Diesel (132)"
+     */
+    public String getLabel() {
+        return value + " (" + count + ")";
+    }
+
+    @Override
+    public String toString() {
+        return getLabel();
+    }
+}
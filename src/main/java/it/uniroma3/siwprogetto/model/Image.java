@@ -3,11 +3,12 @@ package it.uniroma3.siwprogetto.model;
 import jakarta.persistence.*;
 
 /**
- * Entità JPA per memorizzare immagini binarie nel database
- * Gestisce immagini associate a concessionari e prodotti del sistema FCF Motors
+ * Entità JPA con i metadati delle immagini di concessionari e prodotti
+ * I byte sono conservati su filesystem da ImageStorageService, indirizzati per contenuto
  * 
  * Caratteristiche:
- * - Storage binario diretto nel database (strategia BLOB)
+ * - Riga leggera: chiave di archivio (SHA-256), dimensione e tipo MIME
+ * - Colonna LOB mantenuta solo per le righe non ancora migrate (ImageBlobMigration)
  * - Supporto per diversi tipi di contenuto (JPEG, PNG, GIF)
  * - Associazione flessibile con dealer o prodotti
  * - Metadati per tipo MIME e gestione cache
@@ -16,6 +17,8 @@ import jakarta.persistence.*;
  * @version 1.0
  */
 @Entity
+@Table(indexes = @Index(name = "idx_image_storage_key", columnList = "storage_key"))
+@EntityListeners(ImageChangeListener.class)
 public class Image {
     
     // === IDENTIFICATORE PRIMARIO ===
@@ -29,23 +32,29 @@ public class Image {
 
     // === DATI BINARI IMMAGINE ===
     /**
-     * Dati binari dell'immagine memorizzati come BLOB nel database
-     * Annotazione @Lob indica Large Object per supportare file di grandi dimensioni
+     * Dati binari legacy memorizzati come LOB nel database
      * 
-     * Vantaggi storage in DB:
-     * - Transazionalità garantita
-     * - Backup automatico con il database
-     * - Controllo accessi integrato
-     * - Nessuna gestione filesystem separata
-     * 
-     * Svantaggi:
-     * - Aumento dimensioni database
-     * - Possibile impatto performance per immagini molto grandi
-     * - Difficoltà caching lato server web
+     * Valorizzato solo per le immagini caricate prima dell'archivio su filesystem:
+     * ImageBlobMigration sposta i byte nell'archivio e azzera la colonna.
+     * Le nuove immagini hanno sempre data == null e storageKey valorizzata.
      */
     @Lob
     private byte[] data;
 
+    /**
+     * Chiave del contenuto nell'archivio su filesystem (SHA-256 esadecimale)
+     * null solo per le righe legacy non ancora migrate
+     * Condivisa da tutte le righe con gli stessi byte (ImageBlob)
+     */
+    @Column(length = 64)
+    private String storageKey;
+
+    /**
+     * Dimensione del contenuto in byte
+     * Usata per Content-Length e limiti senza leggere il file
+     */
+    private Long sizeBytes;
+
     // === METADATI IMMAGINE ===
     /**
      * Tipo MIME dell'immagine per corretta gestione HTTP
@@ -119,21 +128,53 @@ public class Image {
     }
     
     /**
-     * Restituisce i dati binari dell'immagine
-     * @return Array di byte contenente l'immagine
+     * Restituisce i dati binari legacy dell'immagine
+     * @return Array di byte, null se il contenuto è nell'archivio su filesystem
      */
     public byte[] getData() { 
         return data; 
     }
     
     /**
-     * Imposta i dati binari dell'immagine
-     * @param data Array di byte dell'immagine (required)
+     * Imposta i dati binari legacy dell'immagine
+     * @param data Array di byte dell'immagine, null dopo la migrazione
      */
     public void setData(byte[] data) { 
         this.data = data; 
     }
     
+    /**
+     * Restituisce la chiave del contenuto nell'archivio su filesystem
+     * @return SHA-256 esadecimale o null per righe legacy non migrate
+     */
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    /**
+     * Imposta la chiave del contenuto nell'archivio su filesystem
+     * @param storageKey SHA-256 esadecimale del contenuto
+     */
+    public void setStorageKey(String storageKey) {
+        this.storageKey = storageKey;
+    }
+
+    /**
+     * Restituisce la dimensione del contenuto
+     * @return Dimensione in byte o null per righe legacy non migrate
+     */
+    public Long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Imposta la dimensione del contenuto
+     * @param sizeBytes Dimensione in byte
+     */
+    public void setSizeBytes(Long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
     /**
      * Restituisce il tipo MIME dell'immagine
      * @return Content-Type per header HTTP (es. "image/jpeg")
@@ -0,0 +1,37 @@
+package it.uniroma3.siwprogetto.model;
+
+/**
+ * Evento applicativo pubblicato all'inserimento di un'immagine
+ *
+ * Origine:
+ * - ImageChangeListener (@PostPersist)
+ *
+ * Utilizzi:
+ * - Conteggio dei riferimenti al contenuto deduplicato (ImageBlobService)
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ImageAddedEvent {
+
+    private final Long imageId;
+    private final String storageKey;
+
+    /**
+     * @param imageId ID dell'immagine inserita
+     * @param storageKey Chiave del contenuto nell'archivio
+     */
+    public ImageAddedEvent(Long imageId, String storageKey) {
+        this.imageId = imageId;
+        this.storageKey = storageKey;
+    }
+
+    public Long getImageId() { return imageId; }
+
+    public String getStorageKey() { return storageKey; }
+
+    @Override
+    public String toString() {
+        return "ImageAddedEvent{id=" + imageId + "}";
+    }
+}
@@ -0,0 +1,100 @@
+package it.uniroma3.siwprogetto.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * Catalogo dei contenuti presenti nell'archivio immagini, uno per hash
+ *
+ * Deduplicazione:
+ * - Più righe Image (prodotti e dealer diversi) possono puntare allo stesso storageKey:
+ *   i byte sono scritti, serviti e tenuti in cache una sola volta
+ * - referenceCount = numero di righe Image che usano il contenuto
+ *
+ * Ciclo di vita:
+ * - Creato da ImageStorageService alla prima scrittura, con referenceCount 0
+ * - Conteggio ricalcolato dopo il commit di ogni inserimento/eliminazione di Image
+ *   (ImageBlobService): è derivato dalle righe Image, quindi non può divergere
+ * - releasedAt = istante in cui il conteggio è sceso a zero: il contenuto può essere
+ *   rimosso dall'archivio dopo un periodo di grazia
+ *
+ * Ricompressione all'ingest (ImageRecompressor):
+ * - sourceKey = hash dell'upload ricevuto da cui il contenuto è stato ricavato:
+ *   un nuovo upload degli stessi byte riusa il risultato senza ricomprimere
+ * - L'originale conservato (images.ingest.keep-original) conta come riferimenti
+ *   le immagini che usano i contenuti ricavati da esso
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Entity
+@Table(name = "image_blob", indexes = {
+        @Index(name = "idx_image_blob_released", columnList = "released_at"),
+        @Index(name = "idx_image_blob_source", columnList = "source_key")
+})
+public class ImageBlob {
+
+    /**
+     * SHA-256 esadecimale del contenuto (stessa chiave di Image.storageKey)
+     */
+    @Id
+    @Column(length = 64)
+    private String storageKey;
+
+    /** Dimensione del contenuto in byte */
+    @Column(nullable = false)
+    private long sizeBytes;
+
+    /** Tipo MIME rilevato dai magic bytes */
+    private String contentType;
+
+    /** Hash dell'upload originale se il contenuto è stato ricompresso, altrimenti null */
+    @Column(length = 64)
+    private String sourceKey;
+
+    /** Righe Image che puntano al contenuto */
+    @Column(nullable = false)
+    private int referenceCount;
+
+    /** Prima scrittura nell'archivio */
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    /** Istante in cui il contenuto è rimasto senza riferimenti, null se referenziato */
+    private LocalDateTime releasedAt;
+
+    protected ImageBlob() {
+    }
+
+    public ImageBlob(String storageKey, long sizeBytes, String contentType) {
+        this(storageKey, sizeBytes, contentType, null);
+    }
+
+    public ImageBlob(String storageKey, long sizeBytes, String contentType, String sourceKey) {
+        this.storageKey = storageKey;
+        this.sourceKey = sourceKey;
+        this.sizeBytes = sizeBytes;
+        this.contentType = contentType;
+        this.createdAt = LocalDateTime.now();
+        this.releasedAt = this.createdAt;
+    }
+
+    public String getStorageKey() { return storageKey; }
+
+    public long getSizeBytes() { return sizeBytes; }
+
+    public String getContentType() { return contentType; }
+
+    public String getSourceKey() { return sourceKey; }
+
+    public int getReferenceCount() { return referenceCount; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+
+    public LocalDateTime getReleasedAt() { return releasedAt; }
+}
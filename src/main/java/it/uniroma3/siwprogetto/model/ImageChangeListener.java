@@ -0,0 +1,43 @@
+package it.uniroma3.siwprogetto.model;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * Entity listener JPA che pubblica ImageAddedEvent a ogni inserimento di Image
+ * e ImageRemovedEvent a ogni eliminazione
+ *
+ * Copre tutti i percorsi JPA: delete/deleteAll dei repository e cascade
+ * dalle entità proprietarie (Product, Dealer)
+ *
+ * Limiti:
+ * - Le DELETE native/bulk non passano dal persistence context:
+ *   chi le esegue deve pubblicare gli eventi esplicitamente
+ *
+ * Istanziato da Hibernate tramite lo SpringBeanContainer configurato da Spring Boot,
+ * quindi le dipendenze vengono iniettate nel costruttore.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public class ImageChangeListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ImageChangeListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostPersist
+    public void onPersist(Image image) {
+        if (image.getStorageKey() != null) {
+            eventPublisher.publishEvent(new ImageAddedEvent(image.getId(), image.getStorageKey()));
+        }
+    }
+
+    @PostRemove
+    public void onRemove(Image image) {
+        eventPublisher.publishEvent(new ImageRemovedEvent(image.getId(), image.getStorageKey()));
+    }
+}
@@ -0,0 +1,53 @@
+package it.uniroma3.siwprogetto.model;
+
+/**
+ * Proiezione leggera di un'immagine per il serving HTTP
+ * Contiene solo i dati necessari agli header, mai i byte né le entità associate
+ *
+ * Utilizzi:
+ * - ImageController: Content-Type, Content-Length e nome file senza caricare Image
+ * - Percorso del contenuto nell'archivio tramite storageKey
+ *
+ * Performance:
+ * - Una sola query con join sulle colonne necessarie (nessun LOB, nessun Product/Dealer gestito)
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ImageMetadata {
+
+    private final Long id;
+    private final String storageKey;
+    private final Long sizeBytes;
+    private final String contentType;
+    private final String productBrand;
+    private final String dealerName;
+
+    /**
+     * Costruttore usato dalla query JPQL (SELECT new ...)
+     */
+    public ImageMetadata(Long id, String storageKey, Long sizeBytes, String contentType,
+                         String productBrand, String dealerName) {
+        this.id = id;
+        this.storageKey = storageKey;
+        this.sizeBytes = sizeBytes;
+        this.contentType = contentType;
+        this.productBrand = productBrand;
+        this.dealerName = dealerName;
+    }
+
+    public Long getId() { return id; }
+
+    /** @return Chiave nell'archivio, null per righe legacy con byte nel LOB */
+    public String getStorageKey() { return storageKey; }
+
+    public Long getSizeBytes() { return sizeBytes; }
+
+    public String getContentType() { return contentType; }
+
+    /** @return Marca del prodotto associato, null se immagine dealer */
+    public String getProductBrand() { return productBrand; }
+
+    /** @return Nome del dealer associato, null se immagine prodotto */
+    public String getDealerName() { return dealerName; }
+}
@@ -0,0 +1,42 @@
+package it.uniroma3.siwprogetto.model;
+
+/**
+ * Evento applicativo pubblicato all'eliminazione di un'immagine
+ *
+ * Origine:
+ * - ImageChangeListener (@PostRemove) per tutte le eliminazioni JPA
+ * - Pubblicato esplicitamente da chi esegue DELETE native (es: DealerService.deleteDealer)
+ *
+ * Utilizzi:
+ * - Invalidazione della cache immagini (metadati e contenuto)
+ * - Conteggio dei riferimenti al contenuto deduplicato (ImageBlobService)
+ *
+ * Gli ascoltatori lo ricevono dopo il commit della transazione
+ * (@TransactionalEventListener), quindi non vedono mai eliminazioni annullate.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ImageRemovedEvent {
+
+    private final Long imageId;
+    private final String storageKey;
+
+    /**
+     * @param imageId ID dell'immagine eliminata
+     * @param storageKey Chiave del contenuto nell'archivio, null per righe legacy
+     */
+    public ImageRemovedEvent(Long imageId, String storageKey) {
+        this.imageId = imageId;
+        this.storageKey = storageKey;
+    }
+
+    public Long getImageId() { return imageId; }
+
+    public String getStorageKey() { return storageKey; }
+
+    @Override
+    public String toString() {
+        return "ImageRemovedEvent{id=" + imageId + "}";
+    }
+}
@@ -0,0 +1,46 @@
+package it.uniroma3.siwprogetto.model;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Evento applicativo pubblicato all'eliminazione in blocco di più immagini
+ * Equivale a un ImageRemovedEvent per ciascuna immagine, con un solo evento per l'intera DELETE
+ *
+ * Origine:
+ * - Pubblicato esplicitamente da chi esegue DELETE native di insiemi di immagini
+ *   (es: InventoryBulkDeleter per tutte le foto di un venditore)
+ *
+ * Utilizzi:
+ * - Invalidazione della cache immagini in un solo passaggio
+ * - Ricalcolo set-based dei riferimenti dei contenuti coinvolti (ImageBlobService)
+ *
+ * Gli ascoltatori lo ricevono dopo il commit della transazione
+ * (@TransactionalEventListener), quindi non vedono mai eliminazioni annullate.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ImagesRemovedEvent {
+
+    private final List<Long> imageIds;
+    private final Set<String> storageKeys;
+
+    /**
+     * @param imageIds ID delle immagini eliminate
+     * @param storageKeys Chiavi distinte dei contenuti nell'archivio (senza le righe legacy)
+     */
+    public ImagesRemovedEvent(List<Long> imageIds, Set<String> storageKeys) {
+        this.imageIds = List.copyOf(imageIds);
+        this.storageKeys = Set.copyOf(storageKeys);
+    }
+
+    public List<Long> getImageIds() { return imageIds; }
+
+    public Set<String> getStorageKeys() { return storageKeys; }
+
+    @Override
+    public String toString() {
+        return "ImagesRemovedEvent{images=" + imageIds.size() + ", keys=" + storageKeys.size() + "}";
+    }
+}
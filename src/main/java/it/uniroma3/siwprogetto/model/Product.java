@@ -1,6 +1,8 @@
 package it.uniroma3.siwprogetto.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -16,12 +18,28 @@ import java.util.List;
  * - Associazione con venditore
  * - Pricing e informazioni commerciali
  * 
+ * Entity graph per vista (gli elenchi usano la proiezione ProductCardView):
+ * - Product.detail: pagina dettaglio con gallery e venditore
+ * - Product.edit: form di modifica con gallery
+ * 
  * @author FCF Motors Team
  * @version 1.0
  */
 @Entity
 @Table(name = "product")
+@EntityListeners(ProductChangeListener.class)
+@NamedEntityGraph(name = Product.GRAPH_DETAIL, attributeNodes = {
+        @NamedAttributeNode("images"),
+        @NamedAttributeNode("seller")
+})
+@NamedEntityGraph(name = Product.GRAPH_EDIT, attributeNodes = @NamedAttributeNode("images"))
 public class Product {
+
+    /** Entity graph per la pagina dettaglio prodotto */
+    public static final String GRAPH_DETAIL = "Product.detail";
+
+    /** Entity graph per i form di modifica prodotto */
+    public static final String GRAPH_EDIT = "Product.edit";
     
     // === IDENTIFICATORE PRIMARIO ===
     /**
@@ -238,10 +256,11 @@ public class Product {
     // === GALLERY IMMAGINI ===
     /**
      * Lista delle immagini associate al prodotto
-     * Relazione One-to-Many con caricamento EAGER
+     * Relazione One-to-Many con caricamento LAZY
      * 
      * Configurazione:
-     * - EAGER fetch: immagini sempre caricate con il prodotto
+     * - LAZY fetch: immagini caricate solo se richieste (entity graph o accesso)
+     * - BatchSize: l'accesso alle gallery di una pagina di prodotti usa una query per blocco
      * - CASCADE ALL: eliminazione prodotto elimina anche immagini
      * - mappedBy "product": relazione bidirezionale con Image
      * 
@@ -251,9 +270,19 @@ public class Product {
      * - Slider immagini
      * - Marketing visivo prodotto
      */
-    @OneToMany(mappedBy = "product", fetch = FetchType.EAGER, cascade = CascadeType.ALL)
+    @OneToMany(mappedBy = "product", fetch = FetchType.LAZY, cascade = CascadeType.ALL)
+    @BatchSize(size = 50)
     private List<Image> images;
 
+    // === STATO DI CARICAMENTO (NON PERSISTITO) ===
+    /**
+     * Snapshot dei valori letti dal database, impostato da ProductChangeListener
+     * Permette di pubblicare eventi con stato prima/dopo la modifica
+     * senza query aggiuntive
+     */
+    @Transient
+    private ProductSnapshot loadedSnapshot;
+
     // === GETTERS AND SETTERS ===
     
     /**
@@ -509,4 +538,15 @@ public class Product {
     public void setImages(List<Image> images) { 
         this.images = images; 
     }
-}
\ No newline at end of file
+
+    /**
+     * Snapshot dei valori al momento del caricamento (uso interno del listener)
+     */
+    ProductSnapshot getLoadedSnapshot() {
+        return loadedSnapshot;
+    }
+
+    void setLoadedSnapshot(ProductSnapshot loadedSnapshot) {
+        this.loadedSnapshot = loadedSnapshot;
+    }
+}
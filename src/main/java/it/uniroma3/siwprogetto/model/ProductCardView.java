@@ -0,0 +1,121 @@
+package it.uniroma3.siwprogetto.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Proiezione di sola lettura di un prodotto per le pagine di elenco (card)
+ * Contiene i campi mostrati nelle card e i soli ID delle immagini
+ *
+ * Utilizzi:
+ * - Catalogo /products
+ * - Pagine dettaglio e gestione concessionario
+ * - Pagina di manutenzione admin
+ *
+ * Performance:
+ * - Costruita da una query scalare (JPQL "SELECT new"): nessuna entità gestita
+ * - Gli ID immagine sono letti con una sola query per pagina, senza caricare i blob:
+ *   i byte delle foto arrivano solo dall'endpoint /rest/api/images/{id}
+ *
+ * Gli accessor hanno gli stessi nomi di Product, così i template non cambiano
+ * se non per l'uso di imageIds al posto di images.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ProductCardView {
+
+    private final Long id;
+    private final String brand;
+    private final String model;
+    private final String category;
+    private final String description;
+    private final BigDecimal price;
+    private final Integer mileage;
+    private final Integer year;
+    private final String fuelType;
+    private final String transmission;
+    private final String sellerType;
+    private final boolean featured;
+    private final LocalDateTime featuredUntil;
+    private final String sellerUsername;
+    private List<Long> imageIds = Collections.emptyList();
+
+    /**
+     * Costruttore usato dalle query JPQL di proiezione (ordine dei campi vincolante)
+     */
+    public ProductCardView(Long id, String brand, String model, String category, String description,
+                           BigDecimal price, Integer mileage, Integer year, String fuelType,
+                           String transmission, String sellerType, boolean featured,
+                           LocalDateTime featuredUntil, String sellerUsername) {
+        this.id = id;
+        this.brand = brand;
+        this.model = model;
+        this.category = category;
+        this.description = description;
+        this.price = price;
+        this.mileage = mileage;
+        this.year = year;
+        this.fuelType = fuelType;
+        this.transmission = transmission;
+        this.sellerType = sellerType;
+        this.featured = featured;
+        this.featuredUntil = featuredUntil;
+        this.sellerUsername = sellerUsername;
+    }
+
+    public Long getId() { return id; }
+
+    public String getBrand() { return brand; }
+
+    public String getModel() { return model; }
+
+    public String getCategory() { return category; }
+
+    public String getDescription() { return description; }
+
+    public BigDecimal getPrice() { return price; }
+
+    public Integer getMileage() { return mileage; }
+
+    public Integer getYear() { return year; }
+
+    public String getFuelType() { return fuelType; }
+
+    public String getTransmission() { return transmission; }
+
+    public String getSellerType() { return sellerType; }
+
+    public boolean isFeatured() { return featured; }
+
+    public LocalDateTime getFeaturedUntil() { return featuredUntil; }
+
+    /**
+     * @return Username del venditore, null se il prodotto non ha venditore
+     */
+    public String getSellerUsername() { return sellerUsername; }
+
+    /**
+     * Stessa regola di Product.isFeaturedActive()
+     */
+    public boolean isFeaturedActive() {
+        return featured && (featuredUntil == null || LocalDateTime.now().isBefore(featuredUntil));
+    }
+
+    /**
+     * @return ID delle immagini in ordine di inserimento (lista vuota se nessuna)
+     */
+    public List<Long> getImageIds() { return imageIds; }
+
+    /**
+     * Impostato dal repository dopo la query di proiezione
+     *
+     * @param imageIds ID delle immagini del prodotto
+     */
+    public void setImageIds(List<Long> imageIds) {
+        this.imageIds = imageIds != null ? Collections.unmodifiableList(new ArrayList<>(imageIds)) : Collections.emptyList();
+    }
+}
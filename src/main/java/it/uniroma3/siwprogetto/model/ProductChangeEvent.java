@@ -0,0 +1,61 @@
+package it.uniroma3.siwprogetto.model;
+
+/**
+ * Evento applicativo pubblicato a ogni scrittura su un prodotto
+ * Trasporta lo stato del prodotto prima e dopo la modifica
+ *
+ * Semantica:
+ * - Creazione: before == null, after != null
+ * - Modifica: before != null, after != null
+ * - Eliminazione: before != null, after == null
+ *
+ * Utilizzi:
+ * - Aggiornamento incrementale degli indici in-memory del catalogo
+ * - Invalidazione mirata delle cache di lettura
+ *
+ * Gli ascoltatori lo ricevono dopo il commit della transazione
+ * (@TransactionalEventListener), quindi non vedono mai modifiche annullate.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ProductChangeEvent {
+
+    private final ProductSnapshot before;
+    private final ProductSnapshot after;
+
+    public ProductChangeEvent(ProductSnapshot before, ProductSnapshot after) {
+        if (before == null && after == null) {
+            throw new IllegalArgumentException("Almeno uno tra before e after deve essere valorizzato");
+        }
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * @return Stato precedente alla modifica, null per un nuovo prodotto
+     */
+    public ProductSnapshot getBefore() { return before; }
+
+    /**
+     * @return Stato successivo alla modifica, null per un prodotto eliminato
+     */
+    public ProductSnapshot getAfter() { return after; }
+
+    /**
+     * @return ID del prodotto interessato dalla modifica
+     */
+    public Long getProductId() {
+        return after != null ? after.getId() : before.getId();
+    }
+
+    public boolean isCreation() { return before == null; }
+
+    public boolean isDeletion() { return after == null; }
+
+    @Override
+    public String toString() {
+        return "ProductChangeEvent{id=" + getProductId()
+                + (isCreation() ? ", creation" : isDeletion() ? ", deletion" : ", update") + "}";
+    }
+}
@@ -0,0 +1,69 @@
+package it.uniroma3.siwprogetto.model;
+
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * Entity listener JPA che trasforma ogni scrittura su Product in un ProductChangeEvent
+ *
+ * Funzionamento:
+ * - @PostLoad: memorizza lo snapshot dei valori letti dal database
+ * - @PostPersist / @PostUpdate / @PostRemove: pubblica l'evento con stato prima/dopo
+ *
+ * Vantaggi rispetto a notifiche manuali nei service:
+ * - Copre tutti i percorsi di scrittura JPA (DealerService, AdminService,
+ *   PrivateMaintenanceController, cleanup di UserService, deleteAll dei repository)
+ * - Nessun punto di scrittura può dimenticare di aggiornare gli indici
+ *
+ * Limiti:
+ * - Le DELETE native/bulk non passano dal persistence context:
+ *   chi le esegue deve pubblicare gli eventi esplicitamente
+ *
+ * Istanziato da Hibernate tramite lo SpringBeanContainer configurato da Spring Boot,
+ * quindi le dipendenze vengono iniettate nel costruttore.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public class ProductChangeListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public ProductChangeListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostLoad
+    public void onLoad(Product product) {
+        product.setLoadedSnapshot(ProductSnapshot.of(product));
+    }
+
+    @PostPersist
+    public void onPersist(Product product) {
+        ProductSnapshot after = ProductSnapshot.of(product);
+        product.setLoadedSnapshot(after);
+        eventPublisher.publishEvent(new ProductChangeEvent(null, after));
+    }
+
+    @PostUpdate
+    public void onUpdate(Product product) {
+        ProductSnapshot after = ProductSnapshot.of(product);
+        ProductSnapshot before = product.getLoadedSnapshot();
+        product.setLoadedSnapshot(after);
+        if (before != null && before.equals(after)) {
+            return; // Modifica non rilevante per il catalogo (es. solo immagini)
+        }
+        eventPublisher.publishEvent(new ProductChangeEvent(before, after));
+    }
+
+    @PostRemove
+    public void onRemove(Product product) {
+        ProductSnapshot before = product.getLoadedSnapshot() != null
+                ? product.getLoadedSnapshot()
+                : ProductSnapshot.of(product);
+        eventPublisher.publishEvent(new ProductChangeEvent(before, null));
+    }
+}
@@ -0,0 +1,73 @@
+package it.uniroma3.siwprogetto.model;
+
+/**
+ * Cursore per la paginazione keyset (seek) del catalogo prodotti
+ * Identifica l'ultima riga della pagina precedente nell'ordinamento
+ * (rank evidenza ASC, id DESC)
+ *
+ * Rank:
+ * - 0 = prodotto in evidenza attiva
+ * - 1 = tutti gli altri
+ *
+ * Formato URL: "rank.id" (es: "after=1.4521")
+ * - Stabile: non dipende dalla posizione ma dai valori della riga
+ * - Inserimenti/eliminazioni non spostano né duplicano le righe già viste
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ProductCursor {
+
+    public static final int RANK_FEATURED = 0;
+    public static final int RANK_STANDARD = 1;
+
+    private final int rank;
+    private final long id;
+
+    public ProductCursor(int rank, long id) {
+        this.rank = rank;
+        this.id = id;
+    }
+
+    /**
+     * Interpreta il cursore ricevuto come parametro URL
+     *
+     * @param token Valore "rank.id" (può essere null)
+     * @return Cursore, o null se assente o non valido (si riparte dalla prima pagina)
+     */
+    public static ProductCursor parse(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            int rank = Integer.parseInt(token.substring(0, dot).trim());
+            long id = Long.parseLong(token.substring(dot + 1).trim());
+            if ((rank != RANK_FEATURED && rank != RANK_STANDARD) || id <= 0) {
+                return null;
+            }
+            return new ProductCursor(rank, id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public int getRank() { return rank; }
+
+    public long getId() { return id; }
+
+    /**
+     * @return Rappresentazione URL del cursore
+     */
+    public String toToken() {
+        return rank + "." + id;
+    }
+
+    @Override
+    public String toString() {
+        return toToken();
+    }
+}
@@ -0,0 +1,47 @@
+package it.uniroma3.siwprogetto.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Faccette del catalogo calcolate per un insieme di filtri attivi
+ *
+ * Semantica dei conteggi (faccette disgiuntive):
+ * - Il conteggio di un valore di una dimensione applica tutti i filtri attivi
+ *   tranne quello della dimensione stessa
+ * - Es: con fuelType=DIESEL selezionato, "BENZINA (40)" indica quanti prodotti
+ *   si otterrebbero passando a BENZINA mantenendo gli altri filtri
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ProductFacets {
+
+    private final List<FacetValue> categories;
+    private final List<FacetValue> brands;
+    private final List<FacetValue> models;
+    private final List<FacetValue> fuelTypes;
+    private final List<FacetValue> transmissions;
+
+    public ProductFacets(List<FacetValue> categories, List<FacetValue> brands, List<FacetValue> models,
+                         List<FacetValue> fuelTypes, List<FacetValue> transmissions) {
+        this.categories = Collections.unmodifiableList(categories);
+        this.brands = Collections.unmodifiableList(brands);
+        this.models = Collections.unmodifiableList(models);
+        this.fuelTypes = Collections.unmodifiableList(fuelTypes);
+        this.transmissions = Collections.unmodifiableList(transmissions);
+    }
+
+    public List<FacetValue> getCategories() { return categories; }
+
+    public List<FacetValue> getBrands() { return brands; }
+
+    /**
+     * @return Modelli disponibili, valorizzati solo quando è selezionata una marca
+     */
+    public List<FacetValue> getModels() { return models; }
+
+    public List<FacetValue> getFuelTypes() { return fuelTypes; }
+
+    public List<FacetValue> getTransmissions() { return transmissions; }
+}
@@ -0,0 +1,172 @@
+package it.uniroma3.siwprogetto.model;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Insieme immutabile dei filtri di ricerca del catalogo prodotti
+ * Raggruppa in un unico oggetto gli 11 filtri strutturati e la query testuale
+ * accettati dalla pagina /products
+ *
+ * Utilizzi:
+ * - Parametro unico per paginazione, faccette e cache dei risultati
+ * - Chiave di cache (equals/hashCode su tutti i campi)
+ *
+ * Convenzioni:
+ * - Un campo null significa "filtro non applicato"
+ * - I valori devono arrivare già normalizzati dal controller
+ *   (stringhe trim, vuote → null, numeri negativi → null)
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ProductFilter {
+
+    /** Filtro vuoto: tutto il catalogo */
+    public static final ProductFilter NONE = new ProductFilter(null, null, null, null, null,
+            null, null, null, null, null, null, null);
+
+    private final String category;
+    private final String brand;
+    private final String model;
+    private final BigDecimal minPrice;
+    private final BigDecimal maxPrice;
+    private final Integer minMileage;
+    private final Integer maxMileage;
+    private final Integer minYear;
+    private final Integer maxYear;
+    private final String fuelType;
+    private final String transmission;
+    private final String query;
+
+    public ProductFilter(String category, String brand, String model,
+                         BigDecimal minPrice, BigDecimal maxPrice,
+                         Integer minMileage, Integer maxMileage,
+                         Integer minYear, Integer maxYear,
+                         String fuelType, String transmission, String query) {
+        this.category = category;
+        this.brand = brand;
+        this.model = model;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.minMileage = minMileage;
+        this.maxMileage = maxMileage;
+        this.minYear = minYear;
+        this.maxYear = maxYear;
+        this.fuelType = fuelType;
+        this.transmission = transmission;
+        this.query = query;
+    }
+
+    public String getCategory() { return category; }
+
+    public String getBrand() { return brand; }
+
+    public String getModel() { return model; }
+
+    public BigDecimal getMinPrice() { return minPrice; }
+
+    public BigDecimal getMaxPrice() { return maxPrice; }
+
+    public Integer getMinMileage() { return minMileage; }
+
+    public Integer getMaxMileage() { return maxMileage; }
+
+    public Integer getMinYear() { return minYear; }
+
+    public Integer getMaxYear() { return maxYear; }
+
+    public String getFuelType() { return fuelType; }
+
+    public String getTransmission() { return transmission; }
+
+    public String getQuery() { return query; }
+
+    /**
+     * @return True se è presente una query testuale da risolvere tramite indice
+     */
+    public boolean hasQuery() {
+        return query != null && !query.isBlank();
+    }
+
+    /**
+     * Verifica i soli filtri a intervallo (prezzo, chilometraggio, anno) su uno snapshot
+     * Stessa semantica SQL: un valore null non soddisfa un filtro impostato
+     *
+     * @param snapshot Stato del prodotto da verificare
+     * @return True se lo snapshot rientra in tutti gli intervalli impostati
+     */
+    public boolean matchesRanges(ProductSnapshot snapshot) {
+        return inRange(snapshot.getPrice(), minPrice, maxPrice)
+                && inRange(snapshot.getMileage(), minMileage, maxMileage)
+                && inRange(snapshot.getYear(), minYear, maxYear);
+    }
+
+    /**
+     * Verifica tutti i filtri strutturati su uno snapshot (esclusa la query testuale)
+     * Stessa semantica delle query JPQL: confronto esatto per le dimensioni
+     *
+     * @param snapshot Stato del prodotto da verificare
+     * @return True se il prodotto soddisfa ogni filtro strutturato impostato
+     */
+    public boolean matches(ProductSnapshot snapshot) {
+        return (category == null || category.equals(snapshot.getCategory()))
+                && (brand == null || brand.equals(snapshot.getBrand()))
+                && (model == null || model.equals(snapshot.getModel()))
+                && (fuelType == null || fuelType.equals(snapshot.getFuelType()))
+                && (transmission == null || transmission.equals(snapshot.getTransmission()))
+                && matchesRanges(snapshot);
+    }
+
+    /**
+     * @param query Nuova query testuale
+     * @return Copia del filtro con la query sostituita
+     */
+    public ProductFilter withQuery(String query) {
+        return new ProductFilter(category, brand, model, minPrice, maxPrice, minMileage, maxMileage,
+                minYear, maxYear, fuelType, transmission, query);
+    }
+
+    private static <T extends Comparable<T>> boolean inRange(T value, T min, T max) {
+        if (min == null && max == null) {
+            return true;
+        }
+        if (value == null) {
+            return false;
+        }
+        return (min == null || value.compareTo(min) >= 0) && (max == null || value.compareTo(max) <= 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ProductFilter)) return false;
+        ProductFilter that = (ProductFilter) o;
+        return Objects.equals(category, that.category)
+                && Objects.equals(brand, that.brand)
+                && Objects.equals(model, that.model)
+                && Objects.equals(minPrice, that.minPrice)
+                && Objects.equals(maxPrice, that.maxPrice)
+                && Objects.equals(minMileage, that.minMileage)
+                && Objects.equals(maxMileage, that.maxMileage)
+                && Objects.equals(minYear, that.minYear)
+                && Objects.equals(maxYear, that.maxYear)
+                && Objects.equals(fuelType, that.fuelType)
+                && Objects.equals(transmission, that.transmission)
+                && Objects.equals(query, that.query);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(category, brand, model, minPrice, maxPrice, minMileage, maxMileage,
+                minYear, maxYear, fuelType, transmission, query);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductFilter{category=" + category + ", brand=" + brand + ", model=" + model
+                + ", price=" + minPrice + ".." + maxPrice + ", mileage=" + minMileage + ".." + maxMileage
+                + ", year=" + minYear + ".." + maxYear + ", fuelType=" + fuelType
+                + ", transmission=" + transmission + ", query=" + query + "}";
+    }
+}
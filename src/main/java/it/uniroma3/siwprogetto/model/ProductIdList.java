@@ -0,0 +1,101 @@
+package it.uniroma3.siwprogetto.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Risultato ordinato di una ricerca del catalogo, come soli ID prodotto
+ * Stesso ordinamento della paginazione keyset: (rank evidenza ASC, id DESC)
+ *
+ * Struttura:
+ * - ids[0 .. featuredCount) = prodotti in evidenza attiva, id decrescente
+ * - ids[featuredCount .. size) = tutti gli altri, id decrescente
+ *
+ * Utilizzi:
+ * - Valore della cache dei risultati (CatalogQueryCache)
+ * - Ogni pagina è una ricerca binaria del cursore più una fetta dell'array
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ProductIdList {
+
+    /** Nessun prodotto corrisponde al filtro */
+    public static final ProductIdList EMPTY = new ProductIdList(new long[0], 0, null);
+
+    private final long[] ids;
+    private final int featuredCount;
+    private final LocalDateTime featuredExpiry;
+
+    /**
+     * @param ids ID ordinati (evidenza prima, poi id decrescente)
+     * @param featuredCount Numero di ID in evidenza attiva all'inizio dell'array
+     * @param featuredExpiry Prima scadenza di evidenza tra i prodotti in evidenza, null se nessuna
+     */
+    public ProductIdList(long[] ids, int featuredCount, LocalDateTime featuredExpiry) {
+        this.ids = ids;
+        this.featuredCount = featuredCount;
+        this.featuredExpiry = featuredExpiry;
+    }
+
+    public int size() { return ids.length; }
+
+    public long idAt(int index) { return ids[index]; }
+
+    public int getFeaturedCount() { return featuredCount; }
+
+    /**
+     * Oltre questo istante l'ordinamento non è più valido
+     * (un prodotto esce dall'evidenza senza alcuna scrittura sul database)
+     *
+     * @return Prima scadenza di evidenza, null se l'ordinamento non scade
+     */
+    public LocalDateTime getFeaturedExpiry() { return featuredExpiry; }
+
+    /**
+     * Posizione della prima riga successiva al cursore
+     *
+     * @param after Ultima riga vista, null per la prima pagina
+     * @return Indice da cui iniziare la pagina (size() se non ci sono altre righe)
+     */
+    public int indexAfter(ProductCursor after) {
+        if (after == null) {
+            return 0;
+        }
+        return after.getRank() == ProductCursor.RANK_FEATURED
+                ? firstBelow(0, featuredCount, after.getId())
+                : firstBelow(featuredCount, ids.length, after.getId());
+    }
+
+    /**
+     * @param index Posizione di una riga
+     * @return Cursore che identifica la riga
+     */
+    public ProductCursor cursorAt(int index) {
+        int rank = index < featuredCount ? ProductCursor.RANK_FEATURED : ProductCursor.RANK_STANDARD;
+        return new ProductCursor(rank, ids[index]);
+    }
+
+    /**
+     * @return Stima della memoria occupata dall'array di ID, in byte
+     */
+    public long estimatedBytes() {
+        return 16L + 8L * ids.length;
+    }
+
+    /**
+     * Ricerca binaria su un segmento a id decrescente: primo indice con id < bound
+     */
+    private int firstBelow(int from, int to, long bound) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] < bound) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
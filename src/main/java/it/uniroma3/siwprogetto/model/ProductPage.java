@@ -0,0 +1,34 @@
+package it.uniroma3.siwprogetto.model;
+
+import java.util.List;
+
+/**
+ * Pagina di risultati del catalogo con cursore per la pagina successiva
+ *
+ * @param <T> Tipo degli elementi (entità o proiezione di listing)
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ProductPage<T> {
+
+    private final List<T> content;
+    private final ProductCursor nextCursor;
+
+    public ProductPage(List<T> content, ProductCursor nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return Elementi della pagina, al massimo page-size
+     */
+    public List<T> getContent() { return content; }
+
+    /**
+     * @return Cursore della pagina successiva, null se questa è l'ultima
+     */
+    public ProductCursor getNextCursor() { return nextCursor; }
+
+    public boolean hasNext() { return nextCursor != null; }
+}
@@ -0,0 +1,149 @@
+package it.uniroma3.siwprogetto.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Vista immutabile e leggera di un prodotto del catalogo
+ * Contiene solo i campi scalari usati da ricerca, filtri e ordinamento,
+ * senza relazioni JPA né immagini
+ *
+ * Utilizzi:
+ * - Costruzione degli indici in-memory del catalogo all'avvio (proiezione JPQL)
+ * - Stato "prima/dopo" trasportato da ProductChangeEvent
+ * - Confronto valori per invalidazioni mirate delle cache
+ *
+ * Caratteristiche:
+ * - Nessun riferimento all'entità Product: sicura da condividere tra thread
+ * - Costruibile direttamente da query JPQL con espressione "new"
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class ProductSnapshot {
+
+    private final Long id;
+    private final String brand;
+    private final String model;
+    private final String category;
+    private final String description;
+    private final String fuelType;
+    private final String transmission;
+    private final BigDecimal price;
+    private final Integer mileage;
+    private final Integer year;
+    private final boolean featured;
+    private final LocalDateTime featuredUntil;
+    private final Long sellerId;
+
+    /**
+     * Costruttore completo, utilizzato anche dalle proiezioni JPQL
+     * (SELECT new it.uniroma3.siwprogetto.model.ProductSnapshot(...))
+     */
+    public ProductSnapshot(Long id, String brand, String model, String category, String description,
+                           String fuelType, String transmission, BigDecimal price, Integer mileage,
+                           Integer year, boolean featured, LocalDateTime featuredUntil, Long sellerId) {
+        this.id = id;
+        this.brand = brand;
+        this.model = model;
+        this.category = category;
+        this.description = description;
+        this.fuelType = fuelType;
+        this.transmission = transmission;
+        this.price = price;
+        this.mileage = mileage;
+        this.year = year;
+        this.featured = featured;
+        this.featuredUntil = featuredUntil;
+        this.sellerId = sellerId;
+    }
+
+    /**
+     * Crea lo snapshot dallo stato corrente di un'entità Product
+     *
+     * @param product Prodotto gestito o appena persistito
+     * @return Snapshot con i valori correnti dei campi di catalogo
+     */
+    public static ProductSnapshot of(Product product) {
+        return new ProductSnapshot(
+                product.getId(),
+                product.getBrand(),
+                product.getModel(),
+                product.getCategory(),
+                product.getDescription(),
+                product.getFuelType(),
+                product.getTransmission(),
+                product.getPrice(),
+                product.getMileage(),
+                product.getYear(),
+                product.isFeatured(),
+                product.getFeaturedUntil(),
+                product.getSeller() != null ? product.getSeller().getId() : null);
+    }
+
+    public Long getId() { return id; }
+
+    public String getBrand() { return brand; }
+
+    public String getModel() { return model; }
+
+    public String getCategory() { return category; }
+
+    public String getDescription() { return description; }
+
+    public String getFuelType() { return fuelType; }
+
+    public String getTransmission() { return transmission; }
+
+    public BigDecimal getPrice() { return price; }
+
+    public Integer getMileage() { return mileage; }
+
+    public Integer getYear() { return year; }
+
+    public boolean isFeatured() { return featured; }
+
+    public LocalDateTime getFeaturedUntil() { return featuredUntil; }
+
+    public Long getSellerId() { return sellerId; }
+
+    /**
+     * Stessa logica di Product.isFeaturedActive() applicata allo snapshot
+     *
+     * @return True se l'evidenziazione è attiva al momento corrente
+     */
+    public boolean isFeaturedActive() {
+        return featured && (featuredUntil == null || LocalDateTime.now().isBefore(featuredUntil));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ProductSnapshot)) return false;
+        ProductSnapshot that = (ProductSnapshot) o;
+        return featured == that.featured
+                && Objects.equals(id, that.id)
+                && Objects.equals(brand, that.brand)
+                && Objects.equals(model, that.model)
+                && Objects.equals(category, that.category)
+                && Objects.equals(description, that.description)
+                && Objects.equals(fuelType, that.fuelType)
+                && Objects.equals(transmission, that.transmission)
+                && (price == null ? that.price == null : that.price != null && price.compareTo(that.price) == 0)
+                && Objects.equals(mileage, that.mileage)
+                && Objects.equals(year, that.year)
+                && Objects.equals(featuredUntil, that.featuredUntil)
+                && Objects.equals(sellerId, that.sellerId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, brand, model, category, fuelType, transmission, mileage, year, featured, sellerId);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductSnapshot{id=" + id + ", brand=" + brand + ", model=" + model + "}";
+    }
+}
@@ -0,0 +1,41 @@
+package it.uniroma3.siwprogetto.model;
+
+/**
+ * Suggerimento restituito dall'autocompletamento della ricerca (/products/api/search)
+ *
+ * Tipi di suggerimento:
+ * - Solo marca (model == null): "BMW"
+ * - Marca e modello: "BMW X3"
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class SearchSuggestion {
+
+    private final String text;
+    private final String brand;
+    private final String model;
+    private final long count;
+    private final String url;
+
+    public SearchSuggestion(String text, String brand, String model, long count, String url) {
+        this.text = text;
+        this.brand = brand;
+        this.model = model;
+        this.count = count;
+        this.url = url;
+    }
+
+    /** @return Testo da mostrare, es: "BMW X3" */
+    public String getText() { return text; }
+
+    public String getBrand() { return brand; }
+
+    public String getModel() { return model; }
+
+    /** @return Numero di annunci attualmente pubblicati per il suggerimento */
+    public long getCount() { return count; }
+
+    /** @return Pagina prodotti già filtrata per il suggerimento */
+    public String getUrl() { return url; }
+}
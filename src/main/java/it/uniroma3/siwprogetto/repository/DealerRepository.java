@@ -1,9 +1,15 @@
 package it.uniroma3.siwprogetto.repository;
 
 import it.uniroma3.siwprogetto.model.Dealer;
+import it.uniroma3.siwprogetto.model.DealerSnapshot;
 import it.uniroma3.siwprogetto.model.User;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -81,6 +87,16 @@ public interface DealerRepository extends JpaRepository<Dealer, Long> {
      * - Paginazione consigliata per città grandi
      */
     List<Dealer> findByAddressContainingIgnoreCase(String address);
+
+    /**
+     * ID dei dealer il cui indirizzo contiene il testo (case-insensitive)
+     * Stesso criterio di findByAddressContainingIgnoreCase, senza caricare entità
+     *
+     * @param address Testo da cercare nell'indirizzo
+     * @return ID in ordine crescente
+     */
+    @Query("SELECT d.id FROM Dealer d WHERE LOWER(d.address) LIKE LOWER(CONCAT('%', :address, '%')) ORDER BY d.id")
+    List<Long> findIdsByAddressContaining(@Param("address") String address);
     
     /**
      * Trova il concessionario posseduto da un utente specifico
@@ -110,5 +126,76 @@ public interface DealerRepository extends JpaRepository<Dealer, Long> {
      * - Base per redirect condizionali post-login
      */
     Optional<Dealer> findByOwner(User user);
-    
-}
\ No newline at end of file
+
+    /**
+     * Tutti i concessionari per la pagina elenco, con gallery in una sola query
+     * 
+     * @return Lista dealer con immagini già inizializzate
+     * 
+     * Entity graph: Dealer.list (images)
+     */
+    @EntityGraph(Dealer.GRAPH_LIST)
+    @Query("SELECT d FROM Dealer d")
+    List<Dealer> findAllForList();
+
+    /**
+     * Concessionario per le pagine dettaglio, con gallery e proprietario
+     * 
+     * @param id ID del concessionario
+     * @return Optional con il dealer e le immagini già inizializzate
+     * 
+     * Entity graph: Dealer.detail (images, owner)
+     */
+    @EntityGraph(Dealer.GRAPH_DETAIL)
+    Optional<Dealer> findDetailById(Long id);
+
+    /**
+     * Concessionario di un utente per la pagina di gestione, con gallery e proprietario
+     * 
+     * @param username Username dell'utente proprietario
+     * @return Optional con il dealer e le immagini già inizializzate
+     * 
+     * Entity graph: Dealer.detail (images, owner)
+     */
+    @EntityGraph(Dealer.GRAPH_DETAIL)
+    Optional<Dealer> findDetailByOwnerUsername(String username);
+
+    /**
+     * Concessionari indicati per la pagina elenco, con gallery in una sola query
+     * 
+     * @param ids ID dei dealer (es: risultati di una ricerca per distanza)
+     * @return Dealer trovati, in ordine non specificato
+     * 
+     * Entity graph: Dealer.list (images)
+     */
+    @EntityGraph(Dealer.GRAPH_LIST)
+    @Query("SELECT d FROM Dealer d WHERE d.id IN :ids")
+    List<Dealer> findForListByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Proiezione leggera di tutti i concessionari (nessuna immagine né relazione)
+     * 
+     * @return Snapshot di tutti i dealer
+     * 
+     * Utilizzi:
+     * - Build iniziale di DealerGeoIndex all'avvio applicazione
+     */
+    @Query("SELECT new it.uniroma3.siwprogetto.model.DealerSnapshot(" +
+            "d.id, d.name, d.address, d.latitude, d.longitude) FROM Dealer d")
+    List<DealerSnapshot> findAllSnapshots();
+
+    /**
+     * Aggiorna le coordinate senza caricare l'entità
+     * Non passa da DealerChangeListener: il chiamante aggiorna l'indice
+     * 
+     * @param id ID del concessionario
+     * @param latitude Latitudine (null se non geolocalizzabile)
+     * @param longitude Longitudine (null se non geolocalizzabile)
+     * @return Righe aggiornate
+     */
+    @Modifying
+    @Query("UPDATE Dealer d SET d.latitude = :latitude, d.longitude = :longitude WHERE d.id = :id")
+    int updateLocation(@Param("id") Long id, @Param("latitude") Double latitude,
+                       @Param("longitude") Double longitude);
+
+}
@@ -0,0 +1,132 @@
+package it.uniroma3.siwprogetto.repository;
+
+import it.uniroma3.siwprogetto.model.ImageBlob;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository del catalogo dei contenuti deduplicati (ImageBlob)
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public interface ImageBlobRepository extends JpaRepository<ImageBlob, String> {
+
+    /**
+     * Ricalcola il numero di righe Image che usano il contenuto,
+     * direttamente o tramite un contenuto ricompresso ricavato da esso (originale conservato)
+     * Idempotente: può essere ripetuto senza far divergere il conteggio
+     *
+     * @param storageKey Chiave del contenuto
+     * @return Righe aggiornate (0 se il contenuto non è nel catalogo)
+     */
+    @Modifying
+    @Query("UPDATE ImageBlob b SET b.referenceCount = "
+            + "(SELECT COUNT(i) FROM Image i WHERE i.storageKey = :storageKey OR i.storageKey IN "
+            + "(SELECT d.storageKey FROM ImageBlob d WHERE d.sourceKey = :storageKey)) "
+            + "WHERE b.storageKey = :storageKey")
+    int recount(@Param("storageKey") String storageKey);
+
+    /**
+     * Ricalcolo set-based dei riferimenti di più contenuti (stessa regola di recount)
+     * Usato dopo le eliminazioni in blocco: una sola UPDATE per tutte le chiavi
+     *
+     * @param storageKeys Chiavi dei contenuti
+     * @return Righe aggiornate
+     */
+    @Modifying
+    @Query("UPDATE ImageBlob b SET b.referenceCount = "
+            + "(SELECT COUNT(i) FROM Image i WHERE i.storageKey = b.storageKey OR i.storageKey IN "
+            + "(SELECT d.storageKey FROM ImageBlob d WHERE d.sourceKey = b.storageKey)) "
+            + "WHERE b.storageKey IN :storageKeys")
+    int recountIn(@Param("storageKeys") Collection<String> storageKeys);
+
+    /**
+     * Aggiorna releasedAt dopo recountIn (stessa regola di markReleased)
+     *
+     * @param storageKeys Chiavi dei contenuti
+     * @param now Istante corrente
+     * @return Righe aggiornate
+     */
+    @Modifying
+    @Query("UPDATE ImageBlob b SET b.releasedAt = CASE WHEN b.referenceCount = 0 "
+            + "THEN COALESCE(b.releasedAt, :now) ELSE NULL END WHERE b.storageKey IN :storageKeys")
+    int markReleasedIn(@Param("storageKeys") Collection<String> storageKeys, @Param("now") LocalDateTime now);
+
+    /**
+     * Originali da cui derivano i contenuti indicati (contenuti ricompressi)
+     *
+     * @param storageKeys Chiavi dei contenuti
+     * @return Chiavi sorgente distinte
+     */
+    @Query("SELECT DISTINCT b.sourceKey FROM ImageBlob b WHERE b.storageKey IN :storageKeys AND b.sourceKey IS NOT NULL")
+    List<String> findSourceKeysIn(@Param("storageKeys") Collection<String> storageKeys);
+
+    /**
+     * Aggiorna releasedAt dopo il ricalcolo: impostato quando il conteggio arriva a zero,
+     * azzerato quando il contenuto torna a essere referenziato
+     *
+     * @param storageKey Chiave del contenuto
+     * @param now Istante corrente
+     * @return Righe aggiornate
+     */
+    @Modifying
+    @Query("UPDATE ImageBlob b SET b.releasedAt = CASE WHEN b.referenceCount = 0 "
+            + "THEN COALESCE(b.releasedAt, :now) ELSE NULL END WHERE b.storageKey = :storageKey")
+    int markReleased(@Param("storageKey") String storageKey, @Param("now") LocalDateTime now);
+
+    /**
+     * Riavvia il periodo di grazia di un contenuto senza riferimenti appena riusato da un upload
+     * (l'immagine non è ancora stata salvata: il contenuto non va raccolto nel frattempo)
+     *
+     * @param storageKey Chiave del contenuto
+     * @param now Istante corrente
+     * @return Righe aggiornate
+     */
+    @Modifying
+    @Query("UPDATE ImageBlob b SET b.releasedAt = :now WHERE b.storageKey = :storageKey AND b.releasedAt IS NOT NULL")
+    int touch(@Param("storageKey") String storageKey, @Param("now") LocalDateTime now);
+
+    /**
+     * Riga del catalogo con lock esclusivo (SELECT ... FOR UPDATE) fino al commit
+     * Serializza registrazione di un upload e rimozione da parte di ImageGarbageCollector
+     *
+     * @param storageKey Chiave del contenuto
+     * @return Riga bloccata, vuoto se il contenuto non è nel catalogo
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM ImageBlob b WHERE b.storageKey = :storageKey")
+    Optional<ImageBlob> findForUpdate(@Param("storageKey") String storageKey);
+
+    /**
+     * Contenuto ricompresso ricavato da un upload
+     *
+     * @param sourceKey Hash dell'upload ricevuto
+     * @return Primo contenuto ricavato, se presente
+     */
+    Optional<ImageBlob> findFirstBySourceKey(String sourceKey);
+
+    /**
+     * Contenuti senza riferimenti da prima del cutoff, in ordine di chiave
+     * Paginazione keyset sulla chiave: usata da ImageGarbageCollector a blocchi
+     *
+     * @param afterKey Ultima chiave elaborata ("" per iniziare)
+     * @param cutoff Fine del periodo di grazia
+     * @param pageable Dimensione del blocco
+     * @return Contenuti candidati alla rimozione
+     */
+    @Query("SELECT b FROM ImageBlob b WHERE b.referenceCount = 0 AND b.releasedAt < :cutoff "
+            + "AND b.storageKey > :afterKey ORDER BY b.storageKey")
+    List<ImageBlob> findReleasedBefore(@Param("afterKey") String afterKey, @Param("cutoff") LocalDateTime cutoff,
+                                       Pageable pageable);
+}
@@ -1,7 +1,16 @@
 package it.uniroma3.siwprogetto.repository;
 
 import it.uniroma3.siwprogetto.model.Image;
+import it.uniroma3.siwprogetto.model.ImageMetadata;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository JPA per gestione immagini del sistema FCF Motors
@@ -13,7 +22,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
  * - Operazioni batch per gallery multiple
  * 
  * Caratteristiche implementazione:
- * - Storage BLOB diretto in database
+ * - Righe con soli metadati, byte nell'archivio su filesystem (ImageStorageService)
  * - Supporto immagini dealer e prodotti
  * - Gestione automatica cascade dalle entità parent
  * 
@@ -40,6 +49,60 @@ import org.springframework.data.jpa.repository.JpaRepository;
  * @version 1.0
  **/
 public interface ImageRepository extends JpaRepository<Image, Long> {
+
+    /**
+     * Metadati per il serving di un'immagine, senza byte né entità associate
+     *
+     * @param id ID dell'immagine
+     * @return Proiezione con chiave di archivio, dimensione, tipo e nomi per il file
+     */
+    @Query("SELECT new it.uniroma3.siwprogetto.model.ImageMetadata(i.id, i.storageKey, i.sizeBytes, i.contentType, p.brand, d.name) "
+            + "FROM Image i LEFT JOIN i.product p LEFT JOIN i.dealer d WHERE i.id = :id")
+    Optional<ImageMetadata> findMetadataById(@Param("id") Long id);
+
+    /**
+     * ID delle immagini con byte ancora nel LOB del database, in ordine crescente
+     * Paginazione keyset sull'ID: usata da ImageBlobMigration a blocchi
+     *
+     * @param afterId Ultimo ID elaborato (0 per iniziare)
+     * @param pageable Dimensione del blocco
+     * @return ID da migrare
+     */
+    @Query("SELECT i.id FROM Image i WHERE i.storageKey IS NULL AND i.id > :afterId ORDER BY i.id")
+    List<Long> findLegacyIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Immagini senza prodotto né dealer (non raggiungibili da nessuna pagina), in ordine di ID
+     * Paginazione keyset sull'ID: usata da ImageGarbageCollector a blocchi
+     *
+     * @param afterId Ultimo ID elaborato (0 per iniziare)
+     * @param pageable Dimensione del blocco
+     * @return Righe [id, storageKey, sizeBytes]
+     */
+    @Query("SELECT i.id, i.storageKey, i.sizeBytes FROM Image i "
+            + "WHERE i.product IS NULL AND i.dealer IS NULL AND i.storageKey IS NOT NULL AND i.id > :afterId "
+            + "ORDER BY i.id")
+    List<Object[]> findUnownedAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Eliminazione in blocco senza caricare le entità
+     * Non passa da ImageChangeListener: il chiamante pubblica ImageRemovedEvent
+     *
+     * @param ids ID da eliminare
+     * @return Righe eliminate
+     */
+    @Modifying
+    @Query("DELETE FROM Image i WHERE i.id IN :ids AND i.product IS NULL AND i.dealer IS NULL")
+    int deleteUnownedByIdIn(@Param("ids") List<Long> ids);
+
+    /**
+     * Righe che usano ciascuna delle chiavi indicate
+     *
+     * @param keys Chiavi di contenuto
+     * @return Righe [storageKey, conteggio], solo per le chiavi referenziate
+     */
+    @Query("SELECT i.storageKey, COUNT(i) FROM Image i WHERE i.storageKey IN :keys GROUP BY i.storageKey")
+    List<Object[]> countByStorageKeyIn(@Param("keys") Collection<String> keys);
     
     /*
      * Interfaccia intenzionalmente minimale
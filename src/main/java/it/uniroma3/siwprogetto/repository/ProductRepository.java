@@ -1,14 +1,18 @@
 package it.uniroma3.siwprogetto.repository;
 
 import it.uniroma3.siwprogetto.model.Product;
+import it.uniroma3.siwprogetto.model.ProductSnapshot;
 import it.uniroma3.siwprogetto.model.User;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository per gestione prodotti automotive (Product)
@@ -24,7 +28,7 @@ import java.util.List;
  * Pattern Repository vantaggi:
  * - Query JPQL ottimizzate per ricerche complesse
  * - Named parameters per sicurezza SQL injection
- * - Gestione automatica paginazione future
+ * - Paginazione keyset tramite ProductRepositoryCustom
  * - Type-safety su BigDecimal per prezzi
  * 
  * Business Domain:
@@ -36,7 +40,7 @@ import java.util.List;
  * @version 1.0
  */
 @Repository
-public interface ProductRepository extends CrudRepository<Product, Long> {
+public interface ProductRepository extends CrudRepository<Product, Long>, ProductRepositoryCustom {
 
     /**
      * Override di findAll() per documentazione specifica
@@ -51,7 +55,7 @@ public interface ProductRepository extends CrudRepository<Product, Long> {
      * 
      * Performance:
      * - Query potenzialmente costosa per grandi cataloghi
-     * - Considerare findAllOrderedByHighlight() per UX migliore
+     * - Considerare findAllOrderedByHighlight(cursor, pageSize) per liste paginate
      */
     List<Product> findAll();
 
@@ -208,6 +212,76 @@ public interface ProductRepository extends CrudRepository<Product, Long> {
                                 @Param("fuelType") String fuelType,
                                 @Param("transmission") String transmission);
 
+    /**
+     * Variante di findByFilters ristretta a un insieme di ID candidati
+     * Usata quando la ricerca testuale ha già prodotto i candidati tramite
+     * l'indice invertito in-memory (ProductSearchIndex)
+     *
+     * @param ids ID candidati restituiti dall'indice (max ~1000 per chiamata)
+     * @return Prodotti candidati che rispettano anche i filtri strutturati
+     *
+     * Performance:
+     * - Lookup su chiave primaria: costo proporzionale ai candidati, non al catalogo
+     * - Il chiamante suddivide liste grandi in blocchi per limitare la IN clause
+     */
+    @Query("SELECT p FROM Product p WHERE p.id IN :ids " +
+            "AND (:category IS NULL OR p.category = :category) " +
+            "AND (:brand IS NULL OR p.brand = :brand) " +
+            "AND (:selectedModel IS NULL OR p.model = :selectedModel) " +
+            "AND (:minPrice IS NULL OR p.price >= :minPrice) " +
+            "AND (:maxPrice IS NULL OR p.price <= :maxPrice) " +
+            "AND (:minMileage IS NULL OR p.mileage >= :minMileage) " +
+            "AND (:maxMileage IS NULL OR p.mileage <= :maxMileage) " +
+            "AND (:minYear IS NULL OR p.year >= :minYear) " +
+            "AND (:maxYear IS NULL OR p.year <= :maxYear) " +
+            "AND (:fuelType IS NULL OR p.fuelType = :fuelType) " +
+            "AND (:transmission IS NULL OR p.transmission = :transmission)")
+    List<Product> findByFiltersAndIdIn(@Param("category") String category,
+                                       @Param("brand") String brand,
+                                       @Param("selectedModel") String selectedModel,
+                                       @Param("minPrice") BigDecimal minPrice,
+                                       @Param("maxPrice") BigDecimal maxPrice,
+                                       @Param("minMileage") Integer minMileage,
+                                       @Param("maxMileage") Integer maxMileage,
+                                       @Param("minYear") Integer minYear,
+                                       @Param("maxYear") Integer maxYear,
+                                       @Param("fuelType") String fuelType,
+                                       @Param("transmission") String transmission,
+                                       @Param("ids") Collection<Long> ids);
+
+    /**
+     * Proiezione scalare dell'intero catalogo per la costruzione degli indici in-memory
+     * Non carica entità, immagini né relazioni: solo i campi di ricerca
+     *
+     * @return Snapshot di tutti i prodotti
+     *
+     * Utilizzi:
+     * - Build iniziale di ProductSearchIndex all'avvio applicazione
+     *
+     * Performance:
+     * - Singola scansione senza blob: memoria proporzionale ai soli campi testuali
+     */
+    @Query("SELECT new it.uniroma3.siwprogetto.model.ProductSnapshot(" +
+            "p.id, p.brand, p.model, p.category, p.description, p.fuelType, p.transmission, " +
+            "p.price, p.mileage, p.year, p.isFeatured, p.featuredUntil, s.id) " +
+            "FROM Product p LEFT JOIN p.seller s")
+    List<ProductSnapshot> findAllSnapshots();
+
+    /**
+     * Snapshot dei prodotti di un venditore, senza caricare le entità
+     *
+     * @param sellerId ID dell'utente venditore
+     * @return Snapshot dei prodotti del venditore
+     *
+     * Utilizzi:
+     * - Eventi di eliminazione per la cancellazione in blocco (InventoryBulkDeleter)
+     */
+    @Query("SELECT new it.uniroma3.siwprogetto.model.ProductSnapshot(" +
+            "p.id, p.brand, p.model, p.category, p.description, p.fuelType, p.transmission, " +
+            "p.price, p.mileage, p.year, p.isFeatured, p.featuredUntil, s.id) " +
+            "FROM Product p JOIN p.seller s WHERE s.id = :sellerId")
+    List<ProductSnapshot> findSnapshotsBySellerId(@Param("sellerId") Long sellerId);
+
     /**
      * Trova prodotti di un venditore specifico tramite ID
      * Query JPQL: SELECT p FROM Product p WHERE p.seller.id = :sellerId
@@ -238,6 +312,40 @@ public interface ProductRepository extends CrudRepository<Product, Long> {
      */
     List<Product> findBySeller(User user);
 
+    /**
+     * Prodotto per la pagina dettaglio, con gallery e venditore in una sola query
+     * 
+     * @param id ID del prodotto
+     * @return Optional con il prodotto e le immagini già inizializzate
+     * 
+     * Entity graph: Product.detail (images, seller)
+     */
+    @EntityGraph(Product.GRAPH_DETAIL)
+    Optional<Product> findDetailById(Long id);
+
+    /**
+     * Prodotto per i form di modifica, con gallery inizializzata
+     * 
+     * @param id ID del prodotto
+     * @return Optional con il prodotto e le immagini già inizializzate
+     * 
+     * Entity graph: Product.edit (images)
+     */
+    @EntityGraph(Product.GRAPH_EDIT)
+    Optional<Product> findEditById(Long id);
+
+    /**
+     * Prodotti di un venditore per il form di modifica (utenti privati)
+     * 
+     * @param sellerId ID del venditore
+     * @return Prodotti con immagini già inizializzate
+     * 
+     * Entity graph: Product.edit (images)
+     */
+    @EntityGraph(Product.GRAPH_EDIT)
+    @Query("SELECT p FROM Product p WHERE p.seller.id = :sellerId")
+    List<Product> findEditBySellerId(@Param("sellerId") Long sellerId);
+
     /**
      * Trova prodotti evidenziati attualmente attivi
      * Query JPQL con condizioni temporali:
@@ -260,28 +368,6 @@ public interface ProductRepository extends CrudRepository<Product, Long> {
     @Query("SELECT p FROM Product p WHERE p.isFeatured = true AND (p.featuredUntil IS NULL OR p.featuredUntil > CURRENT_TIMESTAMP) ORDER BY p.featuredUntil DESC")
     List<Product> findActiveHighlightedProducts();
 
-    /**
-     * Trova tutti i prodotti con priorità per quelli evidenziati
-     * Query JPQL con ORDER BY condizionale:
-     * - CASE WHEN per assegnare priorità 0 ai featured attivi, 1 agli altri
-     * - Prodotti featured mostrati per primi
-     * - Ordinamento secondario per ID DESC (più recenti primi)
-     * 
-     * @return Lista completa prodotti ordinati per evidenziazione
-     * 
-     * Utilizzi:
-     * - Listino generale con featured products in cima
-     * - UX che privilenzia sellers premium
-     * - Balance tra contenuti gratuiti e premium
-     * 
-     * UX Strategy:
-     * - Featured products catturano attenzione immediata
-     * - Contenuti gratuiti comunque accessibili sotto
-     * - Incentivo per sellers ad acquistare evidenziazione
-     */
-    @Query("SELECT p FROM Product p ORDER BY CASE WHEN p.isFeatured = true AND (p.featuredUntil IS NULL OR p.featuredUntil > CURRENT_TIMESTAMP) THEN 0 ELSE 1 END, p.id DESC")
-    List<Product> findAllOrderedByHighlight();
-
     /**
      * Elimina prodotto per ID
      * Override del metodo base per documentazione specifica
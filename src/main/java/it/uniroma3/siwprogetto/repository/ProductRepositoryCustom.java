@@ -0,0 +1,107 @@
+package it.uniroma3.siwprogetto.repository;
+
+import it.uniroma3.siwprogetto.model.FacetCombination;
+import it.uniroma3.siwprogetto.model.ProductCardView;
+import it.uniroma3.siwprogetto.model.ProductCursor;
+import it.uniroma3.siwprogetto.model.ProductFilter;
+import it.uniroma3.siwprogetto.model.ProductIdList;
+import it.uniroma3.siwprogetto.model.ProductPage;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Estensione custom di ProductRepository per query costruite dinamicamente
+ * Implementata da ProductRepositoryImpl (rilevata automaticamente da Spring Data)
+ *
+ * Responsabilità:
+ * - Paginazione keyset del catalogo con ordinamento "in evidenza prima"
+ * - JPQL con i soli predicati dei filtri valorizzati
+ * - Aggregato GROUP BY per il calcolo delle faccette
+ * - Proiezioni di listing (ProductCardView) senza blob delle immagini
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public interface ProductRepositoryCustom {
+
+    /**
+     * Pagina di prodotti filtrati ordinata per (rank evidenza ASC, id DESC)
+     *
+     * @param filter Filtri strutturati (la query testuale è ignorata: va risolta in idIn)
+     * @param idIn ID candidati a cui restringere la ricerca, null per nessuna restrizione
+     * @param after Ultima riga della pagina precedente, null per la prima pagina
+     * @param pageSize Numero massimo di prodotti nella pagina
+     * @return Pagina con cursore per la successiva
+     *
+     * Performance:
+     * - Ogni pagina è una seek sull'indice della chiave primaria (id < :afterId)
+     *   con LIMIT: il costo della pagina N è uguale a quello della pagina 1
+     * - Memoria per richiesta limitata a pageSize card (nessun blob immagine)
+     */
+    ProductPage<ProductCardView> findPage(ProductFilter filter, Collection<Long> idIn, ProductCursor after, int pageSize);
+
+    /**
+     * Catalogo completo con prodotti in evidenza attiva per primi, paginato keyset
+     *
+     * @param after Ultima riga della pagina precedente, null per la prima pagina
+     * @param pageSize Numero massimo di prodotti nella pagina
+     * @return Pagina con cursore per la successiva
+     */
+    ProductPage<ProductCardView> findAllOrderedByHighlight(ProductCursor after, int pageSize);
+
+    /**
+     * Tutti gli ID che soddisfano il filtro, nell'ordinamento del catalogo
+     *
+     * @param filter Filtri strutturati (la query testuale è ignorata: va risolta in idIn)
+     * @param idIn ID candidati a cui restringere la ricerca, null per nessuna restrizione
+     * @param limit Numero massimo di ID accettati
+     * @return Lista ordinata di ID, null se i risultati superano limit
+     *
+     * Performance:
+     * - Solo colonne id e featuredUntil: nessuna entità caricata
+     * - Al massimo limit + 1 righe lette dal database
+     */
+    ProductIdList findMatchingIds(ProductFilter filter, Collection<Long> idIn, int limit);
+
+    /**
+     * Card dei prodotti indicati, nello stesso ordine degli ID
+     *
+     * @param ids ID dei prodotti (quelli inesistenti sono ignorati)
+     * @return Card con ID immagine
+     */
+    List<ProductCardView> findCardsByIds(List<Long> ids);
+
+    /**
+     * Card dei prodotti di un venditore, i più recenti per primi
+     *
+     * @param sellerId ID dell'utente venditore
+     * @return Card con ID immagine (lista vuota se nessun prodotto)
+     *
+     * Performance:
+     * - Due query (card + ID immagine) indipendentemente dal numero di prodotti
+     */
+    List<ProductCardView> findCardsBySellerId(Long sellerId);
+
+    /**
+     * Card di tutti i prodotti ordinate per ID, per le pagine di amministrazione
+     *
+     * @return Card con ID immagine
+     */
+    List<ProductCardView> findAllCards();
+
+    /**
+     * Aggregato delle combinazioni (categoria, marca, modello, carburante, cambio)
+     * con relativo conteggio, sotto i soli filtri a intervallo e gli ID candidati
+     *
+     * @param filter Filtri attivi: sono applicati solo prezzo, chilometraggio e anno;
+     *               i filtri per dimensione sono applicati in memoria dal chiamante
+     * @param idIn ID candidati della ricerca testuale, null per nessuna restrizione
+     * @return Combinazioni distinte con numero di prodotti
+     *
+     * Performance:
+     * - Una sola query aggregata, nessuna entità né immagine caricata
+     * - Righe restituite proporzionali alle combinazioni distinte, non ai prodotti
+     */
+    List<FacetCombination> aggregateFacets(ProductFilter filter, Collection<Long> idIn);
+}
@@ -0,0 +1,356 @@
+package it.uniroma3.siwprogetto.repository;
+
+import it.uniroma3.siwprogetto.model.FacetCombination;
+import it.uniroma3.siwprogetto.model.ProductCardView;
+import it.uniroma3.siwprogetto.model.ProductCursor;
+import it.uniroma3.siwprogetto.model.ProductFilter;
+import it.uniroma3.siwprogetto.model.ProductIdList;
+import it.uniroma3.siwprogetto.model.ProductPage;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementazione di ProductRepositoryCustom basata su JPQL dinamico
+ *
+ * Strategia keyset:
+ * - L'ordinamento (rank evidenza, id DESC) viene percorso in due fasi:
+ *   prima i prodotti in evidenza attiva (rank 0), poi gli altri (rank 1)
+ * - In ciascuna fase: WHERE [rank] AND id < :afterId ORDER BY id DESC LIMIT n
+ * - Nessun OFFSET: il database non deve scorrere le righe delle pagine precedenti
+ *
+ * Con ID candidati (ricerca testuale) gli ID vengono ordinati in modo decrescente
+ * e interrogati a blocchi, così l'ordine tra blocchi coincide con l'ordine globale.
+ *
+ * Proiezione di listing:
+ * - Le pagine restituiscono ProductCardView (campi scalari + ID immagine),
+ *   mai entità Product: nessun blob Image entra nello heap per un elenco
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    /** Numero massimo di ID per singola clausola IN */
+    private static final int ID_BATCH_SIZE = 1000;
+
+    /** Evidenza attiva: stessa regola di Product.isFeaturedActive() */
+    private static final String FEATURED_ACTIVE =
+            "(p.isFeatured = true AND (p.featuredUntil IS NULL OR p.featuredUntil > CURRENT_TIMESTAMP))";
+
+    /** Complemento di FEATURED_ACTIVE */
+    private static final String NOT_FEATURED_ACTIVE =
+            "(p.isFeatured = false OR (p.featuredUntil IS NOT NULL AND p.featuredUntil <= CURRENT_TIMESTAMP))";
+
+    /** Proiezione delle card: solo colonne scalari del prodotto e username del venditore */
+    private static final String CARD_SELECT = "SELECT new it.uniroma3.siwprogetto.model.ProductCardView(" +
+            "p.id, p.brand, p.model, p.category, p.description, p.price, p.mileage, p.year, " +
+            "p.fuelType, p.transmission, p.sellerType, p.isFeatured, p.featuredUntil, s.username) " +
+            "FROM Product p LEFT JOIN p.seller s";
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Override
+    public ProductPage<ProductCardView> findPage(ProductFilter filter, Collection<Long> idIn, ProductCursor after, int pageSize) {
+        List<Long> sortedIds = null;
+        if (idIn != null) {
+            sortedIds = new ArrayList<>(idIn);
+            sortedIds.sort(Comparator.reverseOrder());
+        }
+
+        // Una riga in più per sapere se esiste la pagina successiva
+        int fetchSize = pageSize + 1;
+        List<ProductCardView> rows = new ArrayList<>(fetchSize);
+        int featuredRows = 0;
+
+        int startRank = after != null ? after.getRank() : ProductCursor.RANK_FEATURED;
+        for (int rank = startRank; rank <= ProductCursor.RANK_STANDARD && rows.size() < fetchSize; rank++) {
+            Long beforeId = (after != null && rank == after.getRank()) ? after.getId() : null;
+            fetchRank(filter, sortedIds, rank, beforeId, fetchSize, rows);
+            if (rank == ProductCursor.RANK_FEATURED) {
+                featuredRows = rows.size();
+            }
+        }
+
+        ProductCursor next = null;
+        if (rows.size() > pageSize) {
+            rows = new ArrayList<>(rows.subList(0, pageSize));
+            // Il rank dell'ultima riga è quello della fase che l'ha prodotta
+            int lastRank = pageSize <= featuredRows ? ProductCursor.RANK_FEATURED : ProductCursor.RANK_STANDARD;
+            next = new ProductCursor(lastRank, rows.get(pageSize - 1).getId());
+        }
+        attachImageIds(rows);
+        return new ProductPage<>(rows, next);
+    }
+
+    @Override
+    public ProductPage<ProductCardView> findAllOrderedByHighlight(ProductCursor after, int pageSize) {
+        return findPage(ProductFilter.NONE, null, after, pageSize);
+    }
+
+    @Override
+    public ProductIdList findMatchingIds(ProductFilter filter, Collection<Long> idIn, int limit) {
+        List<Long> sortedIds = null;
+        if (idIn != null) {
+            sortedIds = new ArrayList<>(idIn);
+            sortedIds.sort(Comparator.reverseOrder());
+        }
+
+        // Una riga oltre il limite per riconoscere i risultati troppo grandi
+        List<Object[]> featured = new ArrayList<>();
+        List<Object[]> standard = new ArrayList<>();
+        fetchIdRows(filter, sortedIds, ProductCursor.RANK_FEATURED, limit + 1, featured);
+        if (featured.size() <= limit) {
+            fetchIdRows(filter, sortedIds, ProductCursor.RANK_STANDARD, limit + 1 - featured.size(), standard);
+        }
+        if (featured.size() + standard.size() > limit) {
+            return null;
+        }
+
+        long[] ids = new long[featured.size() + standard.size()];
+        LocalDateTime featuredExpiry = null;
+        int i = 0;
+        for (Object[] row : featured) {
+            ids[i++] = (Long) row[0];
+            LocalDateTime until = (LocalDateTime) row[1];
+            if (until != null && (featuredExpiry == null || until.isBefore(featuredExpiry))) {
+                featuredExpiry = until;
+            }
+        }
+        for (Object[] row : standard) {
+            ids[i++] = (Long) row[0];
+        }
+        return new ProductIdList(ids, featured.size(), featuredExpiry);
+    }
+
+    @Override
+    public List<ProductCardView> findCardsByIds(List<Long> ids) {
+        Map<Long, ProductCardView> byId = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += ID_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + ID_BATCH_SIZE, ids.size()));
+            entityManager.createQuery(CARD_SELECT + " WHERE p.id IN :ids", ProductCardView.class)
+                    .setParameter("ids", batch)
+                    .getResultList()
+                    .forEach(card -> byId.put(card.getId(), card));
+        }
+
+        // Ripristina l'ordine richiesto (la clausola IN non garantisce ordinamento)
+        List<ProductCardView> cards = new ArrayList<>(byId.size());
+        for (Long id : ids) {
+            ProductCardView card = byId.get(id);
+            if (card != null) {
+                cards.add(card);
+            }
+        }
+        attachImageIds(cards);
+        return cards;
+    }
+
+    @Override
+    public List<ProductCardView> findCardsBySellerId(Long sellerId) {
+        List<ProductCardView> cards = entityManager
+                .createQuery(CARD_SELECT + " WHERE s.id = :sellerId ORDER BY p.id DESC", ProductCardView.class)
+                .setParameter("sellerId", sellerId)
+                .getResultList();
+        attachImageIds(cards);
+        return cards;
+    }
+
+    @Override
+    public List<ProductCardView> findAllCards() {
+        List<ProductCardView> cards = entityManager
+                .createQuery(CARD_SELECT + " ORDER BY p.id", ProductCardView.class)
+                .getResultList();
+        attachImageIds(cards);
+        return cards;
+    }
+
+    @Override
+    public List<FacetCombination> aggregateFacets(ProductFilter filter, Collection<Long> idIn) {
+        if (idIn == null) {
+            return runFacetQuery(filter, null);
+        }
+
+        // Aggregati parziali per blocco di ID, fusi per combinazione
+        List<Long> ids = new ArrayList<>(idIn);
+        Map<List<String>, Long> merged = new LinkedHashMap<>();
+        for (int from = 0; from < ids.size(); from += ID_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + ID_BATCH_SIZE, ids.size()));
+            for (FacetCombination row : runFacetQuery(filter, batch)) {
+                List<String> key = Arrays.asList(row.getCategory(), row.getBrand(), row.getModel(),
+                        row.getFuelType(), row.getTransmission());
+                merged.merge(key, row.getCount(), Long::sum);
+            }
+        }
+        List<FacetCombination> result = new ArrayList<>(merged.size());
+        merged.forEach((key, count) -> result.add(new FacetCombination(
+                key.get(0), key.get(1), key.get(2), key.get(3), key.get(4), count)));
+        return result;
+    }
+
+    // === METODI PRIVATI ===
+
+    /**
+     * Aggiunge a rows i prodotti di un rank fino a raggiungere fetchSize
+     */
+    private void fetchRank(ProductFilter filter, List<Long> sortedIds, int rank, Long beforeId,
+                           int fetchSize, List<ProductCardView> rows) {
+        if (sortedIds == null) {
+            rows.addAll(runQuery(filter, null, rank, beforeId, fetchSize - rows.size()));
+            return;
+        }
+
+        // Salta gli ID già oltrepassati dal cursore (lista decrescente)
+        int from = 0;
+        if (beforeId != null) {
+            while (from < sortedIds.size() && sortedIds.get(from) >= beforeId) {
+                from++;
+            }
+        }
+        while (from < sortedIds.size() && rows.size() < fetchSize) {
+            List<Long> batch = sortedIds.subList(from, Math.min(from + ID_BATCH_SIZE, sortedIds.size()));
+            rows.addAll(runQuery(filter, batch, rank, null, fetchSize - rows.size()));
+            from += batch.size();
+        }
+    }
+
+    private List<ProductCardView> runQuery(ProductFilter filter, Collection<Long> ids, int rank, Long beforeId, int limit) {
+        StringBuilder jpql = new StringBuilder(CARD_SELECT).append(" WHERE ");
+        jpql.append(rank == ProductCursor.RANK_FEATURED ? FEATURED_ACTIVE : NOT_FEATURED_ACTIVE);
+
+        Map<String, Object> params = new HashMap<>();
+        if (beforeId != null) {
+            jpql.append(" AND p.id < :beforeId");
+            params.put("beforeId", beforeId);
+        }
+        if (ids != null) {
+            jpql.append(" AND p.id IN :ids");
+            params.put("ids", ids);
+        }
+        appendFilterPredicates(filter, jpql, params);
+        jpql.append(" ORDER BY p.id DESC");
+
+        TypedQuery<ProductCardView> query = entityManager.createQuery(jpql.toString(), ProductCardView.class);
+        params.forEach(query::setParameter);
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+
+    /**
+     * Aggiunge a rows le coppie (id, featuredUntil) di un rank, al massimo limit righe
+     */
+    private void fetchIdRows(ProductFilter filter, List<Long> sortedIds, int rank, int limit, List<Object[]> rows) {
+        if (sortedIds == null) {
+            rows.addAll(runIdQuery(filter, null, rank, limit));
+            return;
+        }
+        for (int from = 0; from < sortedIds.size() && rows.size() < limit; from += ID_BATCH_SIZE) {
+            List<Long> batch = sortedIds.subList(from, Math.min(from + ID_BATCH_SIZE, sortedIds.size()));
+            rows.addAll(runIdQuery(filter, batch, rank, limit - rows.size()));
+        }
+    }
+
+    private List<Object[]> runIdQuery(ProductFilter filter, Collection<Long> ids, int rank, int limit) {
+        StringBuilder jpql = new StringBuilder("SELECT p.id, p.featuredUntil FROM Product p WHERE ");
+        jpql.append(rank == ProductCursor.RANK_FEATURED ? FEATURED_ACTIVE : NOT_FEATURED_ACTIVE);
+
+        Map<String, Object> params = new HashMap<>();
+        if (ids != null) {
+            jpql.append(" AND p.id IN :ids");
+            params.put("ids", ids);
+        }
+        appendFilterPredicates(filter, jpql, params);
+        jpql.append(" ORDER BY p.id DESC");
+
+        TypedQuery<Object[]> query = entityManager.createQuery(jpql.toString(), Object[].class);
+        params.forEach(query::setParameter);
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+
+    /**
+     * Completa le card con gli ID delle immagini: una query per blocco di prodotti,
+     * solo chiavi (nessuna colonna data)
+     */
+    private void attachImageIds(List<ProductCardView> cards) {
+        if (cards.isEmpty()) {
+            return;
+        }
+        List<Long> productIds = new ArrayList<>(cards.size());
+        cards.forEach(card -> productIds.add(card.getId()));
+
+        Map<Long, List<Long>> imageIds = new HashMap<>();
+        for (int from = 0; from < productIds.size(); from += ID_BATCH_SIZE) {
+            List<Long> batch = productIds.subList(from, Math.min(from + ID_BATCH_SIZE, productIds.size()));
+            List<Object[]> rows = entityManager.createQuery(
+                            "SELECT i.product.id, i.id FROM Image i WHERE i.product.id IN :ids ORDER BY i.id",
+                            Object[].class)
+                    .setParameter("ids", batch)
+                    .getResultList();
+            for (Object[] row : rows) {
+                imageIds.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((Long) row[1]);
+            }
+        }
+        cards.forEach(card -> card.setImageIds(imageIds.get(card.getId())));
+    }
+
+    private List<FacetCombination> runFacetQuery(ProductFilter filter, Collection<Long> ids) {
+        StringBuilder jpql = new StringBuilder("SELECT new it.uniroma3.siwprogetto.model.FacetCombination(" +
+                "p.category, p.brand, p.model, p.fuelType, p.transmission, COUNT(p)) FROM Product p WHERE 1 = 1");
+        Map<String, Object> params = new HashMap<>();
+        if (ids != null) {
+            jpql.append(" AND p.id IN :ids");
+            params.put("ids", ids);
+        }
+        appendRangePredicates(filter, jpql, params);
+        jpql.append(" GROUP BY p.category, p.brand, p.model, p.fuelType, p.transmission");
+
+        TypedQuery<FacetCombination> query = entityManager.createQuery(jpql.toString(), FacetCombination.class);
+        params.forEach(query::setParameter);
+        return query.getResultList();
+    }
+
+    /**
+     * Aggiunge solo i predicati dei filtri valorizzati
+     * (evita il pattern ":param IS NULL OR ..." che impedisce l'uso degli indici)
+     */
+    static void appendFilterPredicates(ProductFilter filter, StringBuilder jpql, Map<String, Object> params) {
+        appendPredicate(jpql, params, "p.category = :category", "category", filter.getCategory());
+        appendPredicate(jpql, params, "p.brand = :brand", "brand", filter.getBrand());
+        appendPredicate(jpql, params, "p.model = :model", "model", filter.getModel());
+        appendPredicate(jpql, params, "p.fuelType = :fuelType", "fuelType", filter.getFuelType());
+        appendPredicate(jpql, params, "p.transmission = :transmission", "transmission", filter.getTransmission());
+        appendRangePredicates(filter, jpql, params);
+    }
+
+    /**
+     * Aggiunge i soli filtri a intervallo (prezzo, chilometraggio, anno)
+     */
+    static void appendRangePredicates(ProductFilter filter, StringBuilder jpql, Map<String, Object> params) {
+        appendPredicate(jpql, params, "p.price >= :minPrice", "minPrice", filter.getMinPrice());
+        appendPredicate(jpql, params, "p.price <= :maxPrice", "maxPrice", filter.getMaxPrice());
+        appendPredicate(jpql, params, "p.mileage >= :minMileage", "minMileage", filter.getMinMileage());
+        appendPredicate(jpql, params, "p.mileage <= :maxMileage", "maxMileage", filter.getMaxMileage());
+        appendPredicate(jpql, params, "p.year >= :minYear", "minYear", filter.getMinYear());
+        appendPredicate(jpql, params, "p.year <= :maxYear", "maxYear", filter.getMaxYear());
+    }
+
+    private static void appendPredicate(StringBuilder jpql, Map<String, Object> params,
+                                        String predicate, String name, Object value) {
+        if (value != null) {
+            jpql.append(" AND ").append(predicate);
+            params.put(name, value);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package it.uniroma3.siwprogetto.service;
 
 import it.uniroma3.siwprogetto.model.Dealer;
 import it.uniroma3.siwprogetto.model.Product;
+import it.uniroma3.siwprogetto.model.ProductCardView;
 import it.uniroma3.siwprogetto.model.Subscription;
 import it.uniroma3.siwprogetto.model.User;
 import it.uniroma3.siwprogetto.repository.DealerRepository;
@@ -89,6 +90,18 @@ public class AdminService {
     @Autowired
     private DealerService dealerService;
 
+    /**
+     * Geocodifica dell'indirizzo dei dealer modificati
+     */
+    @Autowired
+    private DealerGeocoder dealerGeocoder;
+
+    /**
+     * Eliminazione set-based dei prodotti rimanenti di un utente
+     */
+    @Autowired
+    private InventoryBulkDeleter inventoryBulkDeleter;
+
     /**
      * Trova prodotto per ID con autorizzazione amministrativa
      * 
@@ -257,6 +270,7 @@ public class AdminService {
         dealer.setPhone(updatedDealer.getPhone());
         dealer.setEmail(updatedDealer.getEmail());
         dealer.setImages(updatedDealer.getImages()); // Gestione immagini come lista
+        dealerGeocoder.locate(dealer); // Coordinate dal nuovo indirizzo
 
         Dealer savedDealer = dealerRepository.save(dealer);
         logger.info("Dealer updated by admin: id={}, name={}", savedDealer.getId(), savedDealer.getName());
@@ -361,7 +375,7 @@ public class AdminService {
      * 
      * Elimination Strategy (multi-step):
      * 1. Elimina dealer associato (cascade prodotti dealer)
-     * 2. Elimina prodotti rimanenti non dealer-associated
+     * 2. Elimina prodotti rimanenti non dealer-associated (InventoryBulkDeleter)
      * 3. Elimina user (subscription gestite da DB constraints)
      * 4. Cleanup file system e cache
      * 
@@ -389,20 +403,13 @@ public class AdminService {
                 dealerService.deleteDealer(dealer.get().getId());
             }
 
-            // Step 2: Elimina prodotti rimanenti non associati a dealer
-            List<Product> products = productRepository.findBySeller(user);
-            for (Product product : products) {
-                try {
-                    logger.debug("Deleting remaining product: {}", product.getId());
-                    dealerService.deleteProduct(product.getId());
-                } catch (Exception e) {
-                    logger.warn("Could not delete product {}: {}", product.getId(), e.getMessage());
-                    // Continue with other products
-                }
-            }
+            // Step 2: Elimina prodotti rimanenti non associati a dealer (set-based)
+            int deletedProducts = inventoryBulkDeleter.deleteInventory(userId);
+            logger.debug("Deleted {} remaining products for user {}", deletedProducts, userId);
 
             // Step 3: Elimina utente (subscription cascade o constraint)
-            userRepository.delete(user);
+            // Ricaricato per ID: l'istanza letta sopra è detached dopo le DELETE in blocco
+            userRepository.deleteById(userId);
             logger.info("User deleted by admin: id={}", userId);
 
         } catch (Exception e) {
@@ -423,12 +430,12 @@ public class AdminService {
      * - Statistiche inventory globale
      * 
      * Performance:
-     * - Query potenzialmente costosa per grandi cataloghi
+     * - Proiezione ProductCardView: solo campi card e ID immagine, nessun blob
      * - Considerare paginazione per UI responsive
      */
     @PreAuthorize("hasRole('ADMIN')")
-    public List<Product> findAllProducts() {
-        return (List<Product>) productRepository.findAll();
+    public List<ProductCardView> findAllProducts() {
+        return productRepository.findAllCards();
     }
 
     /**
@@ -0,0 +1,155 @@
+package it.uniroma3.siwprogetto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.uniroma3.siwprogetto.model.FacetCombination;
+import it.uniroma3.siwprogetto.model.ProductChangeEvent;
+import it.uniroma3.siwprogetto.model.ProductFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache limitata delle faccette e dei dati di riferimento del catalogo
+ * (categorie, marche, modelli per marca, carburanti, cambi)
+ *
+ * Strategia:
+ * - LRU con numero massimo di filtri in cache (catalog.facet-cache.max-entries)
+ * - Nessuna scadenza temporale: i dati cambiano solo quando cambia un prodotto
+ * - A ogni ProductChangeEvent i conteggi di ogni voce vengono aggiornati
+ *   esattamente (-1 stato prima, +1 stato dopo), senza invalidare né rileggere
+ *
+ * Coerenza:
+ * - Aggiornamenti applicati dopo il commit (@TransactionalEventListener)
+ * - Un valore calcolato mentre arriva una modifica non viene memorizzato
+ *   (contatore di versione), per non conservare aggregati già superati
+ *
+ * Metriche (Micrometer):
+ * - catalog.cache.requests{cache=facets,result=hit|miss}
+ * - catalog.cache.updates{cache=facets}
+ * - catalog.cache.size{cache=facets}
+ * - catalog.singleflight.calls{flight=facets,...} (coalescenza dei miss)
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class CatalogFacetCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogFacetCache.class);
+
+    private final Map<ProductFilter, FacetCounts> entries;
+
+    /** Incrementato a ogni modifica confermata di un prodotto */
+    private final AtomicLong version = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter updates;
+
+    /** Un solo aggregato per filtro anche con molti miss concorrenti */
+    private final SingleFlight<ProductFilter, FacetCounts> loads;
+
+    public CatalogFacetCache(MeterRegistry meterRegistry,
+                             @Value("${catalog.facet-cache.max-entries:500}") int maxEntries,
+                             @Value("${catalog.single-flight.max-wait-ms:2000}") long maxWaitMillis) {
+        this.loads = new SingleFlight<>("facets", maxWaitMillis, meterRegistry);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ProductFilter, FacetCounts> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.hits = Counter.builder("catalog.cache.requests").tag("cache", "facets").tag("result", "hit")
+                .description("Richieste servite dalla cache faccette").register(meterRegistry);
+        this.misses = Counter.builder("catalog.cache.requests").tag("cache", "facets").tag("result", "miss")
+                .description("Richieste che hanno richiesto la query aggregata").register(meterRegistry);
+        this.updates = Counter.builder("catalog.cache.updates").tag("cache", "facets")
+                .description("Aggiornamenti incrementali applicati alle voci in cache").register(meterRegistry);
+        Gauge.builder("catalog.cache.size", this, CatalogFacetCache::size).tag("cache", "facets")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Restituisce i conteggi per il filtro, calcolandoli con il loader solo in caso di miss
+     * I miss concorrenti sullo stesso filtro condividono un'unica query aggregata
+     *
+     * @param filter Filtro (chiave di cache)
+     * @param loader Query aggregata da eseguire in caso di miss
+     * @return Conteggi del filtro
+     */
+    FacetCounts get(ProductFilter filter, Supplier<List<FacetCombination>> loader) {
+        synchronized (entries) {
+            FacetCounts cached = entries.get(filter);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+
+        return loads.execute(filter, () -> {
+            long versionBefore = version.get();
+            FacetCounts loaded = FacetCounts.build(filter, loader.get());
+            synchronized (entries) {
+                if (version.get() == versionBefore) {
+                    entries.put(filter, loaded);
+                }
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * Aggiorna tutte le voci in cache con la modifica confermata
+     *
+     * @param event Evento con stato prima/dopo del prodotto
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChange(ProductChangeEvent event) {
+        synchronized (entries) {
+            version.incrementAndGet();
+            int touched = 0;
+            for (FacetCounts counts : entries.values()) {
+                boolean changed = false;
+                if (event.getBefore() != null) {
+                    changed |= counts.apply(event.getBefore(), -1);
+                }
+                if (event.getAfter() != null) {
+                    changed |= counts.apply(event.getAfter(), +1);
+                }
+                if (changed) {
+                    touched++;
+                }
+            }
+            updates.increment(touched);
+            logger.debug("Cache faccette aggiornata per {}: {} voci su {}", event, touched, entries.size());
+        }
+    }
+
+    /**
+     * Svuota la cache (es: dopo operazioni massive fuori dal persistence context)
+     */
+    public void clear() {
+        synchronized (entries) {
+            version.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
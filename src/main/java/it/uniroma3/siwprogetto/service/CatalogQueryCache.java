@@ -0,0 +1,334 @@
+package it.uniroma3.siwprogetto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.uniroma3.siwprogetto.model.ProductCardView;
+import it.uniroma3.siwprogetto.model.ProductChangeEvent;
+import it.uniroma3.siwprogetto.model.ProductCursor;
+import it.uniroma3.siwprogetto.model.ProductFilter;
+import it.uniroma3.siwprogetto.model.ProductIdList;
+import it.uniroma3.siwprogetto.model.ProductPage;
+import it.uniroma3.siwprogetto.model.ProductSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache dei risultati delle ricerche del catalogo (liste ordinate di ID)
+ *
+ * Chiave:
+ * - ProductFilter già normalizzato dal controller; la query testuale è ridotta
+ *   ai token dell'indice, così "Fiat Panda" e "fiat  panda" condividono la voce
+ *
+ * Valore:
+ * - ProductIdList: soli ID nell'ordinamento del catalogo, mai entità
+ * - I risultati oltre catalog.query-cache.max-ids-per-entry sono registrati come
+ *   "troppo grandi": il chiamante usa la paginazione keyset senza rileggere gli ID
+ *
+ * Coalescenza (catalog.single-flight.max-wait-ms):
+ * - Miss concorrenti sulla stessa chiave eseguono una sola query degli ID
+ * - Le pagine keyset dei risultati troppo grandi non sono memorizzate,
+ *   ma richieste identiche concorrenti condividono la stessa query
+ *
+ * Eviction:
+ * - LRU limitata per numero di voci e per numero totale di ID in memoria
+ * - TTL (catalog.query-cache.ttl-seconds), anticipato alla prima scadenza di evidenza
+ *   dei prodotti in lista, perché l'ordinamento cambia senza scritture sul database
+ *
+ * Invalidazione mirata:
+ * - A ogni ProductChangeEvent confermato si rimuovono solo le voci il cui filtro
+ *   è soddisfatto dallo stato prima o dopo del prodotto
+ *   (es: una modifica a una Fiat non tocca la voce brand=BMW)
+ *
+ * Metriche (Micrometer):
+ * - catalog.cache.requests{cache=queries,result=hit|miss}
+ * - catalog.cache.evictions{cache=queries,cause=write|expired|size}
+ * - catalog.cache.hit.ratio{cache=queries}
+ * - catalog.cache.entry.size{cache=queries} (byte per voce memorizzata)
+ * - catalog.cache.memory{cache=queries} (byte totali stimati)
+ * - catalog.cache.size{cache=queries}
+ * - catalog.singleflight.calls{flight=queries|pages,...} (coalescenza)
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class CatalogQueryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogQueryCache.class);
+
+    /** Stima dell'overhead per voce (chiave, nodo della mappa, metadati) */
+    private static final long ENTRY_OVERHEAD_BYTES = 256;
+
+    private final Map<ProductFilter, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int maxEntries;
+    private final long maxIds;
+    private final int maxIdsPerEntry;
+    private final long ttlSeconds;
+
+    /** Incrementato a ogni modifica confermata di un prodotto */
+    private final AtomicLong version = new AtomicLong();
+
+    private long totalIds;
+    private long totalBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter writeEvictions;
+    private final Counter expiredEvictions;
+    private final Counter sizeEvictions;
+    private final DistributionSummary entrySize;
+
+    /** Un solo caricamento per chiave anche con molti miss concorrenti */
+    private final SingleFlight<ProductFilter, ProductIdList> loads;
+
+    /** Una sola query keyset per (filtro, cursore, dimensione) in corso */
+    private final SingleFlight<List<Object>, ProductPage<ProductCardView>> pages;
+
+    public CatalogQueryCache(MeterRegistry meterRegistry,
+                             @Value("${catalog.query-cache.max-entries:1000}") int maxEntries,
+                             @Value("${catalog.query-cache.max-ids:500000}") long maxIds,
+                             @Value("${catalog.query-cache.max-ids-per-entry:20000}") int maxIdsPerEntry,
+                             @Value("${catalog.query-cache.ttl-seconds:300}") long ttlSeconds,
+                             @Value("${catalog.single-flight.max-wait-ms:2000}") long maxWaitMillis) {
+        this.loads = new SingleFlight<>("queries", maxWaitMillis, meterRegistry);
+        this.pages = new SingleFlight<>("pages", maxWaitMillis, meterRegistry);
+        this.maxEntries = maxEntries;
+        this.maxIds = maxIds;
+        this.maxIdsPerEntry = maxIdsPerEntry;
+        this.ttlSeconds = ttlSeconds;
+
+        this.hits = Counter.builder("catalog.cache.requests").tag("cache", "queries").tag("result", "hit")
+                .description("Ricerche servite dalla cache dei risultati").register(meterRegistry);
+        this.misses = Counter.builder("catalog.cache.requests").tag("cache", "queries").tag("result", "miss")
+                .description("Ricerche eseguite sul database").register(meterRegistry);
+        this.writeEvictions = evictionCounter(meterRegistry, "write");
+        this.expiredEvictions = evictionCounter(meterRegistry, "expired");
+        this.sizeEvictions = evictionCounter(meterRegistry, "size");
+        this.entrySize = DistributionSummary.builder("catalog.cache.entry.size").tag("cache", "queries")
+                .baseUnit("bytes").description("Memoria stimata per voce memorizzata").register(meterRegistry);
+        Gauge.builder("catalog.cache.hit.ratio", this, CatalogQueryCache::hitRatio).tag("cache", "queries")
+                .register(meterRegistry);
+        Gauge.builder("catalog.cache.memory", this, CatalogQueryCache::memoryBytes).tag("cache", "queries")
+                .baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("catalog.cache.size", this, CatalogQueryCache::size).tag("cache", "queries")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Restituisce gli ID ordinati per il filtro, eseguendo il loader solo in caso di miss
+     * I miss concorrenti sulla stessa chiave condividono un'unica esecuzione del loader
+     *
+     * @param filter Filtro della ricerca
+     * @param loader Query degli ID (riceve il limite per voce, restituisce null se superato)
+     * @return ID ordinati, null se il risultato è troppo grande per la cache
+     */
+    ProductIdList get(ProductFilter filter, IdLoader loader) {
+        ProductFilter key = keyOf(filter);
+        synchronized (entries) {
+            Entry cached = entries.get(key);
+            if (cached != null) {
+                if (LocalDateTime.now().isBefore(cached.expiresAt)) {
+                    hits.increment();
+                    return cached.ids;
+                }
+                remove(key);
+                expiredEvictions.increment();
+            }
+        }
+        misses.increment();
+
+        return loads.execute(key, () -> {
+            long versionBefore = version.get();
+            ProductIdList loaded = loader.load(maxIdsPerEntry);
+            synchronized (entries) {
+                if (version.get() == versionBefore) {
+                    put(key, new Entry(loaded, expiryOf(loaded)));
+                }
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * Pagina keyset di un risultato troppo grande per la cache (get ha restituito null)
+     * Nulla viene memorizzato: le richieste identiche concorrenti condividono la query
+     *
+     * @param filter Filtro della ricerca
+     * @param after Cursore della pagina, null per la prima
+     * @param pageSize Dimensione della pagina
+     * @param loader Query keyset della pagina
+     * @return Pagina di card (DTO immutabili, condivisibili tra thread)
+     */
+    ProductPage<ProductCardView> page(ProductFilter filter, ProductCursor after, int pageSize,
+                                      Supplier<ProductPage<ProductCardView>> loader) {
+        List<Object> key = Arrays.asList(keyOf(filter), after != null ? after.toToken() : null, pageSize);
+        return pages.execute(key, loader);
+    }
+
+    /**
+     * Rimuove le voci che la modifica confermata può aver reso obsolete
+     *
+     * @param event Evento con stato prima/dopo del prodotto
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChange(ProductChangeEvent event) {
+        synchronized (entries) {
+            version.incrementAndGet();
+            int evicted = 0;
+            Iterator<Map.Entry<ProductFilter, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<ProductFilter, Entry> entry = it.next();
+                if (couldMatch(entry.getKey(), event.getBefore()) || couldMatch(entry.getKey(), event.getAfter())) {
+                    release(entry.getValue());
+                    it.remove();
+                    evicted++;
+                }
+            }
+            writeEvictions.increment(evicted);
+            logger.debug("Cache ricerche: {} voci invalidate su {} per {}", evicted, entries.size() + evicted, event);
+        }
+    }
+
+    /**
+     * Svuota la cache (es: dopo operazioni massive fuori dal persistence context)
+     */
+    public void clear() {
+        synchronized (entries) {
+            version.incrementAndGet();
+            entries.clear();
+            totalIds = 0;
+            totalBytes = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // === METODI PRIVATI ===
+
+    /**
+     * Chiave normalizzata: la query testuale è ridotta ai token usati dall'indice
+     */
+    private static ProductFilter keyOf(ProductFilter filter) {
+        if (!filter.hasQuery()) {
+            return filter.getQuery() == null ? filter : filter.withQuery(null);
+        }
+        return filter.withQuery(String.join(" ", ProductSearchIndex.tokenize(filter.getQuery())));
+    }
+
+    private static boolean couldMatch(ProductFilter key, ProductSnapshot snapshot) {
+        return snapshot != null
+                && key.matches(snapshot)
+                && (!key.hasQuery() || ProductSearchIndex.matchesQuery(snapshot, key.getQuery()));
+    }
+
+    private LocalDateTime expiryOf(ProductIdList ids) {
+        LocalDateTime expiresAt = LocalDateTime.now().plusSeconds(ttlSeconds);
+        if (ids != null && ids.getFeaturedExpiry() != null && ids.getFeaturedExpiry().isBefore(expiresAt)) {
+            expiresAt = ids.getFeaturedExpiry();
+        }
+        return expiresAt;
+    }
+
+    /** Chiamato con il lock su entries */
+    private void put(ProductFilter key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            release(previous);
+        }
+        totalIds += entry.idCount();
+        totalBytes += entry.bytes;
+        entrySize.record(entry.bytes);
+
+        // Eviction LRU finché entrambi i limiti sono rispettati
+        Iterator<Map.Entry<ProductFilter, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalIds > maxIds) && eldest.hasNext()) {
+            Map.Entry<ProductFilter, Entry> victim = eldest.next();
+            if (victim.getValue() == entry) {
+                break;
+            }
+            release(victim.getValue());
+            eldest.remove();
+            sizeEvictions.increment();
+        }
+    }
+
+    /** Chiamato con il lock su entries */
+    private void remove(ProductFilter key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            release(removed);
+        }
+    }
+
+    private void release(Entry entry) {
+        totalIds -= entry.idCount();
+        totalBytes -= entry.bytes;
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0.0 : hits.count() / total;
+    }
+
+    private double memoryBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    private static Counter evictionCounter(MeterRegistry meterRegistry, String cause) {
+        return Counter.builder("catalog.cache.evictions").tag("cache", "queries").tag("cause", cause)
+                .description("Voci rimosse dalla cache dei risultati").register(meterRegistry);
+    }
+
+    // === STRUTTURE INTERNE ===
+
+    /**
+     * Esecuzione della query degli ID in caso di miss
+     */
+    @FunctionalInterface
+    interface IdLoader {
+        /**
+         * @param limit Numero massimo di ID memorizzabili per voce
+         * @return ID ordinati, null se il risultato supera limit
+         */
+        ProductIdList load(int limit);
+    }
+
+    private static final class Entry {
+        /** null = risultato troppo grande, servito con paginazione keyset */
+        private final ProductIdList ids;
+        private final LocalDateTime expiresAt;
+        private final long bytes;
+
+        private Entry(ProductIdList ids, LocalDateTime expiresAt) {
+            this.ids = ids;
+            this.expiresAt = expiresAt;
+            this.bytes = ENTRY_OVERHEAD_BYTES + (ids != null ? ids.estimatedBytes() : 0);
+        }
+
+        private int idCount() {
+            return ids != null ? ids.size() : 0;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.ProductChangeEvent;
+import it.uniroma3.siwprogetto.model.ProductCursor;
+import it.uniroma3.siwprogetto.model.ProductFilter;
+import it.uniroma3.siwprogetto.model.ProductSnapshot;
+import it.uniroma3.siwprogetto.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Snapshot colonnare in-memory del catalogo per la valutazione dei filtri
+ * Motore di lettura alternativo alla JPQL, attivato con catalog.read-engine=columnar
+ *
+ * Layout (una riga per prodotto, righe ordinate per id DESC):
+ * - long[] id, long[] prezzo in centesimi, int[] chilometraggio, int[] anno
+ * - int[] codici dizionario per categoria, marca, modello, carburante, cambio
+ * - boolean[] evidenza e long[] scadenza evidenza (epoch millisecondi)
+ *
+ * Valutazione:
+ * - Cicli stretti su array primitivi, senza allocazioni per riga
+ * - Ordinamento per id già garantito dal layout: la pagina keyset parte da una
+ *   ricerca binaria sul cursore e si ferma a pageSize + 1 righe
+ * - Restituisce solo gli ID: le entità sono caricate solo per la pagina visibile
+ *
+ * Semantica identica al percorso JPQL (ProductRepositoryImpl):
+ * - Uguaglianza esatta sulle dimensioni, valori null esclusi da ogni filtro impostato
+ * - Prezzo confrontato in centesimi (colonna numeric con scala 2); prezzi e limiti oltre
+ *   l'intervallo di long (circa ±9,2 * 10^16 euro) saturano agli estremi invece di fallire
+ * - Rank evidenza calcolato sull'istante della richiesta
+ *
+ * Aggiornamento incrementale a ogni ProductChangeEvent confermato.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class ColumnarCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarCatalog.class);
+
+    /** Sentinella per valori null nelle colonne numeriche */
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+
+    /** Codice dizionario per valori null */
+    private static final int NULL_CODE = -1;
+
+    /** Codice restituito per un valore di filtro assente dal dizionario */
+    private static final int UNKNOWN = -2;
+
+    /** Centesimi rappresentabili (NULL_LONG escluso: è la sentinella dei valori null) */
+    private static final BigDecimal MAX_CENTS = BigDecimal.valueOf(Long.MAX_VALUE);
+    private static final BigDecimal MIN_CENTS = BigDecimal.valueOf(NULL_LONG + 1);
+
+    /** Scadenza evidenza assente: evidenza permanente */
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    /** Motore di lettura configurato: "jpql" (default) o "columnar" */
+    @Value("${catalog.read-engine:jpql}")
+    private String readEngine;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int size;
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] priceCents = new long[INITIAL_CAPACITY];
+    private int[] mileage = new int[INITIAL_CAPACITY];
+    private int[] year = new int[INITIAL_CAPACITY];
+    private int[] categoryCode = new int[INITIAL_CAPACITY];
+    private int[] brandCode = new int[INITIAL_CAPACITY];
+    private int[] modelCode = new int[INITIAL_CAPACITY];
+    private int[] fuelCode = new int[INITIAL_CAPACITY];
+    private int[] transmissionCode = new int[INITIAL_CAPACITY];
+    private boolean[] featured = new boolean[INITIAL_CAPACITY];
+    private long[] featuredUntil = new long[INITIAL_CAPACITY];
+
+    /** Dizionario unico per tutte le colonne testuali: valore → codice */
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    private volatile boolean ready = false;
+
+    /**
+     * @return True se il motore colonnare è configurato e lo snapshot è stato costruito
+     */
+    public boolean isActive() {
+        return ready && isEnabled();
+    }
+
+    public boolean isEnabled() {
+        return "columnar".equalsIgnoreCase(readEngine);
+    }
+
+    // === COSTRUZIONE E AGGIORNAMENTO ===
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            List<ProductSnapshot> snapshots = new ArrayList<>(productRepository.findAllSnapshots());
+            snapshots.sort((a, b) -> Long.compare(b.getId(), a.getId()));
+            size = 0;
+            ensureCapacity(snapshots.size());
+            for (ProductSnapshot snapshot : snapshots) {
+                writeRow(size++, snapshot);
+            }
+            ready = true;
+            logger.info("Catalogo colonnare costruito: {} righe, {} valori nel dizionario in {} ms",
+                    size, dictionary.size(), System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChange(ProductChangeEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long id = event.getProductId();
+            int pos = positionOf(id);
+            if (event.getAfter() == null) {
+                if (pos >= 0) {
+                    removeRow(pos);
+                }
+            } else if (pos >= 0) {
+                writeRow(pos, event.getAfter());
+            } else {
+                insertRow(-pos - 1, event.getAfter());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // === INTERROGAZIONE ===
+
+    /**
+     * Calcola gli ID della pagina keyset per il filtro
+     *
+     * @param filter Filtri strutturati (la query testuale deve essere già risolta in candidateIds)
+     * @param candidateIds ID candidati della ricerca testuale, null per nessuna restrizione
+     * @param after Cursore dell'ultima riga vista, null per la prima pagina
+     * @param pageSize Dimensione pagina
+     * @return ID della pagina (fino a pageSize + 1, l'ultimo serve a rilevare la pagina successiva)
+     *         e numero di righe con rank "in evidenza" in testa alla lista
+     */
+    public PageIds findPageIds(ProductFilter filter, Collection<Long> candidateIds, ProductCursor after, int pageSize) {
+        lock.readLock().lock();
+        try {
+            int fetchSize = pageSize + 1;
+            long[] result = new long[fetchSize];
+            int count = 0;
+            int featuredRows = 0;
+
+            // Filtri tradotti una sola volta in codici e limiti primitivi
+            int category = codeFor(filter.getCategory());
+            int brand = codeFor(filter.getBrand());
+            int model = codeFor(filter.getModel());
+            int fuel = codeFor(filter.getFuelType());
+            int transmission = codeFor(filter.getTransmission());
+            if (category == UNKNOWN || brand == UNKNOWN || model == UNKNOWN || fuel == UNKNOWN || transmission == UNKNOWN) {
+                return new PageIds(new long[0], 0); // Valore mai visto: nessun prodotto può corrispondere
+            }
+            long minPrice = toCentsBound(filter.getMinPrice(), RoundingMode.CEILING);
+            long maxPrice = toCentsBound(filter.getMaxPrice(), RoundingMode.FLOOR);
+            boolean hasMinPrice = filter.getMinPrice() != null;
+            boolean hasMaxPrice = filter.getMaxPrice() != null;
+            boolean hasMinMileage = filter.getMinMileage() != null;
+            boolean hasMaxMileage = filter.getMaxMileage() != null;
+            boolean hasMinYear = filter.getMinYear() != null;
+            boolean hasMaxYear = filter.getMaxYear() != null;
+            int minMileage = hasMinMileage ? filter.getMinMileage() : 0;
+            int maxMileage = hasMaxMileage ? filter.getMaxMileage() : 0;
+            int minYear = hasMinYear ? filter.getMinYear() : 0;
+            int maxYear = hasMaxYear ? filter.getMaxYear() : 0;
+
+            BitSet candidates = null;
+            if (candidateIds != null) {
+                candidates = new BitSet(size);
+                for (Long candidate : candidateIds) {
+                    int pos = positionOf(candidate);
+                    if (pos >= 0) {
+                        candidates.set(pos);
+                    }
+                }
+            }
+
+            long now = toEpochMillis(LocalDateTime.now());
+            int startRank = after != null ? after.getRank() : ProductCursor.RANK_FEATURED;
+            for (int rank = startRank; rank <= ProductCursor.RANK_STANDARD && count < fetchSize; rank++) {
+                boolean wantFeatured = rank == ProductCursor.RANK_FEATURED;
+                int start = 0;
+                if (after != null && rank == after.getRank()) {
+                    int pos = positionOf(after.getId());
+                    start = pos >= 0 ? pos + 1 : -pos - 1;
+                }
+                for (int i = start; i < size && count < fetchSize; i++) {
+                    boolean active = featured[i] && featuredUntil[i] > now;
+                    if (active != wantFeatured
+                            || (candidates != null && !candidates.get(i))
+                            || (category != NULL_CODE && categoryCode[i] != category)
+                            || (brand != NULL_CODE && brandCode[i] != brand)
+                            || (model != NULL_CODE && modelCode[i] != model)
+                            || (fuel != NULL_CODE && fuelCode[i] != fuel)
+                            || (transmission != NULL_CODE && transmissionCode[i] != transmission)
+                            || (hasMinPrice && (priceCents[i] == NULL_LONG || priceCents[i] < minPrice))
+                            || (hasMaxPrice && (priceCents[i] == NULL_LONG || priceCents[i] > maxPrice))
+                            || (hasMinMileage && (mileage[i] == NULL_INT || mileage[i] < minMileage))
+                            || (hasMaxMileage && (mileage[i] == NULL_INT || mileage[i] > maxMileage))
+                            || (hasMinYear && (year[i] == NULL_INT || year[i] < minYear))
+                            || (hasMaxYear && (year[i] == NULL_INT || year[i] > maxYear))) {
+                        continue;
+                    }
+                    result[count++] = ids[i];
+                }
+                if (wantFeatured) {
+                    featuredRows = count;
+                }
+            }
+            return new PageIds(Arrays.copyOf(result, count), featuredRows);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ID di una pagina calcolata dal motore colonnare
+     */
+    public static final class PageIds {
+        private final long[] ids;
+        private final int featuredRows;
+
+        PageIds(long[] ids, int featuredRows) {
+            this.ids = ids;
+            this.featuredRows = featuredRows;
+        }
+
+        /** @return ID in ordine di pagina (rank evidenza, id DESC) */
+        public long[] getIds() { return ids; }
+
+        /** @return Numero di ID iniziali con rank "in evidenza" */
+        public int getFeaturedRows() { return featuredRows; }
+    }
+
+    // === METODI PRIVATI (chiamati sotto lock) ===
+
+    /**
+     * Converte un limite di prezzo in centesimi arrotondando verso l'interno dell'intervallo
+     * (i prezzi in colonna hanno scala 2, quindi il confronto resta esatto)
+     */
+    private static long toCentsBound(BigDecimal bound, RoundingMode rounding) {
+        if (bound == null) {
+            return NULL_LONG;
+        }
+        return clampCents(bound.movePointRight(2).setScale(0, rounding));
+    }
+
+    /**
+     * Centesimi limitati all'intervallo rappresentabile (stessa saturazione per prezzi e limiti)
+     */
+    private static long clampCents(BigDecimal cents) {
+        if (cents.compareTo(MAX_CENTS) > 0) {
+            return Long.MAX_VALUE;
+        }
+        if (cents.compareTo(MIN_CENTS) < 0) {
+            return NULL_LONG + 1;
+        }
+        return cents.longValue();
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private int codeFor(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = dictionary.get(value);
+        return code != null ? code : UNKNOWN;
+    }
+
+    private int encode(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        return dictionary.computeIfAbsent(value, v -> dictionary.size());
+    }
+
+    /**
+     * Ricerca binaria sull'array degli id (ordinato DESC)
+     *
+     * @return Posizione se presente, altrimenti -(punto di inserimento) - 1
+     */
+    private int positionOf(long id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = ids[mid];
+            if (midId > id) {
+                low = mid + 1;
+            } else if (midId < id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void writeRow(int pos, ProductSnapshot s) {
+        ids[pos] = s.getId();
+        BigDecimal price = s.getPrice();
+        priceCents[pos] = price != null
+                ? clampCents(price.setScale(2, RoundingMode.HALF_UP).movePointRight(2)) : NULL_LONG;
+        mileage[pos] = s.getMileage() != null ? s.getMileage() : NULL_INT;
+        year[pos] = s.getYear() != null ? s.getYear() : NULL_INT;
+        categoryCode[pos] = encode(s.getCategory());
+        brandCode[pos] = encode(s.getBrand());
+        modelCode[pos] = encode(s.getModel());
+        fuelCode[pos] = encode(s.getFuelType());
+        transmissionCode[pos] = encode(s.getTransmission());
+        featured[pos] = s.isFeatured();
+        featuredUntil[pos] = s.getFeaturedUntil() != null ? toEpochMillis(s.getFeaturedUntil()) : NO_EXPIRY;
+    }
+
+    private void insertRow(int pos, ProductSnapshot snapshot) {
+        ensureCapacity(size + 1);
+        shift(pos, pos + 1, size - pos);
+        size++;
+        writeRow(pos, snapshot);
+    }
+
+    private void removeRow(int pos) {
+        shift(pos + 1, pos, size - pos - 1);
+        size--;
+    }
+
+    private void shift(int from, int to, int length) {
+        if (length <= 0) {
+            return;
+        }
+        System.arraycopy(ids, from, ids, to, length);
+        System.arraycopy(priceCents, from, priceCents, to, length);
+        System.arraycopy(mileage, from, mileage, to, length);
+        System.arraycopy(year, from, year, to, length);
+        System.arraycopy(categoryCode, from, categoryCode, to, length);
+        System.arraycopy(brandCode, from, brandCode, to, length);
+        System.arraycopy(modelCode, from, modelCode, to, length);
+        System.arraycopy(fuelCode, from, fuelCode, to, length);
+        System.arraycopy(transmissionCode, from, transmissionCode, to, length);
+        System.arraycopy(featured, from, featured, to, length);
+        System.arraycopy(featuredUntil, from, featuredUntil, to, length);
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(required, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        priceCents = Arrays.copyOf(priceCents, capacity);
+        mileage = Arrays.copyOf(mileage, capacity);
+        year = Arrays.copyOf(year, capacity);
+        categoryCode = Arrays.copyOf(categoryCode, capacity);
+        brandCode = Arrays.copyOf(brandCode, capacity);
+        modelCode = Arrays.copyOf(modelCode, capacity);
+        fuelCode = Arrays.copyOf(fuelCode, capacity);
+        transmissionCode = Arrays.copyOf(transmissionCode, capacity);
+        featured = Arrays.copyOf(featured, capacity);
+        featuredUntil = Arrays.copyOf(featuredUntil, capacity);
+    }
+}
@@ -0,0 +1,345 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.DealerChangeEvent;
+import it.uniroma3.siwprogetto.model.DealerSnapshot;
+import it.uniroma3.siwprogetto.repository.DealerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Indice spaziale in-memory dei concessionari geolocalizzati
+ *
+ * Struttura:
+ * - Griglia regolare di celle di dealers.geo.cell-degrees gradi (lat/lon)
+ * - Map cella → dealer contenuti, Map ID dealer → posizione per aggiornamenti puntuali
+ *
+ * Interrogazioni:
+ * - within: dealer entro un raggio, scandendo solo le celle del riquadro del cerchio
+ * - nearest: k dealer più vicini, ad anelli di celle crescenti attorno al punto
+ * - Distanze con la formula dell'emisfero (haversine), risultati in ordine di distanza
+ *
+ * Aggiornamento:
+ * - Build all'avvio dalla proiezione DealerSnapshot; i dealer senza coordinate
+ *   (es: creati prima della geolocalizzazione) vengono geocodificati e aggiornati
+ * - Incrementale a ogni DealerChangeEvent, dopo il commit
+ *
+ * Performance:
+ * - Costo proporzionale alle celle visitate e ai dealer che contengono,
+ *   non al numero totale di concessionari
+ * - Lock lettura/scrittura: ricerche concorrenti, aggiornamenti serializzati
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class DealerGeoIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(DealerGeoIndex.class);
+
+    /** Raggio medio terrestre */
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /** Lunghezza di un grado di latitudine */
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    private final DealerRepository dealerRepository;
+    private final DealerGeocoder geocoder;
+    private final TransactionTemplate transaction;
+    private final double cellDegrees;
+
+    /** Cella → dealer geolocalizzati che contiene */
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+
+    /** Dealer indicizzati per ID (necessari per deindicizzare) */
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    /** Estensione delle celle popolate: limite della ricerca ad anelli */
+    private int minLatCell = Integer.MAX_VALUE;
+    private int maxLatCell = Integer.MIN_VALUE;
+    private int minLonCell = Integer.MAX_VALUE;
+    private int maxLonCell = Integer.MIN_VALUE;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public DealerGeoIndex(DealerRepository dealerRepository, DealerGeocoder geocoder,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${dealers.geo.cell-degrees:0.25}") double cellDegrees) {
+        this.dealerRepository = dealerRepository;
+        this.geocoder = geocoder;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.cellDegrees = cellDegrees;
+    }
+
+    // === COSTRUZIONE E AGGIORNAMENTO ===
+
+    /**
+     * Costruisce l'indice all'avvio e geolocalizza i dealer che non hanno coordinate
+     * Il write lock è tenuto durante la lettura: gli eventi concorrenti
+     * attendono e vengono applicati dopo, senza perdere aggiornamenti
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            cells.clear();
+            entries.clear();
+            minLatCell = minLonCell = Integer.MAX_VALUE;
+            maxLatCell = maxLonCell = Integer.MIN_VALUE;
+
+            int geocoded = 0;
+            for (DealerSnapshot snapshot : dealerRepository.findAllSnapshots()) {
+                if (!snapshot.hasLocation()) {
+                    snapshot = backfill(snapshot);
+                    geocoded += snapshot.hasLocation() ? 1 : 0;
+                }
+                addInternal(snapshot);
+            }
+            logger.info("Indice geografico dealer costruito: {} dealer in {} celle ({} geocodificati) in {} ms",
+                    entries.size(), cells.size(), geocoded, System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applica all'indice le modifiche confermate sui dealer
+     *
+     * @param event Evento con lo stato successivo del dealer
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDealerChange(DealerChangeEvent event) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(event.getDealerId());
+            if (event.getAfter() != null) {
+                addInternal(event.getAfter());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // === RICERCA ===
+
+    /**
+     * Dealer entro un raggio dal punto indicato
+     *
+     * @param latitude Latitudine del centro
+     * @param longitude Longitudine del centro
+     * @param radiusKm Raggio in km
+     * @param limit Numero massimo di risultati
+     * @return Dealer in ordine di distanza crescente
+     */
+    public List<Hit> within(double latitude, double longitude, double radiusKm, int limit) {
+        double latSpan = radiusKm / KM_PER_DEGREE;
+        double lonSpan = radiusKm / (KM_PER_DEGREE * Math.max(Math.cos(Math.toRadians(
+                Math.min(90, Math.abs(latitude) + latSpan))), 0.01));
+
+        List<Hit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            // Riquadro del cerchio limitato all'estensione popolata (raggi molto ampi)
+            int fromLat = Math.max(cell(latitude - latSpan), minLatCell);
+            int toLat = Math.min(cell(latitude + latSpan), maxLatCell);
+            int fromLon = Math.max(cell(longitude - lonSpan), minLonCell);
+            int toLon = Math.min(cell(longitude + lonSpan), maxLonCell);
+            for (int latCell = fromLat; latCell <= toLat; latCell++) {
+                for (int lonCell = fromLon; lonCell <= toLon; lonCell++) {
+                    for (Entry entry : cells.getOrDefault(key(latCell, lonCell), List.of())) {
+                        double distance = distanceKm(latitude, longitude, entry.latitude, entry.longitude);
+                        if (distance <= radiusKm) {
+                            hits.add(new Hit(entry.dealerId, distance));
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        hits.sort(Comparator.comparingDouble(Hit::getDistanceKm));
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    /**
+     * I k dealer più vicini al punto indicato, a qualsiasi distanza
+     *
+     * Gli anelli di celle attorno al punto sono visitati finché i k migliori
+     * candidati non sono più vicini della distanza coperta con certezza dagli
+     * anelli già visitati, o finché non si esce dall'estensione popolata.
+     * Il centro è riportato dentro l'estensione popolata: il numero di anelli
+     * dipende dall'indice, non dalle coordinate ricevute.
+     *
+     * @param latitude Latitudine del punto
+     * @param longitude Longitudine del punto
+     * @param k Numero di dealer
+     * @return Dealer in ordine di distanza crescente
+     */
+    public List<Hit> nearest(double latitude, double longitude, int k) {
+        List<Hit> hits = new ArrayList<>();
+        if (k <= 0) {
+            return hits;
+        }
+        lock.readLock().lock();
+        try {
+            if (entries.isEmpty()) {
+                return hits;
+            }
+            // Le celle oltre l'estensione sono vuote: partire dal bordo non perde dealer,
+            // e le celle non visitate restano lontane almeno "ring" celle dal punto
+            int centerLat = Math.max(minLatCell, Math.min(maxLatCell, cell(latitude)));
+            int centerLon = Math.max(minLonCell, Math.min(maxLonCell, cell(longitude)));
+            int maxRing = Math.max(
+                    Math.max(Math.abs(centerLat - minLatCell), Math.abs(centerLat - maxLatCell)),
+                    Math.max(Math.abs(centerLon - minLonCell), Math.abs(centerLon - maxLonCell)));
+            for (int ring = 0; ring <= maxRing; ring++) {
+                for (int latCell = centerLat - ring; latCell <= centerLat + ring; latCell++) {
+                    boolean edge = latCell == centerLat - ring || latCell == centerLat + ring;
+                    // Righe interne: solo le due celle di bordo dell'anello
+                    int step = edge ? 1 : Math.max(1, 2 * ring);
+                    for (int lonCell = centerLon - ring; lonCell <= centerLon + ring; lonCell += step) {
+                        for (Entry entry : cells.getOrDefault(key(latCell, lonCell), List.of())) {
+                            hits.add(new Hit(entry.dealerId,
+                                    distanceKm(latitude, longitude, entry.latitude, entry.longitude)));
+                        }
+                    }
+                }
+                if (hits.size() >= k) {
+                    hits.sort(Comparator.comparingDouble(Hit::getDistanceKm));
+                    if (hits.get(k - 1).getDistanceKm() <= coveredKm(latitude, ring)) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        hits.sort(Comparator.comparingDouble(Hit::getDistanceKm));
+        return hits.size() > k ? new ArrayList<>(hits.subList(0, k)) : hits;
+    }
+
+    /**
+     * Distanza sulla superficie terrestre (formula dell'emisfero)
+     */
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // === METODI PRIVATI ===
+
+    /**
+     * Geocodifica l'indirizzo di un dealer senza coordinate e le salva
+     */
+    private DealerSnapshot backfill(DealerSnapshot snapshot) {
+        Optional<DealerGeocoder.Location> location = geocoder.geocode(snapshot.getAddress());
+        if (location.isEmpty()) {
+            logger.debug("Indirizzo non geolocalizzabile: dealer {} ({})", snapshot.getId(), snapshot.getAddress());
+            return snapshot;
+        }
+        double lat = location.get().getLatitude();
+        double lon = location.get().getLongitude();
+        transaction.executeWithoutResult(status -> dealerRepository.updateLocation(snapshot.getId(), lat, lon));
+        return new DealerSnapshot(snapshot.getId(), snapshot.getName(), snapshot.getAddress(), lat, lon);
+    }
+
+    /**
+     * Distanza minima dal punto al bordo esterno degli anelli già visitati
+     * (celle di longitudine più strette a latitudini più alte)
+     */
+    private double coveredKm(double latitude, int ring) {
+        double latSpan = ring * cellDegrees;
+        double farthest = Math.min(90, Math.abs(latitude) + latSpan + cellDegrees);
+        return latSpan * KM_PER_DEGREE * Math.cos(Math.toRadians(farthest));
+    }
+
+    private int cell(double degrees) {
+        return (int) Math.floor(degrees / cellDegrees);
+    }
+
+    private static long key(int latCell, int lonCell) {
+        return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+    }
+
+    // Chiamati sotto write lock
+
+    private void addInternal(DealerSnapshot snapshot) {
+        if (!snapshot.hasLocation()) {
+            return;
+        }
+        Entry entry = new Entry(snapshot.getId(), snapshot.getLatitude(), snapshot.getLongitude());
+        int latCell = cell(entry.latitude);
+        int lonCell = cell(entry.longitude);
+        cells.computeIfAbsent(key(latCell, lonCell), c -> new ArrayList<>()).add(entry);
+        entries.put(entry.dealerId, entry);
+        minLatCell = Math.min(minLatCell, latCell);
+        maxLatCell = Math.max(maxLatCell, latCell);
+        minLonCell = Math.min(minLonCell, lonCell);
+        maxLonCell = Math.max(maxLonCell, lonCell);
+    }
+
+    private void removeInternal(Long dealerId) {
+        Entry entry = entries.remove(dealerId);
+        if (entry == null) {
+            return;
+        }
+        long key = key(cell(entry.latitude), cell(entry.longitude));
+        List<Entry> inCell = cells.get(key);
+        if (inCell != null) {
+            inCell.remove(entry);
+            if (inCell.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+        // L'estensione non si restringe: resta un limite superiore valido per nearest
+    }
+
+    private static final class Entry {
+        private final Long dealerId;
+        private final double latitude;
+        private final double longitude;
+
+        Entry(Long dealerId, double latitude, double longitude) {
+            this.dealerId = dealerId;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    /**
+     * Dealer trovato con la sua distanza dal punto di ricerca
+     */
+    public static final class Hit {
+        private final Long dealerId;
+        private final double distanceKm;
+
+        Hit(Long dealerId, double distanceKm) {
+            this.dealerId = dealerId;
+            this.distanceKm = distanceKm;
+        }
+
+        public Long getDealerId() { return dealerId; }
+
+        public double getDistanceKm() { return distanceKm; }
+    }
+}
@@ -0,0 +1,205 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.Dealer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Geocodifica offline degli indirizzi dei concessionari
+ *
+ * Sorgente:
+ * - Gazetteer dei comuni italiani incluso nell'applicazione (dealers.geo.gazetteer,
+ *   formato nome;sigla;CAP;lat;lon): nessuna chiamata di rete
+ * - Percorso nel classpath, oppure file: per un elenco esterno (es: ISTAT completo)
+ *
+ * Risoluzione di un indirizzo, in ordine:
+ * 1. CAP esatto di un comune del gazetteer
+ * 2. Nome del comune in un segmento dell'indirizzo (segmenti che iniziano con
+ *    via/piazza/corso... ignorati: "Via Milano 10, Roma" è a Roma)
+ * 3. Prefisso del CAP (3 poi 2 cifre): capoluogo della zona postale
+ * 4. Sigla di provincia ("RM", "(MI)"): capoluogo della provincia
+ *
+ * Usato anche per le query di ricerca ("Roma", "00184", "Firenze FI").
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class DealerGeocoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(DealerGeocoder.class);
+
+    private static final Pattern CAP = Pattern.compile("\\b(\\d{5})\\b");
+    private static final Pattern SIGLA = Pattern.compile("\\b([A-Z]{2})\\b");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATOR = Pattern.compile("[^a-z0-9]+");
+
+    /** Prefissi di toponimi stradali: il segmento non indica il comune */
+    private static final List<String> STREET_PREFIXES = List.of(
+            "via", "viale", "piazza", "piazzale", "corso", "largo", "vicolo", "strada", "lungomare",
+            "lungotevere", "contrada", "borgo", "galleria", "salita", "circonvallazione");
+
+    /** Parole massime di un nome di comune (es: "reggio nell emilia") */
+    private static final int MAX_NAME_TOKENS = 4;
+
+    private final Map<String, Location> byName = new HashMap<>();
+    private final Map<String, Location> byCap = new HashMap<>();
+    private final Map<String, Location> byCapPrefix = new HashMap<>();
+    private final Map<String, Location> bySigla = new HashMap<>();
+
+    public DealerGeocoder(@Value("${dealers.geo.gazetteer:geo/comuni-it.csv}") String gazetteer) throws IOException {
+        // Percorso senza prefisso risolto nel classpath
+        Resource resource = new DefaultResourceLoader().getResource(gazetteer);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(";");
+                Location location = new Location(fields[0].trim(),
+                        Double.parseDouble(fields[3].trim()), Double.parseDouble(fields[4].trim()));
+                String cap = fields[2].trim();
+                byName.putIfAbsent(normalize(location.getName()), location);
+                byCap.putIfAbsent(cap, location);
+                // Prima occorrenza: il capoluogo precede gli altri comuni nel file
+                byCapPrefix.putIfAbsent(cap.substring(0, 3), location);
+                byCapPrefix.putIfAbsent(cap.substring(0, 2), location);
+                bySigla.putIfAbsent(fields[1].trim(), location);
+            }
+        }
+        logger.info("Gazetteer caricato: {} comuni, {} province", byName.size(), bySigla.size());
+    }
+
+    /**
+     * Coordinate di un indirizzo o di un luogo
+     *
+     * @param text Indirizzo completo, nome di comune o CAP
+     * @return Posizione del comune riconosciuto, vuoto se non riconosciuto
+     */
+    public Optional<Location> geocode(String text) {
+        if (text == null || text.isBlank()) {
+            return Optional.empty();
+        }
+        Matcher cap = CAP.matcher(text);
+        String postalCode = cap.find() ? cap.group(1) : null;
+        if (postalCode != null && byCap.containsKey(postalCode)) {
+            return Optional.of(byCap.get(postalCode));
+        }
+
+        String[] segments = text.split(",");
+        for (int i = segments.length - 1; i >= 0; i--) {
+            String[] tokens = tokens(segments[i]);
+            if (tokens.length == 0 || (segments.length > 1 && STREET_PREFIXES.contains(tokens[0]))) {
+                continue;
+            }
+            Location location = matchName(tokens);
+            if (location != null) {
+                return Optional.of(location);
+            }
+        }
+
+        if (postalCode != null) {
+            Location location = byCapPrefix.get(postalCode.substring(0, 3));
+            if (location == null) {
+                location = byCapPrefix.get(postalCode.substring(0, 2));
+            }
+            if (location != null) {
+                return Optional.of(location);
+            }
+        }
+
+        Matcher sigla = SIGLA.matcher(text);
+        while (sigla.find()) {
+            Location location = bySigla.get(sigla.group(1));
+            if (location != null) {
+                return Optional.of(location);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Aggiorna le coordinate del dealer dal suo indirizzo
+     * Indirizzo non riconosciuto: coordinate azzerate, il dealer esce dalla ricerca per distanza
+     *
+     * @param dealer Concessionario da salvare
+     */
+    public void locate(Dealer dealer) {
+        Optional<Location> location = geocode(dealer.getAddress());
+        dealer.setLatitude(location.map(Location::getLatitude).orElse(null));
+        dealer.setLongitude(location.map(Location::getLongitude).orElse(null));
+        if (location.isEmpty() && dealer.getAddress() != null) {
+            logger.debug("Indirizzo non geolocalizzabile: {}", dealer.getAddress());
+        }
+    }
+
+    // === METODI PRIVATI ===
+
+    /**
+     * Sequenza di token più lunga che corrisponde al nome di un comune
+     */
+    private Location matchName(String[] tokens) {
+        for (int length = Math.min(MAX_NAME_TOKENS, tokens.length); length >= 1; length--) {
+            for (int start = 0; start + length <= tokens.length; start++) {
+                Location location = byName.get(String.join(" ", List.of(tokens).subList(start, start + length)));
+                if (location != null) {
+                    return location;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String[] tokens(String text) {
+        String normalized = normalize(text);
+        return normalized.isEmpty() ? new String[0] : normalized.split(" ");
+    }
+
+    /**
+     * Minuscole senza accenti e punteggiatura: "Forlì" → "forli", "L'Aquila" → "l aquila"
+     */
+    private static String normalize(String text) {
+        String decomposed = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATOR.matcher(decomposed.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    /**
+     * Comune del gazetteer con le sue coordinate
+     */
+    public static final class Location {
+        private final String name;
+        private final double latitude;
+        private final double longitude;
+
+        Location(String name, double latitude, double longitude) {
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public String getName() { return name; }
+
+        public double getLatitude() { return latitude; }
+
+        public double getLongitude() { return longitude; }
+    }
+}
@@ -0,0 +1,327 @@
+package it.uniroma3.siwprogetto.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.hibernate.jpa.HibernateHints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Serializzazione in streaming della lista concessionari per /rest/api/dealers
+ *
+ * Responsabilità:
+ * - Lettura da proiezione JPQL (colonne scalari + ID immagine), mai entità Dealer
+ * - Scrittura diretta con JsonGenerator: nessuna mappa o lista intermedia per dealer
+ * - Paginazione keyset sull'ID ("after" = ultimo ID della pagina precedente)
+ *
+ * Formato (invariato rispetto alla versione con mappe):
+ * - Array JSON di oggetti id, name, description, address, phone, email, images
+ * - Ricerca per distanza: anche latitude, longitude e distanceKm
+ *
+ * Performance:
+ * - Il corpo è scritto su un thread asincrono in una transazione read-only propria:
+ *   il thread della richiesta è libero e i primi byte partono alla prima riga letta
+ * - Righe dal cursore JDBC a blocchi di dealers.api.fetch-size
+ * - Memoria per richiesta limitata dalla pagina, non dal numero totale di dealer
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class DealerJsonStreamer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DealerJsonStreamer.class);
+
+    /** Proiezione dei dealer: solo colonne scalari, nessuna relazione caricata */
+    private static final String DEALER_SELECT = "SELECT d.id, d.name, d.description, d.address, d.phone, d.email, " +
+            "d.latitude, d.longitude FROM Dealer d";
+
+    /** ID immagine per dealer, ordinati per il merge con i dealer */
+    private static final String IMAGE_SELECT = "SELECT i.dealer.id, i.id FROM Image i";
+
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnly;
+    private final int fetchSize;
+
+    public DealerJsonStreamer(EntityManager entityManager, ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${dealers.api.fetch-size:100}") int fetchSize) {
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Pagina della lista completa in ordine di ID
+     *
+     * @param after ID dell'ultimo dealer della pagina precedente, null per la prima pagina
+     * @param pageSize Numero massimo di dealer
+     * @return Corpo della risposta e cursore della pagina successiva
+     */
+    public Page page(Long after, int pageSize) {
+        long from = after != null ? after : 0L;
+        List<Long> ids = readOnly.execute(status -> entityManager
+                .createQuery("SELECT d.id FROM Dealer d WHERE d.id > :after ORDER BY d.id", Long.class)
+                .setParameter("after", from)
+                .setMaxResults(pageSize + 1)
+                .getResultList());
+        if (ids == null || ids.isEmpty()) {
+            return new Page(empty(), null);
+        }
+        // La riga in più dice solo se esiste una pagina successiva
+        long last = ids.get(Math.min(ids.size(), pageSize) - 1);
+        Long next = ids.size() > pageSize ? last : null;
+        return new Page(stream(from, last), next);
+    }
+
+    /**
+     * Dealer in un ordine già deciso (ricerca per somiglianza)
+     *
+     * @param ids ID dei dealer in ordine di risultato
+     */
+    public StreamingResponseBody ranked(List<Long> ids) {
+        return ranked(ids.stream().mapToLong(Long::longValue).toArray(), null);
+    }
+
+    /**
+     * Dealer in ordine di distanza, con coordinate e distanza in km
+     *
+     * @param hits Risultati dell'indice spaziale
+     */
+    public StreamingResponseBody nearby(List<DealerGeoIndex.Hit> hits) {
+        long[] ids = new long[hits.size()];
+        double[] distances = new double[hits.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = hits.get(i).getDealerId();
+            distances[i] = hits.get(i).getDistanceKm();
+        }
+        return ranked(ids, distances);
+    }
+
+    /**
+     * @return Corpo con un array JSON vuoto
+     */
+    public StreamingResponseBody empty() {
+        return out -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                json.writeStartArray();
+                json.writeEndArray();
+            }
+        };
+    }
+
+    // === METODI PRIVATI ===
+
+    /**
+     * Dealer con ID in (from, last], letti dal cursore e scritti man mano
+     */
+    private StreamingResponseBody stream(long from, long last) {
+        return out -> write(json -> {
+            long start = System.currentTimeMillis();
+            ImageIds images = imageIds("i.dealer.id > :from AND i.dealer.id <= :last", from, last, null);
+            int count = 0;
+            json.writeStartArray();
+            try (Stream<Object[]> rows = entityManager
+                    .createQuery(DEALER_SELECT + " WHERE d.id > :from AND d.id <= :last ORDER BY d.id", Object[].class)
+                    .setParameter("from", from)
+                    .setParameter("last", last)
+                    .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                    .setHint(HibernateHints.HINT_READ_ONLY, true)
+                    .getResultStream()) {
+                for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                    writeDealer(json, row, images, Double.NaN);
+                    count++;
+                }
+            }
+            json.writeEndArray();
+            logger.debug("Streamed {} dealers ({}, {}] in {} ms", count, from, last, System.currentTimeMillis() - start);
+        }, out);
+    }
+
+    /**
+     * Dealer nell'ordine indicato: le righe (al massimo max-results) sono ordinate per posizione
+     *
+     * @param distances Distanze in km per posizione, null se non è una ricerca per distanza
+     */
+    private StreamingResponseBody ranked(long[] ids, double[] distances) {
+        if (ids.length == 0) {
+            return empty();
+        }
+        List<Long> idList = Arrays.stream(ids).boxed().toList();
+        return out -> write(json -> {
+            ImageIds images = imageIds("i.dealer.id IN :ids", 0, 0, idList);
+            Object[][] byPosition = new Object[ids.length][];
+            for (Object[] row : entityManager.createQuery(DEALER_SELECT + " WHERE d.id IN :ids", Object[].class)
+                    .setParameter("ids", idList)
+                    .setHint(HibernateHints.HINT_READ_ONLY, true)
+                    .getResultList()) {
+                long id = ((Number) row[0]).longValue();
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] == id) {
+                        byPosition[i] = row;
+                        break;
+                    }
+                }
+            }
+            json.writeStartArray();
+            for (int i = 0; i < ids.length; i++) {
+                // Dealer eliminato dopo la ricerca: semplicemente omesso
+                if (byPosition[i] != null) {
+                    writeDealer(json, byPosition[i], images, distances != null ? distances[i] : Double.NaN);
+                }
+            }
+            json.writeEndArray();
+        }, out);
+    }
+
+    /**
+     * Esegue la scrittura in una transazione read-only sul thread che serializza la risposta
+     * In caso di errore il JSON resta troncato: il client non scambia una risposta parziale per completa
+     */
+    private void write(JsonWriter writer, OutputStream out) throws IOException {
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)) {
+            readOnly.executeWithoutResult(status -> {
+                try {
+                    writer.write(json);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Tipicamente il client ha chiuso la connessione a metà risposta
+            logger.debug("Dealer stream interrotto: {}", e.getCause().getMessage());
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * ID immagine dei dealer selezionati, ordinati per (dealer, immagine)
+     */
+    private ImageIds imageIds(String condition, long from, long last, Collection<Long> ids) {
+        var query = entityManager.createQuery(IMAGE_SELECT + " WHERE " + condition + " ORDER BY i.dealer.id, i.id",
+                Object[].class);
+        if (ids != null) {
+            query.setParameter("ids", ids);
+        } else {
+            query.setParameter("from", from).setParameter("last", last);
+        }
+        List<Object[]> rows = query.setHint(HibernateHints.HINT_READ_ONLY, true).getResultList();
+        ImageIds images = new ImageIds(rows.size());
+        for (Object[] row : rows) {
+            images.add(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+        }
+        return images;
+    }
+
+    private static void writeDealer(JsonGenerator json, Object[] row, ImageIds images, double distanceKm)
+            throws IOException {
+        long id = ((Number) row[0]).longValue();
+        json.writeStartObject();
+        json.writeNumberField("id", id);
+        json.writeStringField("name", text(row[1]));
+        json.writeStringField("description", text(row[2]));
+        json.writeStringField("address", text(row[3]));
+        json.writeStringField("phone", text(row[4]));
+        json.writeStringField("email", text(row[5]));
+        json.writeArrayFieldStart("images");
+        for (int i = images.first(id); i < images.size && images.dealerIds[i] == id; i++) {
+            json.writeNumber(images.imageIds[i]);
+        }
+        json.writeEndArray();
+        if (!Double.isNaN(distanceKm)) {
+            writeCoordinate(json, "latitude", row[6]);
+            writeCoordinate(json, "longitude", row[7]);
+            json.writeNumberField("distanceKm", Math.round(distanceKm * 10) / 10.0);
+        }
+        json.writeEndObject();
+    }
+
+    private static void writeCoordinate(JsonGenerator json, String field, Object value) throws IOException {
+        if (value == null) {
+            json.writeNullField(field);
+        } else {
+            json.writeNumberField(field, ((Number) value).doubleValue());
+        }
+    }
+
+    private static String text(Object value) {
+        return value != null ? value.toString() : "";
+    }
+
+    @FunctionalInterface
+    private interface JsonWriter {
+        void write(JsonGenerator json) throws IOException;
+    }
+
+    /**
+     * Coppie (dealer, immagine) in due array paralleli ordinati per dealer
+     */
+    private static final class ImageIds {
+        private final long[] dealerIds;
+        private final long[] imageIds;
+        private int size;
+
+        ImageIds(int capacity) {
+            this.dealerIds = new long[capacity];
+            this.imageIds = new long[capacity];
+        }
+
+        void add(long dealerId, long imageId) {
+            dealerIds[size] = dealerId;
+            imageIds[size++] = imageId;
+        }
+
+        /** Prima posizione con dealerIds[i] >= dealerId (ricerca binaria) */
+        int first(long dealerId) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (dealerIds[mid] < dealerId) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Corpo di una pagina della lista con il cursore della successiva
+     */
+    public static final class Page {
+        private final StreamingResponseBody body;
+        private final Long nextCursor;
+
+        Page(StreamingResponseBody body, Long nextCursor) {
+            this.body = body;
+            this.nextCursor = nextCursor;
+        }
+
+        public StreamingResponseBody getBody() { return body; }
+
+        /**
+         * @return ID da passare come "after" per la pagina successiva, null se questa è l'ultima
+         */
+        public Long getNextCursor() { return nextCursor; }
+    }
+}
@@ -0,0 +1,317 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.DealerChangeEvent;
+import it.uniroma3.siwprogetto.model.DealerSnapshot;
+import it.uniroma3.siwprogetto.repository.DealerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Indice a trigrammi in-memory per la ricerca approssimata dei concessionari
+ *
+ * Responsabilità:
+ * - Scomposizione di nome e indirizzo in trigrammi di caratteri
+ * - Ricerca tollerante a errori di battitura e accenti ("Cinecita" trova "Cinecittà")
+ * - Risultati ordinati per somiglianza, prima di caricare qualsiasi entità
+ * - Aggiornamento incrementale a ogni DealerChangeEvent
+ *
+ * Trigrammi (come pg_trgm):
+ * - Ogni parola normalizzata è preceduta da due spazi e seguita da uno:
+ *   "roma" → "  r", " ro", "rom", "oma", "ma "
+ *
+ * Punteggio:
+ * - Quota dei trigrammi della query presenti nel dealer (somiglianza di parola),
+ *   a parità quota sull'unione dei trigrammi (preferisce i testi più corti)
+ * - Soglia minima dealers.search.min-similarity
+ *
+ * Performance:
+ * - Costo proporzionale alle posting list dei trigrammi della query, non al numero
+ *   di concessionari: nessuna scansione sequenziale della tabella
+ * - Dealer numerati con slot densi: posting list di int e contatori in un array
+ * - Lock lettura/scrittura: ricerche concorrenti, aggiornamenti serializzati
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class DealerSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(DealerSearchIndex.class);
+
+    /** Separatore parole: tutto ciò che non è lettera o cifra */
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /** Segni diacritici rimossi dopo la decomposizione NFD */
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    /** Ordine dei risultati: somiglianza, poi sovrapposizione, poi ID (stabile) */
+    private static final Comparator<Match> RANKING = Comparator.comparingDouble((Match m) -> m.similarity).reversed()
+            .thenComparing(Comparator.comparingDouble((Match m) -> m.overlap).reversed())
+            .thenComparingLong(m -> m.dealerId);
+
+    private final DealerRepository dealerRepository;
+    private final double minSimilarity;
+
+    /** Posting list: trigramma → slot dei dealer che lo contengono */
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    /** Slot denso di ogni dealer indicizzato (contatori per slot in ricerca, senza boxing) */
+    private final Map<Long, Integer> slotByDealer = new HashMap<>();
+
+    /** Trigrammi indicizzati per slot (necessari per deindicizzare e per il punteggio) */
+    private final List<Set<String>> trigramsBySlot = new ArrayList<>();
+
+    /** ID dealer per slot */
+    private long[] dealerBySlot = new long[64];
+
+    /** Slot liberati dalle rimozioni, riusati dai nuovi dealer */
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** True dopo la prima costruzione completa dell'indice */
+    private volatile boolean ready = false;
+
+    public DealerSearchIndex(DealerRepository dealerRepository,
+                             @Value("${dealers.search.min-similarity:0.4}") double minSimilarity) {
+        this.dealerRepository = dealerRepository;
+        this.minSimilarity = minSimilarity;
+    }
+
+    // === COSTRUZIONE E AGGIORNAMENTO ===
+
+    /**
+     * Costruisce l'indice all'avvio dalla proiezione DealerSnapshot
+     * Il write lock è tenuto durante la lettura: gli eventi concorrenti
+     * attendono e vengono applicati dopo, senza perdere aggiornamenti
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            postings.clear();
+            slotByDealer.clear();
+            trigramsBySlot.clear();
+            freeSlots.clear();
+            for (DealerSnapshot snapshot : dealerRepository.findAllSnapshots()) {
+                addInternal(snapshot);
+            }
+            ready = true;
+            logger.info("Indice ricerca dealer costruito: {} dealer, {} trigrammi in {} ms",
+                    slotByDealer.size(), postings.size(), System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applica all'indice le modifiche confermate sui dealer
+     *
+     * @param event Evento con lo stato successivo del dealer
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onDealerChange(DealerChangeEvent event) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(event.getDealerId());
+            if (event.getAfter() != null) {
+                addInternal(event.getAfter());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // === RICERCA ===
+
+    /**
+     * Dealer il cui nome o indirizzo somiglia alla query
+     *
+     * @param query Testo libero inserito dall'utente
+     * @param limit Numero massimo di risultati
+     * @return ID dei dealer in ordine di somiglianza decrescente, lista vuota se nessun match,
+     *         null se l'indice non è ancora pronto o la query non contiene parole
+     */
+    public List<Long> search(String query, int limit) {
+        Set<String> terms = trigrams(query);
+        if (!ready || terms.isEmpty()) {
+            return null;
+        }
+        int required = (int) Math.ceil(terms.size() * minSimilarity);
+
+        // Heap dei migliori limit candidati: il peggiore in testa, sostituito se ne arriva uno migliore
+        PriorityQueue<Match> best = new PriorityQueue<>(Math.max(1, limit), RANKING.reversed());
+        int candidates = 0;
+        lock.readLock().lock();
+        try {
+            int[] shared = new int[trigramsBySlot.size()];
+            int[] touched = new int[trigramsBySlot.size()];
+            int touchedCount = 0;
+            for (String trigram : terms) {
+                Postings slots = postings.get(trigram);
+                if (slots == null) {
+                    continue;
+                }
+                for (int i = 0; i < slots.size; i++) {
+                    int slot = slots.slots[i];
+                    if (shared[slot]++ == 0) {
+                        touched[touchedCount++] = slot;
+                    }
+                }
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                int slot = touched[i];
+                int common = shared[slot];
+                if (common >= required) {
+                    int union = terms.size() + trigramsBySlot.get(slot).size() - common;
+                    Match match = new Match(dealerBySlot[slot], (double) common / terms.size(), (double) common / union);
+                    candidates++;
+                    if (best.size() < limit) {
+                        best.add(match);
+                    } else if (limit > 0 && RANKING.compare(match, best.peek()) < 0) {
+                        best.poll();
+                        best.add(match);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Match> ranked = new ArrayList<>(best);
+        ranked.sort(RANKING);
+        logger.debug("Ricerca dealer '{}': {} risultati", query, candidates);
+        return ranked.stream().map(m -> m.dealerId).toList();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Trigrammi di un testo con le stesse regole usate in indicizzazione
+     *
+     * @param text Testo da scomporre (può essere null)
+     * @return Trigrammi distinti, insieme vuoto se il testo non contiene parole
+     */
+    static Set<String> trigrams(String text) {
+        Set<String> trigrams = new HashSet<>();
+        if (text == null || text.isBlank()) {
+            return trigrams;
+        }
+        String folded = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        for (String word : WORD_SEPARATOR.split(folded.toLowerCase(Locale.ROOT))) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+        }
+        return trigrams;
+    }
+
+    // === METODI PRIVATI (chiamati sotto write lock) ===
+
+    private void addInternal(DealerSnapshot snapshot) {
+        Set<String> trigrams = trigrams(snapshot.getName());
+        trigrams.addAll(trigrams(snapshot.getAddress()));
+        if (trigrams.isEmpty()) {
+            return;
+        }
+        int slot;
+        if (freeSlots.isEmpty()) {
+            slot = trigramsBySlot.size();
+            trigramsBySlot.add(trigrams);
+            if (slot == dealerBySlot.length) {
+                dealerBySlot = Arrays.copyOf(dealerBySlot, slot * 2);
+            }
+        } else {
+            slot = freeSlots.pop();
+            trigramsBySlot.set(slot, trigrams);
+        }
+        dealerBySlot[slot] = snapshot.getId();
+        slotByDealer.put(snapshot.getId(), slot);
+        for (String trigram : trigrams) {
+            postings.computeIfAbsent(trigram, t -> new Postings()).add(slot);
+        }
+    }
+
+    private void removeInternal(Long dealerId) {
+        Integer slot = slotByDealer.remove(dealerId);
+        if (slot == null) {
+            return;
+        }
+        for (String trigram : trigramsBySlot.get(slot)) {
+            Postings slots = postings.get(trigram);
+            if (slots != null && slots.remove(slot) && slots.size == 0) {
+                postings.remove(trigram);
+            }
+        }
+        // Slot vuoto: nessuna posting list lo contiene più fino al riuso
+        trigramsBySlot.set(slot, Set.of());
+        freeSlots.push(slot);
+    }
+
+    /**
+     * Posting list di slot in un array di int che cresce per raddoppio
+     * Ordine non significativo: la rimozione sposta l'ultimo elemento al posto di quello rimosso
+     */
+    private static final class Postings {
+        private int[] slots = new int[4];
+        private int size;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        boolean remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    slots[i] = slots[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Match {
+        private final long dealerId;
+        private final double similarity;
+        private final double overlap;
+
+        Match(long dealerId, double similarity, double overlap) {
+            this.dealerId = dealerId;
+            this.similarity = similarity;
+            this.overlap = overlap;
+        }
+    }
+}
@@ -3,16 +3,18 @@ package it.uniroma3.siwprogetto.service;
 import it.uniroma3.siwprogetto.model.Dealer;
 import it.uniroma3.siwprogetto.model.Image;
 import it.uniroma3.siwprogetto.model.Product;
+import it.uniroma3.siwprogetto.model.ProductCardView;
 import it.uniroma3.siwprogetto.model.User;
 import it.uniroma3.siwprogetto.repository.DealerRepository;
 import it.uniroma3.siwprogetto.repository.ProductRepository;
 import it.uniroma3.siwprogetto.repository.UserRepository;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
 import jakarta.persistence.Query;
-import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -20,9 +22,16 @@ import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Service layer per gestione concessionari automotive (Dealer) e prodotti associati
@@ -88,6 +97,56 @@ public class DealerService {
     @Autowired
     private EntityManager entityManager;
 
+    /**
+     * Archivio su filesystem dei byte delle immagini
+     * Nella riga Image restano solo i metadati
+     */
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    /**
+     * Generazione in background delle rendition ridotte
+     * Copre immagini prodotto, gallery e logo del concessionario
+     */
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
+    /**
+     * Coordinate ricavate dall'indirizzo (gazetteer offline)
+     */
+    @Autowired
+    private DealerGeocoder dealerGeocoder;
+
+    /**
+     * Indice spaziale per la ricerca per distanza
+     */
+    @Autowired
+    private DealerGeoIndex dealerGeoIndex;
+
+    /**
+     * Numero massimo di risultati di una ricerca per distanza
+     */
+    @Value("${dealers.geo.max-results:100}")
+    private int maxNearbyResults;
+
+    /**
+     * Indice a trigrammi per la ricerca approssimata per nome e indirizzo
+     */
+    @Autowired
+    private DealerSearchIndex dealerSearchIndex;
+
+    /**
+     * Eliminazione set-based di inventario e dealer
+     */
+    @Autowired
+    private InventoryBulkDeleter inventoryBulkDeleter;
+
+    /**
+     * Numero massimo di risultati di una ricerca testuale
+     */
+    @Value("${dealers.search.max-results:50}")
+    private int maxSearchResults;
+
     /**
      * RestTemplate per API calls esterne (future use)
      * Integration con servizi terzi per validazioni
@@ -158,14 +217,16 @@ public class DealerService {
             toUpdate.setAddress(dealer.getAddress());
             toUpdate.setPhone(dealer.getPhone());
             toUpdate.setEmail(dealer.getEmail());
+            dealerGeocoder.locate(toUpdate);
             
-            // Images replace strategy
+            // Images replace strategy (righe con lo stesso contenuto riutilizzate)
             if (dealer.getImages() != null && !dealer.getImages().isEmpty()) {
-                toUpdate.getImages().clear(); // Remove existing
-                dealer.getImages().forEach(img -> {
-                    img.setDealer(toUpdate); // Set bidirectional reference
-                    toUpdate.getImages().add(img); // Add to collection
-                });
+                List<Image> persisted = entityManager
+                        .createQuery("SELECT i FROM Image i WHERE i.dealer.id = :id", Image.class)
+                        .setParameter("id", toUpdate.getId())
+                        .setFlushMode(FlushModeType.COMMIT)
+                        .getResultList();
+                toUpdate.setImages(mergeImages(persisted, dealer.getImages(), img -> img.setDealer(toUpdate)));
             }
             
             Dealer savedDealer = dealerRepository.save(toUpdate);
@@ -181,6 +242,7 @@ public class DealerService {
             // CREATE MODE: nuovo dealer
             logger.debug("Creating new dealer for user: id={}, username={}", user.getId(), username);
             dealer.setOwner(user); // Set ownership
+            dealerGeocoder.locate(dealer);
             dealer.getImages().forEach(img -> img.setDealer(dealer)); // Bidirectional mapping
             
             Dealer savedDealer = dealerRepository.save(dealer);
@@ -201,14 +263,13 @@ public class DealerService {
      * Authorization Strategy:
      * - Security context per username corrente
      * - Query by owner username per performance
-     * - Lazy loading initialization per immagini
+     * - Entity graph per inizializzare le immagini
      * 
      * @return Dealer dell'utente corrente, null se non esiste o non autenticato
      * 
      * Performance Optimization:
      * - Read-only transaction per query efficiency  
-     * - Hibernate.initialize() per eager loading immagini
-     * - Single query con join automatico
+     * - Entity graph Dealer.detail: gallery e proprietario nella stessa query
      * 
      * Use Cases:
      * - Dashboard dealer per visualizzazione profilo
@@ -225,9 +286,8 @@ public class DealerService {
             return null;
         }
 
-        Optional<Dealer> dealer = dealerRepository.findByOwnerUsername(username);
+        Optional<Dealer> dealer = dealerRepository.findDetailByOwnerUsername(username);
         if (dealer.isPresent()) {
-            Hibernate.initialize(dealer.get().getImages()); // Eager load images
             return dealer.get();
         } else {
             logger.warn("No dealer found for user '{}'", username);
@@ -378,13 +438,14 @@ public class DealerService {
         product.setFuelType(updatedProduct.getFuelType());
         product.setTransmission(updatedProduct.getTransmission());
         
-        // Images replace strategy
+        // Images replace strategy (righe con lo stesso contenuto riutilizzate)
         if (updatedProduct.getImages() != null && !updatedProduct.getImages().isEmpty()) {
-            product.getImages().clear(); // Remove existing
-            updatedProduct.getImages().forEach(img -> {
-                img.setProduct(product); // Bidirectional mapping
-                product.getImages().add(img); // Add to collection
-            });
+            List<Image> persisted = entityManager
+                    .createQuery("SELECT i FROM Image i WHERE i.product.id = :id", Image.class)
+                    .setParameter("id", product.getId())
+                    .setFlushMode(FlushModeType.COMMIT)
+                    .getResultList();
+            product.setImages(mergeImages(persisted, updatedProduct.getImages(), img -> img.setProduct(product)));
         }
         
         // Featured product settings
@@ -404,8 +465,8 @@ public class DealerService {
      * 
      * Performance Optimization:
      * - Read-only transaction per efficiency
-     * - Hibernate.initialize() per eager loading immagini
-     * - Single query con join implicito
+     * - Proiezione ProductCardView: solo campi card e ID immagine, nessun blob
+     * - Due query (card + ID immagine) indipendentemente dal numero di prodotti
      * 
      * Authorization:
      * - Solo prodotti del dealer corrente
@@ -418,7 +479,7 @@ public class DealerService {
      * - Statistics e analytics per dealer
      */
     @Transactional(readOnly = true)
-    public List<Product> getProductsByDealer() {
+    public List<ProductCardView> getProductsByDealer() {
         String username = SecurityContextHolder.getContext().getAuthentication().getName();
         logger.debug("Retrieving products for user: {}", username);
 
@@ -439,22 +500,23 @@ public class DealerService {
             return List.of(); // Empty list se dealer non esiste
         }
 
-        // Prodotti del seller (user) con eager loading images
-        List<Product> products = productRepository.findBySellerId(user.getId());
-        products.forEach(product -> Hibernate.initialize(product.getImages()));
+        // Card dei prodotti del seller (user), senza dati binari delle immagini
+        List<ProductCardView> products = productRepository.findCardsBySellerId(user.getId());
         logger.info("Found {} products for user: id={}", products.size(), user.getId());
         return products;
     }
 
     /**
-     * Cerca dealer per localizzazione geografica
+     * Cerca dealer per nome o indirizzo, con tolleranza agli errori di battitura
      * 
-     * @param query Stringa di ricerca per indirizzo (case-insensitive)
-     * @return Lista dealer che matchano la query location
+     * @param query Stringa di ricerca (nome, via, zona, città)
+     * @return Lista dealer che matchano la query, dal più simile
      * 
      * Search Strategy:
-     * - Case-insensitive LIKE query su address field
-     * - Full text search su indirizzo completo
+     * - Indice a trigrammi in memoria (DealerSearchIndex): risultati ordinati per somiglianza
+     * - Solo i dealer trovati caricati dal database, con gallery (entity graph)
+     * - Indice non ancora pronto o query senza lettere né cifre: LIKE case-insensitive
+     *   su address (fallback), stesso caricamento con gallery
      * - Empty/null query = return all dealers
      * 
      * Use Cases:
@@ -466,9 +528,77 @@ public class DealerService {
     public List<Dealer> findByLocation(String query) {
         logger.debug("Finding dealers with query: {}", query);
         if (query == null || query.trim().isEmpty()) {
-            return dealerRepository.findAll(); // All dealers se query vuota
+            return dealerRepository.findAllForList(); // All dealers se query vuota
+        }
+        // Anche il fallback LIKE passa per gli ID: le gallery arrivano sempre con l'entity graph
+        List<Long> ranked = searchIds(query);
+        Map<Long, Dealer> byId = loadForList(ranked);
+        return ranked.stream().map(byId::get).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * ID dei dealer che corrispondono alla ricerca, dal più simile
+     * 
+     * @param query Stringa di ricerca non vuota (nome, via, zona, città)
+     * @return ID in ordine di risultato, al massimo dealers.search.max-results
+     * 
+     * Stesso criterio di findByLocation senza caricare entità:
+     * - Indice a trigrammi se pronto e la query ha lettere o cifre, altrimenti LIKE su address
+     */
+    @Transactional(readOnly = true)
+    public List<Long> searchIds(String query) {
+        List<Long> ranked = dealerSearchIndex.search(query, maxSearchResults);
+        if (ranked != null) {
+            return ranked;
+        }
+        List<Long> ids = dealerRepository.findIdsByAddressContaining(query.trim());
+        return ids.size() > maxSearchResults ? ids.subList(0, maxSearchResults) : ids;
+    }
+
+    /**
+     * Cerca dealer per distanza da un punto
+     * 
+     * @param latitude Latitudine del punto di ricerca
+     * @param longitude Longitudine del punto di ricerca
+     * @param radiusKm Raggio in km, null per i più vicini a qualsiasi distanza
+     * @param limit Numero massimo di dealer (limitato a dealers.geo.max-results)
+     * @return ID dei dealer con la distanza in km, in ordine di distanza crescente
+     * 
+     * Search Strategy:
+     * - Candidati e distanze dall'indice spaziale in memoria (DealerGeoIndex)
+     * - Nessun accesso al database: i dati dei dealer li legge il chiamante
+     * - Dealer senza indirizzo riconosciuto esclusi
+     */
+    public List<DealerGeoIndex.Hit> findNearby(double latitude, double longitude, Double radiusKm, int limit) {
+        int max = Math.max(1, Math.min(limit, maxNearbyResults));
+        List<DealerGeoIndex.Hit> hits = radiusKm != null
+                ? dealerGeoIndex.within(latitude, longitude, radiusKm, max)
+                : dealerGeoIndex.nearest(latitude, longitude, max);
+        logger.debug("Nearby search ({}, {}) radius={}: {} dealers", latitude, longitude, radiusKm, hits.size());
+        return hits;
+    }
+
+    /**
+     * Dealer indicati con gallery, indicizzati per ID (l'ordine lo decide il chiamante)
+     */
+    private Map<Long, Dealer> loadForList(List<Long> ids) {
+        Map<Long, Dealer> byId = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (Dealer dealer : dealerRepository.findForListByIdIn(ids)) {
+                byId.put(dealer.getId(), dealer);
+            }
         }
-        return dealerRepository.findByAddressContainingIgnoreCase(query);
+        return byId;
+    }
+
+    /**
+     * Coordinate di un luogo inserito dall'utente (comune, CAP o indirizzo)
+     * 
+     * @param place Testo del luogo
+     * @return Posizione riconosciuta, vuoto se il luogo non è nel gazetteer
+     */
+    public Optional<DealerGeocoder.Location> locate(String place) {
+        return dealerGeocoder.geocode(place);
     }
 
     /**
@@ -478,7 +608,7 @@ public class DealerService {
      * 
      * Performance:
      * - Read-only transaction
-     * - Eager loading immagini per tutti i dealer
+     * - Entity graph Dealer.list: gallery di tutti i dealer in una sola query
      * - Potentially expensive per grandi dataset
      * 
      * Use Cases:
@@ -489,22 +619,20 @@ public class DealerService {
     @Transactional(readOnly = true)
     public List<Dealer> findAll() {
         logger.info("Retrieving all dealers");
-        List<Dealer> dealers = dealerRepository.findAll();
-        dealers.forEach(dealer -> Hibernate.initialize(dealer.getImages())); // Eager load images
+        List<Dealer> dealers = dealerRepository.findAllForList();
         logger.info("Trovati {} concessionari.", dealers.size());
         return dealers;
     }
 
     /**
-     * Trova prodotto per ID con eager loading immagini
+     * Trova prodotto per ID con gallery inizializzata (entity graph)
      * 
      * @param id ID del prodotto da cercare
      * @return Product se trovato, null se non esiste
      * 
      * Performance:
      * - Read-only transaction
-     * - Hibernate.initialize() per immagini
-     * - Single query optimization
+     * - Entity graph Product.edit: gallery nella stessa query
      * 
      * Use Cases:
      * - Dettaglio prodotto con gallery immagini
@@ -514,9 +642,8 @@ public class DealerService {
     @Transactional(readOnly = true)
     public Product findProductById(Long id) {
         logger.debug("Finding product by ID: {}", id);
-        Optional<Product> product = productRepository.findById(id);
+        Optional<Product> product = productRepository.findEditById(id);
         if (product.isPresent()) {
-            Hibernate.initialize(product.get().getImages()); // Eager load images
             return product.get();
         } else {
             logger.error("Product not found: id={}", id);
@@ -528,7 +655,7 @@ public class DealerService {
      * Elimina prodotto con cascade cleanup quote requests
      * 
      * ATTENZIONE: Operazione irreversibile con side effects
-     * - Eliminazione quote_requests associate a TUTTI i prodotti seller
+     * - Eliminazione quote_requests associate al prodotto
      * - Native query per performance su large datasets
      * - Physical delete dal database (no soft delete)
      * 
@@ -538,7 +665,7 @@ public class DealerService {
      * 
      * Deletion Strategy Multi-Step:
      * 1. Product loading con validation
-     * 2. Quote requests cleanup via native query (ALL seller products)
+     * 2. Quote requests cleanup via native query (solo questo prodotto)
      * 3. EntityManager flush per commit intermediate
      * 4. Product delete via repository
      * 5. Exception handling con rollback automatico
@@ -549,7 +676,7 @@ public class DealerService {
      * - Transaction rollback su qualsiasi errore
      * 
      * Business Impact:
-     * - Quote requests loss per tutti i prodotti seller
+     * - Quote requests loss per il prodotto eliminato
      * - Conversation history persa definitivamente
      * - Audit trail necessario per compliance
      */
@@ -565,16 +692,13 @@ public class DealerService {
                         return new IllegalStateException("Prodotto non trovato");
                     });
 
-            // Step 1: Elimina TUTTE le quote_requests associate ai prodotti del seller
+            // Step 1: Elimina le quote_requests del prodotto
             try {
-                Query deleteAllQuoteRequests = entityManager.createNativeQuery(
-                    "DELETE FROM quote_requests WHERE product_id IN (SELECT id FROM product WHERE seller_id = ?)");
-                deleteAllQuoteRequests.setParameter(1, product.getSeller().getId());
-                int deletedQuotes = deleteAllQuoteRequests.executeUpdate();
-                logger.debug("Deleted {} quote requests for all products", deletedQuotes);
-                
-                // Flush per commit intermediate results
-                entityManager.flush();
+                Query deleteQuoteRequests = entityManager.createNativeQuery(
+                    "DELETE FROM quote_requests WHERE product_id = ?");
+                deleteQuoteRequests.setParameter(1, product.getId());
+                int deletedQuotes = deleteQuoteRequests.executeUpdate();
+                logger.debug("Deleted {} quote requests for product {}", deletedQuotes, id);
             } catch (Exception e) {
                 logger.warn("Could not delete quote_requests: {}", e.getMessage());
                 // Continue execution, table might not exist
@@ -596,37 +720,24 @@ public class DealerService {
     /**
      * Elimina dealer con cascade cleanup completo di tutte le dipendenze
      * 
-     * ATTENZIONE: Operazione complessa e irreversibile con multiple dependencies
-     * - Eliminazione quote_requests per tutti i prodotti dealer
-     * - Eliminazione prodotti associati via delegation
-     * - Eliminazione immagini dealer
-     * - Eliminazione dealer con native query per reliability
-     * - Verification post-eliminazione per consistency
+     * ATTENZIONE: Operazione irreversibile con multiple dependencies
+     * - Eliminazione quote_requests dei prodotti e del dealer
+     * - Eliminazione elementi carrello, immagini e prodotti del proprietario
+     * - Eliminazione gallery e riga del dealer
      * 
      * @param id ID del dealer da eliminare
-     * @throws IllegalArgumentException Se ID non valido o dealer non trovato
-     * @throws RuntimeException Se errore durante eliminazione
+     * @throws IllegalArgumentException Se ID non valido
+     * @throws RuntimeException Se dealer non trovato o errore durante eliminazione
      * 
-     * Deletion Strategy Multi-Phase:
+     * Deletion Strategy:
      * 1. Input validation e dealer loading
-     * 2. Quote requests bulk delete (native query)
-     * 3. Products individual delete via service delegation
-     * 4. Dealer images cleanup (native query)
-     * 5. EntityManager flush per intermediate consistency
-     * 6. Dealer delete via native query (reliability)
-     * 7. Post-deletion verification per success confirmation
-     * 
-     * Native Queries Rationale:
-     * - Performance su large datasets
-     * - Bypass JPA cascade constraints issues
-     * - Direct SQL control per complex deletions
-     * - Reliability per critical operations
+     * 2. Cancellazione set-based delegata a InventoryBulkDeleter: una DELETE nativa
+     *    per tabella, indipendente dal numero di prodotti e immagini
+     * 3. Eventi di eliminazione (prodotti, immagini, dealer) pubblicati per indici e cache
      * 
      * Error Handling Strategy:
-     * - Partial failure tolerance (warn + continue)
-     * - Final verification per operation success
+     * - Nessuna eliminazione parziale: qualsiasi errore annulla l'intera transazione
      * - Exception chain per detailed error reporting
-     * - Transaction rollback automatico su RuntimeException
      * 
      * Business Impact:
      * - Dealer profile permanently deleted
@@ -655,62 +766,8 @@ public class DealerService {
             logger.debug("Dealer found: id={}, name={}, owner={}", 
                 dealer.getId(), dealer.getName(), dealer.getOwner().getUsername());
 
-            // Step 1: Elimina quote_requests se esistono (native query for performance)
-            try {
-                Query deleteQuoteRequests = entityManager.createNativeQuery(
-                    "DELETE FROM quote_requests WHERE product_id IN (SELECT id FROM product WHERE seller_id = ?)");
-                deleteQuoteRequests.setParameter(1, dealer.getOwner().getId());
-                int deletedQuotes = deleteQuoteRequests.executeUpdate();
-                logger.debug("Deleted {} quote requests", deletedQuotes);
-            } catch (Exception e) {
-                logger.warn("Could not delete quote_requests (table might not exist): {}", e.getMessage());
-                // Continue execution, table might not exist
-            }
-
-            // Step 2: Elimina prodotti via service delegation (business logic preservation)
-            List<Product> products = productRepository.findBySellerId(dealer.getOwner().getId());
-            for (Product product : products) {
-                try {
-                    deleteProduct(product.getId()); // Delegation to service method
-                    logger.debug("Deleted product: {}", product.getId());
-                } catch (Exception e) {
-                    logger.warn("Could not delete product {}: {}", product.getId(), e.getMessage());
-                    // Continue with other products
-                }
-            }
-
-            // Step 3: Elimina immagini dealer (native query for performance)
-            try {
-                Query deleteDealerImages = entityManager.createNativeQuery("DELETE FROM image WHERE dealer_id = ?");
-                deleteDealerImages.setParameter(1, id);
-                int deletedImages = deleteDealerImages.executeUpdate();
-                logger.debug("Deleted {} dealer images", deletedImages);
-            } catch (Exception e) {
-                logger.warn("Could not delete dealer images: {}", e.getMessage());
-                // Continue execution
-            }
-
-            // Step 4: Flush per intermediate consistency
-            entityManager.flush();
-
-            // Step 5: Elimina dealer con native query (reliability over JPA)
-            logger.info("Deleting dealer with native query: {}", id);
-            Query deleteDealerQuery = entityManager.createNativeQuery("DELETE FROM dealer WHERE id = ?");
-            deleteDealerQuery.setParameter(1, id);
-            int deletedRows = deleteDealerQuery.executeUpdate();
-            logger.info("Dealer deletion query executed: {} rows affected", deletedRows);
-
-            // Step 6: Final flush
-            entityManager.flush();
-
-            // Step 7: Post-deletion verification
-            boolean dealerExists = dealerRepository.existsById(id);
-            if (dealerExists) {
-                logger.error("FALLIMENTO: Il dealer esiste ancora dopo l'eliminazione: {}", id);
-                throw new RuntimeException("Errore: il concessionario non è stato eliminato correttamente");
-            }
-
-            logger.info("SUCCESS: Dealer with ID: {} deleted successfully and verified", id);
+            int deletedProducts = inventoryBulkDeleter.deleteDealer(dealer);
+            logger.info("SUCCESS: Dealer with ID: {} deleted with {} products", id, deletedProducts);
 
         } catch (Exception e) {
             logger.error("Error deleting dealer ID: {}", id, e);
@@ -731,7 +788,7 @@ public class DealerService {
      * 
      * Performance:
      * - Read-only transaction
-     * - Eager loading immagini
+     * - Entity graph Dealer.detail: gallery e proprietario
      * - Single query optimization
      * 
      * Use Cases:
@@ -749,11 +806,10 @@ public class DealerService {
             return null;
         }
 
-        Optional<Dealer> dealer = dealerRepository.findByOwnerUsername(username);
+        Optional<Dealer> dealer = dealerRepository.findDetailByOwnerUsername(username);
         if (dealer.isPresent()) {
             logger.info("Dealer found for username '{}': id={}, name={}", 
                 username, dealer.get().getId(), dealer.get().getName());
-            Hibernate.initialize(dealer.get().getImages()); // Eager load images
             return dealer.get();
         } else {
             logger.warn("No dealer found for username '{}'", username);
@@ -912,7 +968,7 @@ public class DealerService {
     }
 
     /**
-     * Trova dealer per ID con eager loading immagini
+     * Trova dealer per ID con gallery inizializzata (entity graph)
      * 
      * @param id ID del dealer da cercare
      * @return Dealer se trovato, null se non esiste
@@ -925,9 +981,8 @@ public class DealerService {
     @Transactional(readOnly = true)
     public Dealer findById(Long id) {
         logger.debug("Finding dealer by ID: {}", id);
-        Optional<Dealer> dealer = dealerRepository.findById(id);
+        Optional<Dealer> dealer = dealerRepository.findDetailById(id);
         if (dealer.isPresent()) {
-            Hibernate.initialize(dealer.get().getImages()); // Eager load images
             return dealer.get();
         } else {
             logger.warn("No dealer found for ID '{}'", id);
@@ -948,8 +1003,8 @@ public class DealerService {
      * - Business logic consistency
      * 
      * Performance:
-     * - Eager loading immagini per tutti i prodotti
-     * - Single query per dealer owner products
+     * - Proiezione ProductCardView: solo campi card e ID immagine, nessun blob
+     * - Due query (card + ID immagine) per tutti i prodotti del proprietario
      * 
      * Use Cases:
      * - Dealer profile con catalogo prodotti
@@ -957,7 +1012,7 @@ public class DealerService {
      * - Analytics per dealer specifico
      */
     @Transactional(readOnly = true)
-    public List<Product> getProductsByDealerOwner(Dealer dealer) {
+    public List<ProductCardView> getProductsByDealerOwner(Dealer dealer) {
         // Input validation
         if (dealer == null) {
             throw new IllegalArgumentException("Concessionario non valido.");
@@ -966,9 +1021,7 @@ public class DealerService {
             throw new IllegalStateException("Il concessionario non ha un proprietario associato.");
         }
         
-        List<Product> products = productRepository.findBySeller(dealer.getOwner());
-        products.forEach(product -> Hibernate.initialize(product.getImages())); // Eager load images
-        return products;
+        return productRepository.findCardsBySellerId(dealer.getOwner().getId());
     }
 
     /**
@@ -980,8 +1033,8 @@ public class DealerService {
      * @throws IllegalArgumentException Se file non valido
      * 
      * File Processing:
-     * - Byte array conversion da MultipartFile
-     * - ContentType preservation per rendering corretto
+     * - Streaming nell'archivio con buffer fisso (nessun byte array del file)
+     * - ContentType dai magic bytes, non dall'header del client
      * - Input validation per file non vuoti
      * 
      * Use Cases:
@@ -1004,14 +1057,134 @@ public class DealerService {
 
         // Image entity preparation
         Image image = new Image();
-        image.setData(file.getBytes()); // Binary data conversion
-        image.setContentType(file.getContentType()); // MIME type preservation
+        imageStorageService.attach(image, file); // Streaming to filesystem store, sniffed MIME type
+        imageDerivativeService.scheduleAll(image); // Background thumbnails
         
         logger.info("Immagine preparata per il salvataggio: size={} bytes, contentType={}", 
-                file.getBytes().length, file.getContentType());
+                image.getSizeBytes(), image.getContentType());
+        return image;
+    }
+
+    /**
+     * Prepara oggetto Image da un file completo di un upload a blocchi
+     * 
+     * @param file File ricomposto da UploadSessionService (già verificato)
+     * @return Image entity pronta per persistenza
+     * @throws IOException Se errore lettura file
+     * @throws IllegalArgumentException Se il contenuto non è un formato immagine supportato
+     * 
+     * File Processing:
+     * - Stessa pipeline degli upload multipart (hash, ricompressione, archivio)
+     * - File riaperto a ogni lettura, mai caricato nell'heap
+     */
+    @Transactional
+    public Image saveImageFile(Path file) throws IOException {
+        Image image = new Image();
+        imageStorageService.attach(image, () -> Files.newInputStream(file));
+        imageDerivativeService.scheduleAll(image);
+
+        logger.info("Immagine preparata da upload a blocchi: size={} bytes, contentType={}",
+                image.getSizeBytes(), image.getContentType());
         return image;
     }
 
+    /**
+     * Aggiunge immagini alla gallery di un prodotto del dealer corrente
+     * 
+     * @param productId ID del prodotto
+     * @param images Nuove immagini (transient, da saveImageFile)
+     * @param maxImages Numero massimo di immagini per prodotto
+     * @return Product aggiornato
+     * @throws IllegalStateException Se non autorizzato o prodotto non trovato
+     * @throws IllegalArgumentException Se la gallery supererebbe maxImages
+     * 
+     * Use Cases:
+     * - Commit di un upload a blocchi (UploadController)
+     * 
+     * Deduplication:
+     * - Immagini con lo stesso contenuto di una già in gallery non aggiunte
+     */
+    @Transactional
+    public Product addProductImages(Long productId, List<Image> images, int maxImages) {
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new IllegalStateException("Utente non trovato: " + username));
+
+        Product product = productRepository.findEditById(productId)
+                .orElseThrow(() -> {
+                    logger.error("Product not found: id={}", productId);
+                    return new IllegalStateException("Prodotto non trovato");
+                });
+        if (!product.getSeller().getId().equals(user.getId())) {
+            logger.error("Product does not belong to user: product_id={}, user_id={}", productId, user.getId());
+            throw new IllegalStateException("Il prodotto non appartiene a questo utente");
+        }
+
+        List<Image> gallery = product.getImages();
+        for (Image image : images) {
+            boolean duplicate = image.getStorageKey() != null && gallery.stream()
+                    .anyMatch(existing -> image.getStorageKey().equals(existing.getStorageKey()));
+            if (duplicate) {
+                continue;
+            }
+            if (gallery.size() >= maxImages) {
+                throw new IllegalArgumentException("Massimo " + maxImages + " immagini per prodotto");
+            }
+            image.setProduct(product);
+            gallery.add(image);
+        }
+
+        Product savedProduct = productRepository.save(product);
+        logger.info("Images added to product: id={}, images={}", productId, savedProduct.getImages().size());
+        return savedProduct;
+    }
+
+    /**
+     * Sostituisce la gallery conservando le righe il cui contenuto non è cambiato
+     * 
+     * @param persisted Immagini attualmente nel database per il proprietario
+     * @param incoming Nuova gallery (immagini transient da saveImageFile)
+     * @param link Associazione della nuova immagine al proprietario
+     * @return Gallery risultante, nell'ordine di incoming
+     * 
+     * Deduplication:
+     * - Stesso storageKey già presente: riga esistente riutilizzata (stesso ID, URL
+     *   e cache del browser ancora validi), l'immagine transient viene scartata
+     * - Righe non più presenti in incoming: eliminate (ImageRemovedEvent)
+     * - Ri-salvare un annuncio invariato non produce né scritture nell'archivio
+     *   (saveImageFile deduplica per hash) né nuove righe
+     */
+    private List<Image> mergeImages(List<Image> persisted, List<Image> incoming, Consumer<Image> link) {
+        Map<String, Image> byKey = new HashMap<>();
+        for (Image image : persisted) {
+            if (image.getStorageKey() != null) {
+                byKey.putIfAbsent(image.getStorageKey(), image);
+            }
+        }
+
+        List<Image> result = new ArrayList<>();
+        int reused = 0;
+        for (Image image : new ArrayList<>(incoming)) {
+            Image existing = image.getStorageKey() != null ? byKey.remove(image.getStorageKey()) : null;
+            if (existing != null) {
+                result.add(existing);
+                reused++;
+            } else {
+                link.accept(image);
+                result.add(image);
+            }
+        }
+
+        for (Image image : persisted) {
+            if (!result.contains(image)) {
+                entityManager.remove(image);
+            }
+        }
+        logger.debug("Gallery updated: {} images, {} reused, {} removed",
+                result.size(), reused, persisted.size() - reused);
+        return result;
+    }
+
     /**
      * Recupera utente corrente autenticato dal Security Context
      * 
@@ -0,0 +1,153 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.FacetCombination;
+import it.uniroma3.siwprogetto.model.FacetValue;
+import it.uniroma3.siwprogetto.model.ProductFacets;
+import it.uniroma3.siwprogetto.model.ProductFilter;
+import it.uniroma3.siwprogetto.model.ProductSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Conteggi delle faccette per un filtro, aggiornabili in modo incrementale
+ *
+ * I conteggi sono additivi: ogni prodotto contribuisce indipendentemente,
+ * quindi una modifica si applica sottraendo il contributo dello stato "prima"
+ * e aggiungendo quello dello stato "dopo", senza ricalcolare l'aggregato.
+ *
+ * Regola di contributo (faccette disgiuntive):
+ * - Nessuna dimensione filtrata discordante: conta per tutte le dimensioni
+ * - Una sola dimensione discordante: conta solo per quella dimensione
+ * - Due o più discordanze: non conta
+ *
+ * Thread-safety: metodi sincronizzati sull'istanza.
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+final class FacetCounts {
+
+    private static final int CATEGORY = 0;
+    private static final int BRAND = 1;
+    private static final int MODEL = 2;
+    private static final int FUEL_TYPE = 3;
+    private static final int TRANSMISSION = 4;
+    private static final int DIMENSIONS = 5;
+
+    private final ProductFilter filter;
+    private final String[] selected;
+    private final List<Map<String, Long>> counts = new ArrayList<>(DIMENSIONS);
+
+    private FacetCounts(ProductFilter filter) {
+        this.filter = filter;
+        this.selected = new String[] {
+                filter.getCategory(), filter.getBrand(), filter.getModel(),
+                filter.getFuelType(), filter.getTransmission()
+        };
+        for (int d = 0; d < DIMENSIONS; d++) {
+            counts.add(new TreeMap<>());
+        }
+    }
+
+    /**
+     * Costruisce i conteggi dalle combinazioni aggregate dal database
+     *
+     * @param filter Filtro a cui si riferiscono i conteggi
+     * @param combinations Combinazioni distinte già ristrette da intervalli e query testuale
+     * @return Conteggi pronti all'uso
+     */
+    static FacetCounts build(ProductFilter filter, List<FacetCombination> combinations) {
+        FacetCounts facetCounts = new FacetCounts(filter);
+        for (FacetCombination c : combinations) {
+            facetCounts.add(new String[] {
+                    c.getCategory(), c.getBrand(), c.getModel(), c.getFuelType(), c.getTransmission()
+            }, c.getCount());
+        }
+        return facetCounts;
+    }
+
+    /**
+     * Applica il contributo di un prodotto (delta +1 o -1) se rientra nel filtro
+     * per intervalli e query testuale
+     *
+     * @param snapshot Stato del prodotto
+     * @param delta +1 per lo stato "dopo", -1 per lo stato "prima"
+     * @return True se i conteggi sono stati modificati
+     */
+    synchronized boolean apply(ProductSnapshot snapshot, long delta) {
+        if (!filter.matchesRanges(snapshot) || !ProductSearchIndex.matchesQuery(snapshot, filter.getQuery())) {
+            return false;
+        }
+        return add(new String[] {
+                snapshot.getCategory(), snapshot.getBrand(), snapshot.getModel(),
+                snapshot.getFuelType(), snapshot.getTransmission()
+        }, delta);
+    }
+
+    /**
+     * @return Faccette ordinate per valore, con il valore selezionato sempre presente
+     */
+    synchronized ProductFacets toFacets() {
+        return new ProductFacets(
+                toFacetValues(CATEGORY),
+                toFacetValues(BRAND),
+                selected[BRAND] != null ? toFacetValues(MODEL) : new ArrayList<>(),
+                toFacetValues(FUEL_TYPE),
+                toFacetValues(TRANSMISSION));
+    }
+
+    synchronized List<String> categories() { return new ArrayList<>(counts.get(CATEGORY).keySet()); }
+
+    synchronized List<String> brands() { return new ArrayList<>(counts.get(BRAND).keySet()); }
+
+    synchronized List<String> models() { return new ArrayList<>(counts.get(MODEL).keySet()); }
+
+    synchronized List<String> fuelTypes() { return new ArrayList<>(counts.get(FUEL_TYPE).keySet()); }
+
+    synchronized List<String> transmissions() { return new ArrayList<>(counts.get(TRANSMISSION).keySet()); }
+
+    // === METODI PRIVATI ===
+
+    private synchronized boolean add(String[] values, long delta) {
+        int mismatches = 0;
+        int mismatchedDimension = -1;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            if (selected[d] != null && !selected[d].equals(values[d])) {
+                mismatches++;
+                mismatchedDimension = d;
+            }
+        }
+        if (mismatches > 1) {
+            return false;
+        }
+        boolean changed = false;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            if ((mismatches == 0 || d == mismatchedDimension) && values[d] != null) {
+                Long updated = counts.get(d).merge(values[d], delta, Long::sum);
+                if (updated != null && updated <= 0) {
+                    counts.get(d).remove(values[d]);
+                }
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Mantiene sempre il valore selezionato (anche a zero risultati)
+     * così che il form conservi la scelta dell'utente
+     */
+    private List<FacetValue> toFacetValues(int dimension) {
+        List<FacetValue> result = new ArrayList<>(counts.get(dimension).size() + 1);
+        counts.get(dimension).forEach((value, count) -> result.add(new FacetValue(value, count)));
+        String selectedValue = selected[dimension];
+        if (selectedValue != null && result.stream().noneMatch(v -> Objects.equals(v.getValue(), selectedValue))) {
+            result.add(new FacetValue(selectedValue, 0));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,150 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.Image;
+import it.uniroma3.siwprogetto.repository.ImageRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Migrazione dei byte delle immagini dai LOB del database all'archivio su filesystem
+ *
+ * Attivazione:
+ * - images.storage.migrate-lobs=true (application.properties o riga di comando:
+ *   java -jar app.jar --images.storage.migrate-lobs=true)
+ * - Eseguita all'avvio, prima che l'applicazione serva richieste
+ * - Operazione una tantum e distruttiva (i LOB vengono rilasciati): disattivata di default
+ *   e rifiutata se l'archivio è in una directory temporanea
+ *
+ * Processo:
+ * - Righe con storageKey nulla lette a blocchi (keyset sull'ID, images.storage.migration-batch-size)
+ * - Ogni blocco in una transazione propria: byte scritti nell'archivio,
+ *   poi storageKey/sizeBytes valorizzati e colonna LOB azzerata
+ * - Dopo ogni blocco i riferimenti dei contenuti (ImageBlob) vengono ricalcolati
+ * - Su PostgreSQL il large object viene rilasciato (lo_unlink), altrimenti resterebbe orfano
+ * - Idempotente: una riga già migrata non viene più selezionata; un'interruzione
+ *   lascia al più file senza riferimenti, mai righe senza contenuto
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class ImageBlobMigration implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageBlobMigration.class);
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private ImageBlobService imageBlobService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${images.storage.migrate-lobs:false}")
+    private boolean enabled;
+
+    @Value("${images.storage.migration-batch-size:50}")
+    private int batchSize;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        if (imageStorageService.isTemporaryRoot()) {
+            throw new IllegalStateException("Migrazione dei LOB rifiutata: images.storage.root è una directory "
+                    + "temporanea e i LOB verrebbero rilasciati");
+        }
+        migrate();
+    }
+
+    /**
+     * Sposta nell'archivio tutte le immagini ancora memorizzate come LOB
+     *
+     * @return Numero di immagini migrate
+     */
+    public int migrate() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long start = System.currentTimeMillis();
+        int migrated = 0;
+        long afterId = 0;
+
+        List<Long> ids;
+        while (!(ids = imageRepository.findLegacyIdsAfter(afterId, PageRequest.of(0, batchSize))).isEmpty()) {
+            List<Long> batch = ids;
+            Set<String> keys = new LinkedHashSet<>();
+            Integer done = transaction.execute(status -> migrateBatch(batch, keys));
+            migrated += done != null ? done : 0;
+            keys.forEach(imageBlobService::recount);
+            afterId = batch.get(batch.size() - 1);
+        }
+
+        if (migrated > 0) {
+            logger.info("Migrazione immagini completata: {} LOB spostati nell'archivio in {} ms",
+                    migrated, System.currentTimeMillis() - start);
+        }
+        return migrated;
+    }
+
+    /**
+     * Migra un blocco di immagini (eseguito in transazione)
+     */
+    private int migrateBatch(List<Long> ids, Set<String> keys) {
+        boolean postgres = isPostgres();
+        int migrated = 0;
+        for (Long id : ids) {
+            Image image = entityManager.find(Image.class, id);
+            byte[] data = image != null ? image.getData() : null;
+            if (data == null || data.length == 0) {
+                logger.warn("Immagine {} senza contenuto: non migrata", id);
+                continue;
+            }
+            try {
+                ImageStorageService.StoredBlob blob = imageStorageService.store(data);
+                if (postgres) {
+                    entityManager.createNativeQuery("SELECT lo_unlink(data) FROM image WHERE id = :id AND data IS NOT NULL")
+                            .setParameter("id", id)
+                            .getResultList();
+                }
+                image.setStorageKey(blob.getKey());
+                image.setSizeBytes(blob.getSize());
+                image.setData(null);
+                keys.add(blob.getKey());
+                migrated++;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Scrittura nell'archivio fallita per l'immagine " + id, e);
+            }
+        }
+        logger.debug("Blocco migrato: {} immagini su {}", migrated, ids.size());
+        return migrated;
+    }
+
+    private boolean isPostgres() {
+        String product = entityManager.unwrap(Session.class)
+                .doReturningWork(connection -> connection.getMetaData().getDatabaseProductName());
+        return "PostgreSQL".equalsIgnoreCase(product);
+    }
+}
@@ -0,0 +1,185 @@
+package it.uniroma3.siwprogetto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.uniroma3.siwprogetto.model.ImageAddedEvent;
+import it.uniroma3.siwprogetto.model.ImageBlob;
+import it.uniroma3.siwprogetto.model.ImageRemovedEvent;
+import it.uniroma3.siwprogetto.model.ImagesRemovedEvent;
+import it.uniroma3.siwprogetto.repository.ImageBlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Catalogo e conteggio dei riferimenti dei contenuti deduplicati (ImageBlob)
+ *
+ * Registrazione:
+ * - Ogni contenuto scritto o ritrovato nell'archivio viene registrato una sola volta,
+ *   in una transazione separata: un upload annullato lascia il contenuto con zero
+ *   riferimenti, recuperabile dopo il periodo di grazia
+ * - Un contenuto senza riferimenti riusato da un upload riparte dal periodo di grazia:
+ *   ImageGarbageCollector non lo rimuove prima che l'immagine venga salvata
+ * - La riga è letta con lock esclusivo, come nella rimozione: una registrazione attende
+ *   una rimozione in corso e la vede conclusa (riga e file assenti); il chiamante
+ *   verifica il file dopo la registrazione e lo riscrive se manca
+ *
+ * Conteggio:
+ * - Ricalcolato dalle righe Image dopo il commit di ogni inserimento/eliminazione
+ *   (ImageAddedEvent, ImageRemovedEvent), mai incrementato alla cieca
+ * - Eliminazioni in blocco (ImagesRemovedEvent): UPDATE set-based sulle chiavi coinvolte
+ * - Per un contenuto ricompresso viene ricalcolato anche l'originale da cui deriva
+ *
+ * Metriche (Micrometer):
+ * - images.blobs.registered{result=new|existing}
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class ImageBlobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageBlobService.class);
+
+    /** Chiavi per UPDATE nel ricalcolo in blocco (limite dei parametri della clausola IN) */
+    private static final int RECOUNT_BATCH = 500;
+
+    private final ImageBlobRepository imageBlobRepository;
+    private final TransactionTemplate requiresNew;
+
+    private final Counter registeredNew;
+    private final Counter registeredExisting;
+
+    public ImageBlobService(ImageBlobRepository imageBlobRepository, PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry) {
+        this.imageBlobRepository = imageBlobRepository;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        this.registeredNew = Counter.builder("images.blobs.registered").tag("result", "new")
+                .description("Contenuti scritti per la prima volta nell'archivio").register(meterRegistry);
+        this.registeredExisting = Counter.builder("images.blobs.registered").tag("result", "existing")
+                .description("Upload risolti su un contenuto già presente").register(meterRegistry);
+    }
+
+    /**
+     * Registra un contenuto dell'archivio nel catalogo (se non già presente)
+     *
+     * @param key Chiave del contenuto
+     * @param size Dimensione in byte
+     * @param contentType Tipo MIME rilevato
+     * @param written true se il contenuto è stato appena scritto, false se già presente
+     */
+    public void register(String key, long size, String contentType, boolean written) {
+        register(key, size, contentType, written, null);
+    }
+
+    /**
+     * Registra un contenuto ricavato da un upload (ricompressione all'ingest)
+     *
+     * @param key Chiave del contenuto
+     * @param size Dimensione in byte
+     * @param contentType Tipo MIME rilevato
+     * @param written true se il contenuto è stato appena scritto, false se già presente
+     * @param sourceKey Hash dell'upload da cui il contenuto è stato ricavato, null se è l'upload stesso
+     */
+    public void register(String key, long size, String contentType, boolean written, String sourceKey) {
+        (written ? registeredNew : registeredExisting).increment();
+        try {
+            requiresNew.executeWithoutResult(status -> {
+                if (imageBlobRepository.findForUpdate(key).isEmpty()) {
+                    imageBlobRepository.saveAndFlush(new ImageBlob(key, size, contentType, sourceKey));
+                } else {
+                    imageBlobRepository.touch(key, LocalDateTime.now());
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Registrato in parallelo da un altro upload dello stesso contenuto
+            logger.debug("Contenuto già registrato: {}", key);
+        }
+    }
+
+    /**
+     * Contenuto già ricompresso a partire da un upload con lo stesso hash
+     *
+     * @param sourceKey Hash dell'upload ricevuto
+     * @return Contenuto ricavato, se presente nel catalogo
+     */
+    @Transactional(readOnly = true)
+    public Optional<ImageBlob> findDerived(String sourceKey) {
+        return imageBlobRepository.findFirstBySourceKey(sourceKey);
+    }
+
+    /**
+     * Ricalcola i riferimenti di un contenuto dalle righe Image
+     *
+     * @param key Chiave del contenuto
+     */
+    @Transactional
+    public void recount(String key) {
+        if (key == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        imageBlobRepository.recount(key);
+        imageBlobRepository.markReleased(key, now);
+        imageBlobRepository.findById(key).map(ImageBlob::getSourceKey).ifPresent(sourceKey -> {
+            imageBlobRepository.recount(sourceKey);
+            imageBlobRepository.markReleased(sourceKey, now);
+        });
+    }
+
+    /**
+     * Ricalcola i riferimenti di più contenuti con UPDATE set-based, a blocchi di RECOUNT_BATCH chiavi
+     * Per i contenuti ricompressi ricalcola anche gli originali da cui derivano
+     *
+     * @param keys Chiavi dei contenuti
+     */
+    @Transactional
+    public void recountAll(Collection<String> keys) {
+        List<String> pending = new ArrayList<>(keys);
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < pending.size(); from += RECOUNT_BATCH) {
+            List<String> batch = pending.subList(from, Math.min(from + RECOUNT_BATCH, pending.size()));
+            imageBlobRepository.recountIn(batch);
+            imageBlobRepository.markReleasedIn(batch, now);
+            List<String> sources = imageBlobRepository.findSourceKeysIn(batch);
+            if (!sources.isEmpty()) {
+                imageBlobRepository.recountIn(sources);
+                imageBlobRepository.markReleasedIn(sources, now);
+            }
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onImageAdded(ImageAddedEvent event) {
+        recount(event.getStorageKey());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onImageRemoved(ImageRemovedEvent event) {
+        recount(event.getStorageKey());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onImagesRemoved(ImagesRemovedEvent event) {
+        recountAll(event.getStorageKeys());
+    }
+}
@@ -0,0 +1,541 @@
+package it.uniroma3.siwprogetto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.uniroma3.siwprogetto.model.ImageMetadata;
+import it.uniroma3.siwprogetto.model.ImageRemovedEvent;
+import it.uniroma3.siwprogetto.model.ImagesRemovedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Cache delle immagini più richieste (foto in evidenza, loghi dei dealer)
+ *
+ * Due livelli:
+ * - Metadati per ID (ImageMetadata, pochi byte sull'heap): nessuna query per le immagini calde
+ * - Contenuto per chiave (hash dell'originale o della rendition) in pagine di
+ *   ByteBuffer diretti, fuori dall'heap: nessuna allocazione proporzionale all'immagine
+ *
+ * Memoria del contenuto:
+ * - Slab diretti (images.cache.slab-bytes) suddivisi in pagine (images.cache.page-bytes),
+ *   allocati pigramente fino a images.cache.max-bytes; le pagine liberate vengono riusate
+ * - Conteggiati in -XX:MaxDirectMemorySize, non nell'heap
+ *
+ * Eviction e ammissione:
+ * - LRU limitata per byte residenti
+ * - Voci oltre images.cache.max-entry-bytes mai ammesse (upload occasionali da 20MB)
+ * - Ammissione TinyLFU: un candidato entra solo se è stato richiesto più spesso
+ *   delle voci che dovrebbe espellere (sketch di frequenza con invecchiamento)
+ *
+ * Coerenza:
+ * - Il contenuto è indirizzato per hash e non può diventare obsoleto
+ * - ImageRemovedEvent dopo il commit rimuove metadati e contenuto dell'immagine eliminata
+ * - ImagesRemovedEvent fa lo stesso per un'eliminazione in blocco, in un solo passaggio
+ * - Una voce espulsa mentre viene inviata resta valida fino al rilascio (contatore di riferimenti)
+ *
+ * Metriche (Micrometer):
+ * - images.cache.requests{result=hit|miss}, images.cache.hit.ratio
+ * - images.cache.resident.bytes, images.cache.entries
+ * - images.cache.evictions, images.cache.rejections{reason=size|frequency|memory}
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class ImageCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageCache.class);
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final int pageBytes;
+    private final int slabBytes;
+    private final int maxMetadata;
+
+    /** Lock unico per mappa, pagine libere e sketch */
+    private final Object lock = new Object();
+
+    private final LinkedHashMap<String, Content> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Long, ImageMetadata> metadata;
+    private final Deque<ByteBuffer> freePages = new ArrayDeque<>();
+    private final FrequencySketch sketch = new FrequencySketch(4096);
+
+    private long allocatedBytes;
+    private long residentBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter sizeRejections;
+    private final Counter frequencyRejections;
+    private final Counter memoryRejections;
+
+    public ImageCache(MeterRegistry meterRegistry,
+                      @Value("${images.cache.max-bytes:67108864}") long maxBytes,
+                      @Value("${images.cache.max-entry-bytes:2097152}") long maxEntryBytes,
+                      @Value("${images.cache.page-bytes:65536}") int pageBytes,
+                      @Value("${images.cache.slab-bytes:4194304}") int slabBytes,
+                      @Value("${images.cache.max-metadata:20000}") int maxMetadata) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.pageBytes = pageBytes;
+        this.slabBytes = Math.max(pageBytes, slabBytes - slabBytes % pageBytes);
+        this.maxMetadata = maxMetadata;
+        this.metadata = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ImageMetadata> eldest) {
+                return size() > ImageCache.this.maxMetadata;
+            }
+        };
+
+        this.hits = Counter.builder("images.cache.requests").tag("result", "hit")
+                .description("Contenuti serviti dalla cache fuori heap").register(meterRegistry);
+        this.misses = Counter.builder("images.cache.requests").tag("result", "miss")
+                .description("Contenuti letti dall'archivio su filesystem").register(meterRegistry);
+        this.evictions = Counter.builder("images.cache.evictions")
+                .description("Voci espulse per fare spazio").register(meterRegistry);
+        this.sizeRejections = rejectionCounter(meterRegistry, "size");
+        this.frequencyRejections = rejectionCounter(meterRegistry, "frequency");
+        this.memoryRejections = rejectionCounter(meterRegistry, "memory");
+        Gauge.builder("images.cache.hit.ratio", this, ImageCache::hitRatio).register(meterRegistry);
+        Gauge.builder("images.cache.resident.bytes", this, ImageCache::residentBytes).baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("images.cache.entries", this, ImageCache::size).register(meterRegistry);
+    }
+
+    // === METADATI ===
+
+    /**
+     * Metadati dell'immagine, dalla cache o dal loader
+     * Le righe legacy (senza storageKey) non vengono memorizzate: la migrazione le modifica
+     *
+     * @param id ID dell'immagine
+     * @param loader Query della proiezione in caso di miss
+     * @return Metadati, empty se l'immagine non esiste
+     */
+    public Optional<ImageMetadata> metadata(Long id, Supplier<Optional<ImageMetadata>> loader) {
+        synchronized (lock) {
+            ImageMetadata cached = metadata.get(id);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+        }
+        Optional<ImageMetadata> loaded = loader.get();
+        loaded.filter(m -> m.getStorageKey() != null).ifPresent(m -> {
+            synchronized (lock) {
+                metadata.put(id, m);
+            }
+        });
+        return loaded;
+    }
+
+    // === CONTENUTO ===
+
+    /**
+     * Contenuto in cache per la chiave, con riferimento acquisito
+     * Il chiamante deve invocare {@link Content#release()} al termine dell'invio
+     *
+     * @param key Chiave del contenuto (hash, eventualmente con suffisso di rendition)
+     * @return Contenuto, null in caso di miss
+     */
+    public Content acquire(String key) {
+        synchronized (lock) {
+            sketch.increment(key);
+            Content content = entries.get(key);
+            if (content != null && content.retain()) {
+                hits.increment();
+                return content;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Propone un contenuto appena servito dal filesystem per l'ammissione in cache
+     *
+     * @param key Chiave del contenuto
+     * @param path File da caricare se ammesso
+     */
+    public void offer(String key, Path path) {
+        try {
+            long length = Files.size(path);
+            if (length == 0 || length > maxEntryBytes) {
+                sizeRejections.increment();
+                return;
+            }
+            int pagesNeeded = (int) ((length + pageBytes - 1) / pageBytes);
+
+            ByteBuffer[] pages;
+            synchronized (lock) {
+                if (entries.containsKey(key)) {
+                    return;
+                }
+                pages = reservePages(key, pagesNeeded);
+            }
+            if (pages == null) {
+                return;
+            }
+
+            Content content;
+            try {
+                content = load(key, path, length, pages);
+            } catch (IOException e) {
+                synchronized (lock) {
+                    returnPages(pages);
+                }
+                throw e;
+            }
+
+            synchronized (lock) {
+                if (entries.containsKey(key)) {
+                    returnPages(pages);
+                    return;
+                }
+                entries.put(key, content);
+                residentBytes += (long) pages.length * pageBytes;
+            }
+            logger.debug("Immagine in cache: {} ({} bytes)", key, length);
+        } catch (IOException e) {
+            logger.warn("Caricamento in cache fallito per {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Rimuove metadati e contenuti dell'immagine eliminata (dopo il commit)
+     *
+     * @param event Evento di eliminazione
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onImageRemoved(ImageRemovedEvent event) {
+        synchronized (lock) {
+            metadata.remove(event.getImageId());
+            if (event.getStorageKey() != null) {
+                Iterator<Map.Entry<String, Content>> it = entries.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, Content> entry = it.next();
+                    if (entry.getKey().startsWith(event.getStorageKey())) {
+                        remove(entry.getValue());
+                        it.remove();
+                    }
+                }
+            }
+        }
+        logger.debug("Cache immagini invalidata per {}", event);
+    }
+
+    /**
+     * Rimuove metadati e contenuti di un insieme di immagini eliminate (dopo il commit)
+     * Un solo passaggio sulle voci: chiave del contenuto = hash, con suffisso "-rendition"
+     *
+     * @param event Evento di eliminazione in blocco
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onImagesRemoved(ImagesRemovedEvent event) {
+        synchronized (lock) {
+            event.getImageIds().forEach(metadata::remove);
+            if (!event.getStorageKeys().isEmpty()) {
+                Iterator<Map.Entry<String, Content>> it = entries.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, Content> entry = it.next();
+                    int suffix = entry.getKey().indexOf('-');
+                    String storageKey = suffix < 0 ? entry.getKey() : entry.getKey().substring(0, suffix);
+                    if (event.getStorageKeys().contains(storageKey)) {
+                        remove(entry.getValue());
+                        it.remove();
+                    }
+                }
+            }
+        }
+        logger.debug("Cache immagini invalidata per {}", event);
+    }
+
+    /**
+     * Svuota la cache (le pagine dirette restano allocate per il riuso)
+     */
+    public void clear() {
+        synchronized (lock) {
+            metadata.clear();
+            entries.values().forEach(this::remove);
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    // === METODI PRIVATI ===
+
+    /**
+     * Riserva le pagine per un candidato, espellendo voci LRU meno frequenti
+     * Chiamato con il lock
+     *
+     * Due fasi: prima si scelgono le vittime necessarie e si decide l'ammissione
+     * contro tutte, poi si espelle. Un candidato rifiutato non costa nessuna voce.
+     *
+     * @return Pagine riservate, null se il candidato non è ammesso
+     */
+    private ByteBuffer[] reservePages(String key, int pagesNeeded) {
+        if ((long) pagesNeeded * pageBytes > maxBytes) {
+            memoryRejections.increment();
+            return null;
+        }
+        int candidateFrequency = sketch.frequency(key);
+        int reclaimable = availablePages();
+        List<Map.Entry<String, Content>> victims = new ArrayList<>();
+        Iterator<Map.Entry<String, Content>> eldest = entries.entrySet().iterator();
+        while (reclaimable < pagesNeeded) {
+            if (!eldest.hasNext()) {
+                // Pagine ancora trattenute da invii in corso
+                memoryRejections.increment();
+                return null;
+            }
+            Map.Entry<String, Content> victim = eldest.next();
+            if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                frequencyRejections.increment();
+                return null;
+            }
+            victims.add(victim);
+            // Le pagine di una voce in invio tornano libere solo al rilascio
+            if (victim.getValue().references.get() == 1) {
+                reclaimable += victim.getValue().pages.length;
+            }
+        }
+
+        for (Map.Entry<String, Content> victim : victims) {
+            entries.remove(victim.getKey());
+            remove(victim.getValue());
+            evictions.increment();
+        }
+
+        while (freePages.size() < pagesNeeded) {
+            allocateSlab();
+        }
+        ByteBuffer[] pages = new ByteBuffer[pagesNeeded];
+        for (int i = 0; i < pagesNeeded; i++) {
+            pages[i] = freePages.pop();
+        }
+        return pages;
+    }
+
+    private int availablePages() {
+        long allocatable = (maxBytes - allocatedBytes) / slabBytes * (slabBytes / pageBytes);
+        return (int) Math.min(Integer.MAX_VALUE, freePages.size() + allocatable);
+    }
+
+    private void allocateSlab() {
+        ByteBuffer slab = ByteBuffer.allocateDirect(slabBytes);
+        for (int offset = 0; offset < slabBytes; offset += pageBytes) {
+            freePages.push(slab.slice(offset, pageBytes));
+        }
+        allocatedBytes += slabBytes;
+    }
+
+    /** Chiamato con il lock: la voce esce dalla mappa, le pagine tornano libere al rilascio */
+    private void remove(Content content) {
+        residentBytes -= (long) content.pages.length * pageBytes;
+        content.release();
+    }
+
+    /** Chiamato con il lock */
+    private void returnPages(ByteBuffer[] pages) {
+        for (ByteBuffer page : pages) {
+            freePages.push(page);
+        }
+    }
+
+    private Content load(String key, Path path, long length, ByteBuffer[] pages) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = 0;
+            for (ByteBuffer page : pages) {
+                ByteBuffer target = page.duplicate().clear();
+                target.limit((int) Math.min(pageBytes, length - position));
+                while (target.hasRemaining()) {
+                    int read = file.read(target, position + target.position());
+                    if (read < 0) {
+                        throw new IOException("File troncato durante il caricamento in cache: " + path);
+                    }
+                }
+                position += target.limit();
+            }
+        }
+        return new Content(pages, length, Files.getLastModifiedTime(path).toMillis());
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0.0 : hits.count() / total;
+    }
+
+    private double residentBytes() {
+        synchronized (lock) {
+            return residentBytes;
+        }
+    }
+
+    private static Counter rejectionCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("images.cache.rejections").tag("reason", reason)
+                .description("Contenuti non ammessi in cache").register(meterRegistry);
+    }
+
+    // === STRUTTURE INTERNE ===
+
+    /**
+     * Contenuto in cache: pagine dirette, lunghezza e data di modifica del file
+     */
+    public final class Content {
+        private final ByteBuffer[] pages;
+        private final long length;
+        private final long lastModified;
+
+        /** 1 = riferimento della cache; ogni invio in corso ne aggiunge uno */
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Content(ByteBuffer[] pages, long length, long lastModified) {
+            this.pages = pages;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        public long getLength() { return length; }
+
+        public long getLastModified() { return lastModified; }
+
+        /**
+         * Scrive un intervallo del contenuto sul canale, pagina per pagina
+         *
+         * @param out Canale della risposta
+         * @param start Primo byte
+         * @param count Numero di byte
+         * @throws IOException Se la scrittura fallisce
+         */
+        public void writeTo(WritableByteChannel out, long start, long count) throws IOException {
+            long position = start;
+            long end = start + count;
+            while (position < end) {
+                int pageIndex = (int) (position / pageBytes);
+                int offset = (int) (position % pageBytes);
+                int chunk = (int) Math.min(pageBytes - offset, end - position);
+                ByteBuffer view = pages[pageIndex].duplicate();
+                view.limit(offset + chunk).position(offset);
+                while (view.hasRemaining()) {
+                    out.write(view);
+                }
+                position += chunk;
+            }
+        }
+
+        /**
+         * Rilascia il riferimento acquisito con acquire()
+         */
+        public void release() {
+            if (references.decrementAndGet() == 0) {
+                synchronized (lock) {
+                    returnPages(pages);
+                }
+            }
+        }
+
+        private boolean retain() {
+            int current;
+            do {
+                current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(current, current + 1));
+            return true;
+        }
+    }
+
+    /**
+     * Sketch count-min a 4 righe con contatori saturanti e invecchiamento
+     * Stima la frequenza recente delle richieste per l'ammissione TinyLFU
+     */
+    private static final class FrequencySketch {
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+
+        private final int[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int width) {
+            int size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+            this.table = new int[ROWS][size];
+            this.mask = size - 1;
+            this.sampleSize = size * 10;
+        }
+
+        private void increment(String key) {
+            int hash = spread(key.hashCode());
+            for (int row = 0; row < ROWS; row++) {
+                int index = indexOf(hash, row);
+                if (table[row][index] < MAX_COUNT) {
+                    table[row][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                age();
+            }
+        }
+
+        private int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int min = MAX_COUNT;
+            for (int row = 0; row < ROWS; row++) {
+                min = Math.min(min, table[row][indexOf(hash, row)]);
+            }
+            return min;
+        }
+
+        /** Dimezza tutti i contatori: le frequenze passate pesano sempre meno */
+        private void age() {
+            for (int[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = hash * (0x9E3779B9 + row * 0x7F4A7C16);
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int x) {
+            x ^= x >>> 17;
+            x *= 0xED5AD4BB;
+            x ^= x >>> 11;
+            return x;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package it.uniroma3.siwprogetto.service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Decodifica, ridimensionamento e codifica delle immagini con il solo JDK (ImageIO, Java2D)
+ * Condiviso da ImageDerivativeService (rendition) e ImageRecompressor (ingest)
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+final class ImageCodec {
+
+    private ImageCodec() {
+    }
+
+    /**
+     * Decodifica con il sottocampionamento più ampio che mantiene almeno
+     * il doppio dei pixel richiesti (qualità del ridimensionamento finale):
+     * una foto da 50MB non viene mai espansa a piena risoluzione nell'heap
+     *
+     * @param input Sorgente (non chiusa dal metodo)
+     * @param maxSide Lato maggiore desiderato dopo il ridimensionamento
+     * @return Immagine decodificata, null se il formato non è leggibile da ImageIO
+     * @throws IOException Se la decodifica fallisce
+     */
+    static BufferedImage readSubsampled(ImageInputStream input, int maxSide) throws IOException {
+        if (input == null) {
+            return null;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+            int subsampling = Math.max(1, longest / (maxSide * 2));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Ridimensiona conservando le proporzioni, senza ingrandire
+     *
+     * @param source Immagine sorgente
+     * @param maxSide Lato maggiore massimo
+     * @param alpha true per conservare la trasparenza, false per appiattire su bianco
+     * @return Nuova immagine (anche se non ridimensionata: tipo di pixel normalizzato)
+     */
+    static BufferedImage resize(BufferedImage source, int maxSide, boolean alpha) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double scale = Math.min(1.0, (double) maxSide / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        BufferedImage resized = new BufferedImage(targetWidth, targetHeight,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            if (!alpha) {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, targetWidth, targetHeight);
+            }
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    /**
+     * Codifica JPEG baseline senza metadati
+     *
+     * @param image Immagine RGB
+     * @param quality Qualità 0..1
+     * @return Byte JPEG
+     * @throws IOException Se la codifica fallisce
+     */
+    static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(buffer)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Codifica PNG senza chunk di metadati
+     *
+     * @param image Immagine (anche con trasparenza)
+     * @return Byte PNG
+     * @throws IOException Se la codifica fallisce
+     */
+    static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "png", buffer)) {
+            throw new IOException("Nessun encoder PNG disponibile");
+        }
+        return buffer.toByteArray();
+    }
+}
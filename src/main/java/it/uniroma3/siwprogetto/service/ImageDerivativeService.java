@@ -0,0 +1,309 @@
+package it.uniroma3.siwprogetto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.uniroma3.siwprogetto.model.Image;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipeline delle rendition ridotte delle immagini (miniatura griglia, dettaglio, zoom)
+ *
+ * Generazione:
+ * - All'upload (prodotti, gallery e logo dealer) su un executor di background limitato
+ *   (images.derivatives.threads, coda images.derivatives.queue-size)
+ * - Coda piena: il task viene scartato e la rendition sarà generata alla prima richiesta
+ * - Su richiesta (getOrCreate) se la rendition non esiste ancora; richieste concorrenti
+ *   per la stessa rendition condividono un'unica generazione (SingleFlight)
+ * - Al più images.derivatives.max-concurrent-requests generazioni su richiesta contemporanee:
+ *   oltre il limite la rendition viene accodata in background (isPending) e si serve l'originale
+ *
+ * Formato:
+ * - JPEG, lato maggiore limitato dalla rendition, proporzioni conservate
+ * - Trasparenza appiattita su sfondo bianco
+ * - Nessun ingrandimento: un originale già più piccolo viene solo ricodificato
+ *
+ * Memoria:
+ * - Decodifica con sottocampionamento (ImageReadParam): una foto da 50MB non viene
+ *   mai espansa a piena risoluzione nell'heap
+ *
+ * Le rendition sono indirizzate dalla chiave dell'originale: nessun metadato nel database
+ *
+ * Metriche (Micrometer):
+ * - images.derivatives.generated{trigger=upload|request}
+ * - images.derivatives.rejected (task scartati per coda piena)
+ * - images.derivatives.deferred (richieste servite con l'originale per limite di concorrenza)
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class ImageDerivativeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageDerivativeService.class);
+
+    /**
+     * Rendition disponibili, con lato maggiore in pixel
+     */
+    public enum Rendition {
+        /** Card dei listing e miniature */
+        GRID(480),
+        /** Immagine principale delle pagine di dettaglio */
+        DETAIL(1280),
+        /** Visualizzazione ingrandita */
+        ZOOM(2400);
+
+        private final int maxSide;
+
+        Rendition(int maxSide) {
+            this.maxSide = maxSide;
+        }
+
+        public int getMaxSide() { return maxSide; }
+
+        /** Nome usato negli URL e nel percorso dell'archivio */
+        public String pathName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * @param value Nome della rendition nell'URL (es: "grid")
+         * @return Rendition corrispondente, null se sconosciuta
+         */
+        public static Rendition fromPath(String value) {
+            for (Rendition rendition : values()) {
+                if (rendition.pathName().equalsIgnoreCase(value)) {
+                    return rendition;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final ImageStorageService imageStorageService;
+    private final ThreadPoolExecutor executor;
+    private final float jpegQuality;
+
+    /** Una sola generazione per (chiave, rendition) anche con richieste concorrenti */
+    private final SingleFlight<String, Path> generations;
+
+    /** Generazioni contemporanee nei thread delle richieste */
+    private final Semaphore requestPermits;
+
+    /** Rendition (chiave/rendition) accodate in background e non ancora generate */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final Counter generatedOnUpload;
+    private final Counter generatedOnRequest;
+    private final Counter rejected;
+    private final Counter deferred;
+
+    public ImageDerivativeService(ImageStorageService imageStorageService, MeterRegistry meterRegistry,
+                                  @Value("${images.derivatives.threads:2}") int threads,
+                                  @Value("${images.derivatives.queue-size:200}") int queueSize,
+                                  @Value("${images.derivatives.jpeg-quality:0.82}") float jpegQuality,
+                                  @Value("${images.derivatives.max-wait-ms:10000}") long maxWaitMillis,
+                                  @Value("${images.derivatives.max-concurrent-requests:2}") int maxConcurrentRequests) {
+        this.imageStorageService = imageStorageService;
+        this.jpegQuality = jpegQuality;
+        this.generations = new SingleFlight<>("derivatives", maxWaitMillis, meterRegistry);
+        this.requestPermits = new Semaphore(maxConcurrentRequests);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-derivatives-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                },
+                (runnable, pool) -> rejectedTask(runnable));
+
+        this.generatedOnUpload = Counter.builder("images.derivatives.generated").tag("trigger", "upload")
+                .description("Rendition generate in background dopo l'upload").register(meterRegistry);
+        this.generatedOnRequest = Counter.builder("images.derivatives.generated").tag("trigger", "request")
+                .description("Rendition generate alla prima richiesta").register(meterRegistry);
+        this.rejected = Counter.builder("images.derivatives.rejected")
+                .description("Generazioni scartate per coda piena").register(meterRegistry);
+        this.deferred = Counter.builder("images.derivatives.deferred")
+                .description("Richieste servite con l'originale e rendition accodata in background")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Pianifica in background tutte le rendition di un'immagine appena caricata
+     *
+     * @param image Immagine con contenuto nell'archivio
+     */
+    public void scheduleAll(Image image) {
+        String key = image.getStorageKey();
+        if (key == null) {
+            return;
+        }
+        executor.execute(() -> {
+            for (Rendition rendition : Rendition.values()) {
+                try {
+                    if (generate(key, rendition) != null) {
+                        generatedOnUpload.increment();
+                    }
+                } catch (Exception e) {
+                    logger.warn("Rendition {} non generata per {}: {}", rendition, key, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Restituisce la rendition, generandola se non esiste
+     * Senza permessi liberi la generazione viene accodata in background (isPending)
+     *
+     * @param key Chiave dell'originale nell'archivio
+     * @param rendition Rendition richiesta
+     * @return Percorso della rendition, null se va servito l'originale
+     *         (formato non decodificabile da ImageIO o generazione rinviata)
+     */
+    public Path getOrCreate(String key, Rendition rendition) {
+        Path existing = imageStorageService.resolveDerivative(key, rendition.pathName());
+        if (Files.isRegularFile(existing)) {
+            return existing;
+        }
+        String id = renditionId(key, rendition);
+        return generations.execute(id, () -> {
+            if (!requestPermits.tryAcquire()) {
+                deferred.increment();
+                schedule(key, rendition);
+                return null;
+            }
+            try {
+                Path generated = generate(key, rendition);
+                if (generated != null) {
+                    generatedOnRequest.increment();
+                }
+                return generated;
+            } catch (IOException e) {
+                logger.warn("Rendition {} non generata per {}: {}", rendition, key, e.getMessage());
+                return null;
+            } finally {
+                requestPermits.release();
+            }
+        });
+    }
+
+    /**
+     * @param key Chiave dell'originale nell'archivio
+     * @param rendition Rendition richiesta
+     * @return true se la rendition è accodata in background (o già generata nel frattempo):
+     *         l'originale servito al suo posto è solo temporaneo
+     */
+    public boolean isPending(String key, Rendition rendition) {
+        return pending.contains(renditionId(key, rendition))
+                || Files.isRegularFile(imageStorageService.resolveDerivative(key, rendition.pathName()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // === METODI PRIVATI ===
+
+    /**
+     * Accoda in background una rendition rinviata dalla richiesta (una sola volta per rendition)
+     */
+    private void schedule(String key, Rendition rendition) {
+        String id = renditionId(key, rendition);
+        if (!pending.add(id)) {
+            return;
+        }
+        executor.execute(new DeferredGeneration(id, () -> {
+            try {
+                if (generate(key, rendition) != null) {
+                    generatedOnRequest.increment();
+                }
+            } catch (Exception e) {
+                logger.warn("Rendition {} non generata per {}: {}", rendition, key, e.getMessage());
+            } finally {
+                pending.remove(id);
+            }
+        }));
+    }
+
+    private static String renditionId(String key, Rendition rendition) {
+        return key + "/" + rendition.pathName();
+    }
+
+    /**
+     * Decodifica l'originale (sottocampionato), ridimensiona e memorizza la rendition
+     */
+    private Path generate(String key, Rendition rendition) throws IOException {
+        Path target = imageStorageService.resolveDerivative(key, rendition.pathName());
+        if (Files.isRegularFile(target)) {
+            return target;
+        }
+        Path original = imageStorageService.resolve(key);
+        if (!Files.isRegularFile(original)) {
+            return null;
+        }
+
+        BufferedImage source;
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            source = ImageCodec.readSubsampled(input, rendition.getMaxSide());
+        }
+        if (source == null) {
+            logger.debug("Formato non decodificabile da ImageIO per {}", key);
+            return null;
+        }
+        BufferedImage resized = ImageCodec.resize(source, rendition.getMaxSide(), false);
+
+        Path stored = imageStorageService.storeDerivative(key, rendition.pathName(),
+                ImageCodec.encodeJpeg(resized, jpegQuality));
+        logger.debug("Rendition {} generata per {}: {}x{}", rendition, key, resized.getWidth(), resized.getHeight());
+        return stored;
+    }
+
+    private void rejectedTask(Runnable runnable) {
+        rejected.increment();
+        if (runnable instanceof DeferredGeneration generation) {
+            pending.remove(generation.id);
+        }
+        logger.debug("Coda rendition piena: generazione rinviata alla prima richiesta");
+    }
+
+    /**
+     * Generazione rinviata da una richiesta, riconoscibile se la coda la scarta
+     */
+    private static final class DeferredGeneration implements Runnable {
+
+        private final String id;
+        private final Runnable task;
+
+        DeferredGeneration(String id, Runnable task) {
+            this.id = id;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+}
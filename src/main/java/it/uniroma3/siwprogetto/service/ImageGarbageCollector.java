@@ -0,0 +1,412 @@
+package it.uniroma3.siwprogetto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.uniroma3.siwprogetto.model.ImageBlob;
+import it.uniroma3.siwprogetto.model.ImageRemovedEvent;
+import it.uniroma3.siwprogetto.repository.ImageBlobRepository;
+import it.uniroma3.siwprogetto.repository.ImageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Raccolta periodica delle immagini e dei contenuti non più referenziati
+ *
+ * Fasi di ogni esecuzione:
+ * 1. Righe Image senza prodotto né dealer: eliminate (ImageRemovedEvent per cache e conteggi)
+ * 2. Contenuti del catalogo (ImageBlob) senza riferimenti da oltre il periodo di grazia:
+ *    file (originale e rendition) e riga del catalogo rimossi
+ * 3. File dell'archivio assenti dal catalogo (scritti prima del catalogo o dopo un crash):
+ *    registrati nel catalogo; se senza riferimenti li rimuove la fase 2 dopo il periodo di grazia
+ * 4. Scritture temporanee abbandonate
+ *
+ * Carico:
+ * - A blocchi (images.gc.batch-size), ciascuno in una transazione breve:
+ *   nessun lock mantenuto per l'intera esecuzione
+ * - Pausa tra i blocchi (images.gc.pause-ms) per limitare I/O e query
+ * - Paginazione keyset (ID, chiave): nessun OFFSET
+ *
+ * Sicurezza:
+ * - Periodo di grazia (images.gc.grace-minutes) su contenuti e file: un upload non
+ *   ancora salvato non perde il proprio contenuto
+ * - Conteggio verificato sulle righe Image subito prima della rimozione
+ * - Riga del catalogo bloccata (SELECT ... FOR UPDATE) e file eliminato prima del commit:
+ *   un upload che riusa lo stesso contenuto attende sul lock di ImageBlobService.register
+ *   e riscrive il file; nessun file viene eliminato senza passare da questo lock
+ * - Dry-run (images.gc.dry-run): stessa analisi e stesso report, nessuna modifica
+ *
+ * Metriche (Micrometer):
+ * - images.gc.reclaimed.bytes
+ * - images.gc.removed{kind=rows|blobs|files|temp}
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class ImageGarbageCollector {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageGarbageCollector.class);
+
+    private final ImageRepository imageRepository;
+    private final ImageBlobRepository imageBlobRepository;
+    private final ImageBlobService imageBlobService;
+    private final ImageStorageService imageStorageService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transaction;
+
+    private final boolean enabled;
+    private final boolean dryRun;
+    private final Duration grace;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    /** Una sola esecuzione alla volta (schedulata o manuale) */
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Counter reclaimedBytes;
+    private final Counter removedRows;
+    private final Counter removedBlobs;
+    private final Counter removedFiles;
+    private final Counter removedTemp;
+
+    public ImageGarbageCollector(ImageRepository imageRepository, ImageBlobRepository imageBlobRepository,
+                                 ImageBlobService imageBlobService, ImageStorageService imageStorageService,
+                                 ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${images.gc.enabled:true}") boolean enabled,
+                                 @Value("${images.gc.dry-run:false}") boolean dryRun,
+                                 @Value("${images.gc.grace-minutes:60}") long graceMinutes,
+                                 @Value("${images.gc.batch-size:100}") int batchSize,
+                                 @Value("${images.gc.pause-ms:250}") long pauseMillis) {
+        this.imageRepository = imageRepository;
+        this.imageBlobRepository = imageBlobRepository;
+        this.imageBlobService = imageBlobService;
+        this.imageStorageService = imageStorageService;
+        this.eventPublisher = eventPublisher;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.dryRun = dryRun;
+        this.grace = Duration.ofMinutes(graceMinutes);
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+
+        this.reclaimedBytes = Counter.builder("images.gc.reclaimed.bytes").baseUnit("bytes")
+                .description("Byte liberati nell'archivio immagini").register(meterRegistry);
+        this.removedRows = removedCounter(meterRegistry, "rows");
+        this.removedBlobs = removedCounter(meterRegistry, "blobs");
+        this.removedFiles = removedCounter(meterRegistry, "files");
+        this.removedTemp = removedCounter(meterRegistry, "temp");
+    }
+
+    /**
+     * Esecuzione schedulata (images.gc.interval-ms), nella modalità configurata
+     */
+    @Scheduled(fixedDelayString = "${images.gc.interval-ms:3600000}",
+               initialDelayString = "${images.gc.interval-ms:3600000}")
+    public void scheduledSweep() {
+        if (enabled) {
+            sweep(dryRun);
+        }
+    }
+
+    /**
+     * Esegue tutte le fasi della raccolta
+     *
+     * @param dryRun true per analizzare senza modificare database e archivio
+     * @return Report dell'esecuzione, null se un'altra esecuzione è in corso
+     */
+    public SweepReport sweep(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Raccolta immagini già in corso: esecuzione saltata");
+            return null;
+        }
+        SweepReport report = new SweepReport(dryRun);
+        long start = System.currentTimeMillis();
+        try {
+            sweepUnownedRows(report);
+            sweepReleasedBlobs(report);
+            sweepUncataloguedFiles(report);
+            sweepTemporary(report);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Raccolta immagini interrotta");
+        } catch (RuntimeException | IOException e) {
+            logger.error("Raccolta immagini fallita: {}", e.getMessage(), e);
+        } finally {
+            report.durationMillis = System.currentTimeMillis() - start;
+            running.set(false);
+        }
+
+        if (!dryRun) {
+            reclaimedBytes.increment(report.bytes);
+            removedRows.increment(report.rows);
+            removedBlobs.increment(report.blobs);
+            removedFiles.increment(report.files);
+            removedTemp.increment(report.temporary);
+        }
+        logger.info("Raccolta immagini completata: {}", report);
+        return report;
+    }
+
+    // === FASI ===
+
+    /**
+     * Fase 1: righe Image senza proprietario
+     * I byte restano all'archivio finché il conteggio del contenuto non scade (fase 2)
+     */
+    private void sweepUnownedRows(SweepReport report) throws InterruptedException {
+        long afterId = 0;
+        List<Object[]> rows;
+        while (!(rows = imageRepository.findUnownedAfter(afterId, PageRequest.of(0, batchSize))).isEmpty()) {
+            List<Long> ids = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                ids.add((Long) row[0]);
+            }
+            afterId = ids.get(ids.size() - 1);
+
+            if (report.dryRun) {
+                report.rows += ids.size();
+            } else {
+                List<Object[]> batch = rows;
+                Integer deleted = transaction.execute(status -> {
+                    int count = imageRepository.deleteUnownedByIdIn(ids);
+                    for (Object[] row : batch) {
+                        eventPublisher.publishEvent(new ImageRemovedEvent((Long) row[0], (String) row[1]));
+                    }
+                    return count;
+                });
+                report.rows += deleted != null ? deleted : 0;
+            }
+            pause();
+        }
+    }
+
+    /**
+     * Fase 2: contenuti del catalogo senza riferimenti oltre il periodo di grazia
+     */
+    private void sweepReleasedBlobs(SweepReport report) throws InterruptedException {
+        LocalDateTime cutoff = LocalDateTime.now().minus(grace);
+        String afterKey = "";
+        List<ImageBlob> blobs;
+        while (!(blobs = imageBlobRepository.findReleasedBefore(afterKey, cutoff, PageRequest.of(0, batchSize)))
+                .isEmpty()) {
+            afterKey = blobs.get(blobs.size() - 1).getStorageKey();
+            Set<String> referenced = referencedKeys(blobs.stream().map(ImageBlob::getStorageKey).toList());
+
+            for (ImageBlob blob : blobs) {
+                String key = blob.getStorageKey();
+                if (referenced.contains(key)) {
+                    // Conteggio superato da un inserimento recente
+                    imageBlobService.recount(key);
+                    continue;
+                }
+                long bytes;
+                if (report.dryRun) {
+                    bytes = deleteContent(key, true);
+                } else {
+                    Long removed = transaction.execute(status -> removeCatalogueEntry(key, cutoff, status));
+                    if (removed == null) {
+                        continue;
+                    }
+                    bytes = removed;
+                }
+                report.blobs++;
+                report.bytes += bytes;
+            }
+            pause();
+        }
+    }
+
+    /**
+     * Fase 3: file senza riga di catalogo, letti dall'archivio in streaming
+     */
+    private void sweepUncataloguedFiles(SweepReport report) throws IOException, InterruptedException {
+        Instant cutoff = Instant.now().minus(grace);
+        try (Stream<Path> files = imageStorageService.listBlobs()) {
+            Iterator<Path> iterator = files.iterator();
+            Map<String, Path> batch = new HashMap<>();
+            while (iterator.hasNext()) {
+                Path path = iterator.next();
+                if (Files.getLastModifiedTime(path).toInstant().isBefore(cutoff)) {
+                    batch.put(path.getFileName().toString(), path);
+                }
+                if (batch.size() >= batchSize || (!iterator.hasNext() && !batch.isEmpty())) {
+                    sweepFileBatch(batch, report);
+                    batch.clear();
+                    pause();
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void sweepFileBatch(Map<String, Path> batch, SweepReport report) throws IOException {
+        Set<String> catalogued = new HashSet<>();
+        imageBlobRepository.findAllById(batch.keySet()).forEach(blob -> catalogued.add(blob.getStorageKey()));
+
+        List<String> uncatalogued = batch.keySet().stream().filter(key -> !catalogued.contains(key)).toList();
+        if (uncatalogued.isEmpty()) {
+            return;
+        }
+        Set<String> referenced = referencedKeys(uncatalogued);
+        for (String key : uncatalogued) {
+            // Registrato anche se senza riferimenti: un upload concorrente può riusarlo,
+            // la rimozione passa dal lock della riga (fase 2, dopo il periodo di grazia)
+            if (!report.dryRun) {
+                imageBlobService.register(key, Files.size(batch.get(key)), null, false);
+                imageBlobService.recount(key);
+            }
+            if (referenced.contains(key)) {
+                report.registered++;
+            } else {
+                report.files++;
+            }
+        }
+    }
+
+    /**
+     * Fase 4: scritture temporanee più vecchie del periodo di grazia
+     */
+    private void sweepTemporary(SweepReport report) throws IOException {
+        Instant cutoff = Instant.now().minus(grace);
+        try (Stream<Path> files = imageStorageService.listTemporary()) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                if (Files.getLastModifiedTime(path).toInstant().isBefore(cutoff)) {
+                    report.temporary++;
+                    report.bytes += Files.size(path);
+                    if (!report.dryRun) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+            }
+        }
+    }
+
+    // === METODI PRIVATI ===
+
+    /**
+     * Rimuove contenuto e riga del catalogo se il contenuto è ancora senza riferimenti
+     * Verifica, eliminazione del file e della riga nella stessa transazione breve,
+     * con la riga bloccata: il file sparisce prima che la riga possa essere ricreata
+     *
+     * @return Byte liberati, null se il contenuto non va (o non può essere) rimosso
+     */
+    private Long removeCatalogueEntry(String key, LocalDateTime cutoff, TransactionStatus status) {
+        ImageBlob current = imageBlobRepository.findForUpdate(key).orElse(null);
+        if (current == null || current.getReleasedAt() == null || !current.getReleasedAt().isBefore(cutoff)
+                || !referencedKeys(List.of(key)).isEmpty()) {
+            return null;
+        }
+        try {
+            long bytes = imageStorageService.delete(key, false);
+            imageBlobRepository.delete(current);
+            return bytes;
+        } catch (IOException e) {
+            // Riga conservata: il contenuto verrà ritentato alla prossima esecuzione
+            logger.warn("Contenuto {} non rimosso dall'archivio: {}", key, e.getMessage());
+            status.setRollbackOnly();
+            return null;
+        }
+    }
+
+    private Set<String> referencedKeys(List<String> keys) {
+        Set<String> referenced = new HashSet<>();
+        for (Object[] row : imageRepository.countByStorageKeyIn(keys)) {
+            referenced.add((String) row[0]);
+        }
+        return referenced;
+    }
+
+    private long deleteContent(String key, boolean dryRun) {
+        try {
+            return imageStorageService.delete(key, dryRun);
+        } catch (IOException e) {
+            logger.warn("Contenuto {} non rimosso dall'archivio: {}", key, e.getMessage());
+            return 0;
+        }
+    }
+
+    private void pause() throws InterruptedException {
+        if (pauseMillis > 0) {
+            Thread.sleep(pauseMillis);
+        }
+    }
+
+    private static Counter removedCounter(MeterRegistry meterRegistry, String kind) {
+        return Counter.builder("images.gc.removed").tag("kind", kind)
+                .description("Elementi rimossi dalla raccolta immagini").register(meterRegistry);
+    }
+
+    /**
+     * Report di un'esecuzione (in dry-run: ciò che sarebbe stato rimosso)
+     */
+    public static final class SweepReport {
+        private final boolean dryRun;
+        private int rows;
+        private int blobs;
+        private int files;
+        private int registered;
+        private int temporary;
+        private long bytes;
+        private long durationMillis;
+
+        private SweepReport(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        public boolean isDryRun() { return dryRun; }
+
+        /** Righe Image senza proprietario eliminate */
+        public int getRows() { return rows; }
+
+        /** Contenuti del catalogo rimossi */
+        public int getBlobs() { return blobs; }
+
+        /** File senza catalogo né riferimenti, registrati per la rimozione dopo il periodo di grazia */
+        public int getFiles() { return files; }
+
+        /** File senza catalogo ma referenziati, registrati */
+        public int getRegistered() { return registered; }
+
+        /** Scritture temporanee abbandonate rimosse */
+        public int getTemporary() { return temporary; }
+
+        /** Byte liberati nell'archivio */
+        public long getBytes() { return bytes; }
+
+        public long getDurationMillis() { return durationMillis; }
+
+        @Override
+        public String toString() {
+            return (dryRun ? "[dry-run] " : "") + "righe=" + rows + ", contenuti=" + blobs + ", file=" + files
+                    + ", registrati=" + registered + ", temporanei=" + temporary
+                    + ", byte liberati=" + bytes + ", durata=" + durationMillis + " ms";
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package it.uniroma3.siwprogetto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ricompressione delle foto all'ingest, con il solo JDK (ImageIO, Java2D)
+ *
+ * Trasformazioni (JPEG e PNG):
+ * - Orientamento EXIF applicato ai pixel (la foto resta dritta senza metadati)
+ * - Lato maggiore limitato a images.ingest.max-edge, proporzioni conservate
+ * - Ricodifica JPEG a images.ingest.jpeg-quality; PNG con trasparenza reale
+ *   ricodificati PNG, gli altri (screenshot) convertiti in JPEG
+ * - Nessun metadato nel risultato: EXIF (posizione GPS, dispositivo), XMP, IPTC
+ *
+ * Il risultato viene scartato (si conserva il file ricevuto) se non è più piccolo
+ * e l'originale non aveva né metadati né rotazione da applicare.
+ *
+ * Memoria:
+ * - Decodifica sottocampionata (ImageCodec): pixel limitati a circa 2x il lato massimo
+ * - Al più images.ingest.max-concurrent ricompressioni contemporanee; oltre l'attesa
+ *   massima l'upload viene archiviato così com'è
+ *
+ * Metriche (Micrometer):
+ * - images.ingest.processed{result=recompressed|kept|skipped|failed}
+ * - images.ingest.saved.bytes
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class ImageRecompressor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageRecompressor.class);
+
+    /** Byte letti per l'intestazione EXIF (segmento APP1 limitato a 64KB dal formato) */
+    private static final int HEADER_BYTES = 64 * 1024;
+
+    private final boolean enabled;
+    private final int maxEdge;
+    private final float jpegQuality;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+
+    private final Counter recompressed;
+    private final Counter kept;
+    private final Counter skipped;
+    private final Counter failed;
+    private final Counter savedBytes;
+
+    public ImageRecompressor(MeterRegistry meterRegistry,
+                             @Value("${images.ingest.recompress:true}") boolean enabled,
+                             @Value("${images.ingest.max-edge:2560}") int maxEdge,
+                             @Value("${images.ingest.jpeg-quality:0.85}") float jpegQuality,
+                             @Value("${images.ingest.max-concurrent:2}") int maxConcurrent,
+                             @Value("${images.ingest.max-wait-ms:10000}") long maxWaitMillis) {
+        this.enabled = enabled;
+        this.maxEdge = maxEdge;
+        this.jpegQuality = jpegQuality;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxConcurrent);
+
+        this.recompressed = resultCounter(meterRegistry, "recompressed");
+        this.kept = resultCounter(meterRegistry, "kept");
+        this.skipped = resultCounter(meterRegistry, "skipped");
+        this.failed = resultCounter(meterRegistry, "failed");
+        this.savedBytes = Counter.builder("images.ingest.saved.bytes").baseUnit("bytes")
+                .description("Byte risparmiati dalla ricompressione all'ingest").register(meterRegistry);
+    }
+
+    /**
+     * @param contentType Tipo rilevato dai magic bytes
+     * @return true se il formato viene ricompresso all'ingest
+     */
+    public boolean supports(String contentType) {
+        return enabled && ("image/jpeg".equals(contentType) || "image/png".equals(contentType));
+    }
+
+    /**
+     * Ricomprime un upload
+     *
+     * @param source Contenuto ricevuto, riapribile (letto due volte: intestazione e pixel)
+     * @param contentType Tipo rilevato dai magic bytes
+     * @param originalSize Dimensione dell'upload
+     * @return Contenuto ricompresso, null se va conservato il file ricevuto
+     */
+    public Result process(ImageStorageService.ContentSource source, String contentType, long originalSize) {
+        if (!supports(contentType)) {
+            return null;
+        }
+        boolean acquired = false;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                skipped.increment();
+                logger.debug("Ricompressione saltata: troppe elaborazioni in corso");
+                return null;
+            }
+            Result result = recompress(source, contentType, originalSize);
+            if (result == null) {
+                kept.increment();
+            } else {
+                recompressed.increment();
+                savedBytes.increment(Math.max(0, originalSize - result.getData().length));
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // Es: JPEG CMYK non supportati da ImageIO: si archivia il file ricevuto
+            failed.increment();
+            logger.debug("Ricompressione non riuscita ({}): {}", contentType, e.getMessage());
+            return null;
+        } finally {
+            if (acquired) {
+                permits.release();
+            }
+        }
+    }
+
+    // === METODI PRIVATI ===
+
+    private Result recompress(ImageStorageService.ContentSource source, String contentType, long originalSize)
+            throws IOException {
+        boolean jpeg = "image/jpeg".equals(contentType);
+        int orientation = 1;
+        boolean metadata = false;
+        if (jpeg) {
+            byte[] head;
+            try (InputStream in = source.open()) {
+                head = in.readNBytes(HEADER_BYTES);
+            }
+            orientation = exifOrientation(head, head.length);
+            metadata = hasMetadataSegments(head, head.length);
+        }
+
+        BufferedImage decoded;
+        try (InputStream in = source.open(); ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            decoded = ImageCodec.readSubsampled(input, maxEdge);
+        }
+        if (decoded == null) {
+            return null;
+        }
+
+        boolean alpha = !jpeg && hasTransparency(decoded);
+        BufferedImage image = ImageCodec.resize(orient(decoded, orientation), maxEdge, alpha);
+        byte[] data = alpha ? ImageCodec.encodePng(image) : ImageCodec.encodeJpeg(image, jpegQuality);
+
+        if (data.length >= originalSize && orientation == 1 && !metadata) {
+            return null;
+        }
+        logger.debug("Upload ricompresso: {} -> {} bytes, {}x{}, orientamento {}",
+                originalSize, data.length, image.getWidth(), image.getHeight(), orientation);
+        return new Result(data, alpha ? "image/png" : "image/jpeg");
+    }
+
+    /**
+     * Applica l'orientamento EXIF (1-8) ai pixel
+     */
+    static BufferedImage orient(BufferedImage source, int orientation) {
+        if (orientation < 2 || orientation > 8) {
+            return source;
+        }
+        int w = source.getWidth();
+        int h = source.getHeight();
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);   // specchiata orizzontalmente
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);  // ruotata di 180°
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);   // specchiata verticalmente
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);    // trasposta
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);   // ruotata di 90° orari
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);  // trasversa
+            default -> new AffineTransform(0, -1, 1, 0, 0, w);  // 8: ruotata di 90° antiorari
+        };
+        boolean swap = orientation >= 5;
+        BufferedImage oriented = new BufferedImage(swap ? h : w, swap ? w : h,
+                source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.drawImage(source, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    /**
+     * Orientamento dal tag 0x0112 dell'IFD0 EXIF (segmento APP1), 1 se assente
+     */
+    static int exifOrientation(byte[] head, int length) {
+        int app1 = findExifSegment(head, length);
+        if (app1 < 0) {
+            return 1;
+        }
+        int tiff = app1 + 10;
+        if (tiff + 8 > length) {
+            return 1;
+        }
+        boolean little = head[tiff] == 'I' && head[tiff + 1] == 'I';
+        int ifd = tiff + (int) readInt(head, tiff + 4, little);
+        if (ifd < tiff || ifd + 2 > length) {
+            return 1;
+        }
+        int entries = readShort(head, ifd, little);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > length) {
+                return 1;
+            }
+            if (readShort(head, entry, little) == 0x0112) {
+                int value = readShort(head, entry + 8, little);
+                return value >= 1 && value <= 8 ? value : 1;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Segmenti APP1 (EXIF, XMP) o APP13 (IPTC) prima dei dati dell'immagine
+     */
+    static boolean hasMetadataSegments(byte[] head, int length) {
+        int position = 2;
+        while (position + 4 <= length && (head[position] & 0xFF) == 0xFF) {
+            int marker = head[position + 1] & 0xFF;
+            if (marker == 0xDA || marker == 0xD9) {
+                return false;
+            }
+            if (marker == 0xE1 || marker == 0xED) {
+                return true;
+            }
+            position += 2 + readShort(head, position + 2, false);
+        }
+        return false;
+    }
+
+    /**
+     * Posizione del marker APP1 "Exif", -1 se assente
+     */
+    private static int findExifSegment(byte[] head, int length) {
+        if (length < 4 || (head[0] & 0xFF) != 0xFF || (head[1] & 0xFF) != 0xD8) {
+            return -1;
+        }
+        int position = 2;
+        while (position + 10 <= length && (head[position] & 0xFF) == 0xFF) {
+            int marker = head[position + 1] & 0xFF;
+            if (marker == 0xDA || marker == 0xD9) {
+                return -1;
+            }
+            if (marker == 0xE1 && head[position + 4] == 'E' && head[position + 5] == 'x'
+                    && head[position + 6] == 'i' && head[position + 7] == 'f'
+                    && head[position + 8] == 0 && head[position + 9] == 0) {
+                return position;
+            }
+            position += 2 + readShort(head, position + 2, false);
+        }
+        return -1;
+    }
+
+    /**
+     * Trasparenza effettiva: molti PNG hanno un canale alfa tutto opaco
+     */
+    private static boolean hasTransparency(BufferedImage image) {
+        WritableRaster alpha = image.getAlphaRaster();
+        if (alpha == null) {
+            return false;
+        }
+        int width = alpha.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < alpha.getHeight(); y++) {
+            alpha.getSamples(0, y, width, 1, 0, row);
+            for (int sample : row) {
+                if (sample < 255) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean little) {
+        int a = data[offset] & 0xFF;
+        int b = data[offset + 1] & 0xFF;
+        return little ? (b << 8) | a : (a << 8) | b;
+    }
+
+    private static long readInt(byte[] data, int offset, boolean little) {
+        long high = readShort(data, offset, little);
+        long low = readShort(data, offset + 2, little);
+        return little ? (low << 16) | high : (high << 16) | low;
+    }
+
+    private static Counter resultCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("images.ingest.processed").tag("result", result)
+                .description("Esito della ricompressione all'ingest").register(meterRegistry);
+    }
+
+    /**
+     * Contenuto ricompresso e relativo tipo MIME
+     */
+    public static final class Result {
+        private final byte[] data;
+        private final String contentType;
+
+        Result(byte[] data, String contentType) {
+            this.data = data;
+            this.contentType = contentType;
+        }
+
+        public byte[] getData() { return data; }
+
+        public String getContentType() { return contentType; }
+    }
+}
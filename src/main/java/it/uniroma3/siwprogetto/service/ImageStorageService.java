@@ -0,0 +1,528 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.Image;
+import it.uniroma3.siwprogetto.model.ImageBlob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Archivio su filesystem dei byte delle immagini, indirizzato per contenuto
+ *
+ * Layout (sotto images.storage.root, directory persistente non servita staticamente):
+ * - blobs/ab/cd/abcd...  file il cui nome è lo SHA-256 esadecimale del contenuto
+ * - blobs/tmp/           scritture in corso, mai lette
+ * - derivatives/{rendition}/ab/cd/abcd...jpg  rendition ridotte (ImageDerivativeService)
+ *
+ * Scrittura:
+ * - Streaming verso un file temporaneo con un buffer fisso (BUFFER_SIZE), calcolando
+ *   hash, dimensione e tipo del contenuto durante la copia: nessun array del file intero
+ * - Tipo dai magic bytes del primo blocco, non dal Content-Type dichiarato dal client;
+ *   negli upload un formato non riconosciuto viene rifiutato prima di scrivere su disco
+ * - fsync del file, poi rename atomico nella posizione definitiva:
+ *   un lettore vede il file completo o non lo vede affatto
+ * - Contenuto già presente: il temporaneo viene scartato (deduplicazione naturale)
+ *
+ * Deduplicazione degli upload:
+ * - Per i MultipartFile (parti già su disco) l'hash viene calcolato con una prima lettura
+ *   senza scrivere: se il contenuto esiste, zero scritture nell'archivio
+ * - Ogni contenuto è registrato in ImageBlob, con il conteggio delle righe Image che lo usano
+ *
+ * Ricompressione all'ingest (ImageRecompressor):
+ * - JPEG e PNG ridotti, ruotati secondo EXIF e senza metadati prima dell'archiviazione
+ * - L'upload ricevuto è conservato solo con images.ingest.keep-original=true
+ *
+ * Il database conserva solo i metadati (Image.storageKey, Image.sizeBytes, contentType)
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class ImageStorageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageStorageService.class);
+
+    /** Chiave valida: SHA-256 esadecimale minuscolo */
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    /** Buffer di copia: unico byte[] per upload, indipendente dalla dimensione del file */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path blobRoot;
+    private final Path derivativeRoot;
+    private final Path tmpDir;
+
+    private final ImageBlobService imageBlobService;
+    private final ImageRecompressor imageRecompressor;
+    private final boolean keepOriginal;
+    private final boolean temporaryRoot;
+
+    public ImageStorageService(@Value("${images.storage.root:${user.home}/fcf-motors/images}") String root,
+                               @Value("${images.storage.allow-temporary-root:false}") boolean allowTemporaryRoot,
+                               @Value("${images.ingest.keep-original:false}") boolean keepOriginal,
+                               ImageBlobService imageBlobService, ImageRecompressor imageRecompressor)
+            throws IOException {
+        this.imageBlobService = imageBlobService;
+        this.imageRecompressor = imageRecompressor;
+        this.keepOriginal = keepOriginal;
+        this.blobRoot = Paths.get(root).toAbsolutePath().normalize().resolve("blobs");
+        this.derivativeRoot = blobRoot.resolveSibling("derivatives");
+        this.tmpDir = blobRoot.resolve("tmp");
+
+        // Le immagini esistono solo qui: una directory temporanea le perde al riavvio
+        Path systemTmp = Paths.get(System.getProperty("java.io.tmpdir")).toAbsolutePath().normalize();
+        this.temporaryRoot = blobRoot.startsWith(systemTmp);
+        if (temporaryRoot && !allowTemporaryRoot) {
+            throw new IllegalStateException("images.storage.root (" + root + ") è sotto java.io.tmpdir: "
+                    + "configurare una directory persistente");
+        }
+        if (temporaryRoot) {
+            logger.error("ATTENZIONE: archivio immagini in una directory temporanea ({}), "
+                    + "il contenuto può andare perso al riavvio", blobRoot);
+        }
+        Files.createDirectories(tmpDir);
+        logger.info("Archivio immagini: {}", blobRoot);
+    }
+
+    /**
+     * @return true se l'archivio è sotto java.io.tmpdir (consentito solo per sviluppo)
+     */
+    public boolean isTemporaryRoot() {
+        return temporaryRoot;
+    }
+
+    /**
+     * Salva il contenuto del file caricato e ne associa i metadati all'immagine
+     *
+     * @param image Immagine (transient o gestita) da aggiornare
+     * @param file File caricato
+     * @throws IOException Se la scrittura sul filesystem fallisce
+     * @throws IllegalArgumentException Se il contenuto non è un formato immagine supportato
+     */
+    public void attach(Image image, MultipartFile file) throws IOException {
+        attach(image, file::getInputStream);
+    }
+
+    /**
+     * Salva un upload riapribile (parte multipart su disco, file temporaneo):
+     * hash senza scrivere, poi ricompressione all'ingest (ImageRecompressor)
+     *
+     * Ordine:
+     * - Upload già ricompresso in passato (stesso hash): riuso del risultato
+     * - Ricompressione riuscita: archiviato il risultato (e l'originale se
+     *   images.ingest.keep-original), con sourceKey = hash dell'upload
+     * - Altrimenti l'upload così com'è, senza scritture se già presente
+     *
+     * @param image Immagine (transient o gestita) da aggiornare
+     * @param source Contenuto dell'upload, riaperto a ogni lettura
+     * @throws IOException Se la scrittura sul filesystem fallisce
+     * @throws IllegalArgumentException Se il contenuto non è un formato immagine supportato
+     */
+    public void attach(Image image, ContentSource source) throws IOException {
+        StoredBlob received;
+        try (InputStream in = source.open()) {
+            received = digest(in);
+        }
+
+        ImageBlob derived = imageBlobService.findDerived(received.getKey())
+                .filter(blob -> exists(blob.getStorageKey())).orElse(null);
+        if (derived != null) {
+            imageBlobService.register(derived.getStorageKey(), derived.getSizeBytes(), derived.getContentType(), false);
+            // Registrato: al sicuro dalla raccolta, purché non sia stato rimosso prima
+            if (exists(derived.getStorageKey())) {
+                logger.debug("Upload già ricompresso: {} -> {}", received.getKey(), derived.getStorageKey());
+                if (keepOriginal) {
+                    storeReceived(source, received);
+                }
+                apply(image, new StoredBlob(derived.getStorageKey(), derived.getSizeBytes(), derived.getContentType()));
+                return;
+            }
+        }
+
+        ImageRecompressor.Result recompressed =
+                imageRecompressor.process(source, received.getContentType(), received.getSize());
+        if (recompressed != null) {
+            StoredBlob processed = store(new ByteArrayInputStream(recompressed.getData()), true, received.getKey());
+            if (keepOriginal) {
+                storeReceived(source, received);
+            }
+            apply(image, processed);
+            return;
+        }
+        apply(image, storeReceived(source, received));
+    }
+
+    /**
+     * Salva il contenuto e ne associa i metadati all'immagine
+     * I byte eventualmente presenti in Image.data vengono rimossi
+     * Il contentType dell'immagine è quello rilevato dai magic bytes
+     *
+     * @param image Immagine da aggiornare
+     * @param in Contenuto dell'immagine (non chiuso dal metodo)
+     * @throws IOException Se la scrittura sul filesystem fallisce
+     * @throws IllegalArgumentException Se il contenuto non è un formato immagine supportato
+     */
+    public void attach(Image image, InputStream in) throws IOException {
+        apply(image, store(in, true, null));
+    }
+
+    private static void apply(Image image, StoredBlob blob) {
+        image.setStorageKey(blob.getKey());
+        image.setSizeBytes(blob.getSize());
+        image.setContentType(blob.getContentType());
+        image.setData(null);
+    }
+
+    /**
+     * Scrive il contenuto nell'archivio (write-then-rename), senza vincoli sul formato
+     *
+     * @param in Contenuto (non chiuso dal metodo)
+     * @return Chiave, dimensione e tipo rilevato del contenuto memorizzato
+     * @throws IOException Se la scrittura sul filesystem fallisce
+     */
+    public StoredBlob store(InputStream in) throws IOException {
+        return store(in, false, null);
+    }
+
+    /**
+     * Copia in streaming con buffer fisso: hash e dimensione durante la scrittura,
+     * tipo dal primo blocco prima di creare il file temporaneo
+     */
+    private StoredBlob store(InputStream in, boolean imagesOnly, String sourceKey) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int head = in.readNBytes(buffer, 0, buffer.length);
+        String contentType = sniffContentType(buffer, head);
+        if (imagesOnly && contentType == null) {
+            throw new IllegalArgumentException("Formato immagine non supportato");
+        }
+
+        MessageDigest digest = sha256();
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+        try {
+            long size = head;
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+                 OutputStream out = new DigestOutputStream(Channels.newOutputStream(channel), digest)) {
+                out.write(buffer, 0, head);
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    size += read;
+                }
+                out.flush();
+                channel.force(true);
+            }
+
+            String key = HexFormat.of().formatHex(digest.digest());
+            Path target = resolve(key);
+            boolean written = !Files.exists(target);
+            // Prima la registrazione (riga bloccata e periodo di grazia riavviato), poi il file:
+            // un contenuto rimosso dalla raccolta prima della registrazione viene riscritto
+            imageBlobService.register(key, size, contentType, written, sourceKey);
+            if (!Files.exists(target)) {
+                publish(tmp, target);
+                logger.debug("Contenuto memorizzato: {} ({} bytes, {})", key, size, contentType);
+            } else {
+                logger.debug("Contenuto già presente nell'archivio: {}", key);
+            }
+            return new StoredBlob(key, size, contentType);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Calcola hash, dimensione e tipo senza scrivere
+     *
+     * @param in Contenuto (non chiuso dal metodo)
+     * @return Chiave che il contenuto avrebbe nell'archivio
+     * @throws IllegalArgumentException Se il contenuto non è un formato immagine supportato
+     */
+    private static StoredBlob digest(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int head = in.readNBytes(buffer, 0, buffer.length);
+        String contentType = sniffContentType(buffer, head);
+        if (contentType == null) {
+            throw new IllegalArgumentException("Formato immagine non supportato");
+        }
+
+        MessageDigest digest = sha256();
+        digest.update(buffer, 0, head);
+        long size = head;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            size += read;
+        }
+        return new StoredBlob(HexFormat.of().formatHex(digest.digest()), size, contentType);
+    }
+
+    /**
+     * Archivia l'upload così come ricevuto: zero scritture se il contenuto esiste già
+     */
+    private StoredBlob storeReceived(ContentSource source, StoredBlob received) throws IOException {
+        if (exists(received.getKey())) {
+            imageBlobService.register(received.getKey(), received.getSize(), received.getContentType(), false);
+            // Rimosso dalla raccolta prima della registrazione: riscritto dall'upload
+            if (exists(received.getKey())) {
+                logger.debug("Upload deduplicato: {} ({} bytes)", received.getKey(), received.getSize());
+                return received;
+            }
+        }
+        try (InputStream in = source.open()) {
+            return store(in, true, null);
+        }
+    }
+
+    /**
+     * Scrive una rendition derivata di un contenuto (write-then-rename)
+     *
+     * @param key Chiave del contenuto originale
+     * @param rendition Nome della rendition (es: "grid")
+     * @param data Byte della rendition
+     * @return Percorso della rendition nell'archivio
+     * @throws IOException Se la scrittura sul filesystem fallisce
+     */
+    public Path storeDerivative(String key, String rendition, byte[] data) throws IOException {
+        Path target = resolveDerivative(key, rendition);
+        Path tmp = Files.createTempFile(tmpDir, "derivative-", ".part");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+                 OutputStream out = Channels.newOutputStream(channel)) {
+                out.write(data);
+                out.flush();
+                channel.force(true);
+            }
+            publish(tmp, target);
+            return target;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * @see #store(InputStream)
+     */
+    public StoredBlob store(byte[] data) throws IOException {
+        return store(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Percorso del file per una chiave
+     *
+     * @param key SHA-256 esadecimale del contenuto
+     * @return Percorso nell'archivio (il file può non esistere)
+     * @throws IllegalArgumentException Se la chiave non è un hash valido
+     */
+    public Path resolve(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Chiave di archivio non valida: " + key);
+        }
+        return blobRoot.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    /**
+     * Percorso di una rendition derivata
+     *
+     * @param key Chiave del contenuto originale
+     * @param rendition Nome della rendition
+     * @return Percorso nell'archivio (il file può non esistere)
+     */
+    public Path resolveDerivative(String key, String rendition) {
+        Path original = resolve(key);
+        return derivativeRoot.resolve(rendition)
+                .resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(original.getFileName() + ".jpg");
+    }
+
+    /**
+     * @param key Chiave del contenuto
+     * @return true se il file è presente nell'archivio
+     */
+    public boolean exists(String key) {
+        return Files.isRegularFile(resolve(key));
+    }
+
+    /**
+     * Elimina un contenuto e tutte le sue rendition dall'archivio
+     * Usato solo da ImageGarbageCollector per contenuti senza riferimenti
+     *
+     * @param key Chiave del contenuto
+     * @param dryRun true per calcolare i byte senza eliminare
+     * @return Byte liberati (o liberabili in dry-run)
+     * @throws IOException Se l'eliminazione fallisce
+     */
+    public long delete(String key, boolean dryRun) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        paths.add(resolve(key));
+        if (Files.isDirectory(derivativeRoot)) {
+            try (Stream<Path> renditions = Files.list(derivativeRoot)) {
+                renditions.forEach(dir -> paths.add(
+                        dir.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key + ".jpg")));
+            }
+        }
+        long freed = 0;
+        for (Path path : paths) {
+            if (Files.isRegularFile(path)) {
+                freed += Files.size(path);
+                if (!dryRun) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Contenuti presenti nell'archivio (scritture temporanee escluse), in streaming
+     * Lo stream va chiuso dal chiamante
+     *
+     * @return Percorsi dei file il cui nome è una chiave valida
+     * @throws IOException Se la directory non è leggibile
+     */
+    public Stream<Path> listBlobs() throws IOException {
+        return Files.walk(blobRoot)
+                .filter(path -> !path.startsWith(tmpDir))
+                .filter(path -> KEY_PATTERN.matcher(path.getFileName().toString()).matches())
+                .filter(Files::isRegularFile);
+    }
+
+    /**
+     * Scritture temporanee abbandonate (processo interrotto durante un upload)
+     *
+     * @return Percorsi dei file temporanei, da chiudere dal chiamante
+     * @throws IOException Se la directory non è leggibile
+     */
+    public Stream<Path> listTemporary() throws IOException {
+        return Files.list(tmpDir).filter(Files::isRegularFile);
+    }
+
+    /**
+     * Legge l'intero contenuto di un'immagine, dall'archivio o dal LOB non ancora migrato
+     *
+     * @param image Immagine
+     * @return Byte dell'immagine, null se non disponibili
+     * @throws IOException Se la lettura dal filesystem fallisce
+     */
+    public byte[] read(Image image) throws IOException {
+        if (image.getStorageKey() != null) {
+            Path path = resolve(image.getStorageKey());
+            return Files.isRegularFile(path) ? Files.readAllBytes(path) : null;
+        }
+        return image.getData();
+    }
+
+    /**
+     * Tipo dell'immagine dai magic bytes dell'intestazione
+     * SVG non è accettato: è testo e può contenere script
+     *
+     * @param head Primi byte del contenuto
+     * @param length Numero di byte validi in head
+     * @return MIME type rilevato, null se il formato non è riconosciuto
+     */
+    static String sniffContentType(byte[] head, int length) {
+        if (startsWith(head, length, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(head, length, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(head, length, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(head, length, 'R', 'I', 'F', 'F') && length >= 12
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "image/webp";
+        }
+        if (startsWith(head, length, 'B', 'M')) {
+            return "image/bmp";
+        }
+        if (startsWith(head, length, 'I', 'I', 0x2A, 0x00) || startsWith(head, length, 'M', 'M', 0x00, 0x2A)) {
+            return "image/tiff";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int length, int... signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rende visibile un file completo con un rename atomico nella posizione definitiva
+     */
+    private static void publish(Path tmp, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    /**
+     * Contenuto riapribile: ogni chiamata restituisce un nuovo stream dall'inizio
+     */
+    @FunctionalInterface
+    public interface ContentSource {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Risultato di una scrittura nell'archivio
+     */
+    public static final class StoredBlob {
+        private final String key;
+        private final long size;
+        private final String contentType;
+
+        public StoredBlob(String key, long size, String contentType) {
+            this.key = key;
+            this.size = size;
+            this.contentType = contentType;
+        }
+
+        public String getKey() { return key; }
+
+        public long getSize() { return size; }
+
+        /** MIME type dai magic bytes, null se non riconosciuto */
+        public String getContentType() { return contentType; }
+    }
+}
@@ -0,0 +1,170 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.Dealer;
+import it.uniroma3.siwprogetto.model.DealerChangeEvent;
+import it.uniroma3.siwprogetto.model.ImagesRemovedEvent;
+import it.uniroma3.siwprogetto.model.ProductChangeEvent;
+import it.uniroma3.siwprogetto.model.ProductSnapshot;
+import it.uniroma3.siwprogetto.repository.ProductRepository;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Eliminazione in blocco dell'inventario di un venditore e del suo concessionario
+ *
+ * Strategia:
+ * - Poche DELETE native set-based nella transazione del chiamante, in ordine di vincoli:
+ *   richieste di preventivo → elementi del carrello → immagini → prodotti → concessionario
+ * - Prodotti individuati con una sottoquery sul venditore, mai elencati per ID
+ * - Nessuna entità caricata: il costo non cresce con il numero di prodotti e immagini
+ *
+ * Persistence context:
+ * - Flush prima delle DELETE: le modifiche pendenti del chiamante arrivano al database
+ * - Clear dopo le DELETE: nessuna entità eliminata resta gestita (né riscritta al flush)
+ * - Le entità caricate dal chiamante prima della chiamata sono detached: vanno ricaricate
+ *   (es. deleteById invece di delete sull'istanza)
+ *
+ * Eventi (le DELETE native non passano dagli entity listener):
+ * - ProductChangeEvent di eliminazione per ogni prodotto, dagli snapshot letti prima della DELETE
+ * - Un solo ImagesRemovedEvent per tutte le immagini eliminate
+ * - DealerChangeEvent di eliminazione per il concessionario
+ *
+ * Utilizzi:
+ * - DealerService.deleteDealer
+ * - AdminService.deleteUser
+ * - UserService.renewSubscriptions, deleteUser, removePrivateRoleAndCar
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class InventoryBulkDeleter {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryBulkDeleter.class);
+
+    /** Prodotti di un venditore (sottoquery comune alle DELETE) */
+    private static final String SELLER_PRODUCTS = "SELECT id FROM product WHERE seller_id = :sellerId";
+
+    private final EntityManager entityManager;
+    private final ProductRepository productRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public InventoryBulkDeleter(EntityManager entityManager, ProductRepository productRepository,
+                                ApplicationEventPublisher eventPublisher) {
+        this.entityManager = entityManager;
+        this.productRepository = productRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Elimina tutti i prodotti di un venditore con preventivi, elementi del carrello e immagini
+     *
+     * @param sellerId ID dell'utente venditore
+     * @return Numero di prodotti eliminati
+     */
+    @Transactional
+    public int deleteInventory(Long sellerId) {
+        int products = delete(sellerId, null);
+        entityManager.clear();
+        return products;
+    }
+
+    /**
+     * Elimina il concessionario con la sua gallery e l'intero inventario del proprietario
+     *
+     * @param dealer Concessionario da eliminare (con proprietario)
+     * @return Numero di prodotti eliminati
+     * @throws IllegalStateException Se la riga del concessionario non viene eliminata
+     */
+    @Transactional
+    public int deleteDealer(Dealer dealer) {
+        int products = delete(dealer.getOwner().getId(), dealer.getId());
+
+        int deleted = entityManager.createNativeQuery("DELETE FROM dealer WHERE id = :dealerId")
+                .setParameter("dealerId", dealer.getId())
+                .executeUpdate();
+        if (deleted != 1) {
+            throw new IllegalStateException("Concessionario non eliminato: " + dealer.getId());
+        }
+        // Prodotti, immagini e concessionario eliminati non restano nel persistence context
+        entityManager.clear();
+        // Copia detached del proprietario allineata, nel caso il chiamante la riscriva con merge
+        dealer.getOwner().setDealer(null);
+        eventPublisher.publishEvent(new DealerChangeEvent(dealer.getId(), null));
+        return products;
+    }
+
+    // === METODI PRIVATI ===
+
+    /**
+     * @param sellerId ID del venditore
+     * @param dealerId ID del concessionario di cui eliminare anche gallery e preventivi, null per nessuno
+     */
+    private int delete(Long sellerId, Long dealerId) {
+        long start = System.currentTimeMillis();
+        // Modifiche pendenti scritte prima: le DELETE native non vedono il persistence context
+        entityManager.flush();
+
+        List<ProductSnapshot> products = productRepository.findSnapshotsBySellerId(sellerId);
+
+        // Una condizione per statement (niente OR): ogni DELETE usa l'indice della sua chiave esterna
+        @SuppressWarnings("unchecked")
+        List<Object[]> images = new ArrayList<>(entityManager.createNativeQuery(
+                        "SELECT id, storage_key FROM image WHERE product_id IN (" + SELLER_PRODUCTS + ")")
+                .setParameter("sellerId", sellerId)
+                .getResultList());
+        int deletedQuotes = deleteBySeller("DELETE FROM quote_requests WHERE product_id IN (" + SELLER_PRODUCTS + ")", sellerId);
+        int deletedCartItems = deleteBySeller("DELETE FROM cart_item WHERE product_id IN (" + SELLER_PRODUCTS + ")", sellerId);
+        int deletedImages = deleteBySeller("DELETE FROM image WHERE product_id IN (" + SELLER_PRODUCTS + ")", sellerId);
+
+        if (dealerId != null) {
+            @SuppressWarnings("unchecked")
+            List<Object[]> dealerImages = entityManager.createNativeQuery(
+                            "SELECT id, storage_key FROM image WHERE dealer_id = :dealerId")
+                    .setParameter("dealerId", dealerId)
+                    .getResultList();
+            images.addAll(dealerImages);
+            deletedQuotes += deleteByDealer("DELETE FROM quote_requests WHERE dealer_id = :dealerId", dealerId);
+            deletedImages += deleteByDealer("DELETE FROM image WHERE dealer_id = :dealerId", dealerId);
+        }
+
+        int deletedProducts = deleteBySeller("DELETE FROM product WHERE seller_id = :sellerId", sellerId);
+
+        for (ProductSnapshot product : products) {
+            eventPublisher.publishEvent(new ProductChangeEvent(product, null));
+        }
+        if (!images.isEmpty()) {
+            List<Long> imageIds = new ArrayList<>(images.size());
+            Set<String> storageKeys = new HashSet<>();
+            for (Object[] row : images) {
+                imageIds.add(((Number) row[0]).longValue());
+                if (row[1] != null) {
+                    storageKeys.add((String) row[1]);
+                }
+            }
+            eventPublisher.publishEvent(new ImagesRemovedEvent(imageIds, storageKeys));
+        }
+
+        logger.info("Inventario eliminato: venditore={}, dealer={}, prodotti={}, immagini={}, preventivi={}, carrelli={} in {} ms",
+                sellerId, dealerId, deletedProducts, deletedImages, deletedQuotes, deletedCartItems,
+                System.currentTimeMillis() - start);
+        return deletedProducts;
+    }
+
+    private int deleteBySeller(String sql, Long sellerId) {
+        return entityManager.createNativeQuery(sql).setParameter("sellerId", sellerId).executeUpdate();
+    }
+
+    private int deleteByDealer(String sql, Long dealerId) {
+        return entityManager.createNativeQuery(sql).setParameter("dealerId", dealerId).executeUpdate();
+    }
+}
@@ -0,0 +1,84 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.FacetCombination;
+import it.uniroma3.siwprogetto.model.ProductFacets;
+import it.uniroma3.siwprogetto.model.ProductFilter;
+import it.uniroma3.siwprogetto.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Service per il calcolo delle faccette (valori filtro + conteggi) del catalogo
+ *
+ * Sostituisce le cinque query separate findAllCategories/findAllBrands/
+ * findAllFuelTypes/findAllTransmissions/findModelsByBrand della pagina prodotti.
+ *
+ * Algoritmo (single-pass):
+ * 1. Una query GROUP BY restituisce le combinazioni distinte
+ *    (categoria, marca, modello, carburante, cambio) con il relativo conteggio,
+ *    già ristrette dai filtri a intervallo e dagli ID della ricerca testuale
+ * 2. Una sola scansione in memoria delle combinazioni (FacetCounts) calcola
+ *    tutte le dimensioni: ogni combinazione contribuisce al valore di una dimensione
+ *    se soddisfa i filtri attivi di tutte le ALTRE dimensioni (faccette disgiuntive)
+ *
+ * Vantaggi:
+ * - Nessuna entità Product né blob Image caricati
+ * - Lavoro in memoria proporzionale alle combinazioni distinte, non ai prodotti
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class ProductFacetService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductFacetService.class);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private CatalogFacetCache catalogFacetCache;
+
+    /**
+     * Calcola tutte le faccette per i filtri attivi
+     *
+     * @param filter Filtri correnti della pagina prodotti
+     * @return Valori e conteggi di ogni dimensione; i modelli solo se è selezionata una marca
+     *
+     * Cache:
+     * - Servite da CatalogFacetCache: a regime nessuna query per pagina
+     * - Con query testuale la cache è usata solo se l'indice è pronto
+     */
+    @Transactional(readOnly = true)
+    public ProductFacets computeFacets(ProductFilter filter) {
+        if (filter.hasQuery() && !productSearchIndex.isReady()) {
+            return FacetCounts.build(filter, loadCombinations(filter)).toFacets();
+        }
+        return catalogFacetCache.get(filter, () -> loadCombinations(filter)).toFacets();
+    }
+
+    /**
+     * Esegue la query aggregata (una sola GROUP BY) per il filtro
+     */
+    private List<FacetCombination> loadCombinations(ProductFilter filter) {
+        Set<Long> candidateIds = productService.resolveCandidateIds(filter);
+        List<FacetCombination> combinations = candidateIds != null && candidateIds.isEmpty()
+                ? Collections.emptyList()
+                : productRepository.aggregateFacets(filter, candidateIds);
+        logger.debug("Faccette: {} combinazioni per filter={}", combinations.size(), filter);
+        return combinations;
+    }
+}
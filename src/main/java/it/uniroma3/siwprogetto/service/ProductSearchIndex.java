@@ -0,0 +1,261 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.ProductChangeEvent;
+import it.uniroma3.siwprogetto.model.ProductSnapshot;
+import it.uniroma3.siwprogetto.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Indice invertito in-memory per la ricerca testuale nel catalogo prodotti
+ *
+ * Responsabilità:
+ * - Tokenizzazione di brand, modello, categoria e descrizione
+ * - Risoluzione della query testuale in ID prodotto candidati
+ *   prima che qualsiasi entità (e relative immagini) venga caricata
+ * - Aggiornamento incrementale a ogni ProductChangeEvent
+ *
+ * Struttura:
+ * - TreeMap token → ID prodotti (posting list), ordinata per lookup a prefisso
+ * - Map ID prodotto → token indicizzati, per rimozioni/aggiornamenti puntuali
+ *
+ * Normalizzazione:
+ * - Decomposizione Unicode (NFD) e rimozione accenti ("Citroën" → "citroen")
+ * - Lowercase e split su caratteri non alfanumerici
+ *
+ * Semantica query:
+ * - Ogni termine deve matchare come prefisso di almeno un token (AND tra termini)
+ * - Es: "vol xc" trova "Volvo XC60"
+ *
+ * Performance:
+ * - Costo di ricerca proporzionale ai token/prodotti che matchano, non al catalogo
+ * - Lock lettura/scrittura: ricerche concorrenti, aggiornamenti serializzati
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class ProductSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    /** Separatore token: tutto ciò che non è lettera o cifra */
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /** Segni diacritici rimossi dopo la decomposizione NFD */
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    /** Posting list: token normalizzato → ID prodotti che lo contengono */
+    private final TreeMap<String, Set<Long>> postings = new TreeMap<>();
+
+    /** Token indicizzati per ogni prodotto (necessari per deindicizzare) */
+    private final Map<Long, Set<String>> tokensByProduct = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** True dopo la prima costruzione completa dell'indice */
+    private volatile boolean ready = false;
+
+    // === COSTRUZIONE E AGGIORNAMENTO ===
+
+    /**
+     * Costruisce l'indice all'avvio da una proiezione scalare del catalogo
+     * Il write lock è tenuto durante la lettura: gli eventi concorrenti
+     * attendono e vengono applicati dopo, senza perdere aggiornamenti
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            postings.clear();
+            tokensByProduct.clear();
+            List<ProductSnapshot> snapshots = productRepository.findAllSnapshots();
+            for (ProductSnapshot snapshot : snapshots) {
+                addInternal(snapshot);
+            }
+            ready = true;
+            logger.info("Indice ricerca prodotti costruito: {} prodotti, {} token in {} ms",
+                    tokensByProduct.size(), postings.size(), System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applica all'indice le modifiche confermate sui prodotti
+     * Eseguito dopo il commit: le transazioni annullate non toccano l'indice
+     *
+     * @param event Evento con stato prima/dopo del prodotto
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChange(ProductChangeEvent event) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(event.getProductId());
+            if (event.getAfter() != null) {
+                addInternal(event.getAfter());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // === RICERCA ===
+
+    /**
+     * Risolve una query testuale negli ID dei prodotti candidati
+     *
+     * @param query Testo libero inserito dall'utente
+     * @return ID dei prodotti che contengono tutti i termini (come prefisso),
+     *         insieme vuoto se nessun match, null se l'indice non è ancora pronto
+     *         o la query non contiene termini
+     */
+    public Set<Long> search(String query) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (!ready || terms.isEmpty()) {
+            return null;
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Set<Long>> matchesPerTerm = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                Set<Long> matches = matchPrefix(term);
+                if (matches.isEmpty()) {
+                    return Collections.emptySet(); // Un termine senza match azzera l'AND
+                }
+                matchesPerTerm.add(matches);
+            }
+
+            // Intersezione partendo dall'insieme più piccolo
+            matchesPerTerm.sort(Comparator.comparingInt(Set::size));
+            Set<Long> result = new HashSet<>(matchesPerTerm.get(0));
+            for (int i = 1; i < matchesPerTerm.size() && !result.isEmpty(); i++) {
+                result.retainAll(matchesPerTerm.get(i));
+            }
+            logger.debug("Ricerca indice '{}': {} candidati", query, result.size());
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Valuta la query su un singolo snapshot con la stessa semantica di search()
+     * Usato per aggiornare cache e aggregati senza interrogare l'indice
+     *
+     * @param snapshot Stato del prodotto
+     * @param query Testo libero (null o vuoto = nessun vincolo)
+     * @return True se ogni termine è prefisso di almeno un token del prodotto
+     */
+    public static boolean matchesQuery(ProductSnapshot snapshot, String query) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return true;
+        }
+        Set<String> tokens = tokensOf(snapshot);
+        for (String term : terms) {
+            if (tokens.stream().noneMatch(token -> token.startsWith(term))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Normalizza e tokenizza un testo con le stesse regole usate in indicizzazione
+     *
+     * @param text Testo da tokenizzare (può essere null)
+     * @return Token normalizzati non vuoti, nell'ordine di apparizione
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return Collections.emptyList();
+        }
+        String folded = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        List<String> tokens = new ArrayList<>();
+        for (String token : TOKEN_SEPARATOR.split(folded.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // === METODI PRIVATI (chiamati sotto lock) ===
+
+    private Set<Long> matchPrefix(String term) {
+        NavigableMap<String, Set<Long>> range = postings.subMap(term, true, term + Character.MAX_VALUE, false);
+        if (range.size() == 1) {
+            return range.firstEntry().getValue();
+        }
+        Set<Long> union = new HashSet<>();
+        for (Set<Long> ids : range.values()) {
+            union.addAll(ids);
+        }
+        return union;
+    }
+
+    private static Set<String> tokensOf(ProductSnapshot snapshot) {
+        Set<String> tokens = new HashSet<>();
+        tokens.addAll(tokenize(snapshot.getBrand()));
+        tokens.addAll(tokenize(snapshot.getModel()));
+        tokens.addAll(tokenize(snapshot.getCategory()));
+        tokens.addAll(tokenize(snapshot.getDescription()));
+        return tokens;
+    }
+
+    private void addInternal(ProductSnapshot snapshot) {
+        Set<String> tokens = tokensOf(snapshot);
+        for (String token : tokens) {
+            postings.computeIfAbsent(token, t -> new HashSet<>()).add(snapshot.getId());
+        }
+        tokensByProduct.put(snapshot.getId(), tokens);
+    }
+
+    private void removeInternal(Long productId) {
+        Set<String> tokens = tokensByProduct.remove(productId);
+        if (tokens == null) {
+            return;
+        }
+        for (String token : tokens) {
+            Set<Long> ids = postings.get(token);
+            if (ids != null) {
+                ids.remove(productId);
+                if (ids.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,11 @@ package it.uniroma3.siwprogetto.service;
 
 import it.uniroma3.siwprogetto.model.Image;
 import it.uniroma3.siwprogetto.model.Product;
+import it.uniroma3.siwprogetto.model.ProductCardView;
+import it.uniroma3.siwprogetto.model.ProductCursor;
+import it.uniroma3.siwprogetto.model.ProductFilter;
+import it.uniroma3.siwprogetto.model.ProductIdList;
+import it.uniroma3.siwprogetto.model.ProductPage;
 import it.uniroma3.siwprogetto.model.Subscription;
 import it.uniroma3.siwprogetto.model.User;
 import it.uniroma3.siwprogetto.repository.ProductRepository;
@@ -16,9 +21,11 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -63,6 +70,49 @@ public class ProductService {
     @Autowired
     private UserRepository userRepository;
 
+    /**
+     * Indice invertito in-memory per la ricerca testuale
+     * Risolve la query in ID candidati prima di caricare le entità
+     */
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    /**
+     * Cache di faccette e dati di riferimento (categorie, marche, modelli...)
+     */
+    @Autowired
+    private CatalogFacetCache catalogFacetCache;
+
+    /**
+     * Motore di lettura colonnare opzionale (catalog.read-engine=columnar)
+     */
+    @Autowired
+    private ColumnarCatalog columnarCatalog;
+
+    /**
+     * Cache dei risultati delle ricerche (liste ordinate di ID per filtro)
+     */
+    @Autowired
+    private CatalogQueryCache catalogQueryCache;
+
+    /**
+     * Archivio su filesystem dei byte delle immagini
+     */
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    /**
+     * Generazione in background delle rendition ridotte (griglia, dettaglio, zoom)
+     */
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
+    /**
+     * Numero massimo di ID per singola query IN
+     * Evita statement enormi quando la ricerca testuale è poco selettiva
+     */
+    private static final int ID_BATCH_SIZE = 1000;
+
     /**
      * Logger SLF4J per tracciamento operazioni e debugging
      * Configurazione centralizzata via logback/log4j
@@ -125,40 +175,26 @@ public class ProductService {
      * @return Lista categorie univoche per popolamento filtri UI
      * 
      * Cache Strategy:
-     * - Risultato relativamente stabile nel tempo
-     * - Candidato ideale per caching applicativo
-     * - Invalidazione cache su inserimento nuove categorie
+     * - Servito da CatalogFacetCache, nessuna query a regime
+     * - Aggiornato a ogni scrittura sui prodotti (ProductChangeEvent)
      */
     @Transactional
     public List<String> findAllCategories() {
-        return productRepository.findAllCategories();
+        return referenceCounts(ProductFilter.NONE).categories();
     }
 
     /**
      * Recupera tutti i brand distinti dal catalogo
      * 
-     * NOTA: Implementazione alternativa a repository.findAllBrands()
-     * - Carica tutti i prodotti in memoria
-     * - Estrae brand via Stream API
-     * - Meno efficiente della query DISTINCT nativa
+     * @return Lista brand univoci tramite query DISTINCT
      * 
-     * @return Lista brand univoci estratti da tutti i prodotti
-     * 
-     * Performance Impact:
-     * - Caricamento completo catalogo in memoria
-     * - Processing Stream su dataset potenzialmente grande
-     * - Preferire repository.findAllBrands() per performance
-     * 
-     * Motivo implementazione:
-     * - Possibile requirement di processing aggiuntivo sui dati
-     * - Debugging o validazione brand format
+     * Performance:
+     * - Servito da CatalogFacetCache, nessuna query a regime
+     * - Nessun caricamento di entità o immagini
      */
     @Transactional
     public List<String> findAllBrands() {
-        return productRepository.findAll().stream()
-                .map(Product::getBrand)
-                .distinct()
-                .collect(Collectors.toList());
+        return referenceCounts(ProductFilter.NONE).brands();
     }
 
     /**
@@ -174,7 +210,11 @@ public class ProductService {
      */
     @Transactional
     public List<String> findModelsByBrand(String brand) {
-        return productRepository.findModelsByBrand(brand);
+        if (brand == null) {
+            return new ArrayList<>();
+        }
+        return referenceCounts(new ProductFilter(null, brand, null, null, null,
+                null, null, null, null, null, null, null)).models();
     }
 
     /**
@@ -189,7 +229,7 @@ public class ProductService {
      */
     @Transactional
     public List<String> findAllFuelTypes() {
-        return productRepository.findAllFuelTypes();
+        return referenceCounts(ProductFilter.NONE).fuelTypes();
     }
 
     /**
@@ -204,15 +244,16 @@ public class ProductService {
      */
     @Transactional
     public List<String> findAllTransmissions() {
-        return productRepository.findAllTransmissions();
+        return referenceCounts(ProductFilter.NONE).transmissions();
     }
 
     /**
      * Ricerca avanzata con filtri multipli e ricerca testuale
      * 
-     * Processo in due fasi:
-     * 1. Filtri database via repository (performance)
-     * 2. Filtro testuale in-memory via Stream API (flessibilità)
+     * Processo:
+     * - Con query testuale: l'indice invertito (ProductSearchIndex) restituisce gli ID
+     *   candidati, poi il database applica i filtri strutturati solo su quegli ID
+     * - Senza query testuale: filtri database via repository
      * 
      * @param category Categoria prodotto (opzionale)
      * @param brand Marca veicolo (opzionale)
@@ -229,10 +270,11 @@ public class ProductService {
      * @return Lista prodotti matching tutti i filtri
      * 
      * Algoritmo ricerca testuale:
-     * - Split query per whitespace in termini separati
-     * - Ogni termine deve matchare almeno un campo (AND logic)
-     * - Match case-insensitive su brand, model, category
-     * - Stream filtering per massima flessibilità
+     * - Query normalizzata (accenti, maiuscole) e divisa in termini
+     * - Ogni termine deve essere prefisso di un token di brand, model,
+     *   category o description (AND logic)
+     * - Costo proporzionale ai prodotti che matchano, non alla dimensione del catalogo
+     * - Fallback al filtro in-memory solo se l'indice non è ancora stato costruito
      * 
      * Logging Strategy:
      * - Debug level per parametri input
@@ -252,12 +294,27 @@ public class ProductService {
                 category, brand, selectedModel, minPrice, maxPrice, minMileage, maxMileage, 
                 minYear, maxYear, fuelType, transmission, query);
 
-        // Prima fase: filtri database per performance
+        // Ricerca testuale: candidati dall'indice prima di caricare entità
+        Set<Long> candidateIds = productSearchIndex.search(query);
+        if (candidateIds != null) {
+            List<Product> results = new ArrayList<>();
+            List<Long> ids = new ArrayList<>(candidateIds);
+            for (int from = 0; from < ids.size(); from += ID_BATCH_SIZE) {
+                List<Long> batch = ids.subList(from, Math.min(from + ID_BATCH_SIZE, ids.size()));
+                results.addAll(productRepository.findByFiltersAndIdIn(category, brand, selectedModel,
+                        minPrice, maxPrice, minMileage, maxMileage,
+                        minYear, maxYear, fuelType, transmission, batch));
+            }
+            logger.debug("Trovati {} prodotti su {} candidati dall'indice", results.size(), ids.size());
+            return results;
+        }
+
+        // Filtri database per performance
         List<Product> results = productRepository.findByFilters(category, brand, selectedModel,
                 minPrice, maxPrice, minMileage, maxMileage,
                 minYear, maxYear, fuelType, transmission);
 
-        // Seconda fase: filtro testuale in-memory se specificato
+        // Fallback: filtro testuale in-memory se l'indice non è ancora pronto
         if (query != null && !query.trim().isEmpty()) {
             // Preprocessing query: trim, lowercase, split per whitespace
             String[] searchTerms = query.trim().toLowerCase().split("\\s+");
@@ -287,6 +344,118 @@ public class ProductService {
         return results;
     }
 
+    /**
+     * Pagina del catalogo filtrato, con prodotti in evidenza attiva per primi
+     *
+     * @param filter Filtri strutturati e query testuale
+     * @param after Cursore dell'ultima riga vista, null per la prima pagina
+     * @param pageSize Numero massimo di prodotti da restituire
+     * @return Pagina di prodotti e cursore per la successiva
+     *
+     * Processo:
+     * - Query testuale risolta in ID candidati tramite ProductSearchIndex
+     * - Filtri strutturati e ordinamento (rank evidenza, id DESC) eseguiti dal database
+     * - Lista ordinata degli ID servita da CatalogQueryCache: le ricerche ripetute
+     *   caricano solo le card della pagina
+     * - Risultati troppo grandi per la cache: paginazione keyset, costo costante per pagina
+     * - Richieste identiche concorrenti condividono una sola query (SingleFlight)
+     * - Con catalog.read-engine=columnar i filtri sono valutati da ColumnarCatalog
+     */
+    @Transactional
+    public ProductPage<ProductCardView> findCatalogPage(ProductFilter filter, ProductCursor after, int pageSize) {
+        logger.debug("Pagina catalogo: filter={}, after={}, size={}", filter, after, pageSize);
+
+        // Senza indice pronto la query testuale usa il fallback legacy: nessuna cache
+        if (columnarCatalog.isActive() || (filter.hasQuery() && !productSearchIndex.isReady())) {
+            Set<Long> candidateIds = resolveCandidateIds(filter);
+            if (candidateIds != null && candidateIds.isEmpty()) {
+                return new ProductPage<>(new ArrayList<>(), null);
+            }
+            if (columnarCatalog.isActive()) {
+                return findCatalogPageColumnar(filter, candidateIds, after, pageSize);
+            }
+            return productRepository.findPage(filter, candidateIds, after, pageSize);
+        }
+
+        ProductIdList ids = catalogQueryCache.get(filter, limit -> {
+            Set<Long> candidateIds = resolveCandidateIds(filter);
+            if (candidateIds != null && candidateIds.isEmpty()) {
+                return ProductIdList.EMPTY;
+            }
+            return productRepository.findMatchingIds(filter, candidateIds, limit);
+        });
+        if (ids == null) {
+            return catalogQueryCache.page(filter, after, pageSize,
+                    () -> productRepository.findPage(filter, resolveCandidateIds(filter), after, pageSize));
+        }
+
+        int from = ids.indexAfter(after);
+        int to = Math.min(from + pageSize, ids.size());
+        List<Long> pageIds = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            pageIds.add(ids.idAt(i));
+        }
+        ProductCursor next = to < ids.size() ? ids.cursorAt(to - 1) : null;
+        return new ProductPage<>(productRepository.findCardsByIds(pageIds), next);
+    }
+
+    /**
+     * Variante di findCatalogPage con filtri valutati dal catalogo colonnare
+     * Le card vengono caricate solo per gli ID della pagina visibile
+     */
+    private ProductPage<ProductCardView> findCatalogPageColumnar(ProductFilter filter, Set<Long> candidateIds,
+                                                                 ProductCursor after, int pageSize) {
+        ColumnarCatalog.PageIds page = columnarCatalog.findPageIds(filter, candidateIds, after, pageSize);
+        long[] ids = page.getIds();
+        int visible = Math.min(ids.length, pageSize);
+
+        List<Long> visibleIds = new ArrayList<>(visible);
+        for (int i = 0; i < visible; i++) {
+            visibleIds.add(ids[i]);
+        }
+        List<ProductCardView> content = productRepository.findCardsByIds(visibleIds);
+
+        ProductCursor next = null;
+        if (ids.length > pageSize) {
+            int lastRank = pageSize <= page.getFeaturedRows() ? ProductCursor.RANK_FEATURED : ProductCursor.RANK_STANDARD;
+            next = new ProductCursor(lastRank, ids[pageSize - 1]);
+        }
+        return new ProductPage<>(content, next);
+    }
+
+    /**
+     * Dati di riferimento (valori distinti per dimensione) serviti da CatalogFacetCache
+     * A regime nessuna query: la cache è aggiornata a ogni scrittura sui prodotti
+     */
+    private FacetCounts referenceCounts(ProductFilter filter) {
+        return catalogFacetCache.get(filter, () -> productRepository.aggregateFacets(filter, null));
+    }
+
+    /**
+     * Risolve la query testuale del filtro negli ID dei prodotti candidati
+     *
+     * @param filter Filtri attivi
+     * @return ID candidati, null se il filtro non contiene una query testuale
+     *
+     * Fallback:
+     * - Se l'indice non è ancora costruito (avvio applicazione) i candidati
+     *   sono calcolati con il filtro testuale legacy
+     */
+    @Transactional
+    public Set<Long> resolveCandidateIds(ProductFilter filter) {
+        if (!filter.hasQuery()) {
+            return null;
+        }
+        Set<Long> candidateIds = productSearchIndex.search(filter.getQuery());
+        if (candidateIds == null) {
+            candidateIds = findByFilters(filter.getCategory(), filter.getBrand(), filter.getModel(),
+                    filter.getMinPrice(), filter.getMaxPrice(), filter.getMinMileage(), filter.getMaxMileage(),
+                    filter.getMinYear(), filter.getMaxYear(), filter.getFuelType(), filter.getTransmission(),
+                    filter.getQuery()).stream().map(Product::getId).collect(Collectors.toSet());
+        }
+        return candidateIds;
+    }
+
     /**
      * Trova prodotto per ID con gestione Optional
      * 
@@ -303,6 +472,20 @@ public class ProductService {
         return productRepository.findById(id);
     }
 
+    /**
+     * Trova prodotto per la pagina dettaglio, con gallery e venditore già inizializzati
+     * 
+     * @param id ID prodotto da cercare
+     * @return Optional contenente Product se trovato, empty() se non esiste
+     * 
+     * Performance:
+     * - Entity graph Product.detail: una sola query, nessun lazy loading in fase di rendering
+     */
+    @Transactional
+    public Optional<Product> findDetailById(Long id) {
+        return productRepository.findDetailById(id);
+    }
+
     /**
      * Trova prodotto per ID con ritorno diretto (legacy)
      * 
@@ -500,8 +683,9 @@ public class ProductService {
      * - Virus scanning per production environment
      * 
      * Memory Management:
-     * - File bytes caricati completamente in memory
-     * - Considerare streaming per file molto grandi
+     * - Contenuto copiato in streaming nell'archivio su filesystem (ImageStorageService)
+     * - Nessun array di byte del file nell'heap: un buffer fisso per upload
+     * - ContentType rilevato dai magic bytes (formati non immagine rifiutati)
      * - Cleanup automatico MultipartFile dopo processing
      * 
      * NOTA: Metodo non salva Image nel database
@@ -518,12 +702,12 @@ public class ProductService {
 
         // Creazione entità Image con dati file
         Image image = new Image();
-        image.setData(file.getBytes()); // Conversione a byte array
-        image.setContentType(file.getContentType()); // MIME type per rendering
+        imageStorageService.attach(image, file); // Byte su filesystem, MIME type dai magic bytes
+        imageDerivativeService.scheduleAll(image); // Miniature in background
         
         // Logging per debugging e audit
         logger.info("Immagine preparata per il salvataggio: size={} bytes, contentType={}",
-                file.getBytes().length, file.getContentType());
+                image.getSizeBytes(), image.getContentType());
         return image;
     }
 }
\ No newline at end of file
@@ -0,0 +1,342 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.FacetCombination;
+import it.uniroma3.siwprogetto.model.ProductChangeEvent;
+import it.uniroma3.siwprogetto.model.ProductFilter;
+import it.uniroma3.siwprogetto.model.ProductSnapshot;
+import it.uniroma3.siwprogetto.model.SearchSuggestion;
+import it.uniroma3.siwprogetto.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Service di autocompletamento per la barra di ricerca (typeahead)
+ *
+ * Struttura dati:
+ * - Trie (albero di prefissi) sulle chiavi normalizzate di marca, modello e "marca modello"
+ * - Ogni nodo conserva i top-K suggerimenti del proprio sottoalbero,
+ *   ordinati per numero di annunci: la ricerca costa O(lunghezza prefisso)
+ *   indipendentemente dalla dimensione del catalogo
+ *
+ * Aggiornamento:
+ * - Costruzione all'avvio da un aggregato GROUP BY (nessuna entità caricata)
+ * - A ogni ProductChangeEvent confermato: conteggi aggiornati e top-K
+ *   ricalcolati solo lungo i percorsi delle chiavi coinvolte
+ * - La digitazione dell'utente non genera mai query sul catalogo
+ *
+ * Latenza:
+ * - Budget massimo di attesa sul lock (catalog.typeahead.budget-ms):
+ *   se un aggiornamento è in corso oltre il budget si risponde con lista vuota
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class ProductSuggestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductSuggestionService.class);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    /** Numero massimo di suggerimenti conservati per nodo e restituiti */
+    @Value("${catalog.typeahead.top-k:8}")
+    private int topK;
+
+    /** Attesa massima sul lock di lettura, in millisecondi */
+    @Value("${catalog.typeahead.budget-ms:50}")
+    private long budgetMillis;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private TrieNode root = new TrieNode();
+
+    /** Suggerimenti per chiave (marca, modello): il modello null indica il solo marchio */
+    private final Map<List<String>, Entry> entries = new HashMap<>();
+
+    /** Ordinamento: più annunci prima, poi alfabetico */
+    private static final Comparator<Entry> RANKING = Comparator
+            .comparingLong((Entry e) -> e.count).reversed()
+            .thenComparing(e -> e.text, String.CASE_INSENSITIVE_ORDER);
+
+    // === COSTRUZIONE E AGGIORNAMENTO ===
+
+    /**
+     * Costruisce il trie dall'aggregato (marca, modello, conteggio) del catalogo
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            root = new TrieNode();
+            entries.clear();
+            for (FacetCombination row : productRepository.aggregateFacets(ProductFilter.NONE, null)) {
+                adjustCount(row.getBrand(), null, row.getCount());
+                if (row.getModel() != null) {
+                    adjustCount(row.getBrand(), row.getModel(), row.getCount());
+                }
+            }
+            recomputeTopK(root);
+            logger.info("Trie autocompletamento costruito: {} suggerimenti in {} ms",
+                    entries.size(), System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applica al trie le modifiche confermate sui prodotti
+     *
+     * @param event Evento con stato prima/dopo del prodotto
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProductChange(ProductChangeEvent event) {
+        ProductSnapshot before = event.getBefore();
+        ProductSnapshot after = event.getAfter();
+        if (before != null && after != null
+                && Objects.equals(before.getBrand(), after.getBrand())
+                && Objects.equals(before.getModel(), after.getModel())) {
+            return; // Marca e modello invariati: nessun effetto sui suggerimenti
+        }
+
+        lock.writeLock().lock();
+        try {
+            List<Entry> touched = new ArrayList<>();
+            if (before != null) {
+                touched.add(adjustCount(before.getBrand(), null, -1));
+                if (before.getModel() != null) {
+                    touched.add(adjustCount(before.getBrand(), before.getModel(), -1));
+                }
+            }
+            if (after != null) {
+                touched.add(adjustCount(after.getBrand(), null, +1));
+                if (after.getModel() != null) {
+                    touched.add(adjustCount(after.getBrand(), after.getModel(), +1));
+                }
+            }
+            for (Entry entry : touched) {
+                if (entry != null) {
+                    refreshPaths(entry);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // === RICERCA ===
+
+    /**
+     * Restituisce i suggerimenti per un prefisso digitato dall'utente
+     *
+     * @param query Testo digitato
+     * @param limit Numero massimo di suggerimenti (limitato a top-K)
+     * @return Suggerimenti ordinati per numero di annunci, lista vuota se nessuno
+     *         o se il budget di latenza è superato
+     */
+    public List<SearchSuggestion> suggest(String query, int limit) {
+        String prefix = normalizeKey(query);
+        if (prefix.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int max = Math.max(1, Math.min(limit, topK));
+
+        boolean locked;
+        try {
+            locked = lock.readLock().tryLock(budgetMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        }
+        if (!locked) {
+            logger.warn("Budget di latenza superato per autocompletamento '{}'", query);
+            return Collections.emptyList();
+        }
+        try {
+            TrieNode node = root;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children.get(prefix.charAt(i));
+            }
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            List<SearchSuggestion> result = new ArrayList<>(max);
+            for (Entry entry : node.top) {
+                if (result.size() >= max) {
+                    break;
+                }
+                result.add(entry.toSuggestion());
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // === METODI PRIVATI (chiamati sotto write lock) ===
+
+    /**
+     * Aggiorna il conteggio di un suggerimento, creandolo se necessario
+     *
+     * @return Suggerimento aggiornato, null se marca/modello non indicizzabili
+     */
+    private Entry adjustCount(String brand, String model, long delta) {
+        if (brand == null || brand.isBlank() || (model != null && model.isBlank())) {
+            return null;
+        }
+        List<String> id = Arrays.asList(brand, model);
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            if (delta <= 0) {
+                return null;
+            }
+            entry = new Entry(brand, model);
+            entries.put(id, entry);
+            for (String key : entry.keys) {
+                insertKey(key, entry);
+            }
+        }
+        entry.count += delta;
+        return entry;
+    }
+
+    private void insertKey(String key, Entry entry) {
+        TrieNode node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.computeIfAbsent(key.charAt(i), c -> new TrieNode());
+        }
+        if (!node.terminals.contains(entry)) {
+            node.terminals.add(entry);
+        }
+    }
+
+    /**
+     * Ricalcola i top-K lungo i percorsi delle chiavi di un suggerimento (dal basso verso l'alto)
+     * e rimuove il suggerimento se non ha più annunci
+     */
+    private void refreshPaths(Entry entry) {
+        boolean remove = entry.count <= 0;
+        if (remove) {
+            entries.remove(Arrays.asList(entry.brand, entry.model));
+        }
+        for (String key : entry.keys) {
+            List<TrieNode> path = new ArrayList<>(key.length() + 1);
+            TrieNode node = root;
+            path.add(node);
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.children.get(key.charAt(i));
+                if (node != null) {
+                    path.add(node);
+                }
+            }
+            if (node == null) {
+                continue;
+            }
+            if (remove) {
+                node.terminals.remove(entry);
+            }
+            for (int i = path.size() - 1; i >= 0; i--) {
+                TrieNode current = path.get(i);
+                mergeTopK(current);
+                // Potatura dei nodi rimasti vuoti
+                if (i > 0 && current.terminals.isEmpty() && current.children.isEmpty()) {
+                    path.get(i - 1).children.remove(key.charAt(i - 1));
+                }
+            }
+        }
+    }
+
+    private void recomputeTopK(TrieNode node) {
+        for (TrieNode child : node.children.values()) {
+            recomputeTopK(child);
+        }
+        mergeTopK(node);
+    }
+
+    /**
+     * Top-K di un nodo = migliori tra i suggerimenti terminali del nodo e i top-K dei figli
+     */
+    private void mergeTopK(TrieNode node) {
+        List<Entry> candidates = new ArrayList<>(node.terminals);
+        for (TrieNode child : node.children.values()) {
+            for (Entry entry : child.top) {
+                if (!candidates.contains(entry)) {
+                    candidates.add(entry);
+                }
+            }
+        }
+        candidates.removeIf(e -> e.count <= 0);
+        candidates.sort(RANKING);
+        node.top = candidates.size() > topK
+                ? new ArrayList<>(candidates.subList(0, topK))
+                : candidates;
+    }
+
+    /**
+     * Normalizzazione coerente con l'indice di ricerca: accenti, maiuscole, separatori
+     */
+    static String normalizeKey(String text) {
+        return String.join(" ", ProductSearchIndex.tokenize(text));
+    }
+
+    // === STRUTTURE INTERNE ===
+
+    private static final class TrieNode {
+        private final Map<Character, TrieNode> children = new TreeMap<>();
+        private final List<Entry> terminals = new ArrayList<>(1);
+        private List<Entry> top = new ArrayList<>(0);
+    }
+
+    private static final class Entry {
+        private final String brand;
+        private final String model;
+        private final String text;
+        private final List<String> keys;
+        private long count;
+
+        private Entry(String brand, String model) {
+            this.brand = brand;
+            this.model = model;
+            this.text = model != null ? brand + " " + model : brand;
+            List<String> keyList = new ArrayList<>(2);
+            keyList.add(normalizeKey(text));
+            if (model != null) {
+                String modelKey = normalizeKey(model);
+                if (!modelKey.isEmpty() && !keyList.contains(modelKey)) {
+                    keyList.add(modelKey);
+                }
+            }
+            keyList.removeIf(String::isEmpty);
+            this.keys = Collections.unmodifiableList(keyList);
+        }
+
+        private SearchSuggestion toSuggestion() {
+            UriComponentsBuilder url = UriComponentsBuilder.fromPath("/products").queryParam("brand", brand);
+            if (model != null) {
+                url.queryParam("model", model);
+            }
+            return new SearchSuggestion(text, brand, model, count, url.encode().toUriString());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package it.uniroma3.siwprogetto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalescenza delle letture concorrenti identiche (single-flight)
+ *
+ * Funzionamento:
+ * - Il primo thread che richiede una chiave (leader) esegue la query
+ * - I thread che arrivano con la stessa chiave mentre la query è in corso
+ *   attendono e ricevono lo stesso risultato, senza interrogare il database
+ * - Al termine la chiave viene rilasciata: la richiesta successiva riparte da capo
+ *
+ * Protezioni:
+ * - Attesa massima per i follower; oltre il limite, o se il leader fallisce,
+ *   il follower esegue la query direttamente
+ * - Un errore del leader non viene propagato ai follower
+ *
+ * Vincolo:
+ * - Da usare solo per risultati immutabili e privi di entità gestite
+ *   (DTO, liste di ID, aggregati): il risultato attraversa i thread
+ *   e i persistence context
+ *
+ * Metriche (Micrometer):
+ * - catalog.singleflight.calls{flight=nome,result=leader|shared|fallback}
+ *
+ * @param <K> Chiave della query (equals/hashCode significativi)
+ * @param <V> Tipo del risultato
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+public final class SingleFlight<K, V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final long maxWaitMillis;
+
+    private final Counter leaders;
+    private final Counter shared;
+    private final Counter fallbacks;
+
+    /**
+     * @param name Nome del flusso (tag delle metriche)
+     * @param maxWaitMillis Attesa massima di un follower sul risultato del leader
+     * @param meterRegistry Registro delle metriche
+     */
+    public SingleFlight(String name, long maxWaitMillis, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxWaitMillis = maxWaitMillis;
+        this.leaders = counter(meterRegistry, name, "leader");
+        this.shared = counter(meterRegistry, name, "shared");
+        this.fallbacks = counter(meterRegistry, name, "fallback");
+    }
+
+    /**
+     * Esegue la query, condividendo l'esecuzione con i chiamanti concorrenti sulla stessa chiave
+     *
+     * @param key Chiave della query
+     * @param query Esecuzione effettiva
+     * @return Risultato della query (proprio o del leader)
+     */
+    public V execute(K key, Supplier<V> query) {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, own);
+        if (existing == null) {
+            leaders.increment();
+            try {
+                V result = query.get();
+                own.complete(result);
+                return result;
+            } catch (RuntimeException | Error e) {
+                own.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, own);
+            }
+        }
+
+        try {
+            V result = existing.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+            shared.increment();
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.debug("Attesa single-flight '{}' interrotta per {}", name, key);
+        } catch (TimeoutException e) {
+            logger.warn("Attesa single-flight '{}' oltre {} ms per {}: esecuzione diretta", name, maxWaitMillis, key);
+        } catch (ExecutionException e) {
+            logger.debug("Leader single-flight '{}' fallito per {}: esecuzione diretta", name, key, e.getCause());
+        }
+        fallbacks.increment();
+        return query.get();
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String name, String result) {
+        return Counter.builder("catalog.singleflight.calls").tag("flight", name).tag("result", result)
+                .description("Letture del catalogo per ruolo nella coalescenza").register(meterRegistry);
+    }
+}
@@ -0,0 +1,364 @@
+package it.uniroma3.siwprogetto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Upload a blocchi riprendibili per le foto degli annunci
+ *
+ * Protocollo (UploadController):
+ * 1. Creazione della sessione: dimensione totale e SHA-256 facoltativo del file,
+ *    il server risponde con dimensione e numero dei blocchi
+ * 2. PUT dei blocchi numerati, in qualsiasi ordine e ripetibili: ogni blocco è
+ *    ricevuto in un file temporaneo, verificato con il suo SHA-256 (header
+ *    X-Chunk-Sha256) e solo allora copiato alla sua posizione nel file parziale:
+ *    un blocco ripetuto e rifiutato non sovrascrive quello già accettato
+ * 3. Stato della sessione: blocchi mancanti, per riprendere dopo un'interruzione
+ * 4. Commit: tutti i blocchi presenti, hash del file verificato, contenuto
+ *    consegnato all'archivio immagini e associato al prodotto
+ *
+ * Memoria:
+ * - Corpo del blocco copiato in streaming con un buffer fisso (BUFFER_SIZE):
+ *   nessun blocco o file intero nell'heap
+ *
+ * Limiti:
+ * - Al massimo images.uploads.max-sessions-per-user sessioni aperte per utente
+ *
+ * Scadenza:
+ * - Sessioni inattive da oltre images.uploads.expiry-minutes rimosse dal job di pulizia,
+ *   insieme ai file parziali rimasti da un riavvio (le sessioni sono solo in memoria)
+ *
+ * Metriche (Micrometer):
+ * - uploads.sessions.active
+ * - uploads.chunks{result=accepted|rejected}
+ * - uploads.sessions.expired
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@Service
+public class UploadSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadSessionService.class);
+
+    /** SHA-256 esadecimale minuscolo */
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    /** Buffer di copia del corpo di un blocco */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path sessionDir;
+    private final int chunkSize;
+    private final long maxSize;
+    private final Duration expiry;
+    private final int maxSessionsPerUser;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final Counter chunksAccepted;
+    private final Counter chunksRejected;
+    private final Counter expired;
+
+    public UploadSessionService(MeterRegistry meterRegistry,
+                                @Value("${images.storage.root:${user.home}/fcf-motors/images}") String root,
+                                @Value("${images.uploads.chunk-size:4194304}") int chunkSize,
+                                @Value("${images.uploads.max-size:52428800}") long maxSize,
+                                @Value("${images.uploads.expiry-minutes:1440}") long expiryMinutes,
+                                @Value("${images.uploads.max-sessions-per-user:8}") int maxSessionsPerUser) throws IOException {
+        this.sessionDir = Paths.get(root).toAbsolutePath().normalize().resolve("sessions");
+        this.chunkSize = chunkSize;
+        this.maxSize = maxSize;
+        this.expiry = Duration.ofMinutes(expiryMinutes);
+        this.maxSessionsPerUser = maxSessionsPerUser;
+        Files.createDirectories(sessionDir);
+
+        Gauge.builder("uploads.sessions.active", sessions, Map::size)
+                .description("Upload a blocchi in corso").register(meterRegistry);
+        this.chunksAccepted = Counter.builder("uploads.chunks").tag("result", "accepted")
+                .description("Blocchi di upload ricevuti").register(meterRegistry);
+        this.chunksRejected = Counter.builder("uploads.chunks").tag("result", "rejected")
+                .description("Blocchi di upload ricevuti").register(meterRegistry);
+        this.expired = Counter.builder("uploads.sessions.expired")
+                .description("Upload a blocchi scaduti senza commit").register(meterRegistry);
+    }
+
+    /**
+     * Apre una sessione di upload
+     *
+     * @param owner Username dell'utente che carica
+     * @param fileName Nome del file (solo informativo)
+     * @param size Dimensione totale in byte
+     * @param sha256 SHA-256 esadecimale del file, null per non verificarlo al commit
+     * @return Nuova sessione
+     * @throws IllegalArgumentException Se dimensione o hash non sono validi,
+     *         o se l'utente ha già troppe sessioni aperte
+     * @throws IOException Se il file parziale non può essere creato
+     */
+    public Session create(String owner, String fileName, long size, String sha256) throws IOException {
+        if (size <= 0 || size > maxSize) {
+            throw new IllegalArgumentException("Dimensione del file non valida (massimo " + maxSize + " bytes)");
+        }
+        String expected = sha256 != null ? sha256.toLowerCase() : null;
+        if (expected != null && !HASH_PATTERN.matcher(expected).matches()) {
+            throw new IllegalArgumentException("SHA-256 non valido");
+        }
+        String id = UUID.randomUUID().toString();
+        Path path = sessionDir.resolve(id + ".part");
+        Session session = new Session(id, owner, fileName, size, expected, chunkSize, path);
+
+        // Conteggio e inserimento atomici: richieste parallele non superano il limite
+        synchronized (sessions) {
+            long open = sessions.values().stream().filter(s -> s.owner.equals(owner)).count();
+            if (open >= maxSessionsPerUser) {
+                throw new IllegalArgumentException("Massimo " + maxSessionsPerUser + " upload aperti per utente");
+            }
+            Files.createFile(path);
+            sessions.put(id, session);
+        }
+        logger.debug("Upload a blocchi avviato: {} ({} bytes, {} blocchi)", id, size, session.getChunkCount());
+        return session;
+    }
+
+    /**
+     * @param id ID della sessione
+     * @param owner Username dell'utente corrente
+     * @return Sessione, null se inesistente, scaduta o di un altro utente
+     */
+    public Session find(String id, String owner) {
+        Session session = id != null ? sessions.get(id) : null;
+        return session != null && session.owner.equals(owner) ? session : null;
+    }
+
+    /**
+     * Scrive un blocco alla sua posizione nel file parziale
+     *
+     * Il corpo è ricevuto in un file temporaneo del blocco e copiato nel file parziale
+     * solo dopo le verifiche di lunghezza e hash, sotto il lock della sessione:
+     * un blocco rifiutato lascia intatto il contenuto già accettato.
+     *
+     * @param session Sessione
+     * @param index Numero del blocco (da 0)
+     * @param body Corpo della richiesta (non chiuso dal metodo)
+     * @param sha256 SHA-256 esadecimale atteso del blocco, null per non verificarlo
+     * @throws IllegalArgumentException Se indice, lunghezza o hash del blocco non corrispondono
+     * @throws IOException Se la scrittura sul filesystem fallisce
+     */
+    public void writeChunk(Session session, int index, InputStream body, String sha256) throws IOException {
+        if (index < 0 || index >= session.chunkCount) {
+            chunksRejected.increment();
+            throw new IllegalArgumentException("Blocco non valido: " + index);
+        }
+        long position = (long) index * session.chunkSize;
+        long length = Math.min(session.chunkSize, session.size - position);
+
+        Path temp = Files.createTempFile(sessionDir, session.id + ".", ".chunk");
+        try {
+            MessageDigest digest = sha256();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long written = 0;
+            try (OutputStream out = Files.newOutputStream(temp, StandardOpenOption.WRITE)) {
+                int read;
+                while ((read = body.readNBytes(buffer, 0, (int) Math.min(buffer.length, length - written + 1))) > 0) {
+                    if (written + read > length) {
+                        chunksRejected.increment();
+                        throw new IllegalArgumentException("Blocco " + index + " più lungo di " + length + " bytes");
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    written += read;
+                }
+            }
+            if (written != length) {
+                chunksRejected.increment();
+                throw new IllegalArgumentException("Blocco " + index + " incompleto: " + written + " di " + length + " bytes");
+            }
+            String actual = HexFormat.of().formatHex(digest.digest());
+            if (sha256 != null && !actual.equalsIgnoreCase(sha256)) {
+                chunksRejected.increment();
+                throw new IllegalArgumentException("SHA-256 del blocco " + index + " non corrispondente");
+            }
+
+            // Blocco verificato: copia nel file parziale, serializzata con commit e altre copie
+            synchronized (session) {
+                try (FileChannel source = FileChannel.open(temp, StandardOpenOption.READ);
+                     FileChannel target = FileChannel.open(session.path, StandardOpenOption.WRITE)) {
+                    long copied = 0;
+                    while (copied < length) {
+                        copied += source.transferTo(copied, length - copied, target.position(position + copied));
+                    }
+                    target.force(false);
+                }
+                session.markReceived(index);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        chunksAccepted.increment();
+    }
+
+    /**
+     * Verifica che il file sia completo e integro
+     *
+     * @param session Sessione
+     * @return File completo, da consegnare all'archivio prima di discard
+     * @throws IllegalArgumentException Se mancano dei blocchi o l'hash del file non corrisponde
+     * @throws IOException Se la lettura del file fallisce
+     */
+    public Path complete(Session session) throws IOException {
+        // Lock della sessione: nessun blocco copiato durante la verifica
+        synchronized (session) {
+            int missing = session.getMissingCount();
+            if (missing > 0) {
+                throw new IllegalArgumentException("Upload incompleto: mancano " + missing + " blocchi");
+            }
+            if (session.sha256 != null) {
+                MessageDigest digest = sha256();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                try (InputStream in = Files.newInputStream(session.path)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+                if (!HexFormat.of().formatHex(digest.digest()).equals(session.sha256)) {
+                    throw new IllegalArgumentException("SHA-256 del file non corrispondente");
+                }
+            }
+            return session.path;
+        }
+    }
+
+    /**
+     * Chiude la sessione ed elimina il file parziale (dopo il commit o su annullamento)
+     *
+     * @param session Sessione
+     */
+    public void discard(Session session) {
+        sessions.remove(session.id);
+        try {
+            Files.deleteIfExists(session.path);
+        } catch (IOException e) {
+            logger.warn("File parziale non eliminato: {} ({})", session.path, e.getMessage());
+        }
+    }
+
+    /**
+     * Rimuove le sessioni inattive oltre la scadenza e i file parziali senza sessione
+     */
+    @Scheduled(fixedDelayString = "${images.uploads.cleanup-interval-ms:600000}",
+            initialDelayString = "${images.uploads.cleanup-interval-ms:600000}")
+    public void cleanup() {
+        Instant cutoff = Instant.now().minus(expiry);
+        for (Session session : sessions.values()) {
+            if (session.lastActivity.isBefore(cutoff)) {
+                logger.info("Upload a blocchi scaduto: {} ({} blocchi mancanti)", session.id, session.getMissingCount());
+                discard(session);
+                expired.increment();
+            }
+        }
+        try (Stream<Path> files = Files.list(sessionDir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                // <id>.part o <id>.<casuale>.chunk
+                int dot = name.indexOf('.');
+                String id = dot > 0 ? name.substring(0, dot) : name;
+                if (!sessions.containsKey(id) && Files.getLastModifiedTime(path).toInstant().isBefore(cutoff)) {
+                    Files.deleteIfExists(path);
+                    expired.increment();
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Pulizia degli upload a blocchi non riuscita: {}", e.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    /**
+     * Sessione di upload: file parziale e blocchi ricevuti
+     */
+    public static final class Session {
+        private final String id;
+        private final String owner;
+        private final String fileName;
+        private final long size;
+        private final String sha256;
+        private final int chunkSize;
+        private final int chunkCount;
+        private final Path path;
+        private final BitSet received;
+        private volatile Instant lastActivity = Instant.now();
+
+        Session(String id, String owner, String fileName, long size, String sha256, int chunkSize, Path path) {
+            this.id = id;
+            this.owner = owner;
+            this.fileName = fileName;
+            this.size = size;
+            this.sha256 = sha256;
+            this.chunkSize = chunkSize;
+            this.chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+            this.path = path;
+            this.received = new BitSet(chunkCount);
+        }
+
+        synchronized void markReceived(int index) {
+            received.set(index);
+            lastActivity = Instant.now();
+        }
+
+        public String getId() { return id; }
+
+        public String getFileName() { return fileName; }
+
+        public long getSize() { return size; }
+
+        public int getChunkSize() { return chunkSize; }
+
+        public int getChunkCount() { return chunkCount; }
+
+        public synchronized int getMissingCount() {
+            return chunkCount - received.cardinality();
+        }
+
+        /** Numeri dei blocchi non ancora ricevuti, in ordine */
+        public synchronized int[] getMissingChunks() {
+            int[] missing = new int[chunkCount - received.cardinality()];
+            int i = 0;
+            for (int index = received.nextClearBit(0); index < chunkCount; index = received.nextClearBit(index + 1)) {
+                missing[i++] = index;
+            }
+            return missing;
+        }
+    }
+}
@@ -86,13 +86,6 @@ public class UserService {
     @Autowired
     private UserSubscriptionRepository userSubscriptionRepository;
 
-    /**
-     * Repository per prodotti automotive
-     * Cleanup prodotti su role changes e deletions
-     */
-    @Autowired
-    private ProductRepository productRepository;
-
     /**
      * Repository per dealer entities
      * Gestione concessionari associati agli utenti
@@ -135,6 +128,13 @@ public class UserService {
     @Autowired
     private CartItemRepository cartItemRepository;
 
+    /**
+     * Eliminazione set-based dei prodotti di un utente
+     * Preventivi, elementi carrello e immagini dei prodotti in poche DELETE native
+     */
+    @Autowired
+    private InventoryBulkDeleter inventoryBulkDeleter;
+
     /**
      * Constructor injection per dependencies core
      * Immutability pattern per thread safety
@@ -713,10 +713,9 @@ public class UserService {
             throw new IllegalStateException("L'utente non ha il ruolo PRIVATO.");
         }
 
-        // Products cascade deletion
-        List<Product> car = productRepository.findBySeller(user);
-        productRepository.deleteAll(car);
-        logger.info("Deleted {} products for PRIVATE user: userId={}", car.size(), user.getId());
+        // Products cascade deletion (set-based)
+        int deletedProducts = inventoryBulkDeleter.deleteInventory(user.getId());
+        logger.info("Deleted {} products for PRIVATE user: userId={}", deletedProducts, user.getId());
         
         // Role downgrade
         user.setRolesString("USER");
@@ -797,10 +796,9 @@ public class UserService {
             }
         });
 
-        // Phase 4: Remaining products deletion (non-dealer products)
-        List<Product> products = productRepository.findBySeller(user);
-        productRepository.deleteAll(products);
-        logger.info("Deleted {} remaining products for user {}", products.size(), user.getId());
+        // Phase 4: Remaining products deletion (non-dealer products, set-based)
+        int deletedProducts = inventoryBulkDeleter.deleteInventory(user.getId());
+        logger.info("Deleted {} remaining products for user {}", deletedProducts, user.getId());
 
         // Phase 5: QuoteRequests deletion (conversations)
         List<QuoteRequest> quoteRequests = quoteRequestRepository.findByUserId(user.getId());
@@ -818,7 +816,8 @@ public class UserService {
         logger.info("Deleted {} cart items for user {}", items.size(), user.getId());
 
         // Phase 8: User entity deletion (final)
-        userRepository.delete(user);
+        // Ricaricato per ID: l'istanza ricevuta è detached dopo le DELETE in blocco
+        userRepository.deleteById(user.getId());
 
         // Phase 9: Account deletion email confirmation
         try {
@@ -961,10 +960,9 @@ public class UserService {
                     }
                 });
 
-                // Products cleanup
-                List<Product> products = productRepository.findBySeller(user);
-                productRepository.deleteAll(products);
-                logger.info("Deleted {} products for user {}", products.size(), user.getId());
+                // Products cleanup (set-based, con preventivi, carrelli e immagini)
+                int deletedProducts = inventoryBulkDeleter.deleteInventory(user.getId());
+                logger.info("Deleted {} products for user {}", deletedProducts, user.getId());
             } else {
                 logger.info("User {} still has active subscriptions", user.getId());
             }
@@ -270,20 +270,25 @@ document.addEventListener('DOMContentLoaded', () => {
                             autocompleteResults.innerHTML = '';
                             
                             if (data.length > 0) {
-                                data.forEach(product => {
+                                data.forEach(suggestion => {
                                     const div = document.createElement('div');
                                     div.className = 'autocomplete-item';
                                     div.innerHTML = `
                                         <div class="product-info">
                                             <div class="product-main">
-                                                <span class="product-brand">${product.brand || ''}</span>
-                                                <span class="product-model">${product.model || ''}</span>
+                                                <span class="product-brand"></span>
+                                                <span class="product-model"></span>
                                             </div>
-                                            <span class="product-price">€${product.price ? product.price.toLocaleString() : 'N/D'}</span>
+                                            <span class="product-price"></span>
                                         </div>
                                     `;
+                                    // textContent evita l'interpretazione HTML dei valori del catalogo
+                                    div.querySelector('.product-brand').textContent = suggestion.brand || '';
+                                    div.querySelector('.product-model').textContent = suggestion.model || '';
+                                    div.querySelector('.product-price').textContent =
+                                        `${suggestion.count} ${suggestion.count === 1 ? 'annuncio' : 'annunci'}`;
                                     div.addEventListener('click', () => {
-                                        window.location.href = `/products/${product.id}`;
+                                        window.location.href = suggestion.url;
                                     });
                                     autocompleteResults.appendChild(div);
                                 });
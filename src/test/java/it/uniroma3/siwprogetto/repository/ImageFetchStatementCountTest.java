@@ -0,0 +1,174 @@
+package it.uniroma3.siwprogetto.repository;
+
+import it.uniroma3.siwprogetto.model.Dealer;
+import it.uniroma3.siwprogetto.model.Image;
+import it.uniroma3.siwprogetto.model.Product;
+import it.uniroma3.siwprogetto.model.ProductCardView;
+import it.uniroma3.siwprogetto.model.User;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica il numero di statement SQL eseguiti per ogni vista che mostra immagini
+ *
+ * Copre:
+ * - Entity graph per vista (Dealer.list, Dealer.detail, Product.detail, Product.edit):
+ *   le gallery sono già inizializzate, nessuno statement in fase di rendering
+ * - BatchSize sulle collezioni LAZY: una pagina di prodotti risolve le immagini
+ *   con un solo statement aggiuntivo, non uno per prodotto
+ * - Proiezione ProductCardView: due statement per elenco, indipendentemente dalle righe
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@DataJpaTest(properties = {
+        // "year" è una colonna di Product ma una parola riservata in H2
+        "spring.datasource.url=jdbc:h2:mem:statements;NON_KEYWORDS=YEAR,VALUE",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.hbm2ddl.import_files=",
+        "spring.sql.init.mode=never"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ImageFetchStatementCountTest {
+
+    private static final int PRODUCTS = 5;
+    private static final int IMAGES_PER_ENTITY = 3;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private DealerRepository dealerRepository;
+
+    private Statistics statistics;
+    private User seller;
+    private Dealer dealer;
+    private final List<Long> productIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        statistics = testEntityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+
+        seller = new User();
+        seller.setUsername("dealer_test");
+        seller.setEmail("dealer_test@fcfmotors.com");
+        seller.setPassword("Password123");
+        testEntityManager.persist(seller);
+
+        dealer = new Dealer();
+        dealer.setName("Concessionario Test");
+        dealer.setOwner(seller);
+        testEntityManager.persist(dealer);
+        for (int i = 0; i < IMAGES_PER_ENTITY; i++) {
+            Image image = newImage();
+            image.setDealer(dealer);
+            testEntityManager.persist(image);
+        }
+
+        for (int p = 0; p < PRODUCTS; p++) {
+            Product product = new Product();
+            product.setBrand("Fiat");
+            product.setModel("Panda " + p);
+            product.setPrice(new BigDecimal("10000"));
+            product.setSeller(seller);
+            testEntityManager.persist(product);
+            for (int i = 0; i < IMAGES_PER_ENTITY; i++) {
+                Image image = newImage();
+                image.setProduct(product);
+                testEntityManager.persist(image);
+            }
+            productIds.add(product.getId());
+        }
+
+        testEntityManager.flush();
+        testEntityManager.clear();
+        statistics.clear();
+    }
+
+    @Test
+    void productDetailLoadsGalleryWithTheProduct() {
+        Product product = productRepository.findDetailById(productIds.get(0)).orElseThrow();
+        long afterQuery = statementCount();
+
+        assertEquals(IMAGES_PER_ENTITY, product.getImages().size());
+        assertEquals(afterQuery, statementCount(), "La gallery non deve richiedere statement aggiuntivi");
+    }
+
+    @Test
+    void productEditBySellerLoadsEveryGalleryWithTheProducts() {
+        List<Product> products = productRepository.findEditBySellerId(seller.getId());
+        long afterQuery = statementCount();
+
+        products.forEach(product -> assertEquals(IMAGES_PER_ENTITY, product.getImages().size()));
+        assertEquals(afterQuery, statementCount(), "Le gallery non devono richiedere statement aggiuntivi");
+    }
+
+    @Test
+    void lazyGalleriesOfAPageAreFetchedInOneBatch() {
+        List<Product> products = new ArrayList<>();
+        productRepository.findAllById(productIds).forEach(products::add);
+        long afterQuery = statementCount();
+
+        products.forEach(product -> assertEquals(IMAGES_PER_ENTITY, product.getImages().size()));
+        assertEquals(afterQuery + 1, statementCount(), "Un solo statement per tutte le gallery della pagina");
+    }
+
+    @Test
+    void dealerListLoadsGalleriesWithTheDealers() {
+        List<Dealer> dealers = dealerRepository.findAllForList();
+        long afterQuery = statementCount();
+
+        assertTrue(dealers.stream().anyMatch(d -> d.getId().equals(dealer.getId())));
+        dealers.forEach(d -> d.getImages().size());
+        assertEquals(afterQuery, statementCount(), "Le gallery non devono richiedere statement aggiuntivi");
+    }
+
+    @Test
+    void dealerDetailLoadsGalleryWithTheDealer() {
+        Dealer loaded = dealerRepository.findDetailByOwnerUsername(seller.getUsername()).orElseThrow();
+        long afterQuery = statementCount();
+
+        assertEquals(IMAGES_PER_ENTITY, loaded.getImages().size());
+        assertEquals(afterQuery, statementCount(), "La gallery non deve richiedere statement aggiuntivi");
+    }
+
+    @Test
+    void cardListingUsesTwoStatementsWithoutLoadingImages() {
+        List<ProductCardView> cards = productRepository.findCardsBySellerId(seller.getId());
+
+        assertEquals(PRODUCTS, cards.size());
+        cards.forEach(card -> assertEquals(IMAGES_PER_ENTITY, card.getImageIds().size()));
+        assertEquals(2, statementCount(), "Una query per le card e una per gli ID immagine");
+        assertEquals(0, statistics.getEntityLoadCount(), "Nessuna entità deve essere caricata");
+    }
+
+    // === METODI DI SUPPORTO ===
+
+    private long statementCount() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    private static Image newImage() {
+        Image image = new Image();
+        image.setContentType("image/jpeg");
+        image.setData(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF});
+        return image;
+    }
+}
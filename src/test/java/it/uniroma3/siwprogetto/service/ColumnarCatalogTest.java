@@ -0,0 +1,197 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.Product;
+import it.uniroma3.siwprogetto.model.ProductCardView;
+import it.uniroma3.siwprogetto.model.ProductCursor;
+import it.uniroma3.siwprogetto.model.ProductFilter;
+import it.uniroma3.siwprogetto.model.ProductPage;
+import it.uniroma3.siwprogetto.model.User;
+import it.uniroma3.siwprogetto.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che il motore colonnare restituisca le stesse pagine del percorso JPQL
+ *
+ * Copre:
+ * - Stessi ID nello stesso ordine (rank evidenza, id DESC) per filtri su ogni dimensione,
+ *   pagina per pagina con i cursori keyset
+ * - Valori null esclusi da ogni filtro impostato, evidenza scaduta e permanente
+ * - Prezzo oltre l'intervallo dei centesimi: snapshot costruito, confronti saturati
+ * - ID candidati della ricerca testuale
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@DataJpaTest(properties = {
+        // "year" è una colonna di Product ma una parola riservata in H2
+        "spring.datasource.url=jdbc:h2:mem:columnar;NON_KEYWORDS=YEAR,VALUE",
+        "spring.jpa.properties.hibernate.hbm2ddl.import_files=",
+        "spring.sql.init.mode=never",
+        "catalog.read-engine=columnar"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ColumnarCatalog.class)
+class ColumnarCatalogTest {
+
+    private static final int PRODUCTS = 150;
+    private static final String[] CATEGORIES = {"Auto", "Moto", null};
+    private static final String[] BRANDS = {"Fiat", "BMW", "Audi", "Lancia"};
+    private static final String[] MODELS = {"Panda", "Serie 3", "A4", "Ypsilon", null};
+    private static final String[] FUELS = {"Benzina", "Diesel", "Elettrico", null};
+    private static final String[] TRANSMISSIONS = {"Manuale", "Automatico", null};
+
+    /** Prezzo non rappresentabile in centesimi long (oltre 9,2 * 10^16 euro) */
+    private static final BigDecimal HUGE_PRICE = new BigDecimal("100000000000000000000.00");
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ColumnarCatalog columnarCatalog;
+
+    private Random random;
+    private final List<Long> productIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        random = new Random(7);
+        User seller = new User();
+        seller.setUsername("columnar_test");
+        seller.setEmail("columnar_test@fcfmotors.com");
+        seller.setPassword("Password123");
+        testEntityManager.persist(seller);
+
+        for (int p = 0; p < PRODUCTS; p++) {
+            Product product = new Product();
+            product.setSeller(seller);
+            product.setCategory(pick(CATEGORIES));
+            product.setBrand(pick(BRANDS));
+            product.setModel(pick(MODELS));
+            product.setFuelType(pick(FUELS));
+            product.setTransmission(pick(TRANSMISSIONS));
+            product.setPrice(BigDecimal.valueOf(500_000 + random.nextInt(8_000_000), 2));
+            product.setMileage(random.nextInt(10) == 0 ? null : random.nextInt(200_000));
+            product.setYear(random.nextInt(10) == 0 ? null : 1995 + random.nextInt(30));
+            int featured = random.nextInt(6);
+            product.setIsFeatured(featured < 3);
+            // Evidenza attiva, scaduta o permanente (lontane dall'istante della richiesta)
+            product.setFeaturedUntil(featured == 0 ? LocalDateTime.now().plusDays(3)
+                    : featured == 1 ? LocalDateTime.now().minusDays(3) : null);
+            productIds.add(testEntityManager.persist(product).getId());
+        }
+
+        Product huge = new Product();
+        huge.setSeller(seller);
+        huge.setBrand("Fiat");
+        huge.setModel("Panda");
+        huge.setPrice(HUGE_PRICE);
+        productIds.add(testEntityManager.persist(huge).getId());
+
+        testEntityManager.flush();
+        testEntityManager.clear();
+        columnarCatalog.rebuild();
+    }
+
+    @Test
+    void snapshotIsBuiltWithAnOutOfRangePrice() {
+        assertTrue(columnarCatalog.isActive());
+        assertEquals(PRODUCTS + 1, columnarCatalog.findPageIds(ProductFilter.NONE, null, null, 1000).getIds().length);
+    }
+
+    @Test
+    void everyDimensionMatchesTheJpqlPath() {
+        assertSamePages(ProductFilter.NONE, null);
+        assertSamePages(filter("Auto", null, null, null, null, null, null, null, null, null, null), null);
+        assertSamePages(filter(null, "Fiat", "Panda", null, null, null, null, null, null, null, null), null);
+        assertSamePages(filter(null, null, null, null, null, null, null, null, null, "Diesel", "Manuale"), null);
+        assertSamePages(filter(null, "BMW", null, null, null, 10_000, 120_000, 2005, 2015, null, null), null);
+        assertSamePages(filter("Moto", null, null, null, null, null, null, null, null, "Elettrico", "Automatico"), null);
+        // Valore mai visto: nessun risultato in entrambi i motori
+        assertSamePages(filter(null, "Ferrari", null, null, null, null, null, null, null, null, null), null);
+    }
+
+    @Test
+    void priceBoundsMatchTheJpqlPath() {
+        assertSamePages(filter(null, null, null, "20000", "45000.50", null, null, null, null, null, null), null);
+        // Limiti con frazioni di centesimo: arrotondati verso l'interno dell'intervallo
+        assertSamePages(filter(null, null, null, "12345.678", "60000.001", null, null, null, null, null, null), null);
+        // Il prezzo fuori intervallo resta escluso da un massimo e incluso da un minimo
+        assertSamePages(filter(null, "Fiat", null, null, "999999999", null, null, null, null, null, null), null);
+        assertSamePages(filter(null, "Fiat", null, "1000", null, null, null, null, null, null, null), null);
+        assertSamePages(filter(null, null, null, "1000000000000", null, null, null, null, null, null, null), null);
+    }
+
+    @Test
+    void candidateIdsMatchTheJpqlPath() {
+        Set<Long> candidates = Set.of(productIds.get(3), productIds.get(40), productIds.get(41),
+                productIds.get(99), productIds.get(PRODUCTS), -1L);
+
+        assertSamePages(ProductFilter.NONE, candidates);
+        assertSamePages(filter(null, "Audi", null, null, null, null, null, null, null, null, null), candidates);
+    }
+
+    // === METODI DI SUPPORTO ===
+
+    /**
+     * Scorre tutte le pagine dei due motori e confronta ID, ordine e cursori
+     */
+    private void assertSamePages(ProductFilter filter, Set<Long> candidateIds) {
+        for (int pageSize : new int[]{1, 7, 50, 500}) {
+            List<Long> jpql = new ArrayList<>();
+            ProductCursor after = null;
+            do {
+                ProductPage<ProductCardView> page = productRepository.findPage(filter, candidateIds, after, pageSize);
+                page.getContent().forEach(card -> jpql.add(card.getId()));
+                after = page.getNextCursor();
+            } while (after != null);
+
+            List<Long> columnar = new ArrayList<>();
+            after = null;
+            do {
+                ColumnarCatalog.PageIds page = columnarCatalog.findPageIds(filter, candidateIds, after, pageSize);
+                long[] ids = page.getIds();
+                for (int i = 0; i < Math.min(ids.length, pageSize); i++) {
+                    columnar.add(ids[i]);
+                }
+                // Stesso cursore di ProductService.findCatalogPageColumnar
+                after = ids.length > pageSize
+                        ? new ProductCursor(pageSize <= page.getFeaturedRows()
+                                ? ProductCursor.RANK_FEATURED : ProductCursor.RANK_STANDARD, ids[pageSize - 1])
+                        : null;
+            } while (after != null);
+
+            assertEquals(jpql, columnar, "Filtro " + filter + ", pagine da " + pageSize);
+        }
+    }
+
+    private static ProductFilter filter(String category, String brand, String model, String minPrice, String maxPrice,
+                                        Integer minMileage, Integer maxMileage, Integer minYear, Integer maxYear,
+                                        String fuelType, String transmission) {
+        return new ProductFilter(category, brand, model,
+                minPrice != null ? new BigDecimal(minPrice) : null, maxPrice != null ? new BigDecimal(maxPrice) : null,
+                minMileage, maxMileage, minYear, maxYear, fuelType, transmission, null);
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,143 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.DealerChangeEvent;
+import it.uniroma3.siwprogetto.model.DealerSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica le ricerche dell'indice spaziale contro una scansione completa
+ *
+ * Copre:
+ * - nearest: stessi k dealer (per distanza) della scansione haversine di tutti i dealer,
+ *   anche per punti lontani dall'area popolata (terminazione ad anelli)
+ * - within: stesso insieme di dealer entro il raggio
+ * - Coordinate fuori intervallo: ricerca limitata dall'estensione dell'indice
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+class DealerGeoIndexTest {
+
+    private static final int DEALERS = 400;
+    private static final int QUERIES = 200;
+
+    private DealerGeoIndex index;
+    private List<DealerSnapshot> dealers;
+    private Random random;
+
+    @BeforeEach
+    void setUp() {
+        // Nessun dealer da geocodificare: repository e geocoder non servono
+        index = new DealerGeoIndex(null, null, null, 0.25);
+        random = new Random(42);
+        dealers = new ArrayList<>();
+        for (long id = 1; id <= DEALERS; id++) {
+            DealerSnapshot dealer = new DealerSnapshot(id, "Dealer " + id, "Indirizzo " + id,
+                    between(36.6, 47.1), between(6.6, 18.5));
+            dealers.add(dealer);
+            index.onDealerChange(new DealerChangeEvent(id, dealer));
+        }
+    }
+
+    @Test
+    void nearestMatchesBruteForceScan() {
+        for (int q = 0; q < QUERIES; q++) {
+            // Punti anche fuori dall'Italia: molti anelli prima dei primi dealer
+            double lat = between(25, 60);
+            double lon = between(-5, 30);
+            int k = 1 + random.nextInt(10);
+
+            List<DealerGeoIndex.Hit> hits = index.nearest(lat, lon, k);
+            List<Double> expected = bruteForce(lat, lon).subList(0, k);
+
+            assertEquals(k, hits.size());
+            for (int i = 0; i < k; i++) {
+                assertEquals(expected.get(i), hits.get(i).getDistanceKm(), 1e-9,
+                        "Distanza " + i + " per (" + lat + ", " + lon + ")");
+            }
+        }
+    }
+
+    @Test
+    void withinMatchesBruteForceScan() {
+        for (int q = 0; q < QUERIES; q++) {
+            double lat = between(36, 48);
+            double lon = between(6, 19);
+            double radiusKm = between(5, 150);
+
+            Set<Long> found = index.within(lat, lon, radiusKm, DEALERS).stream()
+                    .map(DealerGeoIndex.Hit::getDealerId).collect(Collectors.toSet());
+            Set<Long> expected = dealers.stream()
+                    .filter(d -> DealerGeoIndex.distanceKm(lat, lon, d.getLatitude(), d.getLongitude()) <= radiusKm)
+                    .map(DealerSnapshot::getId).collect(Collectors.toSet());
+
+            assertEquals(expected, found, "Raggio " + radiusKm + " da (" + lat + ", " + lon + ")");
+        }
+    }
+
+    @Test
+    void removedDealerIsNoLongerFound() {
+        DealerSnapshot first = dealers.get(0);
+        index.onDealerChange(new DealerChangeEvent(first.getId(), null));
+
+        List<DealerGeoIndex.Hit> hits = index.nearest(first.getLatitude(), first.getLongitude(), 1);
+
+        assertEquals(1, hits.size());
+        assertTrue(!hits.get(0).getDealerId().equals(first.getId()));
+    }
+
+    @Test
+    void outOfRangeCoordinatesAreBoundedByTheIndex() {
+        double[][] points = {{1e6, 12}, {-1e6, 12}, {41.9, 1e6}, {1e6, -1e6}, {1e300, 1e300}};
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            for (double[] point : points) {
+                List<DealerGeoIndex.Hit> hits = index.nearest(point[0], point[1], 5);
+                assertEquals(5, hits.size());
+                for (int i = 1; i < hits.size(); i++) {
+                    assertTrue(hits.get(i - 1).getDistanceKm() <= hits.get(i).getDistanceKm());
+                }
+                index.within(point[0], point[1], 20_000, 10);
+            }
+            // NaN: distanze non confrontabili, conta solo che la ricerca termini
+            assertEquals(5, index.nearest(Double.NaN, Double.NaN, 5).size());
+            index.within(Double.NaN, Double.NaN, 20_000, 10);
+        });
+    }
+
+    @Test
+    void farLatitudeVisitsEveryRingAndMatchesBruteForce() {
+        // Celle di longitudine degeneri vicino al polo: nessuna uscita anticipata, risultato esatto
+        List<DealerGeoIndex.Hit> hits = index.nearest(1e6, 12, 3);
+        List<Double> expected = bruteForce(1e6, 12).subList(0, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected.get(i), hits.get(i).getDistanceKm(), 1e-9);
+        }
+    }
+
+    // === METODI DI SUPPORTO ===
+
+    private List<Double> bruteForce(double lat, double lon) {
+        return dealers.stream()
+                .map(d -> DealerGeoIndex.distanceKm(lat, lon, d.getLatitude(), d.getLongitude()))
+                .sorted(Comparator.naturalOrder())
+                .toList();
+    }
+
+    private double between(double from, double to) {
+        return from + random.nextDouble() * (to - from);
+    }
+}
@@ -0,0 +1,114 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.DealerChangeEvent;
+import it.uniroma3.siwprogetto.model.DealerSnapshot;
+import it.uniroma3.siwprogetto.repository.DealerRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Verifica ranking e soglia dell'indice a trigrammi dei concessionari
+ *
+ * Copre:
+ * - Errori di battitura e accenti (in query e in indice)
+ * - Ordine per somiglianza e soglia dealers.search.min-similarity
+ * - Query senza parole e indice non pronto: null, il chiamante usa il fallback LIKE
+ * - Aggiornamenti incrementali da DealerChangeEvent
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+class DealerSearchIndexTest {
+
+    private DealerRepository dealerRepository;
+    private DealerSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        dealerRepository = mock(DealerRepository.class);
+        when(dealerRepository.findAllSnapshots()).thenReturn(List.of(
+                dealer(1, "Autosalone Cinecittà", "Via Tuscolana 1000, Roma"),
+                dealer(2, "Motori Milano", "Corso Buenos Aires 12, Milano"),
+                dealer(3, "Romagna Auto", "Viale Forlì 8, Cesena"),
+                dealer(4, "Auto Più", "Piazza Duomo 1, Firenze")));
+        index = new DealerSearchIndex(dealerRepository, 0.4);
+        index.rebuild();
+    }
+
+    @Test
+    void misspelledQueryFindsDealer() {
+        assertEquals(1L, first("Cinecita"));
+        assertEquals(1L, first("tuscolanna"));
+        assertEquals(2L, first("Milamo"));
+        assertEquals(4L, first("Firenzze"));
+    }
+
+    @Test
+    void accentsAreIgnoredOnBothSides() {
+        // Indice con accento, query senza e viceversa
+        assertEquals(3L, first("forli"));
+        assertEquals(3L, first("FORLÌ"));
+        assertEquals(4L, first("auto piu"));
+        assertEquals(1L, first("cinecittá"));
+    }
+
+    @Test
+    void closerMatchRanksFirst() {
+        List<Long> ranked = index.search("Roma", 10);
+
+        // "Roma" esatto nell'indirizzo del dealer 1, solo come prefisso in "Romagna"
+        assertEquals(List.of(1L, 3L), ranked);
+    }
+
+    @Test
+    void unrelatedQueryFallsBelowThreshold() {
+        assertTrue(index.search("zzqqxx", 10).isEmpty());
+    }
+
+    @Test
+    void limitKeepsBestMatches() {
+        assertEquals(List.of(1L), index.search("Roma", 1));
+    }
+
+    @Test
+    void queryWithoutWordsReturnsNull() {
+        assertNull(index.search(",", 10));
+        assertNull(index.search(" - ", 10));
+    }
+
+    @Test
+    void indexNotReadyReturnsNull() {
+        DealerSearchIndex cold = new DealerSearchIndex(dealerRepository, 0.4);
+
+        assertNull(cold.search("Roma", 10));
+    }
+
+    @Test
+    void changesAreAppliedIncrementally() {
+        index.onDealerChange(new DealerChangeEvent(5L, dealer(5, "Garage Brescia", "Via Milano 3, Brescia")));
+        index.onDealerChange(new DealerChangeEvent(1L, null));
+
+        assertEquals(5L, first("Bresca"));
+        assertTrue(index.search("Cinecitta", 10).isEmpty());
+    }
+
+    // === METODI DI SUPPORTO ===
+
+    private Long first(String query) {
+        List<Long> ranked = index.search(query, 10);
+        assertTrue(!ranked.isEmpty(), "Nessun risultato per '" + query + "'");
+        return ranked.get(0);
+    }
+
+    private static DealerSnapshot dealer(long id, String name, String address) {
+        return new DealerSnapshot(id, name, address, null, null);
+    }
+}
@@ -0,0 +1,149 @@
+package it.uniroma3.siwprogetto.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Verifica ammissione ed espulsione della cache fuori heap dei contenuti
+ *
+ * Copre:
+ * - Candidato che perde il confronto TinyLFU con una delle vittime: nessuna voce espulsa,
+ *   anche se le vittime precedenti erano meno frequenti del candidato
+ * - Candidato più frequente di tutte le vittime: vittime espulse e candidato ammesso
+ * - Vittime in invio (pagine non recuperabili): rifiuto per memoria senza espulsioni
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+class ImageCacheTest {
+
+    private static final int PAGE = 1024;
+    /** Quattro pagine: due voci da due pagine riempiono la cache */
+    private static final int MAX_BYTES = 4 * PAGE;
+
+    @TempDir
+    Path root;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ImageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new ImageCache(meterRegistry, MAX_BYTES, MAX_BYTES, PAGE, PAGE, 100);
+    }
+
+    @Test
+    void rejectedCandidateKeepsEveryVictim() throws IOException {
+        byte[] cold = fillCache("cold", "hot");
+        request("hot", 10);
+        // Il candidato batte "cold" (LRU più vecchia) ma non "hot": servono entrambe
+        request("candidate", 3);
+
+        cache.offer("candidate", file("candidate", 4 * PAGE));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.acquire("candidate"));
+        assertContent(cold, "cold");
+        assertEquals(1, rejections("frequency"));
+        assertEquals(0, meterRegistry.get("images.cache.evictions").counter().count());
+    }
+
+    @Test
+    void candidateMoreFrequentThanEveryVictimIsAdmitted() throws IOException {
+        fillCache("cold", "warm");
+        request("warm", 2);
+        request("candidate", 3);
+
+        byte[] candidate = write("candidate", 4 * PAGE);
+        cache.offer("candidate", root.resolve("candidate"));
+
+        assertEquals(1, cache.size());
+        assertContent(candidate, "candidate");
+        assertEquals(2, meterRegistry.get("images.cache.evictions").counter().count());
+    }
+
+    @Test
+    void victimsStillBeingSentAreNotEvictedForNothing() throws IOException {
+        byte[] cold = fillCache("cold", "other");
+        // Invio in corso: le pagine di "cold" non tornano libere con l'espulsione
+        ImageCache.Content sending = cache.acquire("cold");
+        request("candidate", 5);
+
+        cache.offer("candidate", file("candidate", 4 * PAGE));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, rejections("memory"));
+        sending.release();
+        assertContent(cold, "cold");
+        assertNotNull(cache.acquire("other"));
+    }
+
+    // === METODI DI SUPPORTO ===
+
+    /**
+     * Due voci da due pagine, la prima più vecchia nell'ordine LRU
+     *
+     * @return Contenuto della prima voce
+     */
+    private byte[] fillCache(String eldest, String newest) throws IOException {
+        byte[] content = write(eldest, 2 * PAGE);
+        cache.offer(eldest, root.resolve(eldest));
+        cache.offer(newest, file(newest, 2 * PAGE));
+        assertEquals(2, cache.size());
+        return content;
+    }
+
+    /** Richieste (miss o hit) che alimentano lo sketch di frequenza */
+    private void request(String key, int times) {
+        for (int i = 0; i < times; i++) {
+            ImageCache.Content content = cache.acquire(key);
+            if (content != null) {
+                content.release();
+            }
+        }
+    }
+
+    private void assertContent(byte[] expected, String key) throws IOException {
+        ImageCache.Content content = cache.acquire(key);
+        assertNotNull(content, "Voce " + key + " non in cache");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            content.writeTo(Channels.newChannel(out), 0, content.getLength());
+            assertArrayEquals(expected, out.toByteArray());
+        } finally {
+            content.release();
+        }
+    }
+
+    private double rejections(String reason) {
+        return meterRegistry.get("images.cache.rejections").tag("reason", reason).counter().count();
+    }
+
+    private Path file(String name, int length) throws IOException {
+        write(name, length);
+        return root.resolve(name);
+    }
+
+    private byte[] write(String name, int length) throws IOException {
+        byte[] content = new byte[length];
+        Arrays.fill(content, (byte) name.hashCode());
+        content[0] = (byte) length;
+        Files.write(root.resolve(name), content);
+        return content;
+    }
+}
@@ -0,0 +1,205 @@
+package it.uniroma3.siwprogetto.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifica lettura e applicazione dell'orientamento EXIF all'ingest
+ *
+ * Copre:
+ * - exifOrientation: intestazioni APP1 little-endian (II) e big-endian (MM), ogni valore 1-8,
+ *   APP1 preceduto da altri segmenti e tag dopo altre voci dell'IFD0
+ * - Valori fuori intervallo, EXIF assente o intestazione troncata: orientamento 1
+ * - orient: per ogni valore 1-8, ogni pixel nella posizione prevista dalla specifica EXIF
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+class ImageRecompressorTest {
+
+    private static final int WIDTH = 3;
+    private static final int HEIGHT = 2;
+
+    static Stream<Arguments> byteOrdersAndOrientations() {
+        return Stream.of(true, false).flatMap(little ->
+                IntStream.rangeClosed(1, 8).mapToObj(orientation -> Arguments.of(little, orientation)));
+    }
+
+    @ParameterizedTest(name = "little-endian={0}, orientamento {1}")
+    @MethodSource("byteOrdersAndOrientations")
+    void orientationIsReadInBothByteOrders(boolean little, int orientation) {
+        byte[] head = jpegHeader(little, orientation, false);
+
+        assertEquals(orientation, ImageRecompressor.exifOrientation(head, head.length));
+    }
+
+    @ParameterizedTest(name = "little-endian={0}, orientamento {1}")
+    @MethodSource("byteOrdersAndOrientations")
+    void orientationIsFoundAfterOtherSegments(boolean little, int orientation) {
+        byte[] head = jpegHeader(little, orientation, true);
+
+        assertEquals(orientation, ImageRecompressor.exifOrientation(head, head.length));
+    }
+
+    @ParameterizedTest(name = "valore {0}")
+    @ValueSource(ints = {0, 9, 0xFFFF})
+    void invalidValueMeansNoRotation(int value) {
+        for (boolean little : new boolean[]{true, false}) {
+            byte[] head = jpegHeader(little, value, false);
+            assertEquals(1, ImageRecompressor.exifOrientation(head, head.length));
+        }
+    }
+
+    @Test
+    void missingExifMeansNoRotation() {
+        byte[] jfifOnly = concat(bytes(0xFF, 0xD8), jfifSegment(), bytes(0xFF, 0xDA, 0x00, 0x02));
+        byte[] notJpeg = "PNG\r\n".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(1, ImageRecompressor.exifOrientation(jfifOnly, jfifOnly.length));
+        assertEquals(1, ImageRecompressor.exifOrientation(notJpeg, notJpeg.length));
+    }
+
+    @Test
+    void truncatedHeaderMeansNoRotation() {
+        for (boolean little : new boolean[]{true, false}) {
+            byte[] head = jpegHeader(little, 6, true);
+            // Ogni prefisso, anche a metà della voce: nessuna eccezione, 1 finché la voce non è completa
+            for (int length = 0; length < head.length; length++) {
+                int orientation = ImageRecompressor.exifOrientation(Arrays.copyOf(head, length), length);
+                assertEquals(length >= entryEnd(head) ? 6 : 1, orientation, "Prefisso di " + length + " byte");
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "orientamento {0}")
+    @ValueSource(ints = {1, 2, 3, 4, 5, 6, 7, 8})
+    void orientPlacesEveryPixelAsTheExifSpecification(int orientation) {
+        BufferedImage source = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                source.setRGB(x, y, color(x, y));
+            }
+        }
+
+        BufferedImage oriented = ImageRecompressor.orient(source, orientation);
+
+        boolean swap = orientation >= 5;
+        assertEquals(swap ? HEIGHT : WIDTH, oriented.getWidth());
+        assertEquals(swap ? WIDTH : HEIGHT, oriented.getHeight());
+        for (int y = 0; y < oriented.getHeight(); y++) {
+            for (int x = 0; x < oriented.getWidth(); x++) {
+                int[] from = sourcePixel(orientation, x, y);
+                assertEquals(color(from[0], from[1]) & 0xFFFFFF, oriented.getRGB(x, y) & 0xFFFFFF,
+                        "Pixel (" + x + ", " + y + ")");
+            }
+        }
+    }
+
+    // === METODI DI SUPPORTO ===
+
+    /**
+     * Pixel dell'originale mostrato in (x, y) dopo la correzione dell'orientamento
+     */
+    private static int[] sourcePixel(int orientation, int x, int y) {
+        return switch (orientation) {
+            case 2 -> new int[]{WIDTH - 1 - x, y};
+            case 3 -> new int[]{WIDTH - 1 - x, HEIGHT - 1 - y};
+            case 4 -> new int[]{x, HEIGHT - 1 - y};
+            case 5 -> new int[]{y, x};
+            case 6 -> new int[]{y, HEIGHT - 1 - x};
+            case 7 -> new int[]{WIDTH - 1 - y, HEIGHT - 1 - x};
+            case 8 -> new int[]{WIDTH - 1 - y, x};
+            default -> new int[]{x, y};
+        };
+    }
+
+    private static int color(int x, int y) {
+        return ((40 + x * 70) << 16) | ((30 + y * 150) << 8) | (x * 20 + y * 100);
+    }
+
+    /**
+     * SOI, eventuale APP0 JFIF, APP1 Exif con IFD0 (Make, Orientation) e inizio dello scan
+     */
+    private static byte[] jpegHeader(boolean little, int orientation, boolean withJfif) {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        tiff.writeBytes(little ? bytes('I', 'I') : bytes('M', 'M'));
+        tiff.writeBytes(short16(0x2A, little));
+        tiff.writeBytes(int32(8, little));
+        tiff.writeBytes(short16(2, little));
+        // Make (ASCII, 4 byte nel campo valore)
+        tiff.writeBytes(short16(0x010F, little));
+        tiff.writeBytes(short16(2, little));
+        tiff.writeBytes(int32(4, little));
+        tiff.writeBytes("FCF\0".getBytes(StandardCharsets.US_ASCII));
+        // Orientation (SHORT: valore nei primi due byte del campo)
+        tiff.writeBytes(short16(0x0112, little));
+        tiff.writeBytes(short16(3, little));
+        tiff.writeBytes(int32(1, little));
+        tiff.writeBytes(short16(orientation, little));
+        tiff.writeBytes(bytes(0, 0));
+        tiff.writeBytes(int32(0, little));
+
+        byte[] exif = concat("Exif".getBytes(StandardCharsets.US_ASCII), bytes(0, 0), tiff.toByteArray());
+        byte[] app1 = concat(bytes(0xFF, 0xE1), short16(exif.length + 2, false), exif);
+        return concat(bytes(0xFF, 0xD8), withJfif ? jfifSegment() : new byte[0], app1, bytes(0xFF, 0xDA, 0x00, 0x02));
+    }
+
+    /** Fine della voce Orientation nell'intestazione costruita da jpegHeader */
+    private static int entryEnd(byte[] head) {
+        int tiff = indexOf(head, "Exif".getBytes(StandardCharsets.US_ASCII)) + 6;
+        // Intestazione (8) + numero voci (2) + voce Make (12) + voce Orientation (12)
+        return tiff + 8 + 2 + 12 + 12;
+    }
+
+    private static byte[] jfifSegment() {
+        byte[] body = concat("JFIF".getBytes(StandardCharsets.US_ASCII), bytes(0, 1, 1, 0, 0, 1, 0, 1, 0, 0));
+        return concat(bytes(0xFF, 0xE0), short16(body.length + 2, false), body);
+    }
+
+    private static byte[] short16(int value, boolean little) {
+        return little ? bytes(value & 0xFF, (value >> 8) & 0xFF) : bytes((value >> 8) & 0xFF, value & 0xFF);
+    }
+
+    private static byte[] int32(int value, boolean little) {
+        byte[] high = short16(value >>> 16, little);
+        byte[] low = short16(value & 0xFFFF, little);
+        return little ? concat(low, high) : concat(high, low);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            if (Arrays.equals(data, i, i + pattern.length, pattern, 0, pattern.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,228 @@
+package it.uniroma3.siwprogetto.service;
+
+import it.uniroma3.siwprogetto.model.CartItem;
+import it.uniroma3.siwprogetto.model.Dealer;
+import it.uniroma3.siwprogetto.model.DealerChangeEvent;
+import it.uniroma3.siwprogetto.model.Image;
+import it.uniroma3.siwprogetto.model.ImagesRemovedEvent;
+import it.uniroma3.siwprogetto.model.Product;
+import it.uniroma3.siwprogetto.model.ProductChangeEvent;
+import it.uniroma3.siwprogetto.model.QuoteRequest;
+import it.uniroma3.siwprogetto.model.User;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica statement, eventi e persistence context delle eliminazioni in blocco
+ *
+ * Copre:
+ * - Numero di statement costante, indipendente da prodotti e immagini eliminati
+ * - Eventi pubblicati al posto degli entity listener: un ProductChangeEvent per prodotto,
+ *   un solo ImagesRemovedEvent, un DealerChangeEvent per il concessionario
+ * - Modifiche pendenti scritte prima delle DELETE native, persistence context svuotato dopo
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+@DataJpaTest(properties = {
+        // "year" è una colonna di Product ma una parola riservata in H2
+        "spring.datasource.url=jdbc:h2:mem:bulkdelete;NON_KEYWORDS=YEAR,VALUE",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.hbm2ddl.import_files=",
+        "spring.sql.init.mode=never"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(InventoryBulkDeleter.class)
+@RecordApplicationEvents
+class InventoryBulkDeleterTest {
+
+    private static final int PRODUCTS = 5;
+    private static final int IMAGES_PER_ENTITY = 3;
+
+    /** Snapshot, immagini, preventivi, carrelli, immagini, prodotti */
+    private static final int INVENTORY_STATEMENTS = 6;
+    /** Inventario più immagini e preventivi del concessionario, gallery e riga del concessionario */
+    private static final int DEALER_STATEMENTS = INVENTORY_STATEMENTS + 4;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Autowired
+    private InventoryBulkDeleter inventoryBulkDeleter;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
+    private Statistics statistics;
+    private User seller;
+    private User buyer;
+    private Dealer dealer;
+    private final List<Long> productIds = new ArrayList<>();
+    private final List<Long> imageIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        statistics = testEntityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+
+        seller = newUser("dealer_bulk");
+        buyer = newUser("buyer_bulk");
+
+        dealer = new Dealer();
+        dealer.setName("Concessionario Bulk");
+        dealer.setOwner(seller);
+        testEntityManager.persist(dealer);
+        for (int i = 0; i < IMAGES_PER_ENTITY; i++) {
+            Image image = newImage();
+            image.setDealer(dealer);
+            imageIds.add(testEntityManager.persist(image).getId());
+        }
+
+        for (int p = 0; p < PRODUCTS; p++) {
+            Product product = new Product();
+            product.setBrand("Fiat");
+            product.setModel("Panda " + p);
+            product.setPrice(new BigDecimal("10000"));
+            product.setSeller(seller);
+            testEntityManager.persist(product);
+            for (int i = 0; i < IMAGES_PER_ENTITY; i++) {
+                Image image = newImage();
+                image.setProduct(product);
+                imageIds.add(testEntityManager.persist(image).getId());
+            }
+            productIds.add(product.getId());
+
+            CartItem item = new CartItem();
+            item.setProduct(product);
+            item.setUser(buyer);
+            item.setQuantity(1);
+            testEntityManager.persist(item);
+
+            QuoteRequest quote = new QuoteRequest();
+            quote.setProduct(product);
+            quote.setUser(buyer);
+            quote.setDealer(dealer);
+            quote.setRequestDate(LocalDateTime.now());
+            quote.setStatus("PENDING");
+            testEntityManager.persist(quote);
+        }
+
+        testEntityManager.flush();
+        testEntityManager.clear();
+        statistics.clear();
+        applicationEvents.clear();
+    }
+
+    @Test
+    void deleteDealerUsesAFixedNumberOfStatements() {
+        Dealer loaded = testEntityManager.find(Dealer.class, dealer.getId());
+        statistics.clear();
+
+        assertEquals(PRODUCTS, inventoryBulkDeleter.deleteDealer(loaded));
+
+        assertEquals(DEALER_STATEMENTS, statementCount(), "Statement indipendenti da prodotti e immagini");
+        assertEquals(0, statistics.getEntityLoadCount(), "Nessuna entità deve essere caricata");
+    }
+
+    @Test
+    void deleteInventoryUsesAFixedNumberOfStatements() {
+        assertEquals(PRODUCTS, inventoryBulkDeleter.deleteInventory(seller.getId()));
+
+        assertEquals(INVENTORY_STATEMENTS, statementCount(), "Statement indipendenti da prodotti e immagini");
+        assertEquals(0, statistics.getEntityLoadCount(), "Nessuna entità deve essere caricata");
+    }
+
+    @Test
+    void deleteDealerPublishesEventsForEveryRemovedRow() {
+        inventoryBulkDeleter.deleteDealer(testEntityManager.find(Dealer.class, dealer.getId()));
+
+        Set<Long> removedProducts = new HashSet<>();
+        applicationEvents.stream(ProductChangeEvent.class).forEach(event -> {
+            assertNull(event.getAfter());
+            removedProducts.add(event.getProductId());
+        });
+        assertEquals(new HashSet<>(productIds), removedProducts);
+
+        List<ImagesRemovedEvent> images = applicationEvents.stream(ImagesRemovedEvent.class).toList();
+        assertEquals(1, images.size(), "Un solo evento per tutte le immagini");
+        assertEquals(new HashSet<>(imageIds), new HashSet<>(images.get(0).getImageIds()));
+
+        List<DealerChangeEvent> dealers = applicationEvents.stream(DealerChangeEvent.class).toList();
+        assertEquals(1, dealers.size());
+        assertEquals(dealer.getId(), dealers.get(0).getDealerId());
+        assertNull(dealers.get(0).getAfter());
+    }
+
+    @Test
+    void deleteInventoryKeepsTheDealerGallery() {
+        inventoryBulkDeleter.deleteInventory(seller.getId());
+
+        List<ImagesRemovedEvent> images = applicationEvents.stream(ImagesRemovedEvent.class).toList();
+        assertEquals(1, images.size());
+        assertEquals(PRODUCTS * IMAGES_PER_ENTITY, images.get(0).getImageIds().size());
+        assertEquals(0, applicationEvents.stream(DealerChangeEvent.class).count());
+        assertEquals(IMAGES_PER_ENTITY, testEntityManager.find(Dealer.class, dealer.getId()).getImages().size());
+    }
+
+    @Test
+    void pendingChangesAreFlushedAndRemovedEntitiesDetached() {
+        Product product = testEntityManager.find(Product.class, productIds.get(0));
+        User owner = testEntityManager.find(User.class, seller.getId());
+        owner.setEmail("nuova@fcfmotors.com");
+
+        inventoryBulkDeleter.deleteInventory(seller.getId());
+
+        assertFalse(testEntityManager.getEntityManager().contains(product), "Prodotto eliminato ancora gestito");
+        assertFalse(testEntityManager.getEntityManager().contains(owner), "Persistence context non svuotato");
+        // Il flush del chiamante non riscrive righe eliminate
+        testEntityManager.flush();
+        assertNull(testEntityManager.find(Product.class, productIds.get(0)));
+        User reloaded = testEntityManager.find(User.class, seller.getId());
+        assertNotNull(reloaded);
+        assertEquals("nuova@fcfmotors.com", reloaded.getEmail(), "Modifica pendente non scritta prima delle DELETE");
+        assertTrue(reloaded.getProducts().isEmpty());
+    }
+
+    // === METODI DI SUPPORTO ===
+
+    private long statementCount() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    private User newUser(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@fcfmotors.com");
+        user.setPassword("Password123");
+        return testEntityManager.persist(user);
+    }
+
+    private static Image newImage() {
+        Image image = new Image();
+        image.setContentType("image/jpeg");
+        image.setData(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF});
+        return image;
+    }
+}
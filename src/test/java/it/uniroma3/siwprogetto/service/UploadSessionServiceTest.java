@@ -0,0 +1,155 @@
+package it.uniroma3.siwprogetto.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Verifica il protocollo degli upload a blocchi su filesystem temporaneo
+ *
+ * Copre:
+ * - Blocchi in ordine qualsiasi scritti alla loro posizione, ripresa dai blocchi mancanti
+ * - Blocco ripetuto e rifiutato (hash, lunghezza): il contenuto già accettato resta intatto
+ * - Verifica dello SHA-256 del file al commit
+ * - Limite di sessioni aperte per utente
+ *
+ * @author FCF Motors Team
+ * @version 1.0
+ */
+class UploadSessionServiceTest {
+
+    private static final int CHUNK_SIZE = 4;
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path root;
+
+    private UploadSessionService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        service = new UploadSessionService(new SimpleMeterRegistry(), root.toString(), CHUNK_SIZE, 64, 60, 2);
+    }
+
+    @Test
+    void chunksInAnyOrderAssembleTheFile() throws IOException {
+        UploadSessionService.Session session = service.create("mario", "foto.jpg", CONTENT.length, sha256(CONTENT));
+        assertEquals(3, session.getChunkCount());
+
+        put(session, 2);
+        put(session, 0);
+        assertArrayEquals(new int[]{1}, session.getMissingChunks());
+        put(session, 1);
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(service.complete(session)));
+    }
+
+    @Test
+    void retriedChunkWithBadHashKeepsAcceptedData() throws IOException {
+        // Senza SHA-256 del file: il commit si fida solo dei blocchi accettati
+        UploadSessionService.Session session = service.create("mario", "foto.jpg", CONTENT.length, null);
+        put(session, 0);
+        put(session, 1);
+        put(session, 2);
+
+        byte[] corrupted = "XXXX".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(IllegalArgumentException.class, () ->
+                service.writeChunk(session, 1, new ByteArrayInputStream(corrupted), sha256(chunk(1))));
+
+        assertEquals(0, session.getMissingCount());
+        assertArrayEquals(CONTENT, Files.readAllBytes(service.complete(session)));
+        assertEquals(0, chunkFiles());
+    }
+
+    @Test
+    void retriedChunkWithWrongLengthKeepsAcceptedData() throws IOException {
+        UploadSessionService.Session session = service.create("mario", "foto.jpg", CONTENT.length, null);
+        put(session, 0);
+        put(session, 1);
+        put(session, 2);
+
+        assertThrows(IllegalArgumentException.class, () ->
+                service.writeChunk(session, 0, new ByteArrayInputStream(new byte[]{'X', 'X'}), null));
+        assertThrows(IllegalArgumentException.class, () ->
+                service.writeChunk(session, 0, new ByteArrayInputStream("XXXXXX".getBytes(StandardCharsets.US_ASCII)), null));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(service.complete(session)));
+        assertEquals(0, chunkFiles());
+    }
+
+    @Test
+    void rejectedChunkIsStillMissing() throws IOException {
+        UploadSessionService.Session session = service.create("mario", "foto.jpg", CONTENT.length, null);
+
+        assertThrows(IllegalArgumentException.class, () ->
+                service.writeChunk(session, 0, new ByteArrayInputStream(chunk(0)), sha256(chunk(1))));
+
+        assertArrayEquals(new int[]{0, 1, 2}, session.getMissingChunks());
+        assertThrows(IllegalArgumentException.class, () -> service.complete(session));
+    }
+
+    @Test
+    void fileHashIsVerifiedOnCommit() throws IOException {
+        UploadSessionService.Session session = service.create("mario", "foto.jpg", CONTENT.length,
+                sha256("altro file".getBytes(StandardCharsets.US_ASCII)));
+        put(session, 0);
+        put(session, 1);
+        put(session, 2);
+
+        assertThrows(IllegalArgumentException.class, () -> service.complete(session));
+    }
+
+    @Test
+    void openSessionsAreCappedPerOwner() throws IOException {
+        UploadSessionService.Session first = service.create("mario", "a.jpg", 10, null);
+        service.create("mario", "b.jpg", 10, null);
+
+        assertThrows(IllegalArgumentException.class, () -> service.create("mario", "c.jpg", 10, null));
+        service.create("luigi", "c.jpg", 10, null);
+
+        service.discard(first);
+        service.create("mario", "c.jpg", 10, null);
+    }
+
+    // === METODI DI SUPPORTO ===
+
+    private void put(UploadSessionService.Session session, int index) throws IOException {
+        byte[] chunk = chunk(index);
+        service.writeChunk(session, index, new ByteArrayInputStream(chunk), sha256(chunk));
+    }
+
+    private static byte[] chunk(int index) {
+        int from = index * CHUNK_SIZE;
+        return Arrays.copyOfRange(CONTENT, from, Math.min(from + CHUNK_SIZE, CONTENT.length));
+    }
+
+    private long chunkFiles() throws IOException {
+        try (Stream<Path> files = Files.list(root.resolve("sessions"))) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".chunk")).count();
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}